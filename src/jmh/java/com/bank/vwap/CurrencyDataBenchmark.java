@@ -0,0 +1,48 @@
+package com.bank.vwap;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the sliding window itself: adding a tick and evicting the expired tail,
+ * for heap and off-heap tick buffers, and recomputing the VWAP exactly over the whole window.
+ * Add {@code -jvmArgsAppend --add-modules=jdk.incubator.vector} to measure the Vector API re-sum kernel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class CurrencyDataBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int windowSize;
+
+    @Param({"false", "true"})
+    private boolean offHeap;
+
+    private CurrencyData currencyData;
+    private long timestampNanos;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        currencyData = new CurrencyData("AUD/USD", windowSize, offHeap);
+        for (int i = 0; i < windowSize; i++) {
+            currencyData.addToFront(++timestampNanos, 1.0, 100);
+        }
+    }
+
+    @Benchmark
+    public boolean addToFrontAndRemoveItemsBeforeCutoff() {
+        // One tick in and one tick out, so the window keeps its size
+        currencyData.addToFront(++timestampNanos, 1.0, 100);
+        return currencyData.removeItemsBeforeCutoff(timestampNanos - windowSize + 1);
+    }
+
+    @Benchmark
+    public double recomputeVwap() {
+        return currencyData.recomputeVwap();
+    }
+}
@@ -0,0 +1,34 @@
+package com.bank.vwap;
+
+import com.bank.util.DateTimeUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning price timestamps into epoch time
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DateTimeUtilBenchmark {
+    private static final ZoneId ZONE = ZoneId.of(VWAPCalculator.PRICE_TIMEZONE);
+
+    @Param({"9:30 AM", "9:30:15.123 PM", "9:30:15.123456789 PM"})
+    private String timestamp;
+
+    @Benchmark
+    public Instant convertToInstant() {
+        return DateTimeUtil.convertToInstant(timestamp, ZONE);
+    }
+
+    @Benchmark
+    public long parseToEpochNanos() {
+        return DateTimeUtil.parseToEpochNanos(timestamp, ZONE);
+    }
+}
@@ -0,0 +1,118 @@
+package com.bank.vwap;
+
+import com.bank.util.DateTimeUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end throughput from producer threads through the ingestion stage to processed VWAPs.
+ * Each invocation sends a fixed number of ticks split across the producers and waits until
+ * the shards have processed all of them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class IngestionBenchmark {
+    private static final int TICKS_PER_INVOCATION = 100_000;
+    private static final int PAIR_COUNT = 16;
+    private static final int BATCH_SIZE = 256;
+
+    @Param({"1", "2", "4"})
+    private int producerThreads;
+
+    @Param({"1", "4"})
+    private int shardCount;
+
+    @Param({"QUEUE", "RING_BUFFER"})
+    private IngestionMode ingestionMode;
+
+    private VWAPCalculator calculator;
+    private ExecutorService producers;
+    private String[] currencyPairs;
+    private long sentTicks;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        calculator = new VWAPCalculator(new VWAPCalculatorConfig().withCutoffSeconds(3600)
+                .withShardCount(shardCount).withIngestionMode(ingestionMode).withWaitStrategy(WaitStrategy.YIELD));
+        producers = Executors.newFixedThreadPool(producerThreads);
+        currencyPairs = new String[PAIR_COUNT];
+        for (int i = 0; i < PAIR_COUNT; i++) {
+            currencyPairs[i] = String.format("C%02d/USD", i);
+        }
+        sentTicks = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        producers.shutdown();
+        calculator.shutdownExecutors();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS_PER_INVOCATION)
+    public void sendVWAPForCurrencyPair() throws Exception {
+        int ticksPerProducer = TICKS_PER_INVOCATION / producerThreads;
+        Future<?>[] futures = new Future<?>[producerThreads];
+        for (int p = 0; p < producerThreads; p++) {
+            futures[p] = producers.submit(() -> {
+                long timestampNanos = DateTimeUtil.currentEpochNanos();
+                for (int i = 0; i < ticksPerProducer; i++) {
+                    calculator.sendVWAPForCurrencyPair(currencyPairs[i % PAIR_COUNT], timestampNanos, 1.0, 1);
+                }
+            });
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        sentTicks += (long) ticksPerProducer * producerThreads;
+        // Every tick has a volume of 1, so the total volume counts the processed ticks
+        while (processedTicks() < sentTicks) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS_PER_INVOCATION)
+    public void sendBatch() throws Exception {
+        int ticksPerProducer = TICKS_PER_INVOCATION / producerThreads;
+        Future<?>[] futures = new Future<?>[producerThreads];
+        for (int p = 0; p < producerThreads; p++) {
+            futures[p] = producers.submit(() -> {
+                long timestampNanos = DateTimeUtil.currentEpochNanos();
+                List<CurrencyPriceData> batch = new ArrayList<>(BATCH_SIZE);
+                for (int i = 0; i < ticksPerProducer; i++) {
+                    batch.add(new CurrencyPriceData(timestampNanos, currencyPairs[i % PAIR_COUNT], 1.0, 1));
+                    if (batch.size() == BATCH_SIZE || i == ticksPerProducer - 1) {
+                        calculator.sendBatch(batch);
+                        batch.clear();
+                    }
+                }
+            });
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        sentTicks += (long) ticksPerProducer * producerThreads;
+        while (processedTicks() < sentTicks) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private long processedTicks() {
+        long processed = 0;
+        for (CurrencyData data : calculator.getCurrencyPairData().values()) {
+            processed += data.getTotalVolume().get();
+        }
+        return processed;
+    }
+}
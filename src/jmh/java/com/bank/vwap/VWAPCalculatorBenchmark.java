@@ -0,0 +1,84 @@
+package com.bank.vwap;
+
+import com.bank.util.DateTimeUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded cost of processing a price update against a full window.
+ * Ticks are spaced so that each pair holds windowSize ticks, and every new tick
+ * evicts one expired tick, keeping the window at a steady size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class VWAPCalculatorBenchmark {
+    private static final int CUTOFF_SECONDS = 3600;
+
+    @Param({"1000", "10000", "100000"})
+    private int windowSize;
+
+    @Param({"1", "200"})
+    private int pairCount;
+
+    private VWAPCalculator calculator;
+    private String[] currencyPairs;
+    private long tickIntervalNanos;
+    private long timestampNanos;
+    private int nextPair;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        calculator = new VWAPCalculator(CUTOFF_SECONDS);
+        currencyPairs = new String[pairCount];
+        for (int i = 0; i < pairCount; i++) {
+            currencyPairs[i] = String.format("C%02d/USD", i);
+        }
+        tickIntervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(CUTOFF_SECONDS) / ((long) windowSize * pairCount));
+        timestampNanos = DateTimeUtil.currentEpochNanos() - TimeUnit.SECONDS.toNanos(CUTOFF_SECONDS);
+        // Fill every window before measuring
+        for (long i = 0; i < (long) windowSize * pairCount; i++) {
+            processPriceUpdate();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        calculator.shutdownExecutors();
+    }
+
+    @Benchmark
+    public void processVWAPForCurrencyPair() {
+        // Includes allocating the CurrencyPriceData, as callers of the public API do
+        calculator.processVWAPForCurrencyPair(new CurrencyPriceData(nextTimestamp(), nextCurrencyPair(), 1.0, 100));
+    }
+
+    @Benchmark
+    public void processPriceUpdate() {
+        calculator.processPriceUpdate(nextCurrencyPair(), nextTimestamp(), 1.0, 100);
+    }
+
+    @Benchmark
+    public void removePricesBeforeCutoff() {
+        // Adds a tick without eviction, then evicts the tick that has expired
+        String currencyPair = nextCurrencyPair();
+        long timestamp = nextTimestamp();
+        calculator.getCurrencyPairData().get(currencyPair).addToFront(timestamp, 1.0, 100);
+        calculator.removePricesBeforeCutoff(currencyPair, timestamp);
+    }
+
+    private String nextCurrencyPair() {
+        String currencyPair = currencyPairs[nextPair];
+        nextPair = nextPair + 1 == currencyPairs.length ? 0 : nextPair + 1;
+        return currencyPair;
+    }
+
+    private long nextTimestamp() {
+        timestampNanos += tickIntervalNanos;
+        return timestampNanos;
+    }
+}
@@ -0,0 +1,63 @@
+package com.bank.feed;
+
+import java.util.Properties;
+
+/**
+ * Configuration for the FeedRunner, read from application.properties
+ */
+public class FeedConfig {
+    private boolean virtualThreads = true;
+    private int batchSize = 256;
+    private long retryMillis = 1000;
+
+    public static FeedConfig fromProperties(Properties properties) {
+        FeedConfig config = new FeedConfig();
+        config.virtualThreads = Boolean.parseBoolean(properties.getProperty("feed.virtual.threads", String.valueOf(config.virtualThreads)));
+        config.withBatchSize(Integer.parseInt(properties.getProperty("feed.batch.size", String.valueOf(config.batchSize))));
+        config.withRetryMillis(Long.parseLong(properties.getProperty("feed.retry.millis", String.valueOf(config.retryMillis))));
+        return config;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @param virtualThreads true to run each feed on a virtual thread where the JDK supports them,
+     *                       falling back to a platform thread per feed
+     */
+    public FeedConfig withVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the most ticks a feed hands to the calculator at once
+     */
+    public FeedConfig withBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Feed batch size must be at least 1: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public long getRetryMillis() {
+        return retryMillis;
+    }
+
+    /**
+     * @param retryMillis how long to wait before running a failed feed again, e.g. reconnecting to a venue
+     */
+    public FeedConfig withRetryMillis(long retryMillis) {
+        if (retryMillis < 0) {
+            throw new IllegalArgumentException("Feed retry interval must not be negative: " + retryMillis);
+        }
+        this.retryMillis = retryMillis;
+        return this;
+    }
+}
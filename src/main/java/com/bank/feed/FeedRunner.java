@@ -0,0 +1,189 @@
+package com.bank.feed;
+
+import com.bank.vwap.VWAPCalculator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs price feeds in front of a VWAPCalculator, each feed on its own thread.
+ *
+ * Feeds spend most of their time blocked on I/O, so where the JDK supports virtual threads (21 and later)
+ * each feed gets a virtual thread, and hundreds of venue connections can be attached without sizing a
+ * thread pool. On older JDKs each feed gets a daemon platform thread instead. A feed that fails is run
+ * again after the retry interval until the runner is closed.
+ */
+public final class FeedRunner implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FeedRunner.class);
+    // Longest wait for feed threads to finish when closing
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private final VWAPCalculator calculator;
+    private final FeedConfig config;
+    private final ThreadFactory threadFactory;
+    private final boolean virtualThreads;
+    private final List<RunningFeed> feeds = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    public FeedRunner(VWAPCalculator calculator, FeedConfig config) {
+        this.calculator = calculator;
+        this.config = config;
+        ThreadFactory virtualThreadFactory = config.isVirtualThreads() ? virtualThreadFactory() : null;
+        this.virtualThreads = virtualThreadFactory != null;
+        this.threadFactory = virtualThreads ? virtualThreadFactory : runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        };
+        LOGGER.info("Price feeds run on {} threads", virtualThreads ? "virtual" : "platform");
+    }
+
+    /**
+     * Thread.ofVirtual().factory(), looked up reflectively as the code is compiled for Java 11
+     *
+     * @return the factory, or null if the JDK does not support virtual threads
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.debug("Virtual threads are not available: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Start reading a feed on its own thread
+     *
+     * @throws IllegalStateException if the runner is closed
+     */
+    public void attach(PriceFeed feed) {
+        if (closed) {
+            throw new IllegalStateException("Cannot attach feed " + feed.getName() + " to a closed FeedRunner");
+        }
+        RunningFeed runningFeed = new RunningFeed(feed, new TickBatcher(calculator, config.getBatchSize()));
+        runningFeed.thread = threadFactory.newThread(() -> run(runningFeed));
+        runningFeed.thread.setName("vwap-feed-" + feed.getName());
+        feeds.add(runningFeed);
+        runningFeed.thread.start();
+    }
+
+    private void run(RunningFeed runningFeed) {
+        PriceFeed feed = runningFeed.feed;
+        try {
+            while (!closed) {
+                try {
+                    feed.run(runningFeed.batcher);
+                    LOGGER.info("Feed {} ended", feed.getName());
+                    break;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    if (closed) {
+                        break;
+                    }
+                    runningFeed.errorCount++;
+                    LOGGER.error("Feed {} failed, running it again in {} ms: {}", feed.getName(), config.getRetryMillis(), e.getMessage());
+                    TimeUnit.MILLISECONDS.sleep(config.getRetryMillis());
+                } finally {
+                    // Ticks parsed before a failure are still valid
+                    runningFeed.batcher.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            runningFeed.running = false;
+        }
+    }
+
+    /**
+     * @return true if the feeds run on virtual threads
+     */
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return the number of feeds still running
+     */
+    public int getFeedCount() {
+        int count = 0;
+        for (RunningFeed runningFeed : feeds) {
+            if (runningFeed.running) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of ticks the feeds have handed to the calculator
+     */
+    public long getTickCount() {
+        long count = 0;
+        for (RunningFeed runningFeed : feeds) {
+            count += runningFeed.batcher.getTickCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of times the feeds have failed
+     */
+    public long getErrorCount() {
+        long count = 0;
+        for (RunningFeed runningFeed : feeds) {
+            count += runningFeed.errorCount;
+        }
+        return count;
+    }
+
+    /**
+     * Close every feed and wait for the feed threads to hand over their last ticks
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (RunningFeed runningFeed : feeds) {
+            try {
+                runningFeed.feed.close();
+            } catch (Exception e) {
+                LOGGER.error("Error closing feed {}: {}", runningFeed.feed.getName(), e.getMessage());
+            }
+        }
+        long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MILLIS;
+        for (RunningFeed runningFeed : feeds) {
+            try {
+                runningFeed.thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+                if (runningFeed.thread.isAlive()) {
+                    runningFeed.thread.interrupt();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static final class RunningFeed {
+        private final PriceFeed feed;
+        private final TickBatcher batcher;
+        private Thread thread;
+        private volatile boolean running = true;
+        // Only written by the feed thread
+        private volatile long errorCount;
+
+        private RunningFeed(PriceFeed feed, TickBatcher batcher) {
+            this.feed = feed;
+            this.batcher = batcher;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.bank.feed;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Follows a file of tick lines as it is appended to, like {@code tail -f}. When the end of the file
+ * is reached the feed polls for more lines; a file that shrinks is taken to have been truncated
+ * and is read again from the start.
+ */
+public class FileTailPriceFeed extends LinePriceFeed {
+    private final Path path;
+    private final long pollIntervalMillis;
+    private FileChannel channel;
+    // Position of the next byte to read, -1 until the file is first opened
+    private long position;
+    private volatile boolean closed;
+
+    /**
+     * @param path the file to follow
+     * @param fromStart true to read the lines already in the file, false to only read lines appended from now on
+     * @param pollIntervalMillis how long to wait for more lines at the end of the file
+     */
+    public FileTailPriceFeed(Path path, boolean fromStart, long pollIntervalMillis) {
+        super(path.getFileName().toString());
+        this.path = path;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.position = fromStart ? 0 : -1;
+    }
+
+    @Override
+    protected void open() throws IOException {
+        closeChannel();
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        if (position < 0) {
+            position = channel.size();
+        }
+    }
+
+    @Override
+    protected int fill(ByteBuffer buffer) throws IOException {
+        while (!closed) {
+            int read = channel.read(buffer, position);
+            if (read > 0) {
+                position += read;
+                return read;
+            }
+            if (channel.size() < position) {
+                position = 0;
+                continue;
+            }
+            try {
+                Thread.sleep(pollIntervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        closeChannel();
+        return -1;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.bank.feed;
+
+import com.bank.util.DateTimeUtil;
+import com.bank.util.TickLineParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Base of feeds delivering ticks as lines of the form {@code timestamp,currencyPair,price,volume},
+ * with the timestamp in epoch nanoseconds or as a time of day on the current day.
+ *
+ * Input is read into a fixed buffer and parsed in place, currency pairs are looked up by their bytes,
+ * and the ticks of each read are sent as one columnar batch, so nothing is allocated per tick.
+ */
+public abstract class LinePriceFeed implements PriceFeed {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LinePriceFeed.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String name;
+    // Only written by the feed thread
+    private volatile long skippedLines;
+
+    protected LinePriceFeed(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of lines skipped because they could not be parsed
+     */
+    public long getSkippedLines() {
+        return skippedLines;
+    }
+
+    /**
+     * Prepare to read, e.g. by connecting. Called at the start of every run.
+     */
+    protected void open() throws IOException {
+    }
+
+    /**
+     * Read the next input into the buffer, blocking until some is available
+     *
+     * @return the number of bytes read, or -1 if the feed has ended or been closed
+     */
+    protected abstract int fill(ByteBuffer buffer) throws IOException;
+
+    @Override
+    public void run(TickBatcher batcher) throws IOException {
+        open();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        TickLineParser parser = new TickLineParser(DateTimeUtil.dayStart(DateTimeUtil.PRICE_ZONE));
+        while (fill(buffer) >= 0) {
+            parser.setDayStart(DateTimeUtil.dayStart(DateTimeUtil.PRICE_ZONE));
+            int limit = buffer.position();
+            int lineStart = 0;
+            for (int i = 0; i < limit; i++) {
+                if (bytes[i] == '\n') {
+                    parseLine(parser, bytes, lineStart, i, batcher);
+                    lineStart = i + 1;
+                }
+            }
+            if (lineStart == 0 && limit == bytes.length) {
+                throw new IOException("Line longer than " + BUFFER_SIZE + " bytes from feed " + name);
+            }
+            // Move the incomplete last line to the start of the buffer
+            System.arraycopy(bytes, lineStart, bytes, 0, limit - lineStart);
+            buffer.position(limit - lineStart);
+            batcher.flush();
+        }
+        if (buffer.position() > 0) {
+            // Last line without a line break
+            parseLine(parser, bytes, 0, buffer.position(), batcher);
+            batcher.flush();
+        }
+    }
+
+    private void parseLine(TickLineParser parser, byte[] bytes, int start, int end, TickBatcher batcher) {
+        if (TickLineParser.isBlank(bytes, start, end)) {
+            return;
+        }
+        if (!parser.parse(bytes, start, end)) {
+            if (skippedLines++ == 0) {
+                LOGGER.warn("Skipping lines from feed {} that are not valid ticks", name);
+            }
+            return;
+        }
+        int currencyPairId = batcher.currencyPairId(bytes, parser.getCurrencyPairStart(), parser.getCurrencyPairLength());
+        batcher.add(currencyPairId, parser.getTimestampNanos(), parser.getPrice(), parser.getVolume());
+    }
+}
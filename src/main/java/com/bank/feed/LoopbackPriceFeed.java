@@ -0,0 +1,82 @@
+package com.bank.feed;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * In-process stub feed: lines sent from any thread are read by the feed thread exactly as a socket feed
+ * reads them from a venue. Used for testing and for simulating venues locally.
+ */
+public class LoopbackPriceFeed extends LinePriceFeed {
+    // Marks the end of the feed
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+    // Part of a chunk that did not fit in the buffer, only used by the feed thread
+    private byte[] pending;
+    private int pendingOffset;
+
+    public LoopbackPriceFeed(String name) {
+        super(name);
+    }
+
+    /**
+     * Send a line of the form {@code timestamp,currencyPair,price,volume}
+     */
+    public void send(CharSequence line) {
+        sendBytes((line + "\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public void send(String currencyPair, long timestampNanos, double price, long volume) {
+        send(timestampNanos + "," + currencyPair + "," + price + "," + volume);
+    }
+
+    /**
+     * Send raw input, which need not end on a line break
+     */
+    public void sendBytes(byte[] bytes) {
+        if (bytes.length > 0) {
+            chunks.add(bytes);
+        }
+    }
+
+    @Override
+    protected int fill(ByteBuffer buffer) {
+        if (pending == null) {
+            try {
+                pending = chunks.take();
+                pendingOffset = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+        if (pending == END) {
+            // Stay ended for later runs
+            pending = null;
+            chunks.add(END);
+            return -1;
+        }
+        // Take everything already sent that fits, so a busy feed is read in large batches
+        int read = 0;
+        while (pending != null && pending != END) {
+            int length = Math.min(buffer.remaining(), pending.length - pendingOffset);
+            buffer.put(pending, pendingOffset, length);
+            pendingOffset += length;
+            read += length;
+            if (pendingOffset < pending.length) {
+                break;
+            }
+            pending = chunks.poll();
+            pendingOffset = 0;
+        }
+        return read;
+    }
+
+    @Override
+    public void close() {
+        chunks.add(END);
+    }
+}
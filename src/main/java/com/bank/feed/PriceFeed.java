@@ -0,0 +1,32 @@
+package com.bank.feed;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of price updates, such as a venue connection, a tailed file or a local stub.
+ * Each feed attached to a FeedRunner is read on its own thread, a virtual thread where the JDK
+ * supports them, so a feed can simply block on I/O while it waits for ticks.
+ */
+public interface PriceFeed extends Closeable {
+
+    /**
+     * @return the name of the feed, used in thread names and logs
+     */
+    String getName();
+
+    /**
+     * Read ticks into the batcher until the feed ends or is closed. If the feed fails with an exception
+     * the runner calls this again after the configured retry interval, so a feed should resume where it
+     * left off, e.g. by reconnecting.
+     *
+     * @param batcher collects the ticks read and hands them to the calculator in batches
+     */
+    void run(TickBatcher batcher) throws IOException, InterruptedException;
+
+    /**
+     * Stop the feed, making {@link #run} return. May be called from any thread.
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,71 @@
+package com.bank.feed;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Reads tick lines from a TCP connection to a venue. The connection is made at the start of every run,
+ * so when the venue disconnects the runner reconnects after its retry interval.
+ */
+public class SocketPriceFeed extends LinePriceFeed {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SocketPriceFeed.class);
+
+    private final InetSocketAddress address;
+    private volatile SocketChannel channel;
+    private volatile boolean closed;
+
+    public SocketPriceFeed(String name, String host, int port) {
+        super(name);
+        this.address = new InetSocketAddress(host, port);
+    }
+
+    @Override
+    protected void open() throws IOException {
+        closeChannel();
+        channel = SocketChannel.open(address);
+        if (closed) {
+            closeChannel();
+            return;
+        }
+        LOGGER.info("Feed {} connected to {}", getName(), address);
+    }
+
+    @Override
+    protected int fill(ByteBuffer buffer) throws IOException {
+        SocketChannel current = channel;
+        if (closed || current == null) {
+            return -1;
+        }
+        try {
+            int read = current.read(buffer);
+            if (read < 0) {
+                throw new EOFException("Connection to " + address + " closed by the venue");
+            }
+            return read;
+        } catch (IOException e) {
+            if (closed) {
+                return -1;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        closeChannel();
+    }
+
+    private void closeChannel() throws IOException {
+        SocketChannel current = channel;
+        if (current != null) {
+            current.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.bank.feed;
+
+import com.bank.vwap.CurrencyPairRegistry;
+import com.bank.vwap.VWAPCalculator;
+
+/**
+ * Collects the ticks parsed by a feed into reusable columns and hands them to the calculator in batches.
+ * Each feed thread has its own batcher, so ticks are added without locking and, for feeds that look up
+ * currency pairs by their bytes, without allocating. The calculator copies each batch into the ingestion
+ * stages a run per shard, in either ingestion mode without allocating per tick.
+ */
+public final class TickBatcher {
+    private final VWAPCalculator calculator;
+    private final CurrencyPairRegistry currencyPairRegistry;
+    private final int[] currencyPairIds;
+    private final long[] timestampNanos;
+    private final double[] prices;
+    private final long[] volumes;
+    private int size;
+    // Only written by the feed thread
+    private volatile long tickCount;
+    private volatile long droppedCount;
+
+    /**
+     * @param calculator the calculator ticks are sent to
+     * @param capacity the largest batch, a full batch is sent at once
+     */
+    public TickBatcher(VWAPCalculator calculator, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Feed batch size must be at least 1: " + capacity);
+        }
+        this.calculator = calculator;
+        this.currencyPairRegistry = calculator.getCurrencyPairRegistry();
+        this.currencyPairIds = new int[capacity];
+        this.timestampNanos = new long[capacity];
+        this.prices = new double[capacity];
+        this.volumes = new long[capacity];
+    }
+
+    /**
+     * @return the id of the currency pair, for feeds that resolve their currency pairs once
+     */
+    public int currencyPairId(String currencyPair) {
+        return currencyPairRegistry.register(currencyPair);
+    }
+
+    /**
+     * @return the id of the currency pair held as ASCII bytes, allocating only the first time it is seen
+     */
+    public int currencyPairId(byte[] ascii, int offset, int length) {
+        return currencyPairRegistry.register(ascii, offset, length);
+    }
+
+    /**
+     * Add a tick to the batch, sending the batch if it is full
+     *
+     * @param currencyPairId the id of the currency pair, from {@link #currencyPairId}
+     */
+    public void add(int currencyPairId, long timestampNanos, double price, long volume) {
+        currencyPairIds[size] = currencyPairId;
+        this.timestampNanos[size] = timestampNanos;
+        prices[size] = price;
+        volumes[size] = volume;
+        if (++size == currencyPairIds.length) {
+            flush();
+        }
+    }
+
+    public void add(String currencyPair, long timestampNanos, double price, long volume) {
+        add(currencyPairId(currencyPair), timestampNanos, price, volume);
+    }
+
+    /**
+     * Send the ticks added since the last flush. Feeds call this whenever their input pauses,
+     * so batches grow with the rate of the feed without holding back ticks of a quiet feed.
+     *
+     * @return the number of ticks accepted by the calculator
+     */
+    public int flush() {
+        if (size == 0) {
+            return 0;
+        }
+        int accepted = calculator.sendBatch(currencyPairIds, timestampNanos, prices, volumes, size);
+        tickCount += accepted;
+        droppedCount += size - accepted;
+        size = 0;
+        return accepted;
+    }
+
+    /**
+     * @return the number of ticks accepted by the calculator
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * @return the number of ticks the calculator did not accept, e.g. dropped by its overflow policy
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+}
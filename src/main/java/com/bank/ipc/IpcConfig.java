@@ -0,0 +1,97 @@
+package com.bank.ipc;
+
+import com.bank.vwap.WaitStrategy;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Configuration of the shared memory tick ring between feed handler processes and the calculator,
+ * read from application.properties
+ */
+public class IpcConfig {
+    private boolean enabled = false;
+    private Path file = Paths.get("ipc", "ticks.ring");
+    private int ringSize = 65536;
+    private int dictionarySize = 1024;
+    private WaitStrategy waitStrategy = WaitStrategy.PARK;
+
+    public static IpcConfig fromProperties(Properties properties) {
+        IpcConfig config = new IpcConfig();
+        config.enabled = Boolean.parseBoolean(properties.getProperty("ipc.enabled", String.valueOf(config.enabled)));
+        config.withFile(Paths.get(properties.getProperty("ipc.file", config.file.toString()).trim()));
+        config.withRingSize(Integer.parseInt(properties.getProperty("ipc.ring.size", String.valueOf(config.ringSize))));
+        config.withDictionarySize(Integer.parseInt(properties.getProperty("ipc.dictionary.size", String.valueOf(config.dictionarySize))));
+        config.withWaitStrategy(WaitStrategy.valueOf(properties.getProperty("ipc.wait.strategy", config.waitStrategy.name()).trim()));
+        return config;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled true for the Application to take ticks from the ring as a feed
+     */
+    public IpcConfig withEnabled(boolean enabled) {
+        this.enabled = enabled;
+        return this;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @param file the memory-mapped file shared by the producer and the consumer, best placed on a
+     *             memory-backed file system such as /dev/shm
+     */
+    public IpcConfig withFile(Path file) {
+        this.file = file;
+        return this;
+    }
+
+    public int getRingSize() {
+        return ringSize;
+    }
+
+    /**
+     * @param ringSize the number of tick records in the ring, rounded up to a power of two.
+     *                 Only used by whichever process creates the file, the others take the file's size.
+     */
+    public IpcConfig withRingSize(int ringSize) {
+        if (ringSize < 2 || ringSize > 1 << 26) {
+            throw new IllegalArgumentException("IPC ring size must be from 2 to 2^26 records: " + ringSize);
+        }
+        this.ringSize = ringSize;
+        return this;
+    }
+
+    public int getDictionarySize() {
+        return dictionarySize;
+    }
+
+    /**
+     * @param dictionarySize the most currency pairs the ring can carry. Only used by whichever process creates the file.
+     */
+    public IpcConfig withDictionarySize(int dictionarySize) {
+        if (dictionarySize < 1 || dictionarySize > 1 << 16) {
+            throw new IllegalArgumentException("IPC dictionary size must be from 1 to 65536 currency pairs: " + dictionarySize);
+        }
+        this.dictionarySize = dictionarySize;
+        return this;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * @param waitStrategy how the consumer waits for the producer when the ring is empty
+     */
+    public IpcConfig withWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        return this;
+    }
+}
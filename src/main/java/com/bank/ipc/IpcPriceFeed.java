@@ -0,0 +1,97 @@
+package com.bank.ipc;
+
+import com.bank.feed.PriceFeed;
+import com.bank.feed.TickBatcher;
+import com.bank.vwap.WaitStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+
+import static com.bank.ipc.IpcTickRing.*;
+
+/**
+ * Reads the ticks written into the shared memory tick ring by an IpcTickWriter in a feed handler process.
+ *
+ * The feed polls the ring's producer position, reads each published record in place and adds it to the batcher
+ * by currency pair id, so ticks cross from the other process without a socket, a system call or parsing. The
+ * ring's currency pair ids are mapped to the calculator's once each. The records are freed for the writer once
+ * their batch has been handed to the calculator, so a consumer stopped part way reads at most one batch again.
+ * When the ring is empty the feed waits with the configured strategy, ipc.wait.strategy.
+ */
+public final class IpcPriceFeed implements PriceFeed {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IpcPriceFeed.class);
+    private static final int UNMAPPED = -1;
+    // Most records read before they are handed to the calculator and freed for the writer
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    private final String name;
+    private final IpcConfig config;
+    // Calculator currency pair id of each ring currency pair id
+    private int[] currencyPairIds = new int[0];
+    private volatile boolean closed;
+
+    public IpcPriceFeed(String name, IpcConfig config) {
+        this.name = name;
+        this.config = config;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void run(TickBatcher batcher) throws IOException {
+        try (IpcTickRing ring = new IpcTickRing(config.getFile(), config, CONSUMER_POSITION_OFFSET)) {
+            MappedByteBuffer buffer = ring.getBuffer();
+            WaitStrategy waitStrategy = config.getWaitStrategy();
+            long position = ring.getConsumerPosition();
+            LOGGER.info("Feed {} reading ticks from {} at position {}", name, ring.getFile(), position);
+            int idleCounter = 0;
+            while (!closed) {
+                long published = ring.getProducerPosition();
+                if (published == position) {
+                    idleCounter = waitStrategy.idle(idleCounter);
+                    continue;
+                }
+                idleCounter = 0;
+                long end = Math.min(published, position + MAX_BATCH_SIZE);
+                for (; position < end; position++) {
+                    int offset = ring.recordOffset(position);
+                    int currencyPairId = currencyPairId(ring, buffer.getInt(offset + CURRENCY_PAIR_ID_OFFSET), batcher);
+                    if (currencyPairId != UNMAPPED) {
+                        batcher.add(currencyPairId, buffer.getLong(offset + TIMESTAMP_OFFSET),
+                                buffer.getDouble(offset + PRICE_OFFSET), buffer.getLong(offset + VOLUME_OFFSET));
+                    }
+                }
+                batcher.flush();
+                ring.setConsumerPosition(position);
+            }
+        }
+    }
+
+    private int currencyPairId(IpcTickRing ring, int ringId, TickBatcher batcher) {
+        if (ringId < currencyPairIds.length && currencyPairIds[ringId] != UNMAPPED) {
+            return currencyPairIds[ringId];
+        }
+        if (ringId < 0 || ringId >= ring.getDictionarySize()) {
+            LOGGER.error("Feed {} skipping a tick of currency pair id {}, which is not in the tick ring's dictionary", name, ringId);
+            return UNMAPPED;
+        }
+        if (ringId >= currencyPairIds.length) {
+            int length = currencyPairIds.length;
+            currencyPairIds = Arrays.copyOf(currencyPairIds, ring.getDictionarySize());
+            Arrays.fill(currencyPairIds, length, currencyPairIds.length, UNMAPPED);
+        }
+        currencyPairIds[ringId] = batcher.currencyPairId(ring.getCurrencyPair(ringId));
+        return currencyPairIds[ringId];
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
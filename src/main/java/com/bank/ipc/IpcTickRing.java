@@ -0,0 +1,240 @@
+package com.bank.ipc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A single-producer, single-consumer ring of tick records in a memory-mapped file, shared by a feed
+ * handler process writing ticks and the calculator's process reading them.
+ *
+ * The file starts with a 256 byte header: a magic number, the format version, the record size, the
+ * number of records in the ring and of entries in the dictionary, then, each on its own cache line, the
+ * producer's position, the consumer's position and the number of dictionary entries. The dictionary
+ * follows, holding the name of each currency pair id carried as up to 32 ASCII characters, then the
+ * 32 byte records: the timestamp, the price, the volume and the currency pair id. All values are little-endian.
+ *
+ * Positions count the records ever written and read. The producer publishes records by moving its
+ * position on with a release store, and the consumer frees them the same way. Both positions live in the
+ * file, so either process can restart and carry on from where it left off.
+ *
+ * Each side holds a file lock on its position while it has the ring open, released by the operating
+ * system if the process dies.
+ */
+final class IpcTickRing implements Closeable {
+    static final long MAGIC = 0x474E495250415756L; // "VWAPRING"
+    static final int VERSION = 1;
+    static final int RECORD_SIZE = 32;
+    static final int DICTIONARY_ENTRY_SIZE = 32;
+    static final int HEADER_SIZE = 256;
+
+    // Header offsets
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int RECORD_SIZE_OFFSET = 12;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int DICTIONARY_CAPACITY_OFFSET = 20;
+    static final int PRODUCER_POSITION_OFFSET = 64;
+    static final int CONSUMER_POSITION_OFFSET = 128;
+    private static final int DICTIONARY_SIZE_OFFSET = 192;
+
+    // Record offsets
+    static final int TIMESTAMP_OFFSET = 0;
+    static final int PRICE_OFFSET = 8;
+    static final int VOLUME_OFFSET = 16;
+    static final int CURRENCY_PAIR_ID_OFFSET = 24;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int mask;
+    private final int dictionaryCapacity;
+    private final int recordsOffset;
+
+    /**
+     * Open the ring, creating the file if it does not exist yet
+     *
+     * @param positionOffset the position owned by the side opening the ring, locked until it is closed
+     * @throws IOException if the file is not a ring of this version, or the side already has the ring open
+     */
+    IpcTickRing(Path file, IpcConfig config, int positionOffset) throws IOException {
+        this.file = file;
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            lock = tryLock(positionOffset);
+            MappedByteBuffer header;
+            // Whichever side comes first creates the ring, the other waits for it. File locks are held
+            // per process, so sides in the same process are kept apart by the class lock too.
+            synchronized (IpcTickRing.class) {
+                FileLock creationLock = channel.lock(MAGIC_OFFSET, 8, false);
+                try {
+                    header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+                    header.order(ByteOrder.LITTLE_ENDIAN);
+                    // The magic number is written last, so a ring whose creator died part way is created again
+                    if (header.getLong(MAGIC_OFFSET) == 0) {
+                        header = create(config);
+                    } else if (header.getLong(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION
+                            || header.getInt(RECORD_SIZE_OFFSET) != RECORD_SIZE) {
+                        throw new IOException(file + " is not a tick ring of version " + VERSION);
+                    }
+                } finally {
+                    creationLock.release();
+                }
+            }
+            capacity = header.getInt(CAPACITY_OFFSET);
+            mask = capacity - 1;
+            dictionaryCapacity = header.getInt(DICTIONARY_CAPACITY_OFFSET);
+            recordsOffset = recordsOffset(dictionaryCapacity);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, recordsOffset + (long) capacity * RECORD_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private FileLock tryLock(int positionOffset) throws IOException {
+        String side = positionOffset == PRODUCER_POSITION_OFFSET ? "producer" : "consumer";
+        try {
+            FileLock positionLock = channel.tryLock(positionOffset, 8, false);
+            if (positionLock != null) {
+                return positionLock;
+            }
+        } catch (OverlappingFileLockException e) {
+            // Held elsewhere in this JVM
+        }
+        throw new IOException("Tick ring " + file + " already has a " + side);
+    }
+
+    private MappedByteBuffer create(IpcConfig config) throws IOException {
+        int ringSize = Integer.highestOneBit(config.getRingSize());
+        if (ringSize < config.getRingSize()) {
+            ringSize <<= 1;
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                recordsOffset(config.getDictionarySize()) + (long) ringSize * RECORD_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(VERSION_OFFSET, VERSION);
+        header.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+        header.putInt(CAPACITY_OFFSET, ringSize);
+        header.putInt(DICTIONARY_CAPACITY_OFFSET, config.getDictionarySize());
+        header.putLong(MAGIC_OFFSET, MAGIC);
+        return header;
+    }
+
+    private static int recordsOffset(int dictionaryCapacity) {
+        return HEADER_SIZE + dictionaryCapacity * DICTIONARY_ENTRY_SIZE;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    MappedByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the offset in the buffer of the record at a position
+     */
+    int recordOffset(long position) {
+        return recordsOffset + (int) (position & mask) * RECORD_SIZE;
+    }
+
+    long getProducerPosition() {
+        return (long) LONGS.getAcquire(buffer, PRODUCER_POSITION_OFFSET);
+    }
+
+    /**
+     * Publish the records written up to the position to the consumer
+     */
+    void setProducerPosition(long position) {
+        LONGS.setRelease(buffer, PRODUCER_POSITION_OFFSET, position);
+    }
+
+    long getConsumerPosition() {
+        return (long) LONGS.getAcquire(buffer, CONSUMER_POSITION_OFFSET);
+    }
+
+    /**
+     * Free the records read up to the position for the producer to write over
+     */
+    void setConsumerPosition(long position) {
+        LONGS.setRelease(buffer, CONSUMER_POSITION_OFFSET, position);
+    }
+
+    int getDictionaryCapacity() {
+        return dictionaryCapacity;
+    }
+
+    /**
+     * @return the number of currency pairs in the dictionary
+     */
+    int getDictionarySize() {
+        return (int) INTS.getAcquire(buffer, DICTIONARY_SIZE_OFFSET);
+    }
+
+    /**
+     * @return the currency pair with the id
+     */
+    String getCurrencyPair(int id) {
+        int offset = HEADER_SIZE + id * DICTIONARY_ENTRY_SIZE;
+        byte[] name = new byte[DICTIONARY_ENTRY_SIZE];
+        int length = 0;
+        while (length < DICTIONARY_ENTRY_SIZE && buffer.get(offset + length) != 0) {
+            name[length] = buffer.get(offset + length);
+            length++;
+        }
+        return new String(name, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Write a currency pair into the next dictionary entry and publish it. Only called by the producer.
+     *
+     * @return the currency pair's id
+     */
+    int addCurrencyPair(String currencyPair) {
+        int id = getDictionarySize();
+        int offset = HEADER_SIZE + id * DICTIONARY_ENTRY_SIZE;
+        for (int i = 0; i < DICTIONARY_ENTRY_SIZE; i++) {
+            buffer.put(offset + i, i < currencyPair.length() ? (byte) currencyPair.charAt(i) : 0);
+        }
+        INTS.setRelease(buffer, DICTIONARY_SIZE_OFFSET, id + 1);
+        return id;
+    }
+
+    /**
+     * Release this side's lock, so it can open the ring again. The mapping is released once unreachable.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            lock.release();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.bank.ipc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.bank.ipc.IpcTickRing.*;
+
+/**
+ * Writes ticks into the shared memory tick ring from a feed handler process, for an IpcPriceFeed in the
+ * calculator's process to read. Not thread-safe: the ring has a single producer, so one thread writes.
+ *
+ * A tick is written straight into the mapped record and published with one release store, without
+ * allocating or making a system call. A restarted writer continues after the ticks already published,
+ * and with the currency pair ids already in the ring's dictionary.
+ */
+public final class IpcTickWriter implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IpcTickWriter.class);
+
+    private final IpcTickRing ring;
+    private final MappedByteBuffer buffer;
+    private final Map<String, Integer> currencyPairIds = new HashMap<>();
+    private long position;
+    // Consumer position last read, the writer only reads it again when the ring looks full
+    private long consumerPosition;
+    private long fullCount;
+
+    /**
+     * Open the ring as its producer, creating the file if it does not exist yet
+     *
+     * @throws IOException if the file is not a tick ring or already has a producer
+     */
+    public IpcTickWriter(IpcConfig config) throws IOException {
+        this.ring = new IpcTickRing(config.getFile(), config, PRODUCER_POSITION_OFFSET);
+        this.buffer = ring.getBuffer();
+        this.position = ring.getProducerPosition();
+        this.consumerPosition = ring.getConsumerPosition();
+        int dictionarySize = ring.getDictionarySize();
+        for (int id = 0; id < dictionarySize; id++) {
+            currencyPairIds.put(ring.getCurrencyPair(id), id);
+        }
+        LOGGER.info("Writing ticks to {} from position {}, {} unread, with {} currency pairs",
+                ring.getFile(), position, position - consumerPosition, dictionarySize);
+    }
+
+    /**
+     * @return the id of the currency pair in the ring, adding it to the ring's dictionary if it is new,
+     * or -1 if the dictionary is full or the currency pair is not up to 32 ASCII characters
+     */
+    public int currencyPairId(String currencyPair) {
+        Integer id = currencyPairIds.get(currencyPair);
+        if (id != null) {
+            return id;
+        }
+        if (ring.getDictionarySize() == ring.getDictionaryCapacity() || !isEncodable(currencyPair)) {
+            LOGGER.error("Currency pair {} cannot be added to the tick ring's dictionary of {} currency pairs",
+                    currencyPair, ring.getDictionaryCapacity());
+            return -1;
+        }
+        id = ring.addCurrencyPair(currencyPair);
+        currencyPairIds.put(currencyPair, id);
+        return id;
+    }
+
+    private static boolean isEncodable(String currencyPair) {
+        if (currencyPair.isEmpty() || currencyPair.length() > DICTIONARY_ENTRY_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < currencyPair.length(); i++) {
+            char c = currencyPair.charAt(i);
+            if (c == 0 || c > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write a tick and publish it to the consumer
+     *
+     * @param currencyPairId the id of the currency pair, from {@link #currencyPairId}
+     * @return false if the ring is full, as the consumer is behind or not running
+     */
+    public boolean offer(int currencyPairId, long timestampNanos, double price, long volume) {
+        if (!write(currencyPairId, timestampNanos, price, volume)) {
+            return false;
+        }
+        ring.setProducerPosition(position);
+        return true;
+    }
+
+    public boolean offer(String currencyPair, long timestampNanos, double price, long volume) {
+        int currencyPairId = currencyPairId(currencyPair);
+        return currencyPairId >= 0 && offer(currencyPairId, timestampNanos, price, volume);
+    }
+
+    /**
+     * Write ticks and publish them to the consumer together, with one release store
+     *
+     * @return the number of ticks written, fewer than the count if the ring filled up
+     */
+    public int offer(int[] currencyPairIds, long[] timestampNanos, double[] prices, long[] volumes, int count) {
+        int written = 0;
+        while (written < count && write(currencyPairIds[written], timestampNanos[written], prices[written], volumes[written])) {
+            written++;
+        }
+        if (written > 0) {
+            ring.setProducerPosition(position);
+        }
+        return written;
+    }
+
+    private boolean write(int currencyPairId, long timestampNanos, double price, long volume) {
+        if (currencyPairId < 0 || currencyPairId >= currencyPairIds.size()) {
+            throw new IllegalArgumentException("Currency pair id not in the tick ring's dictionary: " + currencyPairId);
+        }
+        if (position - consumerPosition == ring.getCapacity()) {
+            consumerPosition = ring.getConsumerPosition();
+            if (position - consumerPosition == ring.getCapacity()) {
+                fullCount++;
+                return false;
+            }
+        }
+        int offset = ring.recordOffset(position);
+        buffer.putLong(offset + TIMESTAMP_OFFSET, timestampNanos);
+        buffer.putDouble(offset + PRICE_OFFSET, price);
+        buffer.putLong(offset + VOLUME_OFFSET, volume);
+        buffer.putInt(offset + CURRENCY_PAIR_ID_OFFSET, currencyPairId);
+        position++;
+        return true;
+    }
+
+    /**
+     * @return the number of ticks ever written to the ring, including by earlier writers
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the number of ticks not written as the ring was full
+     */
+    public long getFullCount() {
+        return fullCount;
+    }
+
+    /**
+     * Stop writing, leaving the ticks written for the consumer
+     */
+    @Override
+    public void close() throws IOException {
+        ring.close();
+    }
+}
@@ -0,0 +1,15 @@
+package com.bank.journal;
+
+/**
+ * When journalled ticks are forced to disk. Ticks written to the memory-mapped journal survive a
+ * crash of the process as soon as they are written; forcing them also protects against a crash
+ * of the operating system, at the cost of latency on the writing thread.
+ */
+public enum JournalSyncPolicy {
+    // Leave writing back to the operating system
+    NEVER,
+    // Force a segment once it is full, before rolling to the next one
+    ON_ROLL,
+    // Force the segment after every batch of ticks
+    EVERY_BATCH
+}
@@ -0,0 +1,192 @@
+package com.bank.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static com.bank.journal.TickJournalFormat.*;
+
+/**
+ * Append-only journal of ticks in memory-mapped segment files.
+ *
+ * Each journal is written by one thread only, and the journals of the processing threads share
+ * a directory. Segments are named after the time the journal was opened, the journal's id and
+ * a sequence number, so sorting segment names gives the order ticks were written in for each
+ * currency pair. Full segments roll over to a new file, and are deleted once all their ticks
+ * are older than the longest window still needed.
+ */
+public final class TickJournal implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TickJournal.class);
+
+    private final Path directory;
+    private final int journalId;
+    private final long openedAtMillis;
+    private final int segmentSize;
+    private final JournalSyncPolicy syncPolicy;
+    // Packed currency pairs, avoiding re-encoding a pair for every tick
+    private final Map<String, Long> encodedCurrencyPairs = new HashMap<>();
+    // Segments no longer written to, with the latest tick time they hold
+    private final List<ClosedSegment> closedSegments = new ArrayList<>();
+
+    private int segmentSequence;
+    private Path segmentPath;
+    private MappedByteBuffer segment;
+    private int position;
+    private long segmentMaxTimestampNanos;
+    private boolean unflushed;
+
+    /**
+     * @param directory the directory holding the segment files, created if missing
+     * @param journalId identifies the journal among those sharing the directory
+     * @param segmentSize the size of each segment file in bytes
+     * @param syncPolicy when to force written ticks to disk
+     */
+    public TickJournal(Path directory, int journalId, int segmentSize, JournalSyncPolicy syncPolicy) throws IOException {
+        if (segmentSize < HEADER_SIZE + RECORD_SIZE) {
+            throw new IllegalArgumentException("Journal segment size must hold at least one record: " + segmentSize);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.journalId = journalId;
+        this.openedAtMillis = System.currentTimeMillis();
+        // Whole records only
+        this.segmentSize = HEADER_SIZE + (segmentSize - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+        this.syncPolicy = syncPolicy;
+        openSegment();
+    }
+
+    /**
+     * Write a tick to the journal. Currency pairs longer than 8 ASCII characters cannot be journalled.
+     *
+     * @return true if the tick was written
+     */
+    public boolean append(String currencyPair, long timestampNanos, double price, long volume) {
+        Long encoded = encodedCurrencyPairs.get(currencyPair);
+        if (encoded == null) {
+            encoded = encodeCurrencyPair(currencyPair);
+            encodedCurrencyPairs.put(currencyPair, encoded);
+            if (encoded == UNENCODABLE) {
+                LOGGER.warn("Currency pair {} cannot be journalled, only up to 8 ASCII characters are supported", currencyPair);
+            }
+        }
+        if (encoded == UNENCODABLE || timestampNanos == 0) {
+            return false;
+        }
+        if (position == segmentSize) {
+            rollSegment();
+        }
+        segment.putLong(position + PRICE_OFFSET, Double.doubleToRawLongBits(price));
+        segment.putLong(position + VOLUME_OFFSET, volume);
+        segment.putLong(position + CURRENCY_PAIR_OFFSET, encoded);
+        // The timestamp marks the record as complete, so it must not be written before the other fields
+        VarHandle.storeStoreFence();
+        segment.putLong(position + TIMESTAMP_OFFSET, timestampNanos);
+        position += RECORD_SIZE;
+        segmentMaxTimestampNanos = Math.max(segmentMaxTimestampNanos, timestampNanos);
+        unflushed = true;
+        return true;
+    }
+
+    /**
+     * Complete a batch of ticks: record the latest tick time in the segment header and
+     * force the segment to disk if the sync policy asks for it
+     */
+    public void flush() {
+        if (!unflushed) {
+            return;
+        }
+        segment.putLong(MAX_TIMESTAMP_OFFSET, segmentMaxTimestampNanos);
+        if (syncPolicy == JournalSyncPolicy.EVERY_BATCH) {
+            segment.force();
+        }
+        unflushed = false;
+    }
+
+    /**
+     * Take over segments left by an earlier run, so they are deleted once expired
+     *
+     * @param segments the segment files, which must not be written to any more
+     */
+    public void adoptSegments(List<Path> segments) {
+        for (Path path : segments) {
+            closedSegments.add(new ClosedSegment(path, TickJournalReader.readMaxTimestampNanos(path)));
+        }
+    }
+
+    /**
+     * Delete the segments whose ticks are all older than the cutoff
+     *
+     * @param cutoffNanos the epoch nanosecond time of the oldest tick still needed
+     */
+    public void deleteSegmentsBefore(long cutoffNanos) {
+        Iterator<ClosedSegment> iterator = closedSegments.iterator();
+        while (iterator.hasNext()) {
+            ClosedSegment closed = iterator.next();
+            if (closed.maxTimestampNanos < cutoffNanos) {
+                try {
+                    Files.deleteIfExists(closed.path);
+                    iterator.remove();
+                    LOGGER.debug("Deleted expired journal segment {}", closed.path);
+                } catch (IOException e) {
+                    LOGGER.error("Error deleting journal segment {}: {}", closed.path, e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        if (syncPolicy != JournalSyncPolicy.NEVER) {
+            segment.force();
+        }
+    }
+
+    private void rollSegment() {
+        segment.putLong(MAX_TIMESTAMP_OFFSET, segmentMaxTimestampNanos);
+        if (syncPolicy != JournalSyncPolicy.NEVER) {
+            segment.force();
+        }
+        closedSegments.add(new ClosedSegment(segmentPath, segmentMaxTimestampNanos));
+        try {
+            openSegment();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open journal segment in " + directory, e);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        String name = String.format("%s%013d-%03d-%06d%s", SEGMENT_PREFIX, openedAtMillis, journalId, segmentSequence++, SEGMENT_SUFFIX);
+        segmentPath = directory.resolve(name);
+        try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segment.order(BYTE_ORDER);
+        writeHeader(segment);
+        position = HEADER_SIZE;
+        segmentMaxTimestampNanos = 0;
+    }
+
+    private static final class ClosedSegment {
+        private final Path path;
+        private final long maxTimestampNanos;
+
+        private ClosedSegment(Path path, long maxTimestampNanos) {
+            this.path = path;
+            this.maxTimestampNanos = maxTimestampNanos;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.bank.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of journal segment files.
+ *
+ * A segment starts with a 64 byte header: a magic number, the format version, the record size and
+ * the latest tick time written to the segment. Fixed-width 32 byte records follow, each holding the
+ * price, the volume, the currency pair as up to 8 ASCII characters and finally the timestamp.
+ * The timestamp is written last and is never zero for a tick, so a zero timestamp marks the end of
+ * the records, including a record torn by a crash. All values are little-endian.
+ */
+final class TickJournalFormat {
+    static final long MAGIC = 0x4C4E524A50415756L; // "VWAPJRNL"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 32;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    // Header offsets
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 8;
+    static final int RECORD_SIZE_OFFSET = 12;
+    static final int MAX_TIMESTAMP_OFFSET = 16;
+
+    // Record offsets
+    static final int PRICE_OFFSET = 0;
+    static final int VOLUME_OFFSET = 8;
+    static final int CURRENCY_PAIR_OFFSET = 16;
+    static final int TIMESTAMP_OFFSET = 24;
+
+    static final String SEGMENT_PREFIX = "ticks-";
+    static final String SEGMENT_SUFFIX = ".journal";
+
+    // Returned by encodeCurrencyPair for pairs that do not fit a record
+    static final long UNENCODABLE = 0;
+
+    private TickJournalFormat() {
+    }
+
+    /**
+     * Pack a currency pair of up to 8 ASCII characters into a long
+     *
+     * @return the packed currency pair, or {@link #UNENCODABLE}
+     */
+    static long encodeCurrencyPair(String currencyPair) {
+        int length = currencyPair.length();
+        if (length == 0 || length > 8) {
+            return UNENCODABLE;
+        }
+        long encoded = 0;
+        for (int i = 0; i < length; i++) {
+            char c = currencyPair.charAt(i);
+            if (c == 0 || c > 0x7F) {
+                return UNENCODABLE;
+            }
+            encoded |= (long) c << (8 * i);
+        }
+        return encoded;
+    }
+
+    static String decodeCurrencyPair(long encoded) {
+        byte[] characters = new byte[8];
+        int length = 0;
+        while (length < 8 && (encoded >>> (8 * length) & 0xFF) != 0) {
+            characters[length] = (byte) (encoded >>> (8 * length));
+            length++;
+        }
+        return new String(characters, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    static void writeHeader(ByteBuffer segment) {
+        segment.putLong(MAGIC_OFFSET, MAGIC);
+        segment.putInt(VERSION_OFFSET, VERSION);
+        segment.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+    }
+
+    static boolean hasValidHeader(ByteBuffer segment) {
+        return segment.capacity() >= HEADER_SIZE
+                && segment.getLong(MAGIC_OFFSET) == MAGIC
+                && segment.getInt(VERSION_OFFSET) == VERSION
+                && segment.getInt(RECORD_SIZE_OFFSET) == RECORD_SIZE;
+    }
+}
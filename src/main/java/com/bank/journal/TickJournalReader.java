@@ -0,0 +1,135 @@
+package com.bank.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.bank.journal.TickJournalFormat.*;
+
+/**
+ * Reads ticks back from journal segments. Segments are mapped read-only and records are read
+ * in place, so nothing is copied onto the heap apart from each distinct currency pair name.
+ */
+public final class TickJournalReader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TickJournalReader.class);
+
+    private TickJournalReader() {
+    }
+
+    /**
+     * @return the segment files in the directory, in the order they were written
+     */
+    public static List<Path> listSegments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(TickJournalReader::isSegment).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Replay the ticks of every segment in the directory
+     *
+     * @param fromNanos the epoch nanosecond time of the oldest tick to replay
+     * @return the number of ticks replayed
+     */
+    public static long replay(Path directory, long fromNanos, TickRecordHandler handler) throws IOException {
+        return replay(listSegments(directory), fromNanos, handler);
+    }
+
+    /**
+     * Replay the ticks of the segments, in the order given
+     *
+     * @param fromNanos the epoch nanosecond time of the oldest tick to replay
+     * @return the number of ticks replayed
+     */
+    public static long replay(List<Path> segments, long fromNanos, TickRecordHandler handler) throws IOException {
+        Map<Long, String> currencyPairs = new HashMap<>();
+        long replayed = 0;
+        for (Path path : segments) {
+            replayed += readSegment(path, fromNanos, handler, currencyPairs);
+        }
+        return replayed;
+    }
+
+    /**
+     * Read the ticks of a segment, stopping at the first incomplete record
+     *
+     * @return the number of ticks passed to the handler
+     */
+    static long readSegment(Path path, long fromNanos, TickRecordHandler handler, Map<Long, String> currencyPairs) throws IOException {
+        MappedByteBuffer segment = map(path);
+        if (segment == null) {
+            return 0;
+        }
+        long replayed = 0;
+        for (int position = HEADER_SIZE; position + RECORD_SIZE <= segment.capacity(); position += RECORD_SIZE) {
+            long timestampNanos = segment.getLong(position + TIMESTAMP_OFFSET);
+            if (timestampNanos == 0) {
+                break;
+            }
+            if (timestampNanos >= fromNanos) {
+                long encoded = segment.getLong(position + CURRENCY_PAIR_OFFSET);
+                String currencyPair = currencyPairs.computeIfAbsent(encoded, TickJournalFormat::decodeCurrencyPair);
+                handler.onTick(currencyPair, timestampNanos,
+                        Double.longBitsToDouble(segment.getLong(position + PRICE_OFFSET)),
+                        segment.getLong(position + VOLUME_OFFSET));
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * The latest tick time of a segment, from its header if it was flushed, otherwise by scanning its records
+     */
+    static long readMaxTimestampNanos(Path path) {
+        try {
+            MappedByteBuffer segment = map(path);
+            if (segment == null) {
+                return 0;
+            }
+            long maxTimestampNanos = segment.getLong(MAX_TIMESTAMP_OFFSET);
+            for (int position = HEADER_SIZE; position + RECORD_SIZE <= segment.capacity(); position += RECORD_SIZE) {
+                long timestampNanos = segment.getLong(position + TIMESTAMP_OFFSET);
+                if (timestampNanos == 0) {
+                    break;
+                }
+                maxTimestampNanos = Math.max(maxTimestampNanos, timestampNanos);
+            }
+            return maxTimestampNanos;
+        } catch (IOException e) {
+            LOGGER.error("Error reading journal segment {}: {}", path, e.getMessage());
+            return 0;
+        }
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            segment.order(BYTE_ORDER);
+            if (!hasValidHeader(segment)) {
+                LOGGER.warn("Skipping journal segment {} without a valid header", path);
+                return null;
+            }
+            return segment;
+        }
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX) && Files.isRegularFile(path);
+    }
+}
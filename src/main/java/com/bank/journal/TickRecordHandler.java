@@ -0,0 +1,9 @@
+package com.bank.journal;
+
+/**
+ * Receives ticks read from a journal
+ */
+@FunctionalInterface
+public interface TickRecordHandler {
+    void onTick(String currencyPair, long timestampNanos, double price, long volume);
+}
@@ -1,22 +1,33 @@
 package com.bank.main;
 
-import com.bank.vwap.CurrencyPriceData;
+import com.bank.feed.FeedConfig;
+import com.bank.feed.FeedRunner;
+import com.bank.feed.PriceFeed;
+import com.bank.feed.TickBatcher;
+import com.bank.ipc.IpcConfig;
+import com.bank.ipc.IpcPriceFeed;
+import com.bank.publish.VWAPPublisher;
+import com.bank.publish.VWAPPublisherConfig;
+import com.bank.util.DateTimeUtil;
 import com.bank.vwap.VWAPCalculator;
+import com.bank.vwap.VWAPCalculatorConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.time.Instant;
 import java.util.List;
 import java.util.Properties;
 import java.util.Random;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class Application {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Application.class);
     private static final List<String> CURRENCY_PAIRS = List.of("AUD/USD", "USD/JPY", "NZD/GBP");
     private static final Random RANDOM = new Random();
     private static final int PRICES_PER_SECOND = 1000;
     private static final int DURATION_SECONDS = 10;
+    // Simulated venues, each sending an equal share of the prices
+    private static final int VENUES = 3;
 
     public static void main(String[] args) {
         Properties properties = new Properties();
@@ -26,25 +37,30 @@ public class Application {
             throw new RuntimeException("Unable to load properties file: " + e);
         }
 
-        ExecutorService executor = Executors.newFixedThreadPool(3);
-        VWAPCalculator calculator = new VWAPCalculator(Integer.parseInt(properties.getProperty("cutoff.seconds")));
+        VWAPCalculator calculator = new VWAPCalculator(VWAPCalculatorConfig.fromProperties(properties));
+        FeedRunner feedRunner = new FeedRunner(calculator, FeedConfig.fromProperties(properties));
+        VWAPPublisher publisher = openPublisher(calculator, VWAPPublisherConfig.fromProperties(properties));
 
         try {
-            for (int i = 0; i < DURATION_SECONDS; i++) {
-                executor.submit(() -> {
-                    for (int j = 0; j < PRICES_PER_SECOND; j++) {
-                        CurrencyPriceData priceData = generateRandomPriceData();
-                        calculator.sendVWAPForCurrencyPair(priceData);
-                    }
-                });
-                try {
-                    Thread.sleep(1000); // Ensure 1000 updates per second
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
+            for (int i = 0; i < VENUES; i++) {
+                feedRunner.attach(new SimulatedVenueFeed("venue-" + i, PRICES_PER_SECOND / VENUES));
+            }
+            IpcConfig ipcConfig = IpcConfig.fromProperties(properties);
+            if (ipcConfig.isEnabled()) {
+                // Ticks written by feed handler processes through an IpcTickWriter
+                feedRunner.attach(new IpcPriceFeed("ipc", ipcConfig));
+            }
+            try {
+                Thread.sleep(DURATION_SECONDS * 1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
         finally {
+            feedRunner.close();
+            if (publisher != null) {
+                publisher.close();
+            }
             // Add a small delay to ensure all processing is complete
             try {
                 Thread.sleep(500);
@@ -53,16 +69,57 @@ public class Application {
             }
 
             calculator.shutdownExecutors();
-            executor.shutdown();
         }
         System.exit(0);
     }
 
-    private static CurrencyPriceData generateRandomPriceData() {
-        String currencyPair = CURRENCY_PAIRS.get(RANDOM.nextInt(CURRENCY_PAIRS.size()));
-        double price = getRandomPrice(currencyPair);
-        int volume = RANDOM.nextInt(1_000_000) + 1; // Random volume between 1 and 1M
-        return new CurrencyPriceData(Instant.now(), currencyPair, price, volume);
+    private static VWAPPublisher openPublisher(VWAPCalculator calculator, VWAPPublisherConfig config) {
+        if (!config.isTcpEnabled() && !config.isUdpEnabled()) {
+            return null;
+        }
+        try {
+            return new VWAPPublisher(calculator, config);
+        } catch (IOException e) {
+            LOGGER.error("Error opening the VWAP publisher, continuing without it: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Venue sending random prices once a second, in one batch per second
+     */
+    private static final class SimulatedVenueFeed implements PriceFeed {
+        private final String name;
+        private final int pricesPerSecond;
+        private volatile boolean closed;
+
+        private SimulatedVenueFeed(String name, int pricesPerSecond) {
+            this.name = name;
+            this.pricesPerSecond = pricesPerSecond;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void run(TickBatcher batcher) throws InterruptedException {
+            while (!closed) {
+                for (int j = 0; j < pricesPerSecond; j++) {
+                    String currencyPair = CURRENCY_PAIRS.get(RANDOM.nextInt(CURRENCY_PAIRS.size()));
+                    int volume = RANDOM.nextInt(1_000_000) + 1; // Random volume between 1 and 1M
+                    batcher.add(currencyPair, DateTimeUtil.currentEpochNanos(), getRandomPrice(currencyPair), volume);
+                }
+                batcher.flush();
+                Thread.sleep(1000);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
     }
 
     private static double getRandomPrice(String currencyPair) {
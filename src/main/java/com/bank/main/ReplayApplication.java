@@ -0,0 +1,49 @@
+package com.bank.main;
+
+import com.bank.replay.CsvVWAPSeriesWriter;
+import com.bank.replay.ReplayConfig;
+import com.bank.replay.ReplayEngine;
+import com.bank.replay.ReplayResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Replays historical tick files into a VWAP series CSV file.
+ * Usage: ReplayApplication output.csv input.csv|journal-directory...
+ */
+public class ReplayApplication {
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: ReplayApplication <output.csv> <input.csv|journal>...");
+            System.exit(1);
+        }
+
+        Properties properties = new Properties();
+        try (InputStream input = ReplayApplication.class.getClassLoader().getResourceAsStream("application.properties")) {
+            properties.load(input);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to load properties file: " + e);
+        }
+        ReplayConfig config = ReplayConfig.fromProperties(properties);
+
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            inputs.add(Paths.get(args[i]));
+        }
+
+        try (CsvVWAPSeriesWriter writer = new CsvVWAPSeriesWriter(Paths.get(args[0]), config.getWindowConfig().getWindowSeconds())) {
+            ReplayResult result = new ReplayEngine(config).replay(inputs, writer);
+            System.out.println(result);
+        } catch (IOException e) {
+            System.err.println("Replay failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
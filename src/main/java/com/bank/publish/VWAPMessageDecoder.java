@@ -0,0 +1,110 @@
+package com.bank.publish;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static com.bank.publish.VWAPMessageFormat.*;
+
+/**
+ * Flyweight over one binary VWAP message in a buffer. Reads each field in place when asked,
+ * so a decoder can be wrapped around every message received without allocating.
+ */
+public final class VWAPMessageDecoder {
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * @param buffer the received bytes, which is set to little-endian order
+     * @param offset where the message starts in the buffer
+     */
+    public VWAPMessageDecoder wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer.order(BYTE_ORDER);
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * @return true if the header is of a schema and version this decoder reads
+     */
+    public boolean isSupported() {
+        return (buffer.getShort(offset + SCHEMA_ID_OFFSET) & 0xFFFF) == SCHEMA_ID
+                && (buffer.getShort(offset + SCHEMA_VERSION_OFFSET) & 0xFFFF) == SCHEMA_VERSION
+                && (buffer.getShort(offset + BLOCK_LENGTH_OFFSET) & 0xFFFF) == BLOCK_LENGTH;
+    }
+
+    /**
+     * @return one of {@link VWAPMessageFormat#UPDATE}, {@link VWAPMessageFormat#PAIR} or {@link VWAPMessageFormat#SNAPSHOT_END}
+     */
+    public int getTemplateId() {
+        return buffer.getShort(offset + TEMPLATE_ID_OFFSET) & 0xFFFF;
+    }
+
+    /**
+     * @return the message's sequence number, for a snapshot message the number it was first sent with,
+     * and for SNAPSHOT_END the latest number sent before the snapshot
+     */
+    public long getSequence() {
+        return buffer.getLong(offset + SEQUENCE_OFFSET);
+    }
+
+    public int getCurrencyPairId() {
+        return buffer.getInt(offset + CURRENCY_PAIR_ID_OFFSET);
+    }
+
+    /**
+     * @return true if the currency pair is a cross rate derived from its legs
+     */
+    public boolean isDerived() {
+        return (buffer.getInt(offset + FLAGS_OFFSET) & DERIVED) != 0;
+    }
+
+    /**
+     * @return true if the message is part of the snapshot sent to a TCP client on connecting
+     */
+    public boolean isSnapshot() {
+        return (buffer.getInt(offset + FLAGS_OFFSET) & SNAPSHOT) != 0;
+    }
+
+    /**
+     * @return the time of the currency pair's latest price in epoch nanoseconds
+     */
+    public long getEventTimeNanos() {
+        return buffer.getLong(offset + EVENT_TIME_OFFSET);
+    }
+
+    public double getVwap() {
+        return buffer.getDouble(offset + VWAP_OFFSET);
+    }
+
+    public long getVolume() {
+        return buffer.getLong(offset + VOLUME_OFFSET);
+    }
+
+    public long getTickCount() {
+        return buffer.getLong(offset + TICK_COUNT_OFFSET);
+    }
+
+    public int getWindowCount() {
+        return buffer.getInt(offset + WINDOW_COUNT_OFFSET);
+    }
+
+    public int getWindowSeconds(int window) {
+        return buffer.getInt(offset + WINDOWS_OFFSET + window * WINDOW_SIZE);
+    }
+
+    public double getWindowVwap(int window) {
+        return buffer.getDouble(offset + WINDOWS_OFFSET + window * WINDOW_SIZE + 8);
+    }
+
+    /**
+     * @return the name of a PAIR message's currency pair, allocated on each call
+     */
+    public String getCurrencyPair() {
+        int length = buffer.getInt(offset + CURRENCY_PAIR_LENGTH_OFFSET);
+        byte[] name = new byte[length];
+        for (int i = 0; i < length; i++) {
+            name[i] = buffer.get(offset + CURRENCY_PAIR_OFFSET + i);
+        }
+        return new String(name, StandardCharsets.US_ASCII);
+    }
+}
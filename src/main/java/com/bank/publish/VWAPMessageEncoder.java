@@ -0,0 +1,74 @@
+package com.bank.publish;
+
+import com.bank.vwap.CurrencyPairSnapshot;
+
+import java.nio.ByteBuffer;
+
+import static com.bank.publish.VWAPMessageFormat.*;
+
+/**
+ * Writes binary VWAP messages in place into a buffer, without allocating
+ */
+final class VWAPMessageEncoder {
+
+    private VWAPMessageEncoder() {
+    }
+
+    static void encodeUpdate(ByteBuffer buffer, int offset, long sequence, int currencyPairId, CurrencyPairSnapshot snapshot) {
+        encodeHeader(buffer, offset, UPDATE, sequence, currencyPairId, snapshot.isDerived() ? DERIVED : 0);
+        buffer.putLong(offset + EVENT_TIME_OFFSET, snapshot.getLastUpdateNanos());
+        buffer.putDouble(offset + VWAP_OFFSET, snapshot.getVwap());
+        buffer.putLong(offset + VOLUME_OFFSET, snapshot.getTotalVolume());
+        buffer.putLong(offset + TICK_COUNT_OFFSET, snapshot.getTickCount());
+        int windowCount = Math.min(snapshot.getWindowCount(), MAX_WINDOWS);
+        buffer.putInt(offset + WINDOW_COUNT_OFFSET, windowCount);
+        buffer.putInt(offset + WINDOW_COUNT_OFFSET + 4, 0);
+        for (int i = 0; i < MAX_WINDOWS; i++) {
+            int windowOffset = offset + WINDOWS_OFFSET + i * WINDOW_SIZE;
+            buffer.putInt(windowOffset, i < windowCount ? snapshot.getWindowSeconds(i) : 0);
+            buffer.putInt(windowOffset + 4, 0);
+            buffer.putDouble(windowOffset + 8, i < windowCount ? snapshot.getWindowVwap(i) : Double.NaN);
+        }
+    }
+
+    /**
+     * @param currencyPair ASCII, of at most {@link VWAPMessageFormat#MAX_CURRENCY_PAIR_LENGTH} characters
+     */
+    static void encodePair(ByteBuffer buffer, int offset, long sequence, int currencyPairId, String currencyPair, boolean derived) {
+        encodeHeader(buffer, offset, PAIR, sequence, currencyPairId, derived ? DERIVED : 0);
+        int length = currencyPair.length();
+        buffer.putInt(offset + CURRENCY_PAIR_LENGTH_OFFSET, length);
+        for (int i = 0; i < MAX_CURRENCY_PAIR_LENGTH; i++) {
+            buffer.put(offset + CURRENCY_PAIR_OFFSET + i, i < length ? (byte) currencyPair.charAt(i) : 0);
+        }
+        clear(buffer, offset + CURRENCY_PAIR_OFFSET + MAX_CURRENCY_PAIR_LENGTH, offset + MESSAGE_SIZE);
+    }
+
+    static void encodeSnapshotEnd(ByteBuffer buffer, int offset, long sequence) {
+        encodeHeader(buffer, offset, SNAPSHOT_END, sequence, -1, SNAPSHOT);
+        clear(buffer, offset + EVENT_TIME_OFFSET, offset + MESSAGE_SIZE);
+    }
+
+    /**
+     * Mark a message already in the buffer as part of a snapshot
+     */
+    static void setSnapshot(ByteBuffer buffer, int offset) {
+        buffer.putInt(offset + FLAGS_OFFSET, buffer.getInt(offset + FLAGS_OFFSET) | SNAPSHOT);
+    }
+
+    private static void encodeHeader(ByteBuffer buffer, int offset, int templateId, long sequence, int currencyPairId, int flags) {
+        buffer.putShort(offset + BLOCK_LENGTH_OFFSET, (short) BLOCK_LENGTH);
+        buffer.putShort(offset + TEMPLATE_ID_OFFSET, (short) templateId);
+        buffer.putShort(offset + SCHEMA_ID_OFFSET, (short) SCHEMA_ID);
+        buffer.putShort(offset + SCHEMA_VERSION_OFFSET, (short) SCHEMA_VERSION);
+        buffer.putLong(offset + SEQUENCE_OFFSET, sequence);
+        buffer.putInt(offset + CURRENCY_PAIR_ID_OFFSET, currencyPairId);
+        buffer.putInt(offset + FLAGS_OFFSET, flags);
+    }
+
+    private static void clear(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i += 4) {
+            buffer.putInt(i, 0);
+        }
+    }
+}
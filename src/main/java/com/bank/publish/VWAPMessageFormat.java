@@ -0,0 +1,66 @@
+package com.bank.publish;
+
+import java.nio.ByteOrder;
+
+/**
+ * Layout of the binary VWAP messages sent by the VWAPPublisher.
+ *
+ * Every message is 128 bytes, so a TCP stream needs no framing and a datagram holds exactly one message.
+ * It starts with an 8 byte header in the style of SBE: the block length that follows the header, the
+ * template id, the schema id and the schema version, each an unsigned 16 bit value. The sequence number,
+ * the currency pair id and the flags follow at the same offsets in every template. All values are little-endian.
+ *
+ * UPDATE carries a currency pair's VWAP, volume and tick count over the cutoff window, the time of its latest
+ * price and the VWAPs of up to {@link #MAX_WINDOWS} additional windows. PAIR maps a currency pair id to its
+ * name, and is sent before the first update of the currency pair. SNAPSHOT_END follows the snapshot a TCP
+ * client is sent on connecting, made of the PAIR and latest UPDATE of each currency pair with the SNAPSHOT
+ * flag set, and holds the sequence number the live messages continue from.
+ */
+public final class VWAPMessageFormat {
+    public static final int MESSAGE_SIZE = 128;
+    public static final int HEADER_SIZE = 8;
+    public static final int BLOCK_LENGTH = MESSAGE_SIZE - HEADER_SIZE;
+    public static final int SCHEMA_ID = 0x5657; // "VW"
+    public static final int SCHEMA_VERSION = 1;
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    // Template ids
+    public static final int UPDATE = 1;
+    public static final int PAIR = 2;
+    public static final int SNAPSHOT_END = 3;
+
+    // Flags
+    public static final int DERIVED = 1;
+    public static final int SNAPSHOT = 2;
+
+    public static final int MAX_WINDOWS = 4;
+    public static final int MAX_CURRENCY_PAIR_LENGTH = 32;
+
+    // Header offsets
+    static final int BLOCK_LENGTH_OFFSET = 0;
+    static final int TEMPLATE_ID_OFFSET = 2;
+    static final int SCHEMA_ID_OFFSET = 4;
+    static final int SCHEMA_VERSION_OFFSET = 6;
+
+    // Offsets common to every template
+    static final int SEQUENCE_OFFSET = 8;
+    static final int CURRENCY_PAIR_ID_OFFSET = 16;
+    static final int FLAGS_OFFSET = 20;
+
+    // UPDATE offsets
+    static final int EVENT_TIME_OFFSET = 24;
+    static final int VWAP_OFFSET = 32;
+    static final int VOLUME_OFFSET = 40;
+    static final int TICK_COUNT_OFFSET = 48;
+    static final int WINDOW_COUNT_OFFSET = 56;
+    // Each window is its length in seconds, 4 bytes of padding and its VWAP
+    static final int WINDOWS_OFFSET = 64;
+    static final int WINDOW_SIZE = 16;
+
+    // PAIR offsets, the name is ASCII
+    static final int CURRENCY_PAIR_LENGTH_OFFSET = 24;
+    static final int CURRENCY_PAIR_OFFSET = 28;
+
+    private VWAPMessageFormat() {
+    }
+}
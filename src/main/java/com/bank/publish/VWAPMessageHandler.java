@@ -0,0 +1,22 @@
+package com.bank.publish;
+
+/**
+ * Receives the binary VWAP messages decoded by a VWAPMessageReceiver
+ */
+public interface VWAPMessageHandler {
+
+    /**
+     * @param message the message, only valid until the call returns
+     */
+    void onMessage(VWAPMessageDecoder message);
+
+    /**
+     * Called before a message whose sequence number is not the one expected. The messages in between were lost,
+     * e.g. datagrams dropped, and can be recovered by taking a snapshot over TCP.
+     *
+     * @param expectedSequence the sequence number expected
+     * @param receivedSequence the sequence number received
+     */
+    default void onGap(long expectedSequence, long receivedSequence) {
+    }
+}
@@ -0,0 +1,94 @@
+package com.bank.publish;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+
+import static com.bank.publish.VWAPMessageFormat.*;
+
+/**
+ * Decodes the binary VWAP messages of a TCP stream or of datagrams and checks their sequence numbers.
+ *
+ * Live messages are numbered consecutively, so a number other than the next expected is reported as a gap.
+ * Snapshot messages keep the numbers they were first sent with and are not checked; the SNAPSHOT_END closing
+ * a snapshot sets the number the live messages continue from. Messages older than expected, e.g. datagrams
+ * delivered twice, are skipped. Decoding does not allocate.
+ */
+public final class VWAPMessageReceiver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VWAPMessageReceiver.class);
+
+    private final VWAPMessageHandler handler;
+    private final VWAPMessageDecoder decoder = new VWAPMessageDecoder();
+    // Sequence number of the next live message, 0 until the first is received
+    private long expectedSequence;
+    private long gapCount;
+    private long missedCount;
+
+    public VWAPMessageReceiver(VWAPMessageHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Handle the whole messages between the buffer's position and limit, leaving the position at the start
+     * of any incomplete message for the caller to compact
+     *
+     * @return the number of messages handled
+     */
+    public int onData(ByteBuffer buffer) {
+        int count = 0;
+        while (buffer.remaining() >= MESSAGE_SIZE) {
+            int offset = buffer.position();
+            buffer.position(offset + MESSAGE_SIZE);
+            decoder.wrap(buffer, offset);
+            if (!decoder.isSupported()) {
+                LOGGER.error("Skipping VWAP message of an unsupported schema at sequence {}", decoder.getSequence());
+                continue;
+            }
+            if (onMessage()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean onMessage() {
+        long sequence = decoder.getSequence();
+        if (decoder.getTemplateId() == SNAPSHOT_END) {
+            expectedSequence = sequence + 1;
+        } else if (!decoder.isSnapshot()) {
+            if (expectedSequence != 0 && sequence < expectedSequence) {
+                return false;
+            }
+            if (expectedSequence != 0 && sequence > expectedSequence) {
+                gapCount++;
+                missedCount += sequence - expectedSequence;
+                handler.onGap(expectedSequence, sequence);
+            }
+            expectedSequence = sequence + 1;
+        }
+        handler.onMessage(decoder);
+        return true;
+    }
+
+    /**
+     * @return the sequence number of the next live message, 0 if none has been received
+     */
+    public long getExpectedSequence() {
+        return expectedSequence;
+    }
+
+    /**
+     * @return the number of gaps detected
+     */
+    public long getGapCount() {
+        return gapCount;
+    }
+
+    /**
+     * @return the number of messages lost in the gaps
+     */
+    public long getMissedCount() {
+        return missedCount;
+    }
+}
@@ -0,0 +1,476 @@
+package com.bank.publish;
+
+import com.bank.vwap.CurrencyPairRegistry;
+import com.bank.vwap.CurrencyPairSnapshot;
+import com.bank.vwap.VWAPCalculator;
+import com.bank.vwap.VWAPSubscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.bank.publish.VWAPMessageFormat.*;
+
+/**
+ * Publishes a VWAPCalculator's VWAP changes as binary messages (VWAPMessageFormat) to TCP clients and
+ * as UDP datagrams, typically to a multicast group.
+ *
+ * Each change is encoded once, straight into the publisher's direct buffer of the latest messages of each
+ * currency pair, and written from there to every destination with non-blocking channels, so publishing
+ * does not allocate or copy. Currency pairs, cross rates included, are given the publisher's own ids as they
+ * are first published, leaving the calculator's ids to priced currency pairs. Messages are numbered
+ * consecutively for receivers to detect gaps. A TCP client is sent a snapshot of the latest messages on
+ * connecting, and receivers of datagrams can take one to recover from a gap. A client that cannot keep up
+ * has its unsent messages held, up to its buffer size, and is disconnected beyond that rather than holding
+ * up the others.
+ *
+ * Changes are published on the calculator's dispatcher thread, and TCP clients are accepted and written
+ * to when they can take more on the publisher's own thread.
+ */
+public final class VWAPPublisher implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VWAPPublisher.class);
+    // Longest the publisher's thread waits for clients, so it notices closing
+    private static final long SELECT_TIMEOUT_MILLIS = 100;
+    private static final int INITIAL_CURRENCY_PAIRS = 64;
+    // The latest PAIR and UPDATE message of each currency pair are held side by side
+    private static final int CURRENCY_PAIR_SIZE = 2 * MESSAGE_SIZE;
+
+    private final int tcpClientBufferBytes;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final DatagramChannel datagramChannel;
+    private final InetSocketAddress datagramTarget;
+    private final Thread thread;
+    private final VWAPSubscription subscription;
+
+    // Guards everything below, shared by the dispatcher thread and the publisher's thread
+    private final Object lock = new Object();
+    // Ids of the currency pairs in messages, assigned in the order they are first published
+    private final CurrencyPairRegistry currencyPairRegistry = new CurrencyPairRegistry();
+    // Publisher ids of the currency pairs whose names cannot be encoded, which are never published
+    private final BitSet rejectedCurrencyPairs = new BitSet();
+    // Latest messages of each currency pair by id, grown as currency pairs are seen
+    private ByteBuffer latestMessages = newMessageBuffer(INITIAL_CURRENCY_PAIRS * CURRENCY_PAIR_SIZE);
+    // Separate position and limit over latestMessages, for writing one message out of it
+    private ByteBuffer latestMessagesView = latestMessages.duplicate();
+    // Snapshot messages are copied here to set the snapshot flag without touching the latest messages
+    private final ByteBuffer snapshotMessage = newMessageBuffer(MESSAGE_SIZE);
+    // Read from clients only to notice them disconnecting
+    private final ByteBuffer discarded = ByteBuffer.allocateDirect(256);
+    private final List<TcpClient> clients = new ArrayList<>();
+    private long sequence;
+    private volatile long messageCount;
+    private volatile long droppedDatagramCount;
+    private volatile long disconnectedClientCount;
+    private volatile boolean closed;
+
+    /**
+     * Open the configured channels and subscribe to all of the calculator's VWAP changes
+     *
+     * @throws IOException if the TCP address cannot be listened on or the datagram channel cannot be opened
+     */
+    public VWAPPublisher(VWAPCalculator calculator, VWAPPublisherConfig config) throws IOException {
+        this.tcpClientBufferBytes = config.getTcpClientBufferKb() * 1024;
+        try {
+            if (config.isUdpEnabled()) {
+                datagramTarget = new InetSocketAddress(config.getUdpAddress(), config.getUdpPort());
+                datagramChannel = openDatagramChannel(config, datagramTarget);
+                LOGGER.info("Publishing VWAPs as datagrams to {}", datagramTarget);
+            } else {
+                datagramTarget = null;
+                datagramChannel = null;
+            }
+            if (config.isTcpEnabled()) {
+                selector = Selector.open();
+                serverChannel = ServerSocketChannel.open();
+                serverChannel.bind(new InetSocketAddress(config.getTcpHost(), config.getTcpPort()));
+                serverChannel.configureBlocking(false);
+                serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+                LOGGER.info("Publishing VWAPs to TCP clients on {}", serverChannel.getLocalAddress());
+            } else {
+                selector = null;
+                serverChannel = null;
+            }
+        } catch (IOException | RuntimeException e) {
+            closeChannels();
+            throw e;
+        }
+        if (selector != null) {
+            thread = new Thread(this::run, "vwap-publisher");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            thread = null;
+        }
+        subscription = calculator.subscribe(this::publish);
+    }
+
+    private static DatagramChannel openDatagramChannel(VWAPPublisherConfig config, InetSocketAddress target) throws IOException {
+        if (target.isUnresolved()) {
+            throw new IOException("Unable to resolve publisher UDP address " + config.getUdpAddress());
+        }
+        DatagramChannel channel = DatagramChannel.open(target.getAddress() instanceof Inet4Address
+                ? StandardProtocolFamily.INET : StandardProtocolFamily.INET6);
+        try {
+            channel.configureBlocking(false);
+            if (target.getAddress().isMulticastAddress()) {
+                channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, config.getUdpTtl());
+                channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+                if (!config.getUdpInterface().isEmpty()) {
+                    NetworkInterface networkInterface = NetworkInterface.getByName(config.getUdpInterface());
+                    if (networkInterface == null) {
+                        throw new IOException("No network interface named " + config.getUdpInterface());
+                    }
+                    channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+                }
+            }
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer newMessageBuffer(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(BYTE_ORDER);
+    }
+
+    /**
+     * Encode and send a VWAP change, preceded by the currency pair's PAIR message the first time it is seen
+     */
+    private void publish(CurrencyPairSnapshot snapshot) {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            String currencyPair = snapshot.getCurrencyPair();
+            int currencyPairId = currencyPairRegistry.register(currencyPair);
+            if (rejectedCurrencyPairs.get(currencyPairId)) {
+                return;
+            }
+            int pairOffset = currencyPairId * CURRENCY_PAIR_SIZE;
+            if (currencyPairRegistry.size() * CURRENCY_PAIR_SIZE > latestMessages.capacity()) {
+                growLatestMessages();
+            }
+            if (latestMessages.getShort(pairOffset + TEMPLATE_ID_OFFSET) == 0) {
+                if (!isEncodable(currencyPair)) {
+                    rejectedCurrencyPairs.set(currencyPairId);
+                    LOGGER.warn("Currency pair {} is not published, names are limited to {} ASCII characters", currencyPair, MAX_CURRENCY_PAIR_LENGTH);
+                    return;
+                }
+                VWAPMessageEncoder.encodePair(latestMessages, pairOffset, ++sequence, currencyPairId, currencyPair, snapshot.isDerived());
+                send(pairOffset);
+            }
+            VWAPMessageEncoder.encodeUpdate(latestMessages, pairOffset + MESSAGE_SIZE, ++sequence, currencyPairId, snapshot);
+            send(pairOffset + MESSAGE_SIZE);
+        }
+    }
+
+    private static boolean isEncodable(String currencyPair) {
+        if (currencyPair.isEmpty() || currencyPair.length() > MAX_CURRENCY_PAIR_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < currencyPair.length(); i++) {
+            if (currencyPair.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void growLatestMessages() {
+        int capacity = latestMessages.capacity();
+        while (capacity < currencyPairRegistry.size() * CURRENCY_PAIR_SIZE) {
+            capacity *= 2;
+        }
+        ByteBuffer grown = newMessageBuffer(capacity);
+        latestMessages.clear();
+        grown.put(latestMessages);
+        latestMessages = grown;
+        latestMessagesView = grown.duplicate();
+    }
+
+    /**
+     * Send the message at the offset in the latest messages to every destination
+     */
+    private void send(int offset) {
+        messageCount++;
+        ByteBuffer message = latestMessagesView;
+        if (datagramChannel != null) {
+            message.limit(offset + MESSAGE_SIZE).position(offset);
+            try {
+                if (datagramChannel.send(message, datagramTarget) == 0) {
+                    droppedDatagramCount++;
+                }
+            } catch (IOException e) {
+                droppedDatagramCount++;
+                LOGGER.error("Error sending VWAP datagram to {}: {}", datagramTarget, e.getMessage());
+            }
+        }
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            message.limit(offset + MESSAGE_SIZE).position(offset);
+            sendTo(clients.get(i), message);
+        }
+    }
+
+    /**
+     * @return false if the client was disconnected
+     */
+    private boolean sendTo(TcpClient client, ByteBuffer message) {
+        try {
+            if (client.send(message)) {
+                return true;
+            }
+            disconnect(client, "it is not keeping up");
+        } catch (IOException e) {
+            disconnect(client, e.getMessage());
+        }
+        return false;
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                synchronized (lock) {
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext() && !closed) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            service((TcpClient) key.attachment(), key);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.error("Error accepting VWAP publisher clients: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Accept a TCP client and send it the snapshot, which goes ahead of any later message as both are
+     * sent under the lock
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        TcpClient client = new TcpClient(channel, channel.register(selector, SelectionKey.OP_READ), tcpClientBufferBytes);
+        client.key.attach(client);
+        clients.add(client);
+        int snapshotCount = 0;
+        for (int offset = 0; offset < latestMessages.capacity(); offset += MESSAGE_SIZE) {
+            if (latestMessages.getShort(offset + TEMPLATE_ID_OFFSET) != 0) {
+                for (int i = 0; i < MESSAGE_SIZE; i += 8) {
+                    snapshotMessage.putLong(i, latestMessages.getLong(offset + i));
+                }
+                VWAPMessageEncoder.setSnapshot(snapshotMessage, 0);
+                snapshotMessage.clear();
+                if (!sendTo(client, snapshotMessage)) {
+                    return;
+                }
+                snapshotCount++;
+            }
+        }
+        VWAPMessageEncoder.encodeSnapshotEnd(snapshotMessage, 0, sequence);
+        snapshotMessage.clear();
+        if (!sendTo(client, snapshotMessage)) {
+            return;
+        }
+        LOGGER.info("VWAP publisher client {} connected, sent a snapshot of {} messages up to sequence {}",
+                client.address, snapshotCount, sequence);
+    }
+
+    private void service(TcpClient client, SelectionKey key) {
+        try {
+            if (key.isReadable()) {
+                discarded.clear();
+                if (client.channel.read(discarded) < 0) {
+                    disconnect(client, "it closed the connection");
+                    return;
+                }
+            }
+            if (key.isWritable()) {
+                client.flush();
+            }
+        } catch (IOException e) {
+            disconnect(client, e.getMessage());
+        }
+    }
+
+    private void disconnect(TcpClient client, String reason) {
+        if (!clients.remove(client)) {
+            return;
+        }
+        disconnectedClientCount++;
+        LOGGER.info("VWAP publisher client {} disconnected as {}", client.address, reason);
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+            LOGGER.error("Error closing VWAP publisher client {}: {}", client.address, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the port TCP clients connect to, -1 if TCP is not enabled
+     */
+    public int getTcpPort() {
+        try {
+            return serverChannel != null ? ((InetSocketAddress) serverChannel.getLocalAddress()).getPort() : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the sequence number of the latest message
+     */
+    public long getSequence() {
+        synchronized (lock) {
+            return sequence;
+        }
+    }
+
+    public int getClientCount() {
+        synchronized (lock) {
+            return clients.size();
+        }
+    }
+
+    /**
+     * @return the number of messages published, each sent to every destination
+     */
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * @return the number of datagrams not sent as the socket's send buffer was full
+     */
+    public long getDroppedDatagramCount() {
+        return droppedDatagramCount;
+    }
+
+    /**
+     * @return the number of TCP clients disconnected, including those that were not keeping up
+     */
+    public long getDisconnectedClientCount() {
+        return disconnectedClientCount;
+    }
+
+    /**
+     * Stop publishing and close every channel
+     */
+    @Override
+    public void close() {
+        subscription.cancel();
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (int i = clients.size() - 1; i >= 0; i--) {
+                disconnect(clients.get(i), "the publisher closed");
+            }
+        }
+        if (thread != null) {
+            selector.wakeup();
+            try {
+                thread.join(SELECT_TIMEOUT_MILLIS * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeChannels();
+    }
+
+    private void closeChannels() {
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            if (selector != null) {
+                selector.close();
+            }
+            if (datagramChannel != null) {
+                datagramChannel.close();
+            }
+        } catch (IOException e) {
+            LOGGER.error("Error closing the VWAP publisher's channels: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * A connected TCP client and the messages it has not taken yet
+     */
+    private final class TcpClient {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final String address;
+        private final ByteBuffer unsent;
+
+        private TcpClient(SocketChannel channel, SelectionKey key, int bufferBytes) throws IOException {
+            this.channel = channel;
+            this.key = key;
+            this.address = String.valueOf(channel.getRemoteAddress());
+            this.unsent = ByteBuffer.allocateDirect(bufferBytes);
+        }
+
+        /**
+         * Write a message, holding whatever the socket does not take after any messages already held
+         *
+         * @return false if the message does not fit in the client's buffer
+         */
+        private boolean send(ByteBuffer message) throws IOException {
+            if (unsent.position() == 0) {
+                channel.write(message);
+                if (!message.hasRemaining()) {
+                    return true;
+                }
+            }
+            if (unsent.remaining() < message.remaining()) {
+                return false;
+            }
+            unsent.put(message);
+            if ((key.interestOps() & SelectionKey.OP_WRITE) == 0) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                selector.wakeup();
+            }
+            return true;
+        }
+
+        private void flush() throws IOException {
+            unsent.flip();
+            channel.write(unsent);
+            unsent.compact();
+            if (unsent.position() == 0) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+    }
+}
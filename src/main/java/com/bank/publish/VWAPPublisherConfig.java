@@ -0,0 +1,128 @@
+package com.bank.publish;
+
+import java.util.Properties;
+
+/**
+ * Configuration for the VWAPPublisher, read from application.properties
+ */
+public class VWAPPublisherConfig {
+    private boolean tcpEnabled = false;
+    private String tcpHost = "127.0.0.1";
+    private int tcpPort = 9100;
+    private int tcpClientBufferKb = 1024;
+    private boolean udpEnabled = false;
+    private String udpAddress = "239.255.0.1";
+    private int udpPort = 9101;
+    private String udpInterface = "";
+    private int udpTtl = 1;
+
+    public static VWAPPublisherConfig fromProperties(Properties properties) {
+        VWAPPublisherConfig config = new VWAPPublisherConfig();
+        config.withTcpAddress(properties.getProperty("publish.tcp.host", config.tcpHost),
+                Integer.parseInt(properties.getProperty("publish.tcp.port", String.valueOf(config.tcpPort))));
+        config.tcpEnabled = Boolean.parseBoolean(properties.getProperty("publish.tcp.enabled", "false"));
+        config.withTcpClientBufferKb(Integer.parseInt(properties.getProperty("publish.tcp.client.buffer.kb", String.valueOf(config.tcpClientBufferKb))));
+        config.withUdpAddress(properties.getProperty("publish.udp.address", config.udpAddress),
+                Integer.parseInt(properties.getProperty("publish.udp.port", String.valueOf(config.udpPort))));
+        config.udpEnabled = Boolean.parseBoolean(properties.getProperty("publish.udp.enabled", "false"));
+        config.udpInterface = properties.getProperty("publish.udp.interface", config.udpInterface).trim();
+        config.withUdpTtl(Integer.parseInt(properties.getProperty("publish.udp.ttl", String.valueOf(config.udpTtl))));
+        return config;
+    }
+
+    public boolean isTcpEnabled() {
+        return tcpEnabled;
+    }
+
+    public String getTcpHost() {
+        return tcpHost;
+    }
+
+    public int getTcpPort() {
+        return tcpPort;
+    }
+
+    /**
+     * Accept TCP clients on the address, each sent a snapshot on connecting and then every message
+     *
+     * @param port the port to listen on, 0 for any free port
+     */
+    public VWAPPublisherConfig withTcpAddress(String host, int port) {
+        if (port < 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("Publisher TCP port must be from 0 to 65535: " + port);
+        }
+        this.tcpEnabled = true;
+        this.tcpHost = host.trim();
+        this.tcpPort = port;
+        return this;
+    }
+
+    public int getTcpClientBufferKb() {
+        return tcpClientBufferKb;
+    }
+
+    /**
+     * @param tcpClientBufferKb the most unsent data held for a TCP client that is not keeping up, beyond which it is disconnected
+     */
+    public VWAPPublisherConfig withTcpClientBufferKb(int tcpClientBufferKb) {
+        if (tcpClientBufferKb < 1) {
+            throw new IllegalArgumentException("Publisher TCP client buffer must be at least 1 KB: " + tcpClientBufferKb);
+        }
+        this.tcpClientBufferKb = tcpClientBufferKb;
+        return this;
+    }
+
+    public boolean isUdpEnabled() {
+        return udpEnabled;
+    }
+
+    public String getUdpAddress() {
+        return udpAddress;
+    }
+
+    public int getUdpPort() {
+        return udpPort;
+    }
+
+    /**
+     * Send every message as a datagram to the address
+     *
+     * @param address a multicast group, or a unicast address
+     */
+    public VWAPPublisherConfig withUdpAddress(String address, int port) {
+        if (port < 1 || port > 0xFFFF) {
+            throw new IllegalArgumentException("Publisher UDP port must be from 1 to 65535: " + port);
+        }
+        this.udpEnabled = true;
+        this.udpAddress = address.trim();
+        this.udpPort = port;
+        return this;
+    }
+
+    public String getUdpInterface() {
+        return udpInterface;
+    }
+
+    /**
+     * @param udpInterface the name of the network interface to send multicast datagrams from, empty for the default
+     */
+    public VWAPPublisherConfig withUdpInterface(String udpInterface) {
+        this.udpInterface = udpInterface.trim();
+        return this;
+    }
+
+    public int getUdpTtl() {
+        return udpTtl;
+    }
+
+    /**
+     * @param udpTtl the number of hops multicast datagrams may travel, 0 to keep them on this host
+     */
+    public VWAPPublisherConfig withUdpTtl(int udpTtl) {
+        if (udpTtl < 0 || udpTtl > 255) {
+            throw new IllegalArgumentException("Publisher multicast TTL must be from 0 to 255: " + udpTtl);
+        }
+        this.udpTtl = udpTtl;
+        return this;
+    }
+}
@@ -0,0 +1,100 @@
+package com.bank.replay;
+
+import com.bank.journal.TickRecordHandler;
+import com.bank.util.DateTimeUtil;
+import com.bank.util.TickLineParser;
+import com.bank.vwap.CurrencyPairRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams ticks from a CSV file with lines of the form {@code timestamp,currencyPair,price,volume}.
+ *
+ * The timestamp is either a time of day on the configured trade day, or a whole number of epoch
+ * nanoseconds, as parsed by TickLineParser. The file is read through a FileChannel into a fixed
+ * buffer and parsed in place, so memory use does not depend on the size of the file and no objects
+ * are allocated per line, apart from the first occurrence of each currency pair. Lines that cannot
+ * be parsed, such as a header, are skipped.
+ */
+public class CsvTickFileReader implements TickFileReader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CsvTickFileReader.class);
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path path;
+    private final TickLineParser parser;
+    // Looks currency pairs up by their bytes, so each distinct pair is only turned into a String once
+    private final CurrencyPairRegistry currencyPairs = new CurrencyPairRegistry();
+    private long skippedLines;
+
+    /**
+     * @param path the CSV file
+     * @param dayStart the day that times of day in the file fall on
+     */
+    public CsvTickFileReader(Path path, DateTimeUtil.DayStart dayStart) {
+        this.path = path;
+        this.parser = new TickLineParser(dayStart);
+    }
+
+    /**
+     * @return the number of lines skipped because they could not be parsed in the last read
+     */
+    public long getSkippedLines() {
+        return skippedLines;
+    }
+
+    @Override
+    public long read(TickRecordHandler handler) throws IOException {
+        skippedLines = 0;
+        long read = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            boolean endOfFile = false;
+            while (!endOfFile) {
+                endOfFile = channel.read(buffer) < 0;
+                int limit = buffer.position();
+                int lineStart = 0;
+                for (int i = 0; i < limit; i++) {
+                    if (bytes[i] == '\n') {
+                        read += parseLine(bytes, lineStart, i, handler);
+                        lineStart = i + 1;
+                    }
+                }
+                if (endOfFile && lineStart < limit) {
+                    // Last line without a line break
+                    read += parseLine(bytes, lineStart, limit, handler);
+                    lineStart = limit;
+                }
+                if (lineStart == 0 && limit == bytes.length) {
+                    throw new IOException("Line longer than " + BUFFER_SIZE + " bytes in " + path);
+                }
+                // Move the incomplete last line to the start of the buffer
+                System.arraycopy(bytes, lineStart, bytes, 0, limit - lineStart);
+                buffer.position(limit - lineStart);
+            }
+        }
+        if (skippedLines > 0) {
+            LOGGER.warn("Skipped {} lines of {} that are not valid ticks", skippedLines, path);
+        }
+        return read;
+    }
+
+    private int parseLine(byte[] bytes, int start, int end, TickRecordHandler handler) {
+        if (TickLineParser.isBlank(bytes, start, end)) {
+            return 0;
+        }
+        if (!parser.parse(bytes, start, end)) {
+            skippedLines++;
+            return 0;
+        }
+        int currencyPairId = currencyPairs.register(bytes, parser.getCurrencyPairStart(), parser.getCurrencyPairLength());
+        handler.onTick(currencyPairs.nameOf(currencyPairId), parser.getTimestampNanos(), parser.getPrice(), parser.getVolume());
+        return 1;
+    }
+}
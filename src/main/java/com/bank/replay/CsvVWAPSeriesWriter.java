@@ -0,0 +1,79 @@
+package com.bank.replay;
+
+import com.bank.vwap.CurrencyData;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Writes the VWAP series to a CSV file with the columns
+ * {@code timestamp_nanos,currency_pair,vwap,volume} and a {@code vwap_<seconds>s} column per additional window.
+ *
+ * Each worker thread formats its points into its own buffer and only takes the file lock to write
+ * a full buffer, so the workers do not contend per point. Lines of different currency pairs are interleaved.
+ */
+public class CsvVWAPSeriesWriter implements VWAPSeriesSink {
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    private final Writer writer;
+    private final int[] windowSeconds;
+    private final Queue<StringBuilder> buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<StringBuilder> threadBuffer = ThreadLocal.withInitial(() -> {
+        StringBuilder buffer = new StringBuilder(FLUSH_THRESHOLD + 256);
+        buffers.add(buffer);
+        return buffer;
+    });
+
+    public CsvVWAPSeriesWriter(Path output, int[] windowSeconds) throws IOException {
+        this.writer = Files.newBufferedWriter(output, StandardCharsets.US_ASCII);
+        this.windowSeconds = windowSeconds.clone();
+        StringBuilder header = new StringBuilder("timestamp_nanos,currency_pair,vwap,volume");
+        for (int seconds : windowSeconds) {
+            header.append(",vwap_").append(seconds).append('s');
+        }
+        writer.write(header.append('\n').toString());
+    }
+
+    @Override
+    public void onVWAP(long timestampNanos, CurrencyData data) {
+        StringBuilder buffer = threadBuffer.get();
+        buffer.append(timestampNanos).append(',')
+                .append(data.getCurrencyPair()).append(',')
+                .append(data.getVwap()).append(',')
+                .append(data.getTotalVolume().get());
+        for (int seconds : windowSeconds) {
+            buffer.append(',').append(data.getVwap(seconds));
+        }
+        buffer.append('\n');
+        if (buffer.length() >= FLUSH_THRESHOLD) {
+            write(buffer);
+        }
+    }
+
+    private void write(StringBuilder buffer) {
+        synchronized (writer) {
+            try {
+                writer.append(buffer);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to write VWAP series: " + e.getMessage(), e);
+            }
+        }
+        buffer.setLength(0);
+    }
+
+    /**
+     * Write the remaining points of every thread and close the file, once the replay has completed
+     */
+    @Override
+    public void close() throws IOException {
+        for (StringBuilder buffer : buffers) {
+            write(buffer);
+        }
+        writer.close();
+    }
+}
@@ -0,0 +1,27 @@
+package com.bank.replay;
+
+import com.bank.journal.TickJournalReader;
+import com.bank.journal.TickRecordHandler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Reads ticks in the binary journal format, from a single segment or a journal directory.
+ * Segments are memory-mapped and read in place.
+ */
+public class JournalTickFileReader implements TickFileReader {
+    private final Path path;
+
+    public JournalTickFileReader(Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public long read(TickRecordHandler handler) throws IOException {
+        List<Path> segments = Files.isDirectory(path) ? TickJournalReader.listSegments(path) : List.of(path);
+        return TickJournalReader.replay(segments, Long.MIN_VALUE, handler);
+    }
+}
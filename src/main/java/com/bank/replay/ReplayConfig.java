@@ -0,0 +1,119 @@
+package com.bank.replay;
+
+import com.bank.util.DateTimeUtil;
+import com.bank.vwap.VWAPCalculatorConfig;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Properties;
+
+/**
+ * Configuration for the ReplayEngine, read from application.properties.
+ * The VWAP windows are configured as for the VWAPCalculator.
+ */
+public class ReplayConfig {
+    private VWAPCalculatorConfig windowConfig = new VWAPCalculatorConfig();
+    private int workerCount = Runtime.getRuntime().availableProcessors();
+    private long outputIntervalMillis = 1000;
+    private LocalDate tradeDate = LocalDate.now(DateTimeUtil.PRICE_ZONE);
+    private ZoneId zone = DateTimeUtil.PRICE_ZONE;
+    private int batchSize = 4096;
+    private boolean exactVwap = false;
+
+    public static ReplayConfig fromProperties(Properties properties) {
+        ReplayConfig config = new ReplayConfig();
+        config.windowConfig = VWAPCalculatorConfig.fromProperties(properties);
+        config.withWorkerCount(Integer.parseInt(properties.getProperty("replay.workers", String.valueOf(config.workerCount))));
+        config.outputIntervalMillis = Long.parseLong(properties.getProperty("replay.output.interval.millis", String.valueOf(config.outputIntervalMillis)));
+        config.exactVwap = Boolean.parseBoolean(properties.getProperty("replay.exact.vwap", String.valueOf(config.exactVwap)));
+        config.zone = ZoneId.of(properties.getProperty("replay.zone", config.zone.getId()));
+        String tradeDate = properties.getProperty("replay.date", "").trim();
+        config.tradeDate = tradeDate.isEmpty() ? LocalDate.now(config.zone) : LocalDate.parse(tradeDate);
+        return config;
+    }
+
+    public VWAPCalculatorConfig getWindowConfig() {
+        return windowConfig;
+    }
+
+    /**
+     * @param windowConfig the cutoff, additional windows and bucketing of the replayed VWAPs
+     */
+    public ReplayConfig withWindowConfig(VWAPCalculatorConfig windowConfig) {
+        this.windowConfig = windowConfig;
+        return this;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * @param workerCount the number of threads processing currency pairs, each pair is processed by one of them
+     */
+    public ReplayConfig withWorkerCount(int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Worker count must be at least 1: " + workerCount);
+        }
+        this.workerCount = workerCount;
+        return this;
+    }
+
+    public long getOutputIntervalMillis() {
+        return outputIntervalMillis;
+    }
+
+    /**
+     * @param outputIntervalMillis the event time interval between points of each currency pair's VWAP series,
+     *                             0 for a point after every tick
+     */
+    public ReplayConfig withOutputIntervalMillis(long outputIntervalMillis) {
+        this.outputIntervalMillis = outputIntervalMillis;
+        return this;
+    }
+
+    public boolean isExactVwap() {
+        return exactVwap;
+    }
+
+    /**
+     * @param exactVwap true to recompute each point's VWAP exactly from the window rather than take it from the running sums
+     */
+    public ReplayConfig withExactVwap(boolean exactVwap) {
+        this.exactVwap = exactVwap;
+        return this;
+    }
+
+    public LocalDate getTradeDate() {
+        return tradeDate;
+    }
+
+    /**
+     * @param tradeDate the day that times of day in CSV files fall on
+     */
+    public ReplayConfig withTradeDate(LocalDate tradeDate) {
+        this.tradeDate = tradeDate;
+        return this;
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    public ReplayConfig withZone(ZoneId zone) {
+        this.zone = zone;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the number of ticks handed from the reader to a worker at once
+     */
+    public ReplayConfig withBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+}
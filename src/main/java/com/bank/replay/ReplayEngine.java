@@ -0,0 +1,170 @@
+package com.bank.replay;
+
+import com.bank.journal.TickRecordHandler;
+import com.bank.util.DateTimeUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Replays historical tick files through the VWAP windows in event time, producing a VWAP time series
+ * per currency pair.
+ *
+ * One thread streams the input files and hands ticks in batches to a fixed set of workers,
+ * each currency pair always going to the same worker so its ticks are processed in file order.
+ * Batches are pooled and the hand-off queues are bounded, so the reader is held back by the
+ * workers and memory use does not depend on the size of the input.
+ */
+public class ReplayEngine {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplayEngine.class);
+    private static final int BATCHES_PER_WORKER = 4;
+
+    private final ReplayConfig config;
+
+    public ReplayEngine(ReplayConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Replay the files in the given order. Files ending in .csv are read as CSV, anything else
+     * as a journal segment or a journal directory.
+     *
+     * @param inputs the tick files
+     * @param sink receives the VWAP series, it is not closed
+     * @return the totals of the replay
+     * @throws IOException if an input cannot be read or a worker failed
+     */
+    public ReplayResult replay(List<Path> inputs, VWAPSeriesSink sink) throws IOException {
+        List<TickFileReader> readers = new ArrayList<>(inputs.size());
+        DateTimeUtil.DayStart dayStart = DateTimeUtil.DayStart.of(config.getTradeDate(), config.getZone());
+        for (Path input : inputs) {
+            readers.add(input.getFileName().toString().endsWith(".csv")
+                    ? new CsvTickFileReader(input, dayStart)
+                    : new JournalTickFileReader(input));
+        }
+        return replayAll(readers, sink);
+    }
+
+    /**
+     * Replay ticks from the readers, one after another
+     */
+    public ReplayResult replayAll(List<? extends TickFileReader> readers, VWAPSeriesSink sink) throws IOException {
+        int workerCount = config.getWorkerCount();
+        int batchSize = config.getBatchSize();
+        BlockingQueue<TickBatch> freeBatches = new ArrayBlockingQueue<>(workerCount * (BATCHES_PER_WORKER + 1));
+        for (int i = 0; i < workerCount * (BATCHES_PER_WORKER + 1); i++) {
+            freeBatches.add(new TickBatch(batchSize));
+        }
+
+        List<BlockingQueue<TickBatch>> queues = new ArrayList<>(workerCount);
+        List<ReplayWorker> workers = new ArrayList<>(workerCount);
+        List<Thread> threads = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            // Room for every batch plus the end marker, so handing over never blocks
+            BlockingQueue<TickBatch> queue = new ArrayBlockingQueue<>(freeBatches.size() + 1);
+            ReplayWorker worker = new ReplayWorker(queue, freeBatches, config, sink);
+            Thread thread = new Thread(worker, "vwap-replay-" + i);
+            queues.add(queue);
+            workers.add(worker);
+            threads.add(thread);
+            thread.start();
+        }
+
+        long start = System.nanoTime();
+        Dispatcher dispatcher = new Dispatcher(queues, freeBatches);
+        long ticks = 0;
+        try {
+            for (TickFileReader reader : readers) {
+                ticks += reader.read(dispatcher);
+            }
+            dispatcher.flush();
+        } finally {
+            for (BlockingQueue<TickBatch> queue : queues) {
+                queue.add(ReplayWorker.END_OF_INPUT);
+            }
+            joinAll(threads);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        long points = 0;
+        for (ReplayWorker worker : workers) {
+            if (worker.getFailure() != null) {
+                throw new IOException("Replay failed: " + worker.getFailure().getMessage(), worker.getFailure());
+            }
+            points += worker.getPoints();
+        }
+        ReplayResult result = new ReplayResult(ticks, points, elapsedNanos);
+        LOGGER.info("Replayed {}", result);
+        return result;
+    }
+
+    private static void joinAll(List<Thread> threads) {
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Fills one batch per worker on the reader thread and hands each over once it is full
+     */
+    private static final class Dispatcher implements TickRecordHandler {
+        private final List<BlockingQueue<TickBatch>> queues;
+        private final BlockingQueue<TickBatch> freeBatches;
+        private final TickBatch[] filling;
+
+        Dispatcher(List<BlockingQueue<TickBatch>> queues, BlockingQueue<TickBatch> freeBatches) {
+            this.queues = queues;
+            this.freeBatches = freeBatches;
+            this.filling = new TickBatch[queues.size()];
+        }
+
+        @Override
+        public void onTick(String currencyPair, long timestampNanos, double price, long volume) {
+            int worker = Math.floorMod(currencyPair.hashCode(), filling.length);
+            TickBatch batch = filling[worker];
+            if (batch == null) {
+                batch = takeFreeBatch();
+                filling[worker] = batch;
+            }
+            if (batch.add(currencyPair, timestampNanos, price, volume)) {
+                queues.get(worker).add(batch);
+                filling[worker] = null;
+            }
+        }
+
+        void flush() {
+            for (int worker = 0; worker < filling.length; worker++) {
+                if (filling[worker] != null) {
+                    queues.get(worker).add(filling[worker]);
+                    filling[worker] = null;
+                }
+            }
+        }
+
+        private TickBatch takeFreeBatch() {
+            try {
+                return freeBatches.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a replay worker", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.bank.replay;
+
+/**
+ * Totals of a completed replay
+ */
+public final class ReplayResult {
+    private final long ticks;
+    private final long points;
+    private final long elapsedNanos;
+
+    ReplayResult(long ticks, long points, long elapsedNanos) {
+        this.ticks = ticks;
+        this.points = points;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of ticks read from the input files
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * @return the number of VWAP series points passed to the sink
+     */
+    public long getPoints() {
+        return points;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getTicksPerSecond() {
+        return elapsedNanos == 0 ? 0 : ticks * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d ticks, %d points in %.3f s (%.0f ticks/s)", ticks, points, elapsedNanos / 1e9, getTicksPerSecond());
+    }
+}
@@ -0,0 +1,146 @@
+package com.bank.replay;
+
+import com.bank.util.PriceStatistics;
+import com.bank.vwap.CurrencyData;
+import com.bank.vwap.TickBuffer;
+import com.bank.vwap.VWAPCalculatorConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the ticks of the currency pairs hashed to it, single-threaded like a processing shard.
+ * The windows advance with the tick timestamps rather than the wall clock, so a day of ticks
+ * gives the same VWAPs however fast it is replayed.
+ */
+final class ReplayWorker implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplayWorker.class);
+
+    static final TickBatch END_OF_INPUT = new TickBatch(0);
+
+    private final BlockingQueue<TickBatch> batches;
+    private final BlockingQueue<TickBatch> freeBatches;
+    private final VWAPCalculatorConfig windowConfig;
+    private final VWAPSeriesSink sink;
+    private final long cutoffNanos;
+    private final long outputIntervalNanos;
+    private final boolean exactVwap;
+    private final Map<String, PairSeries> currencyPairs = new HashMap<>();
+    private long points;
+    private volatile Throwable failure;
+
+    ReplayWorker(BlockingQueue<TickBatch> batches, BlockingQueue<TickBatch> freeBatches, ReplayConfig config, VWAPSeriesSink sink) {
+        this.batches = batches;
+        this.freeBatches = freeBatches;
+        this.windowConfig = config.getWindowConfig();
+        this.sink = sink;
+        this.cutoffNanos = TimeUnit.SECONDS.toNanos(windowConfig.getCutoffSeconds());
+        this.outputIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getOutputIntervalMillis());
+        this.exactVwap = config.isExactVwap();
+    }
+
+    @Override
+    public void run() {
+        try {
+            TickBatch batch;
+            while ((batch = batches.take()) != END_OF_INPUT) {
+                // After a failure keep taking batches so the reader is never blocked
+                if (failure == null) {
+                    process(batch);
+                }
+                batch.clear();
+                freeBatches.add(batch);
+            }
+            if (failure == null) {
+                for (PairSeries series : currencyPairs.values()) {
+                    series.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void process(TickBatch batch) {
+        try {
+            for (int i = 0; i < batch.size; i++) {
+                String currencyPair = batch.currencyPairs[i];
+                PairSeries series = currencyPairs.get(currencyPair);
+                if (series == null) {
+                    series = new PairSeries(currencyPair);
+                    currencyPairs.put(currencyPair, series);
+                }
+                series.onTick(batch.timestampNanos[i], batch.prices[i], batch.volumes[i]);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Replay worker failed: {}", e.getMessage(), e);
+            failure = e;
+        }
+    }
+
+    long getPoints() {
+        return points;
+    }
+
+    Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * The windows of one currency pair and the end of its current output interval
+     */
+    private final class PairSeries {
+        private final CurrencyData data;
+        private long intervalEndNanos = Long.MIN_VALUE;
+
+        PairSeries(String currencyPair) {
+            data = new CurrencyData(currencyPair, TickBuffer.create(windowConfig), new PriceStatistics(), windowConfig.getWindowSeconds());
+        }
+
+        void onTick(long timestampNanos, double price, long volume) {
+            if (outputIntervalNanos > 0) {
+                if (timestampNanos >= intervalEndNanos) {
+                    flush();
+                    intervalEndNanos = (Math.floorDiv(timestampNanos, outputIntervalNanos) + 1) * outputIntervalNanos;
+                }
+                data.addToFront(timestampNanos, price, volume);
+                advanceTo(timestampNanos);
+            } else {
+                data.addToFront(timestampNanos, price, volume);
+                advanceTo(timestampNanos);
+                emit(timestampNanos);
+            }
+        }
+
+        /**
+         * Emit the point at the end of the current interval, if any ticks fell within it
+         */
+        void flush() {
+            if (intervalEndNanos != Long.MIN_VALUE) {
+                advanceTo(intervalEndNanos);
+                emit(intervalEndNanos);
+                intervalEndNanos = Long.MIN_VALUE;
+            }
+        }
+
+        private void advanceTo(long timestampNanos) {
+            data.updateWindows(timestampNanos);
+            data.removeItemsBeforeCutoff(timestampNanos - cutoffNanos);
+            long totalVolume = data.getTotalVolume().get();
+            data.setVwap(totalVolume > 0 ? data.getTotalWeightedPrice().sum() / totalVolume : Double.NaN);
+        }
+
+        private void emit(long timestampNanos) {
+            if (exactVwap) {
+                // One pass over the window per point, with the same kernel as the live verification
+                data.setVwap(data.recomputeVwap());
+            }
+            sink.onVWAP(timestampNanos, data);
+            points++;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.bank.replay;
+
+/**
+ * Ticks handed from the replay reader to a worker, held in columns and reused once processed
+ */
+final class TickBatch {
+    final String[] currencyPairs;
+    final long[] timestampNanos;
+    final double[] prices;
+    final long[] volumes;
+    int size;
+
+    TickBatch(int capacity) {
+        currencyPairs = new String[capacity];
+        timestampNanos = new long[capacity];
+        prices = new double[capacity];
+        volumes = new long[capacity];
+    }
+
+    /**
+     * @return true if the batch is full after adding the tick
+     */
+    boolean add(String currencyPair, long timestampNanos, double price, long volume) {
+        currencyPairs[size] = currencyPair;
+        this.timestampNanos[size] = timestampNanos;
+        prices[size] = price;
+        volumes[size] = volume;
+        return ++size == currencyPairs.length;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,18 @@
+package com.bank.replay;
+
+import com.bank.journal.TickRecordHandler;
+
+import java.io.IOException;
+
+/**
+ * Streams the ticks of a historical tick file, in file order
+ */
+public interface TickFileReader {
+
+    /**
+     * Pass every tick in the file to the handler
+     *
+     * @return the number of ticks read
+     */
+    long read(TickRecordHandler handler) throws IOException;
+}
@@ -0,0 +1,24 @@
+package com.bank.replay;
+
+import com.bank.vwap.CurrencyData;
+
+import java.io.IOException;
+
+/**
+ * Receives the VWAP time series produced by a replay
+ */
+public interface VWAPSeriesSink extends AutoCloseable {
+
+    /**
+     * Called with each point of a currency pair's VWAP series. Called from the replay worker threads,
+     * the points of one currency pair always come from the same thread in event time order.
+     *
+     * @param timestampNanos the event time of the point in epoch nanoseconds
+     * @param data the currency pair's windows as of that time, only valid for the duration of the call
+     */
+    void onVWAP(long timestampNanos, CurrencyData data);
+
+    @Override
+    default void close() throws IOException {
+    }
+}
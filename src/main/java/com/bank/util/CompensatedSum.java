@@ -0,0 +1,32 @@
+package com.bank.util;
+
+/**
+ * Running sum of doubles using Neumaier's compensated summation.
+ * The rounding error of every addition is carried in a separate compensation term, so long
+ * sequences of additions and subtractions do not drift away from the exact sum.
+ *
+ * Only one thread adds to the sum. Other threads may read it, but are not guaranteed to see the latest additions.
+ */
+public class CompensatedSum {
+    private double sum;
+    private double compensation;
+
+    public void add(double value) {
+        double total = sum + value;
+        if (Math.abs(sum) >= Math.abs(value)) {
+            compensation += (sum - total) + value;
+        } else {
+            compensation += (value - total) + sum;
+        }
+        sum = total;
+    }
+
+    public double sum() {
+        return sum + compensation;
+    }
+
+    public void reset() {
+        sum = 0;
+        compensation = 0;
+    }
+}
@@ -4,21 +4,220 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.*;
-import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.time.zone.ZoneOffsetTransition;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Conversions between price timestamps and epoch nanoseconds.
+ *
+ * Prices are timestamped with a time of day in the format 'h:mm a', optionally with seconds and
+ * up to nine fractional digits ('h:mm:ss.SSS a', 'h:mm:ss.SSSSSSSSS a'). Without an AM/PM marker
+ * the hour is read as 24-hour time. The time is taken to be on the current day in the given zone.
+ *
+ * Parsing is hand-rolled and allocation-free. The start of the current day is cached per zone and
+ * only recalculated once the clock passes midnight.
+ */
 public class DateTimeUtil {
     private static final Logger LOGGER = LoggerFactory.getLogger(DateTimeUtil.class);
-    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("h:mm a");
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_MINUTE = 60 * NANOS_PER_SECOND;
+    private static final long NANOS_PER_HOUR = 60 * NANOS_PER_MINUTE;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    /**
+     * Returned by the parsing methods when the text is not a valid time
+     */
+    public static final long INVALID_TIMESTAMP = Long.MIN_VALUE;
+
+    /**
+     * Zone of the times of day prices are timestamped with
+     */
+    public static final ZoneId PRICE_ZONE = ZoneId.of("Australia/Sydney");
+
+    private static final Map<ZoneId, DayStart> DAY_STARTS = new ConcurrentHashMap<>();
 
     public static Instant convertToInstant(String timeString, ZoneId zoneId) throws DateTimeParseException {
-        try {
-            LocalTime localTime = LocalTime.parse(timeString.toLowerCase(), FORMATTER);
-            LocalDate today = LocalDate.now(zoneId);
-            return LocalDateTime.of(today, localTime).toInstant(ZoneOffset.UTC);
-        } catch (DateTimeParseException e) {
-            LOGGER.error("Invalid time format: ", timeString);
-            return null;
+        long epochNanos = parseToEpochNanos(timeString, zoneId);
+        return epochNanos == INVALID_TIMESTAMP ? null : fromEpochNanos(epochNanos);
+    }
+
+    /**
+     * Parse a time of day on the current day in the zone
+     *
+     * @param text the time, e.g. 9:30 AM or 9:30:15.250 pm
+     * @param zoneId the zone the time is local to
+     * @return the time in epoch nanoseconds, or {@link #INVALID_TIMESTAMP} if the text is not a valid time
+     */
+    public static long parseToEpochNanos(CharSequence text, ZoneId zoneId) {
+        return parseToEpochNanos(text, 0, text.length(), dayStart(zoneId));
+    }
+
+    /**
+     * Parse a time of day from part of a character sequence, relative to a given day
+     *
+     * @param text the characters holding the time
+     * @param start the index of the first character of the time
+     * @param end the index after the last character of the time
+     * @param dayStart the day the time falls on
+     * @return the time in epoch nanoseconds, or {@link #INVALID_TIMESTAMP} if the text is not a valid time
+     */
+    public static long parseToEpochNanos(CharSequence text, int start, int end, DayStart dayStart) {
+        long timeOfDayNanos = parseTimeOfDayNanos(text, start, end);
+        if (timeOfDayNanos == INVALID_TIMESTAMP) {
+            LOGGER.error("Invalid time format: {}", text);
+            return INVALID_TIMESTAMP;
+        }
+        return dayStart.toEpochNanos(timeOfDayNanos);
+    }
+
+    /**
+     * Parse a time of day into nanoseconds since midnight
+     *
+     * @return the nanoseconds since midnight, or {@link #INVALID_TIMESTAMP} if the text is not a valid time
+     */
+    public static long parseTimeOfDayNanos(CharSequence text, int start, int end) {
+        int position = start;
+        while (end > position && text.charAt(end - 1) == ' ') {
+            end--;
+        }
+
+        // Hour, one or two digits
+        int hour = 0;
+        int digits = 0;
+        while (position < end && digits < 2 && isDigit(text.charAt(position))) {
+            hour = hour * 10 + (text.charAt(position++) - '0');
+            digits++;
+        }
+        if (digits == 0 || position >= end || text.charAt(position++) != ':') {
+            return INVALID_TIMESTAMP;
+        }
+
+        int minute = parseTwoDigits(text, position, end);
+        if (minute < 0 || minute > 59) {
+            return INVALID_TIMESTAMP;
+        }
+        position += 2;
+
+        int second = 0;
+        long fractionNanos = 0;
+        if (position < end && text.charAt(position) == ':') {
+            second = parseTwoDigits(text, position + 1, end);
+            if (second < 0 || second > 59) {
+                return INVALID_TIMESTAMP;
+            }
+            position += 3;
+            if (position < end && text.charAt(position) == '.') {
+                position++;
+                long scale = NANOS_PER_SECOND;
+                int fractionDigits = 0;
+                while (position < end && isDigit(text.charAt(position))) {
+                    if (++fractionDigits > 9) {
+                        return INVALID_TIMESTAMP;
+                    }
+                    scale /= 10;
+                    fractionNanos += (text.charAt(position++) - '0') * scale;
+                }
+                if (fractionDigits == 0) {
+                    return INVALID_TIMESTAMP;
+                }
+            }
+        }
+
+        // Optional AM/PM marker, in any case
+        while (position < end && text.charAt(position) == ' ') {
+            position++;
+        }
+        if (position < end) {
+            if (end - position != 2 || Character.toLowerCase(text.charAt(position + 1)) != 'm') {
+                return INVALID_TIMESTAMP;
+            }
+            char marker = Character.toLowerCase(text.charAt(position));
+            if (hour < 1 || hour > 12 || (marker != 'a' && marker != 'p')) {
+                return INVALID_TIMESTAMP;
+            }
+            hour = hour % 12 + (marker == 'p' ? 12 : 0);
+        } else if (hour > 23) {
+            return INVALID_TIMESTAMP;
+        }
+
+        return hour * NANOS_PER_HOUR + minute * NANOS_PER_MINUTE + second * NANOS_PER_SECOND + fractionNanos;
+    }
+
+    private static int parseTwoDigits(CharSequence text, int position, int end) {
+        if (position + 1 >= end || !isDigit(text.charAt(position)) || !isDigit(text.charAt(position + 1))) {
+            return -1;
+        }
+        return (text.charAt(position) - '0') * 10 + (text.charAt(position + 1) - '0');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * The start of the current day in the zone, recalculated only after midnight has passed
+     */
+    public static DayStart dayStart(ZoneId zoneId) {
+        DayStart dayStart = DAY_STARTS.get(zoneId);
+        if (dayStart == null || System.currentTimeMillis() >= dayStart.nextDayStartMillis) {
+            dayStart = DayStart.of(LocalDate.now(zoneId), zoneId);
+            DAY_STARTS.put(zoneId, dayStart);
+        }
+        return dayStart;
+    }
+
+    public static long toEpochNanos(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), NANOS_PER_SECOND), instant.getNano());
+    }
+
+    public static Instant fromEpochNanos(long epochNanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND), Math.floorMod(epochNanos, NANOS_PER_SECOND));
+    }
+
+    /**
+     * @return the current wall clock time in epoch nanoseconds, with millisecond precision
+     */
+    public static long currentEpochNanos() {
+        return System.currentTimeMillis() * NANOS_PER_MILLI;
+    }
+
+    /**
+     * Start of a day in a zone, used to turn times of day into epoch nanoseconds.
+     * Accounts for a daylight saving transition falling within the day.
+     */
+    public static final class DayStart {
+        private final long startEpochNanos;
+        private final long nextDayStartMillis;
+        // Local time of day from which the offset change applies, Long.MAX_VALUE if there is no transition
+        private final long transitionTimeOfDayNanos;
+        private final long offsetChangeNanos;
+
+        private DayStart(long startEpochNanos, long nextDayStartMillis, long transitionTimeOfDayNanos, long offsetChangeNanos) {
+            this.startEpochNanos = startEpochNanos;
+            this.nextDayStartMillis = nextDayStartMillis;
+            this.transitionTimeOfDayNanos = transitionTimeOfDayNanos;
+            this.offsetChangeNanos = offsetChangeNanos;
+        }
+
+        public static DayStart of(LocalDate date, ZoneId zoneId) {
+            Instant start = date.atStartOfDay(zoneId).toInstant();
+            Instant nextStart = date.plusDays(1).atStartOfDay(zoneId).toInstant();
+            long transitionTimeOfDayNanos = Long.MAX_VALUE;
+            long offsetChangeNanos = 0;
+            ZoneOffsetTransition transition = zoneId.getRules().nextTransition(start);
+            if (transition != null && transition.getInstant().isBefore(nextStart)) {
+                LocalDateTime before = transition.getDateTimeBefore();
+                transitionTimeOfDayNanos = before.toLocalTime().toNanoOfDay();
+                offsetChangeNanos = transition.getDuration().toNanos();
+            }
+            return new DayStart(DateTimeUtil.toEpochNanos(start), nextStart.toEpochMilli(), transitionTimeOfDayNanos, offsetChangeNanos);
+        }
+
+        public long toEpochNanos(long timeOfDayNanos) {
+            long epochNanos = startEpochNanos + timeOfDayNanos;
+            return timeOfDayNanos >= transitionTimeOfDayNanos ? epochNanos - offsetChangeNanos : epochNanos;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,81 @@
+package com.bank.util;
+
+/**
+ * Monotonic deque of timestamped prices for tracking the high or low of a sliding window
+ * in O(1) amortized time. Prices that can no longer be the window extreme are dropped as
+ * new prices arrive, so the front always holds the extreme of the retained prices.
+ * Backed by primitive ring arrays that grow on demand. Not thread-safe.
+ */
+public class MonotonicPriceDeque {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final boolean trackHigh;
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private double[] prices = new double[INITIAL_CAPACITY];
+    private int mask = INITIAL_CAPACITY - 1;
+    private long head;
+    private long tail;
+
+    /**
+     * @param trackHigh true to track the highest price, false to track the lowest
+     */
+    public MonotonicPriceDeque(boolean trackHigh) {
+        this.trackHigh = trackHigh;
+    }
+
+    public void add(long timestampNanos, double price) {
+        while (head > tail && !dominates(prices[(int) ((head - 1) & mask)], price)) {
+            head--;
+        }
+        // A dominating price with the same time leaves the window together with this one, so it is never the extreme
+        if (head > tail && timestamps[(int) ((head - 1) & mask)] == timestampNanos) {
+            return;
+        }
+        if (head - tail == prices.length) {
+            grow();
+        }
+        int index = (int) (head & mask);
+        timestamps[index] = timestampNanos;
+        prices[index] = price;
+        head++;
+    }
+
+    /**
+     * Drop prices older than the cutoff from the front of the deque
+     */
+    public void removeBefore(long cutoffNanos) {
+        while (head > tail && timestamps[(int) (tail & mask)] < cutoffNanos) {
+            tail++;
+        }
+    }
+
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    /**
+     * @return the window extreme, or NaN if the deque is empty
+     */
+    public double peek() {
+        return isEmpty() ? Double.NaN : prices[(int) (tail & mask)];
+    }
+
+    // Whether an existing price stays relevant once the new price is added
+    private boolean dominates(double existing, double price) {
+        return trackHigh ? existing > price : existing < price;
+    }
+
+    private void grow() {
+        int newCapacity = prices.length << 1;
+        long[] newTimestamps = new long[newCapacity];
+        double[] newPrices = new double[newCapacity];
+        int newMask = newCapacity - 1;
+        for (long sequence = tail; sequence < head; sequence++) {
+            newTimestamps[(int) (sequence & newMask)] = timestamps[(int) (sequence & mask)];
+            newPrices[(int) (sequence & newMask)] = prices[(int) (sequence & mask)];
+        }
+        this.timestamps = newTimestamps;
+        this.prices = newPrices;
+        this.mask = newMask;
+    }
+}
@@ -1,23 +1,99 @@
 package com.bank.util;
 
-import java.util.concurrent.atomic.DoubleAdder;
-import java.util.concurrent.atomic.LongAdder;
-
+/**
+ * Price statistics for a currency pair, both since the pair was first seen and over the
+ * sliding VWAP window.
+ *
+ * Only the thread that owns the currency pair updates the statistics, and every value readers
+ * can see is published through a volatile field after each update.
+ */
 public class PriceStatistics {
-    private double highPrice = Double.MIN_VALUE;
-    private double lowPrice = Double.MAX_VALUE;
-    private DoubleAdder totalPrice = new DoubleAdder();
-    private LongAdder count = new LongAdder();
+    // Writer-only state
+    private double totalPrice;
+    // Published, as the number of prices seen is read for monitoring
+    private volatile long count;
+    private final CompensatedSum windowTotalPrice = new CompensatedSum();
+    private long windowCount;
+    private final MonotonicPriceDeque windowHighs = new MonotonicPriceDeque(true);
+    private final MonotonicPriceDeque windowLows = new MonotonicPriceDeque(false);
+
+    // Published values
+    private volatile double highPrice = Double.NaN;
+    private volatile double lowPrice = Double.NaN;
+    private volatile double averagePrice = Double.NaN;
+    private volatile double windowHighPrice = Double.NaN;
+    private volatile double windowLowPrice = Double.NaN;
+    private volatile double windowAveragePrice = Double.NaN;
 
-    public synchronized void updateStatistics(double price) {
-        if (price > highPrice) {
+    /**
+     * Include a new price in the statistics
+     *
+     * @param timestampNanos the price time in epoch nanoseconds
+     * @param price the price
+     */
+    public void updateStatistics(long timestampNanos, double price) {
+        if (count == 0 || price > highPrice) {
             highPrice = price;
         }
-        if (price < lowPrice) {
+        if (count == 0 || price < lowPrice) {
             lowPrice = price;
         }
-        totalPrice.add(price);
-        count.add(1);    }
+        totalPrice += price;
+        count++;
+        averagePrice = totalPrice / count;
+
+        windowHighs.add(timestampNanos, price);
+        windowLows.add(timestampNanos, price);
+        windowTotalPrice.add(price);
+        windowCount++;
+        publishWindow();
+    }
+
+    /**
+     * Remove a price evicted from the sliding window from the window average
+     */
+    public void removeFromWindow(double price) {
+        removeFromWindow(price, 1);
+    }
+
+    /**
+     * Remove several prices evicted from the sliding window together from the window average
+     *
+     * @param priceSum the sum of the evicted prices
+     * @param count the number of evicted prices
+     */
+    public void removeFromWindow(double priceSum, long count) {
+        windowTotalPrice.add(-priceSum);
+        windowCount -= count;
+    }
+
+    /**
+     * Complete an eviction by dropping prices before the cutoff from the window high and low
+     *
+     * @param cutoffNanos the epoch nanosecond time before which prices left the window
+     */
+    public void removeBeforeCutoff(long cutoffNanos) {
+        windowHighs.removeBefore(cutoffNanos);
+        windowLows.removeBefore(cutoffNanos);
+        if (windowCount <= 0) {
+            windowTotalPrice.reset();
+            windowCount = 0;
+        }
+        publishWindow();
+    }
+
+    private void publishWindow() {
+        windowHighPrice = windowHighs.peek();
+        windowLowPrice = windowLows.peek();
+        windowAveragePrice = windowCount > 0 ? windowTotalPrice.sum() / windowCount : Double.NaN;
+    }
+
+    /**
+     * @return the number of prices seen since the currency pair was first seen
+     */
+    public long getCount() {
+        return count;
+    }
 
     public double getHighPrice() {
         return highPrice;
@@ -28,7 +104,19 @@ public class PriceStatistics {
     }
 
     public double getAveragePrice() {
-        return count.intValue() > 0 ? totalPrice.doubleValue() / count.intValue() : 0;
+        return averagePrice;
+    }
+
+    public double getWindowHighPrice() {
+        return windowHighPrice;
+    }
+
+    public double getWindowLowPrice() {
+        return windowLowPrice;
+    }
+
+    public double getWindowAveragePrice() {
+        return windowAveragePrice;
     }
 
-}
\ No newline at end of file
+}
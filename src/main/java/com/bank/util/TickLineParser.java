@@ -0,0 +1,217 @@
+package com.bank.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses ticks from ASCII lines of the form {@code timestamp,currencyPair,price,volume}, in place.
+ *
+ * The timestamp is either a time of day in any format accepted by DateTimeUtil, e.g. 9:30 AM or
+ * 9:30:15.250 pm, on the parser's day, or a whole number of epoch nanoseconds. The fields of the
+ * last line parsed are held by the parser, and the currency pair is left as a range of the line's
+ * bytes, so parsing allocates nothing.
+ */
+public final class TickLineParser {
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+    // Mantissas below this convert to a double exactly
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private DateTimeUtil.DayStart dayStart;
+    private final AsciiSequence text = new AsciiSequence();
+    private long timestampNanos;
+    private int currencyPairStart;
+    private int currencyPairLength;
+    private double price;
+    private long volume;
+
+    /**
+     * @param dayStart the day that times of day fall on
+     */
+    public TickLineParser(DateTimeUtil.DayStart dayStart) {
+        this.dayStart = dayStart;
+    }
+
+    /**
+     * @param dayStart the day that times of day in the following lines fall on
+     */
+    public void setDayStart(DateTimeUtil.DayStart dayStart) {
+        this.dayStart = dayStart;
+    }
+
+    /**
+     * @return true if the line holds nothing but an optional carriage return
+     */
+    public static boolean isBlank(byte[] bytes, int start, int end) {
+        return end == start || (end == start + 1 && bytes[start] == '\r');
+    }
+
+    /**
+     * Parse a line, excluding its line break
+     *
+     * @return true if the line is a valid tick, whose fields are then available from the getters
+     */
+    public boolean parse(byte[] bytes, int start, int end) {
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        int timestampEnd = indexOf(bytes, ',', start, end);
+        int currencyPairEnd = indexOf(bytes, ',', timestampEnd + 1, end);
+        int priceEnd = indexOf(bytes, ',', currencyPairEnd + 1, end);
+        if (priceEnd >= end) {
+            return false;
+        }
+        timestampNanos = parseTimestamp(bytes, skipSpaces(bytes, start, timestampEnd), timestampEnd);
+        currencyPairStart = skipSpaces(bytes, timestampEnd + 1, currencyPairEnd);
+        currencyPairLength = trimSpaces(bytes, currencyPairStart, currencyPairEnd) - currencyPairStart;
+        price = parseDecimal(bytes, skipSpaces(bytes, currencyPairEnd + 1, priceEnd), trimSpaces(bytes, currencyPairEnd + 1, priceEnd));
+        volume = parseLong(bytes, skipSpaces(bytes, priceEnd + 1, end), trimSpaces(bytes, priceEnd + 1, end));
+        return timestampNanos != DateTimeUtil.INVALID_TIMESTAMP && currencyPairLength > 0 && !Double.isNaN(price) && volume >= 0;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * @return the index of the first byte of the currency pair in the line parsed
+     */
+    public int getCurrencyPairStart() {
+        return currencyPairStart;
+    }
+
+    public int getCurrencyPairLength() {
+        return currencyPairLength;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public long getVolume() {
+        return volume;
+    }
+
+    private long parseTimestamp(byte[] bytes, int start, int end) {
+        long epochNanos = parseLong(bytes, start, trimSpaces(bytes, start, end));
+        if (epochNanos >= 0) {
+            return epochNanos;
+        }
+        text.bytes = bytes;
+        long timeOfDayNanos = DateTimeUtil.parseTimeOfDayNanos(text, start, end);
+        return timeOfDayNanos == DateTimeUtil.INVALID_TIMESTAMP ? timeOfDayNanos : dayStart.toEpochNanos(timeOfDayNanos);
+    }
+
+    /**
+     * @return the non-negative whole number, or -1 if the text is not one
+     */
+    public static long parseLong(byte[] bytes, int start, int end) {
+        if (start == end || end - start > 19) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Parse a decimal number, exactly rounded. Plain decimals are parsed in place, anything else
+     * such as an exponent falls back to Double.parseDouble.
+     *
+     * @return the number, or NaN if the text is not a number
+     */
+    public static double parseDecimal(byte[] bytes, int start, int end) {
+        int position = start;
+        boolean negative = position < end && bytes[position] == '-';
+        if (negative || (position < end && bytes[position] == '+')) {
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; position < end; position++) {
+            byte b = bytes[position];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                if (++digits > 18) {
+                    return parseDecimalSlowly(bytes, start, end);
+                }
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (b == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                return parseDecimalSlowly(bytes, start, end);
+            }
+        }
+        if (digits == 0 || mantissa >= MAX_EXACT_MANTISSA) {
+            return digits == 0 ? Double.NaN : parseDecimalSlowly(bytes, start, end);
+        }
+        double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private static double parseDecimalSlowly(byte[] bytes, int start, int end) {
+        try {
+            return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static int indexOf(byte[] bytes, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == c) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static int skipSpaces(byte[] bytes, int start, int end) {
+        while (start < end && bytes[start] == ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimSpaces(byte[] bytes, int start, int end) {
+        while (end > start && bytes[end - 1] == ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Read-only view of ASCII bytes as characters, so the date parser can work on the line in place
+     */
+    private static final class AsciiSequence implements CharSequence {
+        private byte[] bytes;
+
+        @Override
+        public int length() {
+            return bytes.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+    }
+}
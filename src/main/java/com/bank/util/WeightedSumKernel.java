@@ -0,0 +1,73 @@
+package com.bank.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sums price * volume and volume over columns of ticks, used to recompute a VWAP exactly from its window
+ * rather than from the running sums. Where the JDK's Vector API is available (JDK 17 and later, started with
+ * {@code --add-modules jdk.incubator.vector}) the columns are summed several ticks per instruction,
+ * otherwise a tick at a time. Both keep the weighted price sum compensated, so the result is as exact as
+ * a CompensatedSum over the same ticks whichever is used.
+ */
+public abstract class WeightedSumKernel {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WeightedSumKernel.class);
+    private static final WeightedSumKernel SCALAR = new ScalarWeightedSumKernel();
+    private static final WeightedSumKernel BEST = load();
+
+    /**
+     * @return the fastest kernel available
+     */
+    public static WeightedSumKernel get() {
+        return BEST;
+    }
+
+    /**
+     * @return the kernel summing a tick at a time, available on every JDK
+     */
+    public static WeightedSumKernel scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * The Vector API kernel is built from a separate source root on JDK 17 and later, so it is looked up by name
+     */
+    private static WeightedSumKernel load() {
+        try {
+            WeightedSumKernel kernel = (WeightedSumKernel) Class.forName("com.bank.util.VectorWeightedSumKernel")
+                    .getDeclaredConstructor().newInstance();
+            LOGGER.info("Window re-sums use the {} kernel", kernel.getName());
+            return kernel;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            LOGGER.debug("Vector API kernel is not available, window re-sums are scalar: {}", e.toString());
+            return SCALAR;
+        }
+    }
+
+    /**
+     * Add price * volume of the ticks from index {@code from} up to {@code to} to the weighted price sum
+     *
+     * @param weightedPrices the sum to add the weighted prices to
+     * @return the sum of the volumes
+     */
+    public abstract long sum(double[] prices, long[] volumes, int from, int to, CompensatedSum weightedPrices);
+
+    public abstract String getName();
+
+    private static final class ScalarWeightedSumKernel extends WeightedSumKernel {
+        @Override
+        public long sum(double[] prices, long[] volumes, int from, int to, CompensatedSum weightedPrices) {
+            long volume = 0;
+            for (int i = from; i < to; i++) {
+                weightedPrices.add(prices[i] * volumes[i]);
+                volume += volumes[i];
+            }
+            return volume;
+        }
+
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+    }
+}
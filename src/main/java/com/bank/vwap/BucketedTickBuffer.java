@@ -0,0 +1,179 @@
+package com.bank.vwap;
+
+/**
+ * Tick buffer that pre-aggregates ticks into fixed-length time buckets.
+ * Each entry holds one bucket: its start time, VWAP, volume, price count, price sum and price range.
+ * A window therefore holds at most one entry per bucket whatever the tick rate, and eviction
+ * rolls whole buckets. Entries are only evicted once the entire bucket is before the cutoff,
+ * so a window can include up to one bucket of prices older than the cutoff.
+ *
+ * Late ticks are added to the bucket they fall in, which is inserted if it does not exist yet.
+ */
+final class BucketedTickBuffer extends TickBuffer {
+    private final long bucketNanos;
+    private long[] bucketStarts;
+    private double[] weightedPrices;
+    private long[] volumes;
+    private long[] counts;
+    private double[] priceSums;
+    private double[] lowPrices;
+    private double[] highPrices;
+
+    /**
+     * @param bucketNanos the length of each bucket
+     * @param windowNanos the longest window held, used to size the buffer so it never grows
+     */
+    BucketedTickBuffer(long bucketNanos, long windowNanos) {
+        super((int) Math.min(windowNanos / bucketNanos + 2, MAX_INITIAL_CAPACITY));
+        this.bucketNanos = bucketNanos;
+        allocate(capacity);
+    }
+
+    private void allocate(int newCapacity) {
+        bucketStarts = new long[newCapacity];
+        weightedPrices = new double[newCapacity];
+        volumes = new long[newCapacity];
+        counts = new long[newCapacity];
+        priceSums = new double[newCapacity];
+        lowPrices = new double[newCapacity];
+        highPrices = new double[newCapacity];
+    }
+
+    @Override
+    public void append(long timestampNanos, double price, long volume) {
+        long bucketStart = timestampNanos - Math.floorMod(timestampNanos, bucketNanos);
+        if (!isEmpty()) {
+            int newest = (int) ((head - 1) & mask);
+            if (bucketStart <= bucketStarts[newest]) {
+                weightedPrices[newest] += price * volume;
+                volumes[newest] += volume;
+                counts[newest]++;
+                priceSums[newest] += price;
+                lowPrices[newest] = Math.min(lowPrices[newest], price);
+                highPrices[newest] = Math.max(highPrices[newest], price);
+                return;
+            }
+        }
+        super.append(bucketStart, price, volume);
+    }
+
+    /**
+     * Add a tick older than the newest bucket to its own bucket
+     *
+     * @return the sequence of the bucket holding the tick
+     */
+    @Override
+    public long insert(long timestampNanos, double price, long volume) {
+        long bucketStart = timestampNanos - Math.floorMod(timestampNanos, bucketNanos);
+        long sequence = head - 1;
+        while (sequence >= tail && bucketStarts[(int) (sequence & mask)] > bucketStart) {
+            sequence--;
+        }
+        if (sequence < tail || bucketStarts[(int) (sequence & mask)] != bucketStart) {
+            return super.insert(bucketStart, price, volume);
+        }
+        int index = (int) (sequence & mask);
+        beginRewrite();
+        weightedPrices[index] += price * volume;
+        volumes[index] += volume;
+        counts[index]++;
+        priceSums[index] += price;
+        lowPrices[index] = Math.min(lowPrices[index], price);
+        highPrices[index] = Math.max(highPrices[index], price);
+        endRewrite();
+        return sequence;
+    }
+
+    @Override
+    public long alignCutoff(long cutoffNanos) {
+        return cutoffNanos - Math.floorMod(cutoffNanos, bucketNanos);
+    }
+
+    @Override
+    public long expiryAt(long sequence, long windowNanos) {
+        // The whole bucket must be before the cutoff
+        return timestampAt(sequence) + bucketNanos + windowNanos;
+    }
+
+    @Override
+    public long countAt(long sequence) {
+        return counts[(int) (sequence & mask)];
+    }
+
+    @Override
+    public double priceSumAt(long sequence) {
+        return priceSums[(int) (sequence & mask)];
+    }
+
+    double lowPriceAt(long sequence) {
+        return lowPrices[(int) (sequence & mask)];
+    }
+
+    double highPriceAt(long sequence) {
+        return highPrices[(int) (sequence & mask)];
+    }
+
+    @Override
+    protected void grow(int newCapacity) {
+        long[] oldBucketStarts = bucketStarts;
+        double[] oldWeightedPrices = weightedPrices;
+        long[] oldVolumes = volumes;
+        long[] oldCounts = counts;
+        double[] oldPriceSums = priceSums;
+        double[] oldLowPrices = lowPrices;
+        double[] oldHighPrices = highPrices;
+        allocate(newCapacity);
+        int newMask = newCapacity - 1;
+        for (long sequence = tail; sequence < head; sequence++) {
+            int from = (int) (sequence & mask);
+            int to = (int) (sequence & newMask);
+            bucketStarts[to] = oldBucketStarts[from];
+            weightedPrices[to] = oldWeightedPrices[from];
+            volumes[to] = oldVolumes[from];
+            counts[to] = oldCounts[from];
+            priceSums[to] = oldPriceSums[from];
+            lowPrices[to] = oldLowPrices[from];
+            highPrices[to] = oldHighPrices[from];
+        }
+    }
+
+    @Override
+    protected void put(int index, long timestampNanos, double price, long volume) {
+        bucketStarts[index] = timestampNanos;
+        weightedPrices[index] = price * volume;
+        volumes[index] = volume;
+        counts[index] = 1;
+        priceSums[index] = price;
+        lowPrices[index] = price;
+        highPrices[index] = price;
+    }
+
+    @Override
+    protected void move(int fromIndex, int toIndex) {
+        bucketStarts[toIndex] = bucketStarts[fromIndex];
+        weightedPrices[toIndex] = weightedPrices[fromIndex];
+        volumes[toIndex] = volumes[fromIndex];
+        counts[toIndex] = counts[fromIndex];
+        priceSums[toIndex] = priceSums[fromIndex];
+        lowPrices[toIndex] = lowPrices[fromIndex];
+        highPrices[toIndex] = highPrices[fromIndex];
+    }
+
+    @Override
+    protected long timestampAtIndex(int index) {
+        return bucketStarts[index];
+    }
+
+    /**
+     * @return the VWAP of the bucket, or the average price if the bucket has no volume
+     */
+    @Override
+    protected double priceAtIndex(int index) {
+        return volumes[index] != 0 ? weightedPrices[index] / volumes[index] : priceSums[index] / counts[index];
+    }
+
+    @Override
+    protected long volumeAtIndex(int index) {
+        return volumes[index];
+    }
+}
@@ -0,0 +1,211 @@
+package com.bank.vwap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ingestion stage that keeps at most the latest N unconsumed updates of each currency pair.
+ * Each currency pair has a small ring of pending ticks; once it is full, a new tick replaces the
+ * oldest one, which is counted as dropped. Currency pairs with pending ticks are queued for the
+ * consumer at most once, so memory is bounded by the number of currency pairs whatever the
+ * publication rate, and a stalled consumer loses intermediate ticks rather than the latest prices.
+ */
+final class ConflatingIngestionStage implements PriceIngestionStage {
+    // Marker queued to wake an idle consumer
+    private static final PendingTicks WAKE_UP = new PendingTicks(CurrencyPairRegistry.UNKNOWN, 0);
+
+    // Maximum number of currency pairs drained at once
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    private final int depth;
+    // Pending ticks by currency pair id, copied on write as currency pairs are added
+    private volatile PendingTicks[] pendingTicks = new PendingTicks[0];
+    private volatile int currencyPairCount;
+    private final BlockingQueue<PendingTicks> readyCurrencyPairs = new LinkedBlockingQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final IngestionCounters counters = new IngestionCounters();
+    // Reused by the consumer thread for every drain
+    private final List<PendingTicks> drainBuffer = new ArrayList<>(MAX_BATCH_SIZE);
+    private final long[] drainTimestamps;
+    private final double[] drainPrices;
+    private final long[] drainVolumes;
+    private final long[] drainEnqueuedNanos;
+
+    /**
+     * @param depth the number of unconsumed ticks kept per currency pair
+     */
+    ConflatingIngestionStage(int depth) {
+        this.depth = depth;
+        this.drainTimestamps = new long[depth];
+        this.drainPrices = new double[depth];
+        this.drainVolumes = new long[depth];
+        this.drainEnqueuedNanos = new long[depth];
+    }
+
+    @Override
+    public boolean publish(CurrencyPriceData currencyPriceData) {
+        return publish(currencyPriceData.getCurrencyPairId(), currencyPriceData.getTimestampNanos(),
+                currencyPriceData.getPrice(), currencyPriceData.getVolume());
+    }
+
+    @Override
+    public boolean publish(int currencyPairId, long timestampNanos, double price, long volume) {
+        PendingTicks[] current = pendingTicks;
+        PendingTicks ticks = currencyPairId < current.length ? current[currencyPairId] : null;
+        if (ticks == null) {
+            ticks = addPendingTicks(currencyPairId);
+        }
+        long enqueuedNanos = System.nanoTime();
+        boolean ready;
+        synchronized (ticks) {
+            if (ticks.add(timestampNanos, price, volume, enqueuedNanos)) {
+                size.incrementAndGet();
+            } else {
+                counters.recordDropped();
+            }
+            ready = !ticks.queued;
+            ticks.queued = true;
+        }
+        if (ready) {
+            readyCurrencyPairs.offer(ticks);
+        }
+        return true;
+    }
+
+    private synchronized PendingTicks addPendingTicks(int currencyPairId) {
+        PendingTicks[] current = pendingTicks;
+        if (currencyPairId < current.length && current[currencyPairId] != null) {
+            return current[currencyPairId];
+        }
+        PendingTicks[] added = Arrays.copyOf(current, Math.max(current.length, currencyPairId + 1));
+        PendingTicks ticks = new PendingTicks(currencyPairId, depth);
+        added[currencyPairId] = ticks;
+        pendingTicks = added;
+        currencyPairCount++;
+        return ticks;
+    }
+
+    @Override
+    public int publishBatch(List<? extends CurrencyPriceData> batch) {
+        for (CurrencyPriceData currencyPriceData : batch) {
+            publish(currencyPriceData);
+        }
+        return batch.size();
+    }
+
+    @Override
+    public int publishBatch(int[] currencyPairIds, long[] timestampNanos, double[] prices, long[] volumes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            publish(currencyPairIds[i], timestampNanos[i], prices[i], volumes[i]);
+        }
+        return to - from;
+    }
+
+    @Override
+    public int drain(PriceUpdateHandler handler) throws InterruptedException {
+        drainBuffer.add(readyCurrencyPairs.take());
+        counters.recordDepth(size.get());
+        readyCurrencyPairs.drainTo(drainBuffer, MAX_BATCH_SIZE - 1);
+        int handled = 0;
+        try {
+            for (PendingTicks ticks : drainBuffer) {
+                if (ticks == WAKE_UP) {
+                    continue;
+                }
+                int count;
+                // Copy the ticks out so producers are not held up by the handler
+                synchronized (ticks) {
+                    count = ticks.drainTo(drainTimestamps, drainPrices, drainVolumes, drainEnqueuedNanos);
+                    ticks.queued = false;
+                }
+                size.addAndGet(-count);
+                for (int i = 0; i < count; i++) {
+                    handler.onPriceUpdate(ticks.currencyPairId, drainTimestamps[i], drainPrices[i], drainVolumes[i], drainEnqueuedNanos[i]);
+                }
+                handled += count;
+            }
+        } finally {
+            drainBuffer.clear();
+        }
+        return handled;
+    }
+
+    @Override
+    public void wakeUp() {
+        readyCurrencyPairs.offer(WAKE_UP);
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public int capacity() {
+        return depth * Math.max(1, currencyPairCount);
+    }
+
+    @Override
+    public IngestionCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * Ring of the latest unconsumed ticks of a currency pair, guarded by its own monitor
+     */
+    private static final class PendingTicks {
+        private final int currencyPairId;
+        private final long[] timestamps;
+        private final double[] prices;
+        private final long[] volumes;
+        private final long[] enqueuedNanos;
+        private int first;
+        private int count;
+        // Whether the currency pair is queued for the consumer
+        private boolean queued;
+
+        private PendingTicks(int currencyPairId, int depth) {
+            this.currencyPairId = currencyPairId;
+            this.timestamps = new long[depth];
+            this.prices = new double[depth];
+            this.volumes = new long[depth];
+            this.enqueuedNanos = new long[depth];
+        }
+
+        /**
+         * @return true if the tick was added, false if it replaced the oldest pending tick
+         */
+        boolean add(long timestampNanos, double price, long volume, long enqueuedNanos) {
+            boolean replaced = count == timestamps.length;
+            if (replaced) {
+                first = (first + 1) % timestamps.length;
+                count--;
+            }
+            int index = (first + count) % timestamps.length;
+            timestamps[index] = timestampNanos;
+            prices[index] = price;
+            volumes[index] = volume;
+            this.enqueuedNanos[index] = enqueuedNanos;
+            count++;
+            return !replaced;
+        }
+
+        int drainTo(long[] drainTimestamps, double[] drainPrices, long[] drainVolumes, long[] drainEnqueuedNanos) {
+            int drained = count;
+            for (int i = 0; i < drained; i++) {
+                int index = (first + i) % timestamps.length;
+                drainTimestamps[i] = timestamps[index];
+                drainPrices[i] = prices[index];
+                drainVolumes[i] = volumes[index];
+                drainEnqueuedNanos[i] = enqueuedNanos[index];
+            }
+            first = 0;
+            count = 0;
+            return drained;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.bank.vwap;
+
+/**
+ * The derived VWAP of a cross rate, recomputed from its legs' VWAPs when either leg changes.
+ * Both legs are owned by the same shard, whose thread is the only one to update the cross.
+ */
+final class CrossRate {
+    private final CrossRateDefinition definition;
+    private final int firstLegId;
+    private final int secondLegId;
+    private final long firstLegMaxAgeNanos;
+    private final long secondLegMaxAgeNanos;
+    private double vwap = Double.NaN;
+    private int[] windowSeconds = new int[0];
+    private double[] windowVwaps = new double[0];
+    private long lastUpdateNanos;
+    // Whether the owning shard is to recompute the cross before its next snapshot
+    private boolean pending;
+
+    CrossRate(CrossRateDefinition definition, int firstLegId, int secondLegId, long firstLegMaxAgeNanos, long secondLegMaxAgeNanos) {
+        this.definition = definition;
+        this.firstLegId = firstLegId;
+        this.secondLegId = secondLegId;
+        this.firstLegMaxAgeNanos = firstLegMaxAgeNanos;
+        this.secondLegMaxAgeNanos = secondLegMaxAgeNanos;
+    }
+
+    String getCurrencyPair() {
+        return definition.getCurrencyPair();
+    }
+
+    int getFirstLegId() {
+        return firstLegId;
+    }
+
+    int getSecondLegId() {
+        return secondLegId;
+    }
+
+    boolean isPending() {
+        return pending;
+    }
+
+    void setPending(boolean pending) {
+        this.pending = pending;
+    }
+
+    /**
+     * Derive the cross from the current windows of its legs
+     *
+     * @param first the window of the first leg, null if it has no prices
+     * @param second the window of the second leg, null if it has no prices
+     * @param eventTimeNanos the shard's current event time, which the legs' ages are measured from
+     * @return true if the cross was derived, false if a leg has no prices or its latest price is older than the leg's limit
+     */
+    boolean update(CurrencyData first, CurrencyData second, long eventTimeNanos) {
+        if (first == null || second == null
+                || eventTimeNanos - first.getLastUpdateNanos() > firstLegMaxAgeNanos
+                || eventTimeNanos - second.getLastUpdateNanos() > secondLegMaxAgeNanos) {
+            return false;
+        }
+        vwap = rate(first.getVwap(), definition.isFirstLegInverted()) * rate(second.getVwap(), definition.isSecondLegInverted());
+        int windowCount = Math.min(first.getWindowCount(), second.getWindowCount());
+        if (windowVwaps.length != windowCount) {
+            windowSeconds = new int[windowCount];
+            windowVwaps = new double[windowCount];
+        }
+        for (int i = 0; i < windowCount; i++) {
+            windowSeconds[i] = first.getWindowSeconds(i);
+            windowVwaps[i] = rate(first.getWindowVwap(i), definition.isFirstLegInverted())
+                    * rate(second.getWindowVwap(i), definition.isSecondLegInverted());
+        }
+        lastUpdateNanos = Math.max(first.getLastUpdateNanos(), second.getLastUpdateNanos());
+        return vwap > 0;
+    }
+
+    private static double rate(double vwap, boolean inverted) {
+        return inverted ? 1.0 / vwap : vwap;
+    }
+
+    CurrencyPairSnapshot toSnapshot() {
+        return new CurrencyPairSnapshot(definition.getCurrencyPair(), vwap, 0, 0, lastUpdateNanos,
+                windowSeconds.clone(), windowVwaps.clone(), true);
+    }
+}
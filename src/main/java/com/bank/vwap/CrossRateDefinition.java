@@ -0,0 +1,111 @@
+package com.bank.vwap;
+
+/**
+ * A cross rate derived from two directly priced currency pairs sharing a currency, e.g. AUD/JPY from
+ * AUD/USD and USD/JPY, or EUR/GBP from EUR/USD and GBP/USD. Legs quoted the other way round are inverted,
+ * so the cross is the first leg's rate from the cross's base currency to the shared currency times the
+ * second leg's rate from the shared currency to the cross's quote currency.
+ */
+public final class CrossRateDefinition {
+    private final String currencyPair;
+    private final String firstLeg;
+    private final String secondLeg;
+    private final boolean firstLegInverted;
+    private final boolean secondLegInverted;
+
+    /**
+     * @param currencyPair the cross, e.g. AUD/JPY
+     * @param firstLeg one leg, e.g. AUD/USD
+     * @param secondLeg the other leg, e.g. USD/JPY
+     * @throws IllegalArgumentException if a pair is not of the form BASE/QUOTE or the legs do not connect the cross's currencies
+     */
+    public CrossRateDefinition(String currencyPair, String firstLeg, String secondLeg) {
+        String[] cross = currencies(currencyPair);
+        String[] first = currencies(firstLeg);
+        String[] second = currencies(secondLeg);
+        // The first leg is the one holding the cross's base currency
+        if (!contains(first, cross[0])) {
+            String[] swapped = first;
+            first = second;
+            second = swapped;
+            String swappedLeg = firstLeg;
+            firstLeg = secondLeg;
+            secondLeg = swappedLeg;
+        }
+        if (!contains(first, cross[0]) || !contains(second, cross[1])) {
+            throw new IllegalArgumentException("Legs " + firstLeg + " and " + secondLeg + " do not connect the currencies of cross rate " + currencyPair);
+        }
+        String shared = first[0].equals(cross[0]) ? first[1] : first[0];
+        if (!contains(second, shared) || shared.equals(cross[1])) {
+            throw new IllegalArgumentException("Legs " + firstLeg + " and " + secondLeg + " do not share a currency other than those of cross rate " + currencyPair);
+        }
+        this.currencyPair = currencyPair;
+        this.firstLeg = firstLeg;
+        this.secondLeg = secondLeg;
+        this.firstLegInverted = !first[0].equals(cross[0]);
+        this.secondLegInverted = !second[0].equals(shared);
+    }
+
+    /**
+     * Parse a cross rate of the form {@code CROSS=LEG,LEG}, e.g. {@code AUD/JPY=AUD/USD,USD/JPY}
+     *
+     * @throws IllegalArgumentException if the definition is malformed
+     */
+    public static CrossRateDefinition parse(String definition) {
+        String[] parts = definition.split("=");
+        String[] legs = parts.length == 2 ? parts[1].split(",") : new String[0];
+        if (legs.length != 2) {
+            throw new IllegalArgumentException("Cross rate must be of the form CROSS=LEG,LEG: " + definition);
+        }
+        return new CrossRateDefinition(parts[0].trim(), legs[0].trim(), legs[1].trim());
+    }
+
+    private static String[] currencies(String currencyPair) {
+        String[] currencies = currencyPair == null ? new String[0] : currencyPair.split("/");
+        if (currencies.length != 2 || currencies[0].isEmpty() || currencies[1].isEmpty() || currencies[0].equals(currencies[1])) {
+            throw new IllegalArgumentException("Currency pair must be of the form BASE/QUOTE: " + currencyPair);
+        }
+        return currencies;
+    }
+
+    private static boolean contains(String[] currencies, String currency) {
+        return currencies[0].equals(currency) || currencies[1].equals(currency);
+    }
+
+    public String getCurrencyPair() {
+        return currencyPair;
+    }
+
+    /**
+     * @return the leg holding the cross's base currency
+     */
+    public String getFirstLeg() {
+        return firstLeg;
+    }
+
+    /**
+     * @return the leg holding the cross's quote currency
+     */
+    public String getSecondLeg() {
+        return secondLeg;
+    }
+
+    /**
+     * @return true if the first leg is quoted in the cross's base currency, e.g. USD/AUD for AUD/JPY
+     */
+    public boolean isFirstLegInverted() {
+        return firstLegInverted;
+    }
+
+    /**
+     * @return true if the second leg is quoted in the shared currency, e.g. JPY/USD for AUD/JPY
+     */
+    public boolean isSecondLegInverted() {
+        return secondLegInverted;
+    }
+
+    @Override
+    public String toString() {
+        return currencyPair + "=" + firstLeg + "," + secondLeg;
+    }
+}
@@ -0,0 +1,105 @@
+package com.bank.vwap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The declared cross rates of a calculator, indexed by the currency pair ids of their legs.
+ * A changed leg only leads to the crosses depending on it being recomputed, however many crosses are declared.
+ *
+ * Legs are registered when the graph is built, so they hold the lowest currency pair ids, and legs connected
+ * through shared crosses are assigned the same shard, which derives the cross.
+ */
+final class CrossRateGraph {
+    private static final CrossRate[] NO_CROSS_RATES = new CrossRate[0];
+
+    // The crosses depending on each leg, indexed by currency pair id
+    private final CrossRate[][] crossRatesByLegId;
+    // The shard each leg is assigned to, indexed by currency pair id
+    private final int[] legShards;
+
+    CrossRateGraph(VWAPCalculatorConfig config, CurrencyPairRegistry registry, int shardCount) {
+        List<CrossRateDefinition> definitions = config.getCrossRates();
+        Set<String> crossPairs = new HashSet<>();
+        for (CrossRateDefinition definition : definitions) {
+            crossPairs.add(definition.getCurrencyPair());
+        }
+        List<CrossRate> crossRates = new ArrayList<>();
+        for (CrossRateDefinition definition : definitions) {
+            if (crossPairs.contains(definition.getFirstLeg()) || crossPairs.contains(definition.getSecondLeg())) {
+                throw new IllegalArgumentException("Cross rate legs must be priced directly, not derived: " + definition);
+            }
+            crossRates.add(new CrossRate(definition,
+                    registry.register(definition.getFirstLeg()), registry.register(definition.getSecondLeg()),
+                    TimeUnit.MILLISECONDS.toNanos(config.getCrossLegMaxAgeMillis(definition.getFirstLeg())),
+                    TimeUnit.MILLISECONDS.toNanos(config.getCrossLegMaxAgeMillis(definition.getSecondLeg()))));
+        }
+
+        int legCount = 0;
+        for (CrossRate crossRate : crossRates) {
+            legCount = Math.max(legCount, Math.max(crossRate.getFirstLegId(), crossRate.getSecondLegId()) + 1);
+        }
+        crossRatesByLegId = new CrossRate[legCount][];
+        Arrays.fill(crossRatesByLegId, NO_CROSS_RATES);
+        // Union the legs of each cross, so each connected group of legs shares a shard
+        int[] groups = new int[legCount];
+        for (int i = 0; i < legCount; i++) {
+            groups[i] = i;
+        }
+        for (CrossRate crossRate : crossRates) {
+            addDependent(crossRate.getFirstLegId(), crossRate);
+            addDependent(crossRate.getSecondLegId(), crossRate);
+            groups[group(groups, crossRate.getFirstLegId())] = group(groups, crossRate.getSecondLegId());
+        }
+        legShards = new int[legCount];
+        int[] groupShards = new int[legCount];
+        Arrays.fill(groupShards, -1);
+        int nextShard = 0;
+        for (int i = 0; i < legCount; i++) {
+            int group = group(groups, i);
+            if (groupShards[group] < 0) {
+                groupShards[group] = nextShard++ % shardCount;
+            }
+            legShards[i] = groupShards[group];
+        }
+    }
+
+    private void addDependent(int legId, CrossRate crossRate) {
+        CrossRate[] dependents = Arrays.copyOf(crossRatesByLegId[legId], crossRatesByLegId[legId].length + 1);
+        dependents[dependents.length - 1] = crossRate;
+        crossRatesByLegId[legId] = dependents;
+    }
+
+    private static int group(int[] groups, int legId) {
+        while (groups[legId] != legId) {
+            groups[legId] = groups[groups[legId]];
+            legId = groups[legId];
+        }
+        return legId;
+    }
+
+    /**
+     * @return the crosses depending on the currency pair, empty if it is not a leg
+     */
+    CrossRate[] getCrossRates(int currencyPairId) {
+        return currencyPairId >= 0 && currencyPairId < crossRatesByLegId.length ? crossRatesByLegId[currencyPairId] : NO_CROSS_RATES;
+    }
+
+    /**
+     * @return the number of currency pair ids, from 0, that are legs assigned to a shard
+     */
+    int getLegCount() {
+        return legShards.length;
+    }
+
+    /**
+     * @return the shard assigned to a leg, for ids below {@link #getLegCount()}
+     */
+    int getShard(int legId) {
+        return legShards[legId];
+    }
+}
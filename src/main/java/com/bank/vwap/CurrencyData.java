@@ -1,39 +1,170 @@
 package com.bank.vwap;
 
-import java.time.Instant;
+import com.bank.util.CompensatedSum;
+import com.bank.util.PriceStatistics;
+
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.DoubleAdder;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Sliding window of prices for a single currency pair.
+ * Each instance is written by a single thread, the consumer of the shard that owns the pair,
+ * so the window is not locked. Only the VWAP is safe to read from other threads; the remaining
+ * accessors must be used from the owning thread or while the calculator is idle.
+ */
 public class CurrencyData {
     // Fields are grouped for better cache locality
-    
+
     // Frequently accessed calculation fields
     private volatile double vwap;
-    private final DoubleAdder totalWeightedPrice;
+    // Compensated, so evicting prices does not accumulate rounding drift over a trading day
+    private final CompensatedSum totalWeightedPrice;
+    // Only written by the owning thread, published for readers of the volume
     private final AtomicLong totalVolume;
-    
-    // Collection and synchronization
-    private final Deque<CurrencyPriceData> priceStream;
-    private final ReadWriteLock lock;
-    
+
+    // Columnar tick window
+    private final int currencyPairId;
+    private final String currencyPair;
+    private final TickBuffer priceStream;
+    private final PriceStatistics statistics;
+    // Windows shorter than the cutoff, sharing the tick buffer
+    private final VWAPWindow[] windows;
+    private long lastUpdateNanos;
+    // Time before which prices were last evicted from the window
+    private long evictedBeforeNanos = Long.MIN_VALUE;
+    // Prices within the window, more than the number of entries when ticks are bucketed
+    private long tickCount;
+    // Running sum captured for verification on another thread
+    private volatile SumCheckpoint checkpoint;
+    // Whether the owning shard has changes to publish in the next snapshot
+    private boolean snapshotPending;
+    // Whether prices were appended in the batch the owning shard is draining
+    private boolean batchPending;
+    // Links and schedule in the owning shard's ExpiryWheel
+    CurrencyData expiryNext;
+    CurrencyData expiryPrev;
+    int expirySlot = ExpiryWheel.NOT_SCHEDULED;
+    long expiryNanos = Long.MAX_VALUE;
+
     // Cache line padding to prevent false sharing
     private long p1, p2, p3, p4, p5, p6, p7;
-    
-    // Initial capacity for ArrayDeque to reduce resizing
+
+    // Initial capacity for the tick buffer to reduce resizing
     private static final int INITIAL_CAPACITY = 1024;
+    // Returned by resum when the ticks changed while reading
+    private static final long INVALID_SUM = Long.MIN_VALUE;
+
+    public CurrencyData(String currencyPair) {
+        this(currencyPair, INITIAL_CAPACITY, false);
+    }
+
+    /**
+     * @param currencyPair the currency pair held by this window
+     * @param initialCapacity the number of ticks to size the window for
+     * @param offHeap true to hold the ticks in a direct buffer outside the Java heap
+     */
+    public CurrencyData(String currencyPair, int initialCapacity, boolean offHeap) {
+        this(currencyPair, initialCapacity, offHeap, new PriceStatistics());
+    }
+
+    /**
+     * @param currencyPair the currency pair held by this window
+     * @param initialCapacity the number of ticks to size the window for
+     * @param offHeap true to hold the ticks in a direct buffer outside the Java heap
+     * @param statistics the pair's statistics, updated as prices enter and leave the window
+     */
+    public CurrencyData(String currencyPair, int initialCapacity, boolean offHeap, PriceStatistics statistics) {
+        this(currencyPair, initialCapacity, offHeap, statistics, new int[0]);
+    }
+
+    /**
+     * @param currencyPair the currency pair held by this window
+     * @param initialCapacity the number of ticks to size the window for
+     * @param offHeap true to hold the ticks in a direct buffer outside the Java heap
+     * @param statistics the pair's statistics, updated as prices enter and leave the window
+     * @param windowSeconds lengths of additional VWAP windows, each shorter than the cutoff
+     */
+    public CurrencyData(String currencyPair, int initialCapacity, boolean offHeap, PriceStatistics statistics, int[] windowSeconds) {
+        // Use a primitive ring buffer to avoid allocating objects per tick
+        this(currencyPair, TickBuffer.create(initialCapacity, offHeap), statistics, windowSeconds);
+    }
 
-    public CurrencyData() {
-        // Use ArrayDeque for better memory locality and cache performance
-        this.priceStream = new ArrayDeque<>(INITIAL_CAPACITY);
-        this.totalWeightedPrice = new DoubleAdder();
+    /**
+     * @param currencyPair the currency pair held by this window
+     * @param priceStream the empty tick buffer to hold the window in
+     * @param statistics the pair's statistics, updated as prices enter and leave the window
+     * @param windowSeconds lengths of additional VWAP windows, each shorter than the cutoff
+     */
+    public CurrencyData(String currencyPair, TickBuffer priceStream, PriceStatistics statistics, int[] windowSeconds) {
+        this(CurrencyPairRegistry.UNKNOWN, currencyPair, priceStream, statistics, windowSeconds);
+    }
+
+    /**
+     * @param currencyPairId the id of the currency pair in the calculator's registry
+     * @param currencyPair the currency pair held by this window
+     * @param priceStream the empty tick buffer to hold the window in
+     * @param statistics the pair's statistics, updated as prices enter and leave the window
+     * @param windowSeconds lengths of additional VWAP windows, each shorter than the cutoff
+     */
+    CurrencyData(int currencyPairId, String currencyPair, TickBuffer priceStream, PriceStatistics statistics, int[] windowSeconds) {
+        this.currencyPairId = currencyPairId;
+        this.currencyPair = currencyPair;
+        this.priceStream = priceStream;
+        this.statistics = statistics;
+        this.windows = new VWAPWindow[windowSeconds.length];
+        for (int i = 0; i < windowSeconds.length; i++) {
+            windows[i] = new VWAPWindow(windowSeconds[i], priceStream.tail());
+        }
+        this.totalWeightedPrice = new CompensatedSum();
         this.totalVolume = new AtomicLong(0);
         this.vwap = 0.0;
-        this.lock = new ReentrantReadWriteLock();
+    }
+
+    public String getCurrencyPair() {
+        return currencyPair;
+    }
+
+    /**
+     * @return the id of the currency pair in the calculator's registry, {@link CurrencyPairRegistry#UNKNOWN} if not registered
+     */
+    public int getCurrencyPairId() {
+        return currencyPairId;
+    }
+
+    public PriceStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return the time of the latest price in epoch nanoseconds
+     */
+    public long getLastUpdateNanos() {
+        return lastUpdateNanos;
+    }
+
+    /**
+     * @return the time before which prices were last evicted from the window, prices before it are no longer within the window
+     */
+    public long getEvictedBeforeNanos() {
+        return evictedBeforeNanos;
+    }
+
+    boolean isSnapshotPending() {
+        return snapshotPending;
+    }
+
+    void setSnapshotPending(boolean snapshotPending) {
+        this.snapshotPending = snapshotPending;
+    }
+
+    boolean isBatchPending() {
+        return batchPending;
+    }
+
+    void setBatchPending(boolean batchPending) {
+        this.batchPending = batchPending;
     }
 
     public double getVwap() {
@@ -45,104 +176,346 @@ public class CurrencyData {
     }
 
     /**
-     * Thread-safe access to the price stream.
-     * For compatibility with existing code, but returns a copy for safety.
+     * The VWAP over one of the additional windows, the VWAP over the cutoff is {@link #getVwap()}.
+     * Safe to read from any thread.
+     *
+     * @param windowSeconds the window length
+     * @return the VWAP over the window, NaN if no prices are within it or the window is not configured
+     */
+    public double getVwap(int windowSeconds) {
+        for (VWAPWindow window : windows) {
+            if (window.getSeconds() == windowSeconds) {
+                return window.getVwap();
+            }
+        }
+        return Double.NaN;
+    }
+
+    int getWindowCount() {
+        return windows.length;
+    }
+
+    int getWindowSeconds(int window) {
+        return windows[window].getSeconds();
+    }
+
+    double getWindowVwap(int window) {
+        return windows[window].getVwap();
+    }
+
+    /**
+     * Evict prices that have left each additional window relative to the given time
+     *
+     * @param timestampNanos the time the windows end at, in epoch nanoseconds
+     * @return true if the VWAP of any additional window changed
+     */
+    public boolean updateWindows(long timestampNanos) {
+        boolean changed = false;
+        for (VWAPWindow window : windows) {
+            changed |= window.update(priceStream, timestampNanos);
+        }
+        return changed;
+    }
+
+    /**
+     * The earliest time a price leaves the window or one of the additional windows, after which the
+     * windows must be updated even if no more prices arrive. Prices leave each window oldest first,
+     * so only the oldest price within each window is checked.
+     *
+     * @param cutoffNanos the length of the window
+     * @return the time in epoch nanoseconds, Long.MAX_VALUE if the window is empty
+     */
+    long nextExpiryNanos(long cutoffNanos) {
+        if (priceStream.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        long nextExpiryNanos = priceStream.expiryAt(priceStream.tail(), cutoffNanos);
+        for (VWAPWindow window : windows) {
+            nextExpiryNanos = Math.min(nextExpiryNanos, window.nextExpiryNanos(priceStream));
+        }
+        return nextExpiryNanos;
+    }
+
+    /**
+     * @return the scheduled time of the next update in the owning shard's ExpiryWheel, Long.MAX_VALUE if none is scheduled
+     */
+    long getScheduledExpiryNanos() {
+        return expiryNanos;
+    }
+
+    /**
+     * The tick buffer holding the window, for reuse once the currency pair is removed
+     */
+    TickBuffer getTickBuffer() {
+        return priceStream;
+    }
+
+    /**
+     * Access to the price stream, newest price first.
+     * Returns a copy for safety, so it should not be used on the processing path.
      */
     public Deque<CurrencyPriceData> getPriceStream() {
-        // Acquire read lock to safely read the collection
-        lock.readLock().lock();
-        try {
-            // Return a copy to avoid external modification without locks
-            return new ArrayDeque<>(priceStream);
-        } finally {
-            lock.readLock().unlock();
+        ArrayDeque<CurrencyPriceData> copy = new ArrayDeque<>(priceStream.size());
+        for (long sequence = priceStream.tail(); sequence < priceStream.head(); sequence++) {
+            copy.addFirst(toPriceData(sequence));
         }
+        return copy;
     }
 
     /**
-     * Add an item to the front of the deque in a thread-safe manner
-     * 
+     * Add an item to the front of the window and
+     * include its contribution in the running weighted price and volume sums
+     *
      * @param data The price data to add
      */
     public void addToFront(CurrencyPriceData data) {
-        lock.writeLock().lock();
-        try {
-            priceStream.addFirst(data);
-        } finally {
-            lock.writeLock().unlock();
+        addToFront(data.getTimestampNanos(), data.getPrice(), data.getVolume());
+    }
+
+    /**
+     * Add a tick to the window without allocating. Ticks are normally newer than every tick in the window
+     * and are appended to the front; a late tick is inserted in time order instead.
+     *
+     * @param timestampNanos The tick time in epoch nanoseconds
+     * @param price The tick price
+     * @param volume The tick volume
+     */
+    public void addToFront(long timestampNanos, double price, long volume) {
+        if (timestampNanos < lastUpdateNanos && !priceStream.isEmpty()) {
+            insertLate(timestampNanos, price, volume);
+            return;
+        }
+        priceStream.append(timestampNanos, price, volume);
+        tickCount++;
+        lastUpdateNanos = Math.max(lastUpdateNanos, timestampNanos);
+        totalWeightedPrice.add(price * volume);
+        totalVolume.lazySet(totalVolume.get() + volume);
+        for (VWAPWindow window : windows) {
+            window.add(price, volume);
+        }
+        // Bucketed prices share their bucket's time, so the window high and low keep one price per bucket
+        statistics.updateStatistics(priceStream.timestampAt(priceStream.head() - 1), price);
+    }
+
+    private void insertLate(long timestampNanos, double price, long volume) {
+        int entries = priceStream.size();
+        long sequence = priceStream.insert(timestampNanos, price, volume);
+        boolean newEntry = priceStream.size() > entries;
+        tickCount++;
+        totalWeightedPrice.add(price * volume);
+        totalVolume.lazySet(totalVolume.get() + volume);
+        long entryTimestampNanos = priceStream.timestampAt(sequence);
+        for (VWAPWindow window : windows) {
+            window.insert(sequence, newEntry, entryTimestampNanos, price, volume);
         }
+        // The window high and low only take prices in time order, so a late price is held from the newest price's time
+        statistics.updateStatistics(priceStream.timestampAt(priceStream.head() - 1), price);
     }
 
     /**
-     * Remove items from the end of the deque that are before the cutoff time
+     * Remove items from the end of the window that are before the cutoff time.
+     * Eviction happens in place and the running sums are updated in the same step,
+     * so the cost is proportional to the number of expired items only.
      *
-     * @param cutoffTime The time before which items should be removed
+     * @param cutoffNanos The epoch nanosecond time before which items should be removed
      * @return true if any items were removed
      */
-    public boolean removeItemsBeforeCutoff(Instant cutoffTime) {
+    public boolean removeItemsBeforeCutoff(long cutoffNanos) {
         boolean removedAny = false;
-        
-        lock.writeLock().lock();
-        try {
-            while (!priceStream.isEmpty()) {
-                CurrencyPriceData last = priceStream.getLast();
-                if (last.getTimestamp().isBefore(cutoffTime)) {
-                    priceStream.removeLast();
-                    removedAny = true;
-                } else {
-                    break; // Stop once we hit an item within the cutoff
+        long evictBeforeNanos = priceStream.alignCutoff(cutoffNanos);
+        evictedBeforeNanos = Math.max(evictedBeforeNanos, evictBeforeNanos);
+        while (!priceStream.isEmpty()) {
+            long last = priceStream.tail();
+            if (priceStream.timestampAt(last) < evictBeforeNanos) {
+                long volume = priceStream.volumeAt(last);
+                double price = priceStream.priceAt(last);
+                long count = priceStream.countAt(last);
+                totalWeightedPrice.add(-(price * volume));
+                totalVolume.lazySet(totalVolume.get() - volume);
+                tickCount -= count;
+                statistics.removeFromWindow(priceStream.priceSumAt(last), count);
+                for (VWAPWindow window : windows) {
+                    window.evict(last, price, volume);
                 }
+                priceStream.removeOldest();
+                removedAny = true;
+            } else {
+                break; // Stop once we hit an item within the cutoff
             }
-        } finally {
-            lock.writeLock().unlock();
         }
-        
+        if (removedAny) {
+            if (priceStream.isEmpty()) {
+                totalWeightedPrice.reset();
+            }
+            statistics.removeBeforeCutoff(evictBeforeNanos);
+        }
+
         return removedAny;
     }
 
     /**
-     * Thread-safe check if the price stream is empty
-     * 
+     * Count of the items currently held in the window
+     *
+     * @return the number of items in the price stream, one per bucket when ticks are bucketed
+     */
+    public int size() {
+        return priceStream.size();
+    }
+
+    /**
+     * @return the number of prices within the window
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Check if the price stream is empty
+     *
      * @return true if empty, false otherwise
      */
     public boolean isEmpty() {
-        lock.readLock().lock();
-        try {
-            return priceStream.isEmpty();
-        } finally {
-            lock.readLock().unlock();
-        }
+        return priceStream.isEmpty();
     }
 
     /**
-     * Get an iterator for the items in reverse order (oldest to newest)
-     * This method is for compatibility with the existing VWAPCalculator
+     * Get an iterator for the items in reverse order (oldest to newest).
+     * Returns an iterator over a copy, so it should not be used on the processing path.
      */
     public Iterator<CurrencyPriceData> getDescendingIterator() {
-        lock.readLock().lock();
+        ArrayDeque<CurrencyPriceData> copy = new ArrayDeque<>(priceStream.size());
+        for (long sequence = priceStream.tail(); sequence < priceStream.head(); sequence++) {
+            copy.addLast(toPriceData(sequence));
+        }
+        return copy.iterator();
+    }
+
+    private CurrencyPriceData toPriceData(long sequence) {
+        return new CurrencyPriceData(priceStream.timestampAt(sequence),
+                currencyPair, priceStream.priceAt(sequence), priceStream.volumeAt(sequence));
+    }
+
+    /**
+     * Record the running weighted price sum together with the ticks it covers, for a later
+     * {@link #verifyTotalWeightedPrice()}. Only called from the owning thread.
+     */
+    void captureCheckpoint() {
+        long newest = priceStream.head() - 1;
+        double newestWeightedPrice = priceStream.isEmpty() ? 0 : priceStream.priceAt(newest) * priceStream.volumeAt(newest);
+        long newestVolume = priceStream.isEmpty() ? 0 : priceStream.volumeAt(newest);
+        checkpoint = new SumCheckpoint(priceStream.beginConcurrentRead(), priceStream.tail(), priceStream.head(),
+                totalWeightedPrice.sum(), totalVolume.get(), newestWeightedPrice, newestVolume);
+    }
+
+    /**
+     * Re-sum the weighted prices of the ticks covered by the last checkpoint from scratch and compare
+     * the result with the running sum at the checkpoint. Safe to call from any thread: the ticks are
+     * read without locking while the owning thread keeps writing, and the result is discarded if any
+     * of them were evicted or moved meanwhile.
+     *
+     * @return the running sum less the exact sum, NaN if there is no checkpoint or the ticks changed while reading
+     */
+    public double verifyTotalWeightedPrice() {
+        SumCheckpoint captured = checkpoint;
+        if (captured == null) {
+            return Double.NaN;
+        }
+        CompensatedSum exact = new CompensatedSum();
+        if (resum(captured, exact) == INVALID_SUM) {
+            return Double.NaN;
+        }
+        return captured.totalWeightedPrice - exact.sum();
+    }
+
+    /**
+     * Recompute the VWAP of the ticks covered by the last checkpoint exactly, and compare it with the VWAP
+     * of the running sums at the checkpoint. Safe to call from any thread, as {@link #verifyTotalWeightedPrice()}.
+     *
+     * @return the divergence of the running VWAP from the exact VWAP relative to the exact VWAP,
+     * NaN if there is no checkpoint, no volume or the ticks changed while reading
+     */
+    public double verifyVwap() {
+        SumCheckpoint captured = checkpoint;
+        if (captured == null || captured.totalVolume <= 0) {
+            return Double.NaN;
+        }
+        CompensatedSum exact = new CompensatedSum();
+        long volume = resum(captured, exact);
+        if (volume == INVALID_SUM || volume <= 0) {
+            return Double.NaN;
+        }
+        double exactVwap = exact.sum() / volume;
+        double runningVwap = captured.totalWeightedPrice / captured.totalVolume;
+        return Math.abs(runningVwap - exactVwap) / Math.max(Math.abs(exactVwap), Double.MIN_NORMAL);
+    }
+
+    /**
+     * Re-sum the ticks covered by a checkpoint with the WeightedSumKernel
+     *
+     * @return the sum of the volumes, INVALID_SUM if the ticks changed while reading
+     */
+    private long resum(SumCheckpoint captured, CompensatedSum exact) {
+        long volume;
         try {
-            // Create a copy with items in reverse order
-            ArrayDeque<CurrencyPriceData> copy = new ArrayDeque<>(priceStream.size());
-            for (CurrencyPriceData item : priceStream) {
-                copy.addFirst(item);
-            }
-            // Release the lock before returning the iterator
-            lock.readLock().unlock();
-            return copy.iterator();
-        } catch (Exception e) {
-            lock.readLock().unlock();
-            throw e;
+            // The newest entry may still be changing when ticks are bucketed, so its contribution is taken from the checkpoint
+            volume = priceStream.sum(captured.tail, Math.max(captured.tail, captured.head - 1), exact);
+        } catch (RuntimeException e) {
+            // Storage replaced mid-read
+            return INVALID_SUM;
+        }
+        if (captured.head > captured.tail) {
+            exact.add(captured.newestWeightedPrice);
+            volume += captured.newestVolume;
         }
+        // Late ticks inserted since the checkpoint move the ticks it covers, which also fails validation
+        if (!priceStream.validateConcurrentRead(captured.stamp, captured.tail)) {
+            return INVALID_SUM;
+        }
+        return volume;
+    }
+
+    /**
+     * Recompute the VWAP of the window exactly from its ticks rather than from the running sums.
+     * Costs a pass over the window, so it is meant for verification and backfill rather than the processing path.
+     * Must be called from the owning thread.
+     *
+     * @return the VWAP, NaN if the window has no volume
+     */
+    public double recomputeVwap() {
+        CompensatedSum weightedPrices = new CompensatedSum();
+        long volume = priceStream.sum(priceStream.tail(), priceStream.head(), weightedPrices);
+        return volume > 0 ? weightedPrices.sum() / volume : Double.NaN;
     }
 
-    public DoubleAdder getTotalWeightedPrice() {
+    public CompensatedSum getTotalWeightedPrice() {
         return totalWeightedPrice;
     }
 
     public AtomicLong getTotalVolume() {
         return totalVolume;
     }
-    
+
     // Cache line padding to prevent false sharing
     private long q1, q2, q3, q4, q5, q6, q7;
-}
\ No newline at end of file
+
+    private static final class SumCheckpoint {
+        private final int stamp;
+        private final long tail;
+        private final long head;
+        private final double totalWeightedPrice;
+        private final long totalVolume;
+        private final double newestWeightedPrice;
+        private final long newestVolume;
+
+        private SumCheckpoint(int stamp, long tail, long head, double totalWeightedPrice, long totalVolume,
+                              double newestWeightedPrice, long newestVolume) {
+            this.stamp = stamp;
+            this.tail = tail;
+            this.head = head;
+            this.totalWeightedPrice = totalWeightedPrice;
+            this.totalVolume = totalVolume;
+            this.newestWeightedPrice = newestWeightedPrice;
+            this.newestVolume = newestVolume;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.bank.vwap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Assigns each currency pair a dense int id the first time it is seen, so the processing path
+ * can index arrays by id instead of hashing the currency pair string for every price.
+ *
+ * Lookups never lock and never allocate, including lookups of ASCII bytes straight from a parsed feed.
+ * Registering a new currency pair copies the table under a lock; currency pairs are few and
+ * registered once, so the copy is rare. Ids are never reused.
+ */
+public final class CurrencyPairRegistry {
+    /**
+     * Returned by the lookups for a currency pair that has not been registered
+     */
+    public static final int UNKNOWN = -1;
+
+    private static final int INITIAL_SLOTS = 64;
+
+    // Replaced as a whole on every registration, so readers always see a complete table
+    private volatile Table table = new Table(new String[0], new int[INITIAL_SLOTS]);
+
+    /**
+     * @return the id of the currency pair, assigning the next id if it is new
+     */
+    public int register(String currencyPair) {
+        int id = idOf(currencyPair);
+        return id != UNKNOWN ? id : add(currencyPair);
+    }
+
+    /**
+     * Register a currency pair held as ASCII bytes. Only allocates the first time the currency pair is seen.
+     *
+     * @return the id of the currency pair, assigning the next id if it is new
+     */
+    public int register(byte[] ascii, int offset, int length) {
+        int id = idOf(ascii, offset, length);
+        return id != UNKNOWN ? id : add(new String(ascii, offset, length, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * @return the id of the currency pair, or {@link #UNKNOWN} if it has not been registered
+     */
+    public int idOf(CharSequence currencyPair) {
+        Table current = table;
+        int mask = current.slots.length - 1;
+        int hash = currencyPair instanceof String ? currencyPair.hashCode() : hash(currencyPair);
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = current.slots[slot] - 1;
+            if (id == UNKNOWN) {
+                return UNKNOWN;
+            }
+            String name = current.names[id];
+            if (name.hashCode() == hash && contentEquals(name, currencyPair)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * @return the id of the currency pair held as ASCII bytes, or {@link #UNKNOWN} if it has not been registered
+     */
+    public int idOf(byte[] ascii, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + (ascii[i] & 0xff);
+        }
+        Table current = table;
+        int mask = current.slots.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = current.slots[slot] - 1;
+            if (id == UNKNOWN) {
+                return UNKNOWN;
+            }
+            String name = current.names[id];
+            if (name.hashCode() == hash && contentEquals(name, ascii, offset, length)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * @return the currency pair with the id
+     * @throws IndexOutOfBoundsException if no currency pair has the id
+     */
+    public String nameOf(int id) {
+        return table.names[id];
+    }
+
+    /**
+     * @return the number of currency pairs registered, one more than the highest id
+     */
+    public int size() {
+        return table.names.length;
+    }
+
+    private synchronized int add(String currencyPair) {
+        int id = idOf(currencyPair);
+        if (id != UNKNOWN) {
+            return id;
+        }
+        Table current = table;
+        id = current.names.length;
+        String[] names = Arrays.copyOf(current.names, id + 1);
+        names[id] = currencyPair;
+        // Keep the table at most half full so probe sequences stay short
+        int slotCount = current.slots.length;
+        while (names.length * 2 > slotCount) {
+            slotCount <<= 1;
+        }
+        int[] slots = new int[slotCount];
+        for (int i = 0; i < names.length; i++) {
+            int slot = spread(names[i].hashCode()) & (slotCount - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slotCount - 1);
+            }
+            slots[slot] = i + 1;
+        }
+        table = new Table(names, slots);
+        return id;
+    }
+
+    // Same as String.hashCode, so chars and ASCII bytes hash alike
+    private static int hash(CharSequence text) {
+        int hash = 0;
+        for (int i = 0; i < text.length(); i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean contentEquals(String name, CharSequence text) {
+        return name == text || name.contentEquals(text);
+    }
+
+    private static boolean contentEquals(String name, byte[] ascii, int offset, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != (ascii[offset + i] & 0xff)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Currency pairs by id, and an open addressing index of id + 1 by hash, 0 marking a free slot
+     */
+    private static final class Table {
+        private final String[] names;
+        private final int[] slots;
+
+        private Table(String[] names, int[] slots) {
+            this.names = names;
+            this.slots = slots;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.bank.vwap;
+
+/**
+ * Immutable view of a currency pair's VWAP at the time a snapshot was published
+ */
+public final class CurrencyPairSnapshot {
+    private final String currencyPair;
+    private final double vwap;
+    private final long totalVolume;
+    private final long tickCount;
+    private final long lastUpdateNanos;
+    private final int[] windowSeconds;
+    private final double[] windowVwaps;
+    private final boolean derived;
+
+    CurrencyPairSnapshot(String currencyPair, double vwap, long totalVolume, long tickCount, long lastUpdateNanos,
+                         int[] windowSeconds, double[] windowVwaps, boolean derived) {
+        this.currencyPair = currencyPair;
+        this.vwap = vwap;
+        this.totalVolume = totalVolume;
+        this.tickCount = tickCount;
+        this.lastUpdateNanos = lastUpdateNanos;
+        this.windowSeconds = windowSeconds;
+        this.windowVwaps = windowVwaps;
+        this.derived = derived;
+    }
+
+    static CurrencyPairSnapshot of(CurrencyData data) {
+        int windowCount = data.getWindowCount();
+        int[] windowSeconds = new int[windowCount];
+        double[] windowVwaps = new double[windowCount];
+        for (int i = 0; i < windowCount; i++) {
+            windowSeconds[i] = data.getWindowSeconds(i);
+            windowVwaps[i] = data.getWindowVwap(i);
+        }
+        return new CurrencyPairSnapshot(data.getCurrencyPair(), data.getVwap(), data.getTotalVolume().get(),
+                data.getTickCount(), data.getLastUpdateNanos(), windowSeconds, windowVwaps, false);
+    }
+
+    public String getCurrencyPair() {
+        return currencyPair;
+    }
+
+    public double getVwap() {
+        return vwap;
+    }
+
+    /**
+     * @param windowSeconds the length of one of the additional windows
+     * @return the VWAP over the window, NaN if no prices were within it or the window is not configured
+     */
+    public double getVwap(int windowSeconds) {
+        for (int i = 0; i < this.windowSeconds.length; i++) {
+            if (this.windowSeconds[i] == windowSeconds) {
+                return windowVwaps[i];
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * @return the number of additional windows
+     */
+    public int getWindowCount() {
+        return windowSeconds.length;
+    }
+
+    /**
+     * @param window the index of an additional window, from 0 to {@link #getWindowCount()}
+     * @return the length of the window in seconds
+     */
+    public int getWindowSeconds(int window) {
+        return windowSeconds[window];
+    }
+
+    /**
+     * @param window the index of an additional window, from 0 to {@link #getWindowCount()}
+     * @return the VWAP over the window, NaN if no prices were within it
+     */
+    public double getWindowVwap(int window) {
+        return windowVwaps[window];
+    }
+
+    /**
+     * @return true if this is a cross rate derived from the VWAPs of its legs rather than priced directly,
+     * in which case it has no volume or prices of its own
+     */
+    public boolean isDerived() {
+        return derived;
+    }
+
+    /**
+     * @return the volume traded within the window
+     */
+    public long getTotalVolume() {
+        return totalVolume;
+    }
+
+    /**
+     * @return the number of prices within the window
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * @return the time of the latest price in epoch nanoseconds, of either leg for a cross rate
+     */
+    public long getLastUpdateNanos() {
+        return lastUpdateNanos;
+    }
+}
@@ -3,26 +3,31 @@ package com.bank.vwap;
 import com.bank.util.DateTimeUtil;
 
 import java.time.Instant;
-import java.time.ZoneId;
 
 public class CurrencyPriceData {
-    private Instant timestamp;
+
+    private long timestampNanos;
     private String currencyPair;
     private double price;
     private long volume;
+    // System.nanoTime() at which the update was published to an ingestion stage
+    private long enqueuedNanos;
+    // Id of the currency pair in the registry of the calculator it was sent to
+    private int currencyPairId = CurrencyPairRegistry.UNKNOWN;
 
-    public CurrencyPriceData(Instant timestamp, String currencyPair, double price, long volume) {
-        this.timestamp = timestamp;
+    public CurrencyPriceData(long timestampNanos, String currencyPair, double price, long volume) {
+        this.timestampNanos = timestampNanos;
         this.currencyPair = currencyPair;
         this.price = price;
         this.volume = volume;
     }
 
+    public CurrencyPriceData(Instant timestamp, String currencyPair, double price, long volume) {
+        this(timestamp == null ? DateTimeUtil.INVALID_TIMESTAMP : DateTimeUtil.toEpochNanos(timestamp), currencyPair, price, volume);
+    }
+
     public CurrencyPriceData(String timestamp, String currencyPair, double price, long volume) {
-        this.timestamp = DateTimeUtil.convertToInstant(timestamp.toLowerCase(), ZoneId.of("Australia/Sydney"));
-        this.currencyPair = currencyPair;
-        this.price = price;
-        this.volume = volume;
+        this(DateTimeUtil.parseToEpochNanos(timestamp, DateTimeUtil.PRICE_ZONE), currencyPair, price, volume);
     }
 
     public double getPrice() {
@@ -33,11 +38,41 @@ public class CurrencyPriceData {
         return volume;
     }
 
+    /**
+     * @return the time of the price in epoch nanoseconds, or DateTimeUtil.INVALID_TIMESTAMP if it could not be parsed
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public boolean hasValidTimestamp() {
+        return timestampNanos != DateTimeUtil.INVALID_TIMESTAMP;
+    }
+
+    /**
+     * @return the time of the price, or null if it could not be parsed. Allocates, prefer getTimestampNanos
+     */
     public Instant getTimestamp() {
-        return timestamp;
+        return hasValidTimestamp() ? DateTimeUtil.fromEpochNanos(timestampNanos) : null;
     }
 
     public String getCurrencyPair() {
         return currencyPair;
     }
+
+    int getCurrencyPairId() {
+        return currencyPairId;
+    }
+
+    void setCurrencyPairId(int currencyPairId) {
+        this.currencyPairId = currencyPairId;
+    }
+
+    long getEnqueuedNanos() {
+        return enqueuedNanos;
+    }
+
+    void setEnqueuedNanos(long enqueuedNanos) {
+        this.enqueuedNanos = enqueuedNanos;
+    }
 }
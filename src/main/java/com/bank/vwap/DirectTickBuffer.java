@@ -0,0 +1,80 @@
+package com.bank.vwap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tick buffer backed by a direct ByteBuffer, keeping the window outside the Java heap.
+ * The buffer is laid out as three contiguous columns: timestamps, prices and volumes.
+ */
+final class DirectTickBuffer extends TickBuffer {
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE / (3 * Long.BYTES);
+
+    private ByteBuffer buffer;
+    private int priceOffset;
+    private int volumeOffset;
+
+    DirectTickBuffer(int initialCapacity) {
+        super(Math.min(initialCapacity, MAX_CAPACITY));
+        this.buffer = allocate(capacity);
+        this.priceOffset = capacity * Long.BYTES;
+        this.volumeOffset = 2 * capacity * Long.BYTES;
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * 3 * Long.BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    protected void grow(int newCapacity) {
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Off-heap tick buffer cannot grow beyond " + MAX_CAPACITY + " ticks");
+        }
+        ByteBuffer newBuffer = allocate(newCapacity);
+        int newPriceOffset = newCapacity * Long.BYTES;
+        int newVolumeOffset = 2 * newCapacity * Long.BYTES;
+        int newMask = newCapacity - 1;
+        for (long sequence = tail; sequence < head; sequence++) {
+            int from = (int) (sequence & mask) << 3;
+            int to = (int) (sequence & newMask) << 3;
+            newBuffer.putLong(to, buffer.getLong(from));
+            newBuffer.putDouble(newPriceOffset + to, buffer.getDouble(priceOffset + from));
+            newBuffer.putLong(newVolumeOffset + to, buffer.getLong(volumeOffset + from));
+        }
+        this.buffer = newBuffer;
+        this.priceOffset = newPriceOffset;
+        this.volumeOffset = newVolumeOffset;
+    }
+
+    @Override
+    protected void put(int index, long timestampNanos, double price, long volume) {
+        int offset = index << 3;
+        buffer.putLong(offset, timestampNanos);
+        buffer.putDouble(priceOffset + offset, price);
+        buffer.putLong(volumeOffset + offset, volume);
+    }
+
+    @Override
+    protected void move(int fromIndex, int toIndex) {
+        int from = fromIndex << 3;
+        int to = toIndex << 3;
+        buffer.putLong(to, buffer.getLong(from));
+        buffer.putDouble(priceOffset + to, buffer.getDouble(priceOffset + from));
+        buffer.putLong(volumeOffset + to, buffer.getLong(volumeOffset + from));
+    }
+
+    @Override
+    protected long timestampAtIndex(int index) {
+        return buffer.getLong(index << 3);
+    }
+
+    @Override
+    protected double priceAtIndex(int index) {
+        return buffer.getDouble(priceOffset + (index << 3));
+    }
+
+    @Override
+    protected long volumeAtIndex(int index) {
+        return buffer.getLong(volumeOffset + (index << 3));
+    }
+}
@@ -0,0 +1,194 @@
+package com.bank.vwap;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel of the time each currency pair of a shard next has prices leaving its windows.
+ * Advancing the wheel only touches the currency pairs that are due, however many idle pairs the shard holds.
+ * Owned by the shard's processing thread, so it is not locked, and entries are linked through the
+ * CurrencyData itself, so scheduling never allocates.
+ *
+ * Each of the four levels has 64 slots, and a slot on level n spans 64^n ticks. An entry is placed on the
+ * lowest level whose current rotation reaches its tick, and moves down a level each time the wheel reaches
+ * its slot. Entries further ahead than the wheel spans wait in its last slot until they are in reach.
+ */
+final class ExpiryWheel {
+    static final int NOT_SCHEDULED = -1;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOT_COUNT = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOT_COUNT - 1;
+    private static final int LEVELS = 4;
+    // Ticks spanned by the whole wheel, less one
+    private static final long SPAN_MASK = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final long tickNanos;
+    // Head of each slot's list, level by level
+    private final CurrencyData[] slots = new CurrencyData[LEVELS * SLOT_COUNT];
+    // The next tick to fire, Long.MIN_VALUE until the wheel is first used
+    private long currentTick = Long.MIN_VALUE;
+    private int size;
+
+    ExpiryWheel(long tickNanos) {
+        this.tickNanos = tickNanos;
+    }
+
+    /**
+     * Schedule a currency pair to fire once the given time is reached, replacing any earlier schedule
+     *
+     * @param expiryNanos the time to fire at in epoch nanoseconds
+     * @param currentTimeNanos the current time, which starts the wheel if it is not running yet
+     */
+    void schedule(CurrencyData data, long expiryNanos, long currentTimeNanos) {
+        cancel(data);
+        if (currentTick == Long.MIN_VALUE) {
+            currentTick = Math.floorDiv(currentTimeNanos, tickNanos);
+        }
+        data.expiryNanos = expiryNanos;
+        insert(data);
+        size++;
+    }
+
+    /**
+     * Remove a currency pair from the wheel, if it is scheduled
+     */
+    void cancel(CurrencyData data) {
+        if (data.expirySlot == NOT_SCHEDULED) {
+            return;
+        }
+        unlink(data);
+        data.expiryNanos = Long.MAX_VALUE;
+        size--;
+    }
+
+    /**
+     * Fire every currency pair due by the given time. Each is removed from the wheel before it is passed
+     * to the callback, which may schedule it again but must not cancel other currency pairs.
+     *
+     * @param currentTimeNanos the current time in epoch nanoseconds
+     * @param onExpiry called with each currency pair due
+     */
+    void advance(long currentTimeNanos, Consumer<CurrencyData> onExpiry) {
+        long nowTick = Math.floorDiv(currentTimeNanos, tickNanos);
+        if (size == 0 || currentTick == Long.MIN_VALUE) {
+            currentTick = Math.max(currentTick, nowTick + 1);
+            return;
+        }
+        if (nowTick - currentTick >= SLOT_COUNT) {
+            // Time jumped, e.g. replayed ticks caught up with the wall clock: resorting every entry is cheaper than turning the wheel
+            rebuild(nowTick, onExpiry);
+            return;
+        }
+        while (currentTick <= nowTick && size > 0) {
+            long tick = currentTick;
+            // Move entries down from the higher levels whose slot the wheel has reached, highest first
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((tick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    int slot = level * SLOT_COUNT + (int) ((tick >> (SLOT_BITS * level)) & SLOT_MASK);
+                    CurrencyData data = slots[slot];
+                    slots[slot] = null;
+                    while (data != null) {
+                        CurrencyData next = data.expiryNext;
+                        insert(data);
+                        data = next;
+                    }
+                }
+            }
+            int slot = (int) (tick & SLOT_MASK);
+            CurrencyData due = slots[slot];
+            slots[slot] = null;
+            // Entries scheduled by the callback go into later ticks
+            currentTick = tick + 1;
+            fire(due, onExpiry);
+        }
+        currentTick = Math.max(currentTick, nowTick + 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rebuild(long nowTick, Consumer<CurrencyData> onExpiry) {
+        CurrencyData all = null;
+        for (int slot = 0; slot < slots.length; slot++) {
+            CurrencyData data = slots[slot];
+            slots[slot] = null;
+            while (data != null) {
+                CurrencyData next = data.expiryNext;
+                data.expiryNext = all;
+                all = data;
+                data = next;
+            }
+        }
+        currentTick = nowTick + 1;
+        CurrencyData due = null;
+        while (all != null) {
+            CurrencyData next = all.expiryNext;
+            if (tickOf(all.expiryNanos) <= nowTick) {
+                all.expiryNext = due;
+                due = all;
+            } else {
+                insert(all);
+            }
+            all = next;
+        }
+        fire(due, onExpiry);
+    }
+
+    private void fire(CurrencyData due, Consumer<CurrencyData> onExpiry) {
+        while (due != null) {
+            CurrencyData next = due.expiryNext;
+            due.expiryNext = null;
+            due.expiryPrev = null;
+            due.expirySlot = NOT_SCHEDULED;
+            due.expiryNanos = Long.MAX_VALUE;
+            size--;
+            onExpiry.accept(due);
+            due = next;
+        }
+    }
+
+    /**
+     * Link an entry into the slot for its expiry time, relative to the current tick
+     */
+    private void insert(CurrencyData data) {
+        long tick = Math.max(tickOf(data.expiryNanos), currentTick);
+        if ((tick & ~SPAN_MASK) != (currentTick & ~SPAN_MASK)) {
+            // Beyond the current rotation of the top level, wait in its last slot
+            tick = currentTick | SPAN_MASK;
+        }
+        int level = 0;
+        while ((tick >> (SLOT_BITS * (level + 1))) != (currentTick >> (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int slot = level * SLOT_COUNT + (int) ((tick >> (SLOT_BITS * level)) & SLOT_MASK);
+        CurrencyData head = slots[slot];
+        data.expiryNext = head;
+        data.expiryPrev = null;
+        if (head != null) {
+            head.expiryPrev = data;
+        }
+        slots[slot] = data;
+        data.expirySlot = slot;
+    }
+
+    private void unlink(CurrencyData data) {
+        if (data.expiryPrev != null) {
+            data.expiryPrev.expiryNext = data.expiryNext;
+        } else {
+            slots[data.expirySlot] = data.expiryNext;
+        }
+        if (data.expiryNext != null) {
+            data.expiryNext.expiryPrev = data.expiryPrev;
+        }
+        data.expiryNext = null;
+        data.expiryPrev = null;
+        data.expirySlot = NOT_SCHEDULED;
+    }
+
+    /**
+     * @return the first tick at or after the time
+     */
+    private long tickOf(long timeNanos) {
+        return -Math.floorDiv(-timeNanos, tickNanos);
+    }
+}
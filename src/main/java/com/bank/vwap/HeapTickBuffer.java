@@ -0,0 +1,87 @@
+package com.bank.vwap;
+
+import com.bank.util.CompensatedSum;
+import com.bank.util.WeightedSumKernel;
+
+/**
+ * Tick buffer backed by parallel primitive arrays on the Java heap
+ */
+final class HeapTickBuffer extends TickBuffer {
+    private long[] timestamps;
+    private double[] prices;
+    private long[] volumes;
+
+    HeapTickBuffer(int initialCapacity) {
+        super(initialCapacity);
+        this.timestamps = new long[capacity];
+        this.prices = new double[capacity];
+        this.volumes = new long[capacity];
+    }
+
+    @Override
+    protected void grow(int newCapacity) {
+        long[] newTimestamps = new long[newCapacity];
+        double[] newPrices = new double[newCapacity];
+        long[] newVolumes = new long[newCapacity];
+        int newMask = newCapacity - 1;
+        for (long sequence = tail; sequence < head; sequence++) {
+            int from = (int) (sequence & mask);
+            int to = (int) (sequence & newMask);
+            newTimestamps[to] = timestamps[from];
+            newPrices[to] = prices[from];
+            newVolumes[to] = volumes[from];
+        }
+        this.timestamps = newTimestamps;
+        this.prices = newPrices;
+        this.volumes = newVolumes;
+    }
+
+    /**
+     * Sums each contiguous run of the ring with the WeightedSumKernel
+     */
+    @Override
+    public long sum(long fromSequence, long toSequence, CompensatedSum weightedPrices) {
+        // Read once, as a concurrent reader may see the arrays replaced by a resize
+        double[] prices = this.prices;
+        long[] volumes = this.volumes;
+        int mask = prices.length - 1;
+        WeightedSumKernel kernel = WeightedSumKernel.get();
+        long volume = 0;
+        for (long sequence = fromSequence; sequence < toSequence; ) {
+            int from = (int) (sequence & mask);
+            int to = (int) Math.min(prices.length, from + (toSequence - sequence));
+            volume += kernel.sum(prices, volumes, from, to, weightedPrices);
+            sequence += to - from;
+        }
+        return volume;
+    }
+
+    @Override
+    protected void put(int index, long timestampNanos, double price, long volume) {
+        timestamps[index] = timestampNanos;
+        prices[index] = price;
+        volumes[index] = volume;
+    }
+
+    @Override
+    protected void move(int fromIndex, int toIndex) {
+        timestamps[toIndex] = timestamps[fromIndex];
+        prices[toIndex] = prices[fromIndex];
+        volumes[toIndex] = volumes[fromIndex];
+    }
+
+    @Override
+    protected long timestampAtIndex(int index) {
+        return timestamps[index];
+    }
+
+    @Override
+    protected double priceAtIndex(int index) {
+        return prices[index];
+    }
+
+    @Override
+    protected long volumeAtIndex(int index) {
+        return volumes[index];
+    }
+}
@@ -0,0 +1,40 @@
+package com.bank.vwap;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Overflow counters of an ingestion stage. Updated by producers only when the stage is full,
+ * and by the consumer once per drain, so they stay off the common path.
+ */
+final class IngestionCounters {
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    // Deepest backlog seen by the consumer, only written by the consumer thread
+    private volatile int peakDepth;
+
+    void recordDropped() {
+        dropped.increment();
+    }
+
+    void recordBlocked() {
+        blocked.increment();
+    }
+
+    void recordDepth(int depth) {
+        if (depth > peakDepth) {
+            peakDepth = depth;
+        }
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    long getBlocked() {
+        return blocked.sum();
+    }
+
+    int getPeakDepth() {
+        return peakDepth;
+    }
+}
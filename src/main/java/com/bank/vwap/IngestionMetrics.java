@@ -0,0 +1,61 @@
+package com.bank.vwap;
+
+/**
+ * Point in time view of the ingestion stages of all shards, for sizing them against peak rates
+ */
+public final class IngestionMetrics {
+    private final long queueDepth;
+    private final long capacity;
+    private final long peakQueueDepth;
+    private final long droppedCount;
+    private final long blockedCount;
+
+    IngestionMetrics(long queueDepth, long capacity, long peakQueueDepth, long droppedCount, long blockedCount) {
+        this.queueDepth = queueDepth;
+        this.capacity = capacity;
+        this.peakQueueDepth = peakQueueDepth;
+        this.droppedCount = droppedCount;
+        this.blockedCount = blockedCount;
+    }
+
+    /**
+     * @return the number of price updates waiting to be processed
+     */
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return the number of price updates the stages can hold
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the deepest backlog of any shard seen when draining
+     */
+    public long getPeakQueueDepth() {
+        return peakQueueDepth;
+    }
+
+    /**
+     * @return the number of price updates dropped or conflated away because a stage was full
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return the number of times a producer had to wait for space
+     */
+    public long getBlockedCount() {
+        return blockedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "IngestionMetrics{queueDepth=" + queueDepth + ", capacity=" + capacity + ", peakQueueDepth=" + peakQueueDepth
+                + ", droppedCount=" + droppedCount + ", blockedCount=" + blockedCount + '}';
+    }
+}
@@ -0,0 +1,11 @@
+package com.bank.vwap;
+
+/**
+ * How price updates are handed from producers to the processing threads
+ */
+public enum IngestionMode {
+    // Bounded queue of tick columns guarded by one lock
+    QUEUE,
+    // Pre-allocated ring of mutable tick slots with sequence based publication
+    RING_BUFFER
+}
@@ -0,0 +1,12 @@
+package com.bank.vwap;
+
+/**
+ * What happens to a tick that arrives later than the allowed lateness, i.e. older than its
+ * currency pair's watermark
+ */
+public enum LateTickPolicy {
+    // Discard the tick
+    DROP,
+    // Include the tick as if it had the watermark's time
+    CLAMP
+}
@@ -0,0 +1,15 @@
+package com.bank.vwap;
+
+/**
+ * What happens to a price update published while its shard's ingestion stage is full
+ */
+public enum OverflowPolicy {
+    // Wait for the consumer to free space, slowing the producer down to the processing rate
+    BLOCK,
+    // Discard the update being published
+    DROP_NEWEST,
+    // Discard the oldest queued update to make room, QUEUE mode only
+    DROP_OLDEST,
+    // Keep only the latest updates of each currency pair, replacing older ones that are not yet consumed
+    CONFLATE
+}
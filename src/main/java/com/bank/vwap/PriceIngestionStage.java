@@ -0,0 +1,81 @@
+package com.bank.vwap;
+
+import java.util.List;
+
+/**
+ * Hand-off between the threads publishing price updates and the single consumer thread of a shard
+ */
+interface PriceIngestionStage {
+
+    /**
+     * Publish a price update held in a CurrencyPriceData, whose currency pair id has been set
+     *
+     * @return true if the update was accepted
+     */
+    boolean publish(CurrencyPriceData currencyPriceData);
+
+    /**
+     * Publish a price update from its fields, without requiring the caller to allocate
+     *
+     * @return true if the update was accepted
+     */
+    boolean publish(int currencyPairId, long timestampNanos, double price, long volume);
+
+    /**
+     * Publish a batch of price updates, all destined for this stage and with their currency pair ids set
+     *
+     * @return the number of updates accepted
+     */
+    int publishBatch(List<? extends CurrencyPriceData> batch);
+
+    /**
+     * Publish the price updates from index from, inclusive, to index to, exclusive, of columns of their fields,
+     * all destined for this stage, without requiring the caller to allocate
+     *
+     * @return the number of updates accepted
+     */
+    int publishBatch(int[] currencyPairIds, long[] timestampNanos, double[] prices, long[] volumes, int from, int to);
+
+    /**
+     * Wait for price updates using the stage's wait strategy and pass every update available,
+     * up to a maximum batch size, to the handler. Only called from the shard's consumer thread.
+     *
+     * @return the number of updates handled, 0 if the consumer was woken by {@link #wakeUp()}
+     */
+    int drain(PriceUpdateHandler handler) throws InterruptedException;
+
+    /**
+     * Wake the consumer if it is waiting for updates
+     */
+    void wakeUp();
+
+    /**
+     * @return the number of updates waiting to be consumed
+     */
+    int size();
+
+    /**
+     * @return the number of updates the stage holds before the overflow policy applies
+     */
+    int capacity();
+
+    IngestionCounters getCounters();
+
+    static PriceIngestionStage create(VWAPCalculatorConfig config) {
+        OverflowPolicy overflowPolicy = config.getOverflowPolicy();
+        if (overflowPolicy == OverflowPolicy.CONFLATE) {
+            return new ConflatingIngestionStage(config.getConflationDepth());
+        }
+        switch (config.getIngestionMode()) {
+            case RING_BUFFER:
+                if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                    // Producers cannot take back a slot another producer has claimed
+                    throw new IllegalArgumentException("DROP_OLDEST overflow is not supported in RING_BUFFER ingestion mode");
+                }
+                return new RingBufferIngestionStage(config.getRingBufferSize(), config.getWaitStrategy(), overflowPolicy);
+            case QUEUE:
+            default:
+                return new QueueIngestionStage(config.getQueueCapacity(), overflowPolicy);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.bank.vwap;
+
+/**
+ * Receives price updates drained from an ingestion stage
+ */
+@FunctionalInterface
+interface PriceUpdateHandler {
+    /**
+     * @param currencyPairId the id of the currency pair in the calculator's registry
+     * @param enqueuedNanos the System.nanoTime() at which the update was published
+     */
+    void onPriceUpdate(int currencyPairId, long timestampNanos, double price, long volume, long enqueuedNanos);
+}
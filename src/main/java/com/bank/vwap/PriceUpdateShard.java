@@ -0,0 +1,322 @@
+package com.bank.vwap;
+
+import com.bank.journal.TickJournal;
+import com.bank.util.PriceStatistics;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A partition of the currency pairs handled by a VWAPCalculator.
+ * Each shard is drained by exactly one thread, which is the only writer of the
+ * shard's CurrencyData and PriceStatistics, so no locks are needed on the processing path.
+ * All updates for a currency pair are routed to the same shard, preserving per-pair ordering.
+ */
+final class PriceUpdateShard {
+    static final long NO_SWEEP = Long.MIN_VALUE;
+    // Latencies above this are recorded as this, so recording never resizes the histogram
+    static final long MAX_RECORDED_LATENCY_NANOS = 60_000_000_000L;
+
+    private final int index;
+    private final PriceIngestionStage ingestionStage;
+    private final Map<String, CurrencyData> currencyPairData = new HashMap<>();
+    // The same windows indexed by currency pair id, for the processing path
+    private CurrencyData[] currencyPairDataById = new CurrencyData[16];
+    // Statistics outlive the windows, indexed by currency pair id
+    private PriceStatistics[] currencyPairStatsById = new PriceStatistics[16];
+    // When each currency pair next has prices leaving its windows
+    private final ExpiryWheel expiryWheel;
+    // Empty tick buffers of removed currency pairs, reused by new currency pairs
+    private final ArrayDeque<TickBuffer> recycledTickBuffers = new ArrayDeque<>();
+    private final int tickBufferPoolSize;
+    // Epoch nanosecond time of the requested cutoff sweep, NO_SWEEP if none is pending
+    private final AtomicLong pendingSweepNanos = new AtomicLong(NO_SWEEP);
+    private final AtomicBoolean checkpointRequested = new AtomicBoolean();
+    // Currency pairs with prices appended in the batch being drained
+    private final List<CurrencyData> batchCurrencyPairs = new ArrayList<>();
+    // Changes not yet published in a snapshot
+    private final List<CurrencyData> changedCurrencyPairs = new ArrayList<>();
+    private final List<String> removedCurrencyPairs = new ArrayList<>();
+    // Cross rates with a changed leg, to recompute before the next snapshot
+    private final List<CrossRate> pendingCrossRates = new ArrayList<>();
+    private final List<CrossRate> changedCrossRates = new ArrayList<>();
+    private long lastSnapshotNanos;
+    // Event time clock: the newest tick time handled by the shard and the wall clock time it was reached
+    private long eventTimeNanos = Long.MIN_VALUE;
+    private long eventTimeReachedAtNanos;
+    // Ticks later than the allowed lateness, only written by the owning thread
+    private volatile long lateTickCount;
+    // Prices evicted from windows, only written by the owning thread
+    private volatile long evictedTickCount;
+    // Publication times of the prices appended in the batch being drained
+    private long[] batchEnqueuedNanos = new long[1024];
+    private int batchEnqueuedCount;
+    // Publication to VWAP update latency, recorded by the owning thread only
+    private final SingleWriterRecorder latencyRecorder = new SingleWriterRecorder(MAX_RECORDED_LATENCY_NANOS, 3);
+    // Reused by readers of the recorder
+    private Histogram recycledLatencies;
+    // Journal of the ticks handled by the shard, null if journalling is disabled
+    private TickJournal journal;
+
+    /**
+     * @param expiryTickNanos the resolution of the shard's expiry timing wheel
+     * @param tickBufferPoolSize the most tick buffers of removed currency pairs kept for reuse
+     */
+    PriceUpdateShard(int index, PriceIngestionStage ingestionStage, long expiryTickNanos, int tickBufferPoolSize) {
+        this.index = index;
+        this.ingestionStage = ingestionStage;
+        this.expiryWheel = new ExpiryWheel(expiryTickNanos);
+        this.tickBufferPoolSize = tickBufferPoolSize;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    PriceIngestionStage getIngestionStage() {
+        return ingestionStage;
+    }
+
+    /**
+     * Ask the owning thread to evict prices before the cutoff relative to the given time
+     */
+    void requestSweep(long currentTimeNanos) {
+        if (pendingSweepNanos.getAndSet(currentTimeNanos) == NO_SWEEP) {
+            ingestionStage.wakeUp();
+        }
+    }
+
+    long takePendingSweep() {
+        return pendingSweepNanos.getAndSet(NO_SWEEP);
+    }
+
+    /**
+     * Ask the owning thread to capture a checkpoint of every currency pair's running sums for verification
+     */
+    void requestCheckpoint() {
+        if (!checkpointRequested.getAndSet(true)) {
+            ingestionStage.wakeUp();
+        }
+    }
+
+    boolean takeCheckpointRequest() {
+        return checkpointRequested.getAndSet(false);
+    }
+
+    /**
+     * Advance the event time clock to the newest tick time handled, if it is newer
+     *
+     * @param timestampNanos the newest tick time in epoch nanoseconds
+     * @param wallClockNanos the current wall clock time in epoch nanoseconds
+     */
+    void advanceEventTime(long timestampNanos, long wallClockNanos) {
+        if (timestampNanos > eventTimeNanos) {
+            eventTimeNanos = timestampNanos;
+            eventTimeReachedAtNanos = wallClockNanos;
+        }
+    }
+
+    /**
+     * The event time corresponding to a wall clock time: the newest tick time, moved on by the wall clock
+     * time elapsed since it was reached. Ticks behind the wall clock therefore keep their lag,
+     * and windows still expire when no ticks arrive.
+     *
+     * @return the event time in epoch nanoseconds, the wall clock time if no ticks have been handled
+     */
+    long eventTimeAt(long wallClockNanos) {
+        if (eventTimeNanos == Long.MIN_VALUE) {
+            return wallClockNanos;
+        }
+        return eventTimeNanos + Math.max(0, wallClockNanos - eventTimeReachedAtNanos);
+    }
+
+    void recordLateTick() {
+        lateTickCount++;
+    }
+
+    long getLateTickCount() {
+        return lateTickCount;
+    }
+
+    void recordEvicted(long count) {
+        evictedTickCount += count;
+    }
+
+    long getEvictedTickCount() {
+        return evictedTickCount;
+    }
+
+    /**
+     * Record the publication time of a price appended in the current batch
+     */
+    void recordEnqueued(long enqueuedNanos) {
+        if (batchEnqueuedCount == batchEnqueuedNanos.length) {
+            batchEnqueuedNanos = Arrays.copyOf(batchEnqueuedNanos, batchEnqueuedCount << 1);
+        }
+        batchEnqueuedNanos[batchEnqueuedCount++] = enqueuedNanos;
+    }
+
+    /**
+     * Record the latency of every price in the batch, now that their VWAPs are updated
+     */
+    void recordBatchLatencies(long updatedNanos) {
+        for (int i = 0; i < batchEnqueuedCount; i++) {
+            latencyRecorder.recordValue(Math.min(Math.max(0, updatedNanos - batchEnqueuedNanos[i]), MAX_RECORDED_LATENCY_NANOS));
+        }
+        batchEnqueuedCount = 0;
+    }
+
+    /**
+     * Move the latencies recorded since the last call into the histogram, from any thread
+     */
+    synchronized void addLatenciesTo(Histogram histogram) {
+        recycledLatencies = latencyRecorder.getIntervalHistogram(recycledLatencies);
+        histogram.add(recycledLatencies);
+    }
+
+    TickJournal getJournal() {
+        return journal;
+    }
+
+    void setJournal(TickJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * The shard's currency pair windows by currency pair, for iteration off the processing path.
+     * Modified only through {@link #addCurrencyPair} and {@link #removeCurrencyPair}.
+     */
+    Map<String, CurrencyData> getCurrencyPairData() {
+        return currencyPairData;
+    }
+
+    /**
+     * @return the window of the currency pair with the id, or null if it has none
+     */
+    CurrencyData getCurrencyPairData(int currencyPairId) {
+        return currencyPairId < currencyPairDataById.length ? currencyPairDataById[currencyPairId] : null;
+    }
+
+    void addCurrencyPair(CurrencyData data) {
+        int currencyPairId = data.getCurrencyPairId();
+        if (currencyPairId >= currencyPairDataById.length) {
+            currencyPairDataById = Arrays.copyOf(currencyPairDataById, Math.max(currencyPairId + 1, currencyPairDataById.length << 1));
+        }
+        currencyPairDataById[currencyPairId] = data;
+        currencyPairData.put(data.getCurrencyPair(), data);
+    }
+
+    /**
+     * Remove a currency pair's window, keeping its tick buffer for reuse if the window is empty
+     */
+    void removeCurrencyPair(CurrencyData data) {
+        currencyPairDataById[data.getCurrencyPairId()] = null;
+        currencyPairData.remove(data.getCurrencyPair());
+        expiryWheel.cancel(data);
+        TickBuffer ticks = data.getTickBuffer();
+        if (ticks.isEmpty() && recycledTickBuffers.size() < tickBufferPoolSize) {
+            // Sequences carry on from where the removed window stopped, so readers still holding it fail validation
+            recycledTickBuffers.push(ticks);
+        }
+    }
+
+    /**
+     * @return an empty tick buffer of a removed currency pair, or null if none is available
+     */
+    TickBuffer takeRecycledTickBuffer() {
+        return recycledTickBuffers.poll();
+    }
+
+    int getRecycledTickBufferCount() {
+        return recycledTickBuffers.size();
+    }
+
+    ExpiryWheel getExpiryWheel() {
+        return expiryWheel;
+    }
+
+    /**
+     * @return the statistics of the currency pair with the id, or null if it has never had a price in this shard
+     */
+    PriceStatistics getCurrencyPairStats(int currencyPairId) {
+        return currencyPairId < currencyPairStatsById.length ? currencyPairStatsById[currencyPairId] : null;
+    }
+
+    void setCurrencyPairStats(int currencyPairId, PriceStatistics stats) {
+        if (currencyPairId >= currencyPairStatsById.length) {
+            currencyPairStatsById = Arrays.copyOf(currencyPairStatsById, Math.max(currencyPairId + 1, currencyPairStatsById.length << 1));
+        }
+        currencyPairStatsById[currencyPairId] = stats;
+    }
+
+    /**
+     * Record that a price was appended to the currency pair in the current batch
+     */
+    void markInBatch(CurrencyData data) {
+        if (!data.isBatchPending()) {
+            data.setBatchPending(true);
+            batchCurrencyPairs.add(data);
+        }
+    }
+
+    List<CurrencyData> getBatchCurrencyPairs() {
+        return batchCurrencyPairs;
+    }
+
+    void markChanged(CurrencyData data) {
+        if (!data.isSnapshotPending()) {
+            data.setSnapshotPending(true);
+            changedCurrencyPairs.add(data);
+        }
+    }
+
+    void markRemoved(String currencyPair) {
+        removedCurrencyPairs.add(currencyPair);
+    }
+
+    boolean hasSnapshotChanges() {
+        return !changedCurrencyPairs.isEmpty() || !removedCurrencyPairs.isEmpty() || !changedCrossRates.isEmpty();
+    }
+
+    /**
+     * Record that a leg of the cross rate changed
+     */
+    void markPending(CrossRate crossRate) {
+        if (!crossRate.isPending()) {
+            crossRate.setPending(true);
+            pendingCrossRates.add(crossRate);
+        }
+    }
+
+    List<CrossRate> getPendingCrossRates() {
+        return pendingCrossRates;
+    }
+
+    List<CrossRate> getChangedCrossRates() {
+        return changedCrossRates;
+    }
+
+    List<CurrencyData> getChangedCurrencyPairs() {
+        return changedCurrencyPairs;
+    }
+
+    List<String> getRemovedCurrencyPairs() {
+        return removedCurrencyPairs;
+    }
+
+    long getLastSnapshotNanos() {
+        return lastSnapshotNanos;
+    }
+
+    void setLastSnapshotNanos(long lastSnapshotNanos) {
+        this.lastSnapshotNanos = lastSnapshotNanos;
+    }
+}
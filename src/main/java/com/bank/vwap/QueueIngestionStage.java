@@ -0,0 +1,284 @@
+package com.bank.vwap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ingestion stage backed by a bounded queue of tick columns guarded by one lock, like an ArrayBlockingQueue
+ * whose elements are the tick fields rather than CurrencyPriceData objects.
+ * The columns are reused for every update and grow on demand up to the capacity, so nothing is allocated
+ * per update, and a batch is offered under a single acquisition of the lock.
+ * The consumer waits for the first update and then copies everything queued behind it out in one call.
+ * Updates published while the queue is full are handled by the overflow policy.
+ */
+final class QueueIngestionStage implements PriceIngestionStage {
+    // Maximum number of updates drained from the queue at once
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final IngestionCounters counters = new IngestionCounters();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // Circular columns of the queued updates, guarded by the lock
+    private int[] currencyPairIds;
+    private long[] timestamps;
+    private double[] prices;
+    private long[] volumes;
+    private long[] enqueuedNanos;
+    private int head;
+    private int count;
+    private boolean wakeUpRequested;
+    // Number of queued updates, readable without the lock
+    private volatile int size;
+
+    // Reused by the consumer thread for every drain, so the handler runs without the lock
+    private final int[] drainCurrencyPairIds = new int[MAX_BATCH_SIZE];
+    private final long[] drainTimestamps = new long[MAX_BATCH_SIZE];
+    private final double[] drainPrices = new double[MAX_BATCH_SIZE];
+    private final long[] drainVolumes = new long[MAX_BATCH_SIZE];
+    private final long[] drainEnqueuedNanos = new long[MAX_BATCH_SIZE];
+
+    QueueIngestionStage(int capacity, OverflowPolicy overflowPolicy) {
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        int initialCapacity = Math.min(capacity, INITIAL_CAPACITY);
+        this.currencyPairIds = new int[initialCapacity];
+        this.timestamps = new long[initialCapacity];
+        this.prices = new double[initialCapacity];
+        this.volumes = new long[initialCapacity];
+        this.enqueuedNanos = new long[initialCapacity];
+    }
+
+    @Override
+    public boolean publish(CurrencyPriceData currencyPriceData) {
+        return publish(currencyPriceData.getCurrencyPairId(), currencyPriceData.getTimestampNanos(),
+                currencyPriceData.getPrice(), currencyPriceData.getVolume());
+    }
+
+    @Override
+    public boolean publish(int currencyPairId, long timestampNanos, double price, long volume) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            if (count == capacity && !makeSpace(1)) {
+                counters.recordDropped();
+                return false;
+            }
+            ensureCapacity(count + 1);
+            add(currencyPairId, timestampNanos, price, volume, now);
+            size = count;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Offer the batch under one acquisition of the lock, waking the consumer as each part that fits is queued
+     */
+    @Override
+    public int publishBatch(List<? extends CurrencyPriceData> batch) {
+        long now = System.nanoTime();
+        int next = 0;
+        lock.lock();
+        try {
+            while (next < batch.size()) {
+                if (count == capacity && !makeSpace(batch.size() - next)) {
+                    break;
+                }
+                int run = Math.min(batch.size() - next, capacity - count);
+                ensureCapacity(count + run);
+                for (int end = next + run; next < end; next++) {
+                    CurrencyPriceData currencyPriceData = batch.get(next);
+                    add(currencyPriceData.getCurrencyPairId(), currencyPriceData.getTimestampNanos(),
+                            currencyPriceData.getPrice(), currencyPriceData.getVolume(), now);
+                }
+                size = count;
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (int dropped = next; dropped < batch.size(); dropped++) {
+            counters.recordDropped();
+        }
+        return next;
+    }
+
+    /**
+     * Offer the run under one acquisition of the lock, waking the consumer as each part that fits is queued
+     */
+    @Override
+    public int publishBatch(int[] currencyPairIds, long[] timestampNanos, double[] prices, long[] volumes, int from, int to) {
+        long now = System.nanoTime();
+        int next = from;
+        lock.lock();
+        try {
+            while (next < to) {
+                if (count == capacity && !makeSpace(to - next)) {
+                    break;
+                }
+                int run = Math.min(to - next, capacity - count);
+                ensureCapacity(count + run);
+                for (int end = next + run; next < end; next++) {
+                    add(currencyPairIds[next], timestampNanos[next], prices[next], volumes[next], now);
+                }
+                size = count;
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (int dropped = next; dropped < to; dropped++) {
+            counters.recordDropped();
+        }
+        return next - from;
+    }
+
+    /**
+     * Apply the overflow policy to a full queue, holding the lock
+     *
+     * @param wanted the number of updates waiting to be queued
+     * @return false if the updates are to be dropped instead, left for the caller to count
+     */
+    private boolean makeSpace(int wanted) {
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                int dropped = Math.min(wanted, count);
+                head = (head + dropped) % currencyPairIds.length;
+                count -= dropped;
+                for (int i = 0; i < dropped; i++) {
+                    counters.recordDropped();
+                }
+                return true;
+            case DROP_NEWEST:
+                return false;
+            case BLOCK:
+            default:
+                counters.recordBlocked();
+                try {
+                    while (count == capacity) {
+                        notFull.await();
+                    }
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+        }
+    }
+
+    private void ensureCapacity(int needed) {
+        int length = currencyPairIds.length;
+        if (needed <= length) {
+            return;
+        }
+        int newLength = (int) Math.min(capacity, Math.max(needed, 2L * length));
+        currencyPairIds = unwrap(currencyPairIds, newLength);
+        timestamps = unwrap(timestamps, newLength);
+        prices = unwrap(prices, newLength);
+        volumes = unwrap(volumes, newLength);
+        enqueuedNanos = unwrap(enqueuedNanos, newLength);
+        head = 0;
+    }
+
+    private int[] unwrap(int[] column, int newLength) {
+        int[] grown = Arrays.copyOfRange(column, head, head + newLength);
+        System.arraycopy(column, 0, grown, column.length - head, head);
+        return grown;
+    }
+
+    private long[] unwrap(long[] column, int newLength) {
+        long[] grown = Arrays.copyOfRange(column, head, head + newLength);
+        System.arraycopy(column, 0, grown, column.length - head, head);
+        return grown;
+    }
+
+    private double[] unwrap(double[] column, int newLength) {
+        double[] grown = Arrays.copyOfRange(column, head, head + newLength);
+        System.arraycopy(column, 0, grown, column.length - head, head);
+        return grown;
+    }
+
+    private void add(int currencyPairId, long timestampNanos, double price, long volume, long now) {
+        int index = head + count;
+        if (index >= currencyPairIds.length) {
+            index -= currencyPairIds.length;
+        }
+        currencyPairIds[index] = currencyPairId;
+        timestamps[index] = timestampNanos;
+        prices[index] = price;
+        volumes[index] = volume;
+        enqueuedNanos[index] = now;
+        count++;
+    }
+
+    @Override
+    public int drain(PriceUpdateHandler handler) throws InterruptedException {
+        int drained;
+        lock.lockInterruptibly();
+        try {
+            while (count == 0 && !wakeUpRequested) {
+                notEmpty.await();
+            }
+            wakeUpRequested = false;
+            if (count == 0) {
+                return 0;
+            }
+            counters.recordDepth(count);
+            drained = Math.min(count, MAX_BATCH_SIZE);
+            for (int i = 0; i < drained; i++) {
+                drainCurrencyPairIds[i] = currencyPairIds[head];
+                drainTimestamps[i] = timestamps[head];
+                drainPrices[i] = prices[head];
+                drainVolumes[i] = volumes[head];
+                drainEnqueuedNanos[i] = enqueuedNanos[head];
+                if (++head == currencyPairIds.length) {
+                    head = 0;
+                }
+            }
+            count -= drained;
+            size = count;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (int i = 0; i < drained; i++) {
+            handler.onPriceUpdate(drainCurrencyPairIds[i], drainTimestamps[i], drainPrices[i], drainVolumes[i], drainEnqueuedNanos[i]);
+        }
+        return drained;
+    }
+
+    @Override
+    public void wakeUp() {
+        lock.lock();
+        try {
+            wakeUpRequested = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public IngestionCounters getCounters() {
+        return counters;
+    }
+}
@@ -0,0 +1,288 @@
+package com.bank.vwap;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Disruptor style ingestion stage: a pre-allocated ring of mutable tick slots.
+ * Producers claim a sequence, write the tick fields into the slot and publish the sequence,
+ * so nothing is allocated per update. The single consumer reads slots in sequence order
+ * and handles every published update in one batch.
+ *
+ * When the ring is full producers either wait for the consumer to free slots, or with DROP_NEWEST
+ * claim sequences only while slots are free and drop the updates that do not fit.
+ */
+final class RingBufferIngestionStage implements PriceIngestionStage {
+    // Maximum number of updates handled before the consumer sequence is released to producers
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    private final TickSlot[] slots;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final boolean dropWhenFull;
+    private final IngestionCounters counters = new IngestionCounters();
+    // Sequence last published into each slot, -1 until the slot is first used
+    private final AtomicLongArray publishedSequences;
+    // Highest sequence claimed by a producer
+    private final PaddedSequence claimSequence = new PaddedSequence();
+    // Highest sequence handled by the consumer
+    private final PaddedSequence consumerSequence = new PaddedSequence();
+    private volatile boolean wakeUpRequested;
+
+    RingBufferIngestionStage(int size, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy) {
+        int capacity = TickBuffer.roundToPowerOfTwo(size);
+        this.slots = new TickSlot[capacity];
+        this.mask = capacity - 1;
+        this.waitStrategy = waitStrategy;
+        this.dropWhenFull = overflowPolicy == OverflowPolicy.DROP_NEWEST;
+        this.publishedSequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new TickSlot();
+            publishedSequences.set(i, -1);
+        }
+    }
+
+    @Override
+    public boolean publish(CurrencyPriceData currencyPriceData) {
+        return publish(currencyPriceData.getCurrencyPairId(), currencyPriceData.getTimestampNanos(),
+                currencyPriceData.getPrice(), currencyPriceData.getVolume());
+    }
+
+    @Override
+    public boolean publish(int currencyPairId, long timestampNanos, double price, long volume) {
+        long sequence;
+        if (dropWhenFull) {
+            sequence = tryClaim();
+            if (sequence < 0) {
+                counters.recordDropped();
+                return false;
+            }
+        } else {
+            sequence = claimSequence.incrementAndGet();
+            awaitFreeSlots(sequence);
+        }
+        int index = (int) (sequence & mask);
+        TickSlot slot = slots[index];
+        slot.currencyPairId = currencyPairId;
+        slot.timestampNanos = timestampNanos;
+        slot.price = price;
+        slot.volume = volume;
+        slot.enqueuedNanos = System.nanoTime();
+        publishedSequences.lazySet(index, sequence);
+        return true;
+    }
+
+    /**
+     * Claim a run of sequences for the batch at once, so producers contend on the claim
+     * sequence once per run instead of once per update
+     */
+    @Override
+    public int publishBatch(List<? extends CurrencyPriceData> batch) {
+        int published = 0;
+        while (published < batch.size()) {
+            int runLength = runLength(batch.size() - published);
+            if (runLength <= 0) {
+                return dropRemaining(published, batch.size());
+            }
+            long firstSequence = claimRun(runLength);
+            if (firstSequence < 0) {
+                continue;
+            }
+            long enqueuedNanos = System.nanoTime();
+            for (long sequence = firstSequence; sequence < firstSequence + runLength; sequence++) {
+                CurrencyPriceData currencyPriceData = batch.get(published++);
+                TickSlot slot = slots[(int) (sequence & mask)];
+                slot.currencyPairId = currencyPriceData.getCurrencyPairId();
+                slot.timestampNanos = currencyPriceData.getTimestampNanos();
+                slot.price = currencyPriceData.getPrice();
+                slot.volume = currencyPriceData.getVolume();
+                slot.enqueuedNanos = enqueuedNanos;
+            }
+            publishRun(firstSequence, runLength);
+        }
+        return published;
+    }
+
+    @Override
+    public int publishBatch(int[] currencyPairIds, long[] timestampNanos, double[] prices, long[] volumes, int from, int to) {
+        int next = from;
+        while (next < to) {
+            int runLength = runLength(to - next);
+            if (runLength <= 0) {
+                return dropRemaining(next - from, to - from);
+            }
+            long firstSequence = claimRun(runLength);
+            if (firstSequence < 0) {
+                continue;
+            }
+            long enqueuedNanos = System.nanoTime();
+            for (long sequence = firstSequence; sequence < firstSequence + runLength; sequence++, next++) {
+                TickSlot slot = slots[(int) (sequence & mask)];
+                slot.currencyPairId = currencyPairIds[next];
+                slot.timestampNanos = timestampNanos[next];
+                slot.price = prices[next];
+                slot.volume = volumes[next];
+                slot.enqueuedNanos = enqueuedNanos;
+            }
+            publishRun(firstSequence, runLength);
+        }
+        return to - from;
+    }
+
+    /**
+     * @return the length of the next run to claim for the remaining updates, as much of it as there
+     * are free slots with DROP_NEWEST, so 0 when the ring is full
+     */
+    private int runLength(int remaining) {
+        int runLength = Math.min(remaining, slots.length);
+        if (dropWhenFull) {
+            runLength = (int) Math.min(runLength, slots.length - (claimSequence.get() - consumerSequence.get()));
+        }
+        return runLength;
+    }
+
+    /**
+     * Claim a run of sequences, waiting for the consumer to free their slots,
+     * or with DROP_NEWEST only if the slots are still free
+     *
+     * @return the first sequence of the run, or -1 if another producer claimed the slots first
+     */
+    private long claimRun(int runLength) {
+        if (!dropWhenFull) {
+            long lastSequence = claimSequence.addAndGet(runLength);
+            awaitFreeSlots(lastSequence);
+            return lastSequence - runLength + 1;
+        }
+        long current = claimSequence.get();
+        if (current + runLength - slots.length > consumerSequence.get()
+                || !claimSequence.compareAndSet(current, current + runLength)) {
+            return -1;
+        }
+        return current + 1;
+    }
+
+    /**
+     * Publish a run of written slots. The first slot is published last, so the consumer,
+     * which reads in sequence order, sees the whole run at once.
+     */
+    private void publishRun(long firstSequence, int runLength) {
+        for (long sequence = firstSequence + runLength - 1; sequence > firstSequence; sequence--) {
+            publishedSequences.lazySet((int) (sequence & mask), sequence);
+        }
+        publishedSequences.lazySet((int) (firstSequence & mask), firstSequence);
+    }
+
+    private int dropRemaining(int published, int total) {
+        for (int dropped = published; dropped < total; dropped++) {
+            counters.recordDropped();
+        }
+        return published;
+    }
+
+    /**
+     * Wait for the consumer to free the slot the sequence maps to
+     */
+    private void awaitFreeSlots(long lastSequence) {
+        long wrapPoint = lastSequence - slots.length;
+        if (wrapPoint > consumerSequence.get()) {
+            counters.recordBlocked();
+            int idleCounter = 0;
+            while (wrapPoint > consumerSequence.get()) {
+                idleCounter = waitStrategy.idle(idleCounter);
+            }
+        }
+    }
+
+    /**
+     * Claim the next sequence only if its slot is free
+     *
+     * @return the sequence claimed, or -1 if the ring is full
+     */
+    private long tryClaim() {
+        while (true) {
+            long current = claimSequence.get();
+            if (current + 1 - slots.length > consumerSequence.get()) {
+                return -1;
+            }
+            if (claimSequence.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    @Override
+    public int drain(PriceUpdateHandler handler) throws InterruptedException {
+        long nextSequence = consumerSequence.get() + 1;
+        int idleCounter = 0;
+        while (!isPublished(nextSequence)) {
+            if (wakeUpRequested) {
+                wakeUpRequested = false;
+                return 0;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            idleCounter = waitStrategy.idle(idleCounter);
+        }
+
+        counters.recordDepth(size());
+        int handled = 0;
+        while (handled < MAX_BATCH_SIZE && isPublished(nextSequence)) {
+            TickSlot slot = slots[(int) (nextSequence & mask)];
+            handler.onPriceUpdate(slot.currencyPairId, slot.timestampNanos, slot.price, slot.volume, slot.enqueuedNanos);
+            nextSequence++;
+            handled++;
+        }
+        consumerSequence.lazySet(nextSequence - 1);
+        return handled;
+    }
+
+    private boolean isPublished(long sequence) {
+        return publishedSequences.get((int) (sequence & mask)) == sequence;
+    }
+
+    @Override
+    public void wakeUp() {
+        wakeUpRequested = true;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.max(0, claimSequence.get() - consumerSequence.get());
+    }
+
+    @Override
+    public int capacity() {
+        return slots.length;
+    }
+
+    @Override
+    public IngestionCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * Mutable tick fields, reused for every sequence that maps to the slot
+     */
+    private static final class TickSlot {
+        private int currencyPairId;
+        private long timestampNanos;
+        private double price;
+        private long volume;
+        private long enqueuedNanos;
+    }
+
+    /**
+     * Sequence counter padded onto its own cache lines, as producers and the consumer update them independently
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedSequence extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+        private long p1, p2, p3, p4, p5, p6, p7;
+
+        private PaddedSequence() {
+            super(-1);
+        }
+    }
+}
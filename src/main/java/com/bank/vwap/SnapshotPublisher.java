@@ -0,0 +1,66 @@
+package com.bank.vwap;
+
+import com.bank.util.DateTimeUtil;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes VWAPSnapshots on behalf of the shard threads.
+ * Each publication copies the current snapshot, applies one shard's changes and swaps the
+ * reference, so readers only ever see complete snapshots and never take a lock.
+ */
+final class SnapshotPublisher {
+    private final AtomicReference<VWAPSnapshot> snapshot = new AtomicReference<>(VWAPSnapshot.EMPTY);
+
+    VWAPSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Publish the changes of a shard. Only called from the shard's own thread.
+     *
+     * @return the snapshots of the shard's changed currency pairs
+     */
+    Collection<CurrencyPairSnapshot> publish(PriceUpdateShard shard) {
+        List<CurrencyData> changed = shard.getChangedCurrencyPairs();
+        List<String> removed = shard.getRemovedCurrencyPairs();
+        Map<String, CurrencyData> current = shard.getCurrencyPairData();
+
+        // Snapshot the shard's pairs once, then retry the swap if another shard published first
+        Map<String, CurrencyPairSnapshot> updates = new HashMap<>();
+        for (CurrencyData data : changed) {
+            data.setSnapshotPending(false);
+            if (current.get(data.getCurrencyPair()) == data) {
+                updates.put(data.getCurrencyPair(), CurrencyPairSnapshot.of(data));
+            }
+        }
+        List<CrossRate> changedCrossRates = shard.getChangedCrossRates();
+        for (CrossRate crossRate : changedCrossRates) {
+            updates.put(crossRate.getCurrencyPair(), crossRate.toSnapshot());
+        }
+        long publishedAtNanos = DateTimeUtil.currentEpochNanos();
+        while (true) {
+            VWAPSnapshot previous = snapshot.get();
+            Map<String, CurrencyPairSnapshot> currencyPairs = new HashMap<>(previous.getCurrencyPairs());
+            currencyPairs.putAll(updates);
+            for (String currencyPair : removed) {
+                // A pair removed and added again within the batch stays in the snapshot
+                if (!current.containsKey(currencyPair) && !updates.containsKey(currencyPair)) {
+                    currencyPairs.remove(currencyPair);
+                }
+            }
+            VWAPSnapshot next = new VWAPSnapshot(previous.getVersion() + 1, publishedAtNanos, currencyPairs);
+            if (snapshot.compareAndSet(previous, next)) {
+                break;
+            }
+        }
+        changed.clear();
+        removed.clear();
+        changedCrossRates.clear();
+        return updates.values();
+    }
+}
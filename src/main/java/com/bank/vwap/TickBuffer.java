@@ -0,0 +1,266 @@
+package com.bank.vwap;
+
+import com.bank.util.CompensatedSum;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Columnar ring buffer of ticks for a single currency pair.
+ * Each tick is stored as an epoch-nanos timestamp, a price and a volume in parallel
+ * primitive columns, so no objects are allocated per tick.
+ *
+ * Ticks are addressed by an ever-increasing sequence number. The oldest retained tick
+ * is at {@link #tail()} and the next tick is written at {@link #head()}.
+ * The buffer doubles its capacity when full, so the retained window is never truncated.
+ */
+public abstract class TickBuffer {
+    // Upper bound for the initial capacity derived from configuration, larger windows grow on demand
+    static final int MAX_INITIAL_CAPACITY = 1 << 24;
+
+    private static final VarHandle TAIL;
+
+    static {
+        try {
+            TAIL = MethodHandles.lookup().findVarHandle(TickBuffer.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    protected long head;
+    protected long tail;
+    protected int capacity;
+    protected int mask;
+    // Odd while the storage is being replaced or retained ticks are being moved, used to validate reads from other threads
+    private volatile int resizeCount;
+
+    protected TickBuffer(int initialCapacity) {
+        this.capacity = roundToPowerOfTwo(initialCapacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Create a tick buffer
+     *
+     * @param initialCapacity the number of ticks to size the buffer for
+     * @param offHeap true to store the columns in a direct ByteBuffer outside the Java heap
+     * @return an empty tick buffer
+     */
+    public static TickBuffer create(int initialCapacity, boolean offHeap) {
+        return offHeap ? new DirectTickBuffer(initialCapacity) : new HeapTickBuffer(initialCapacity);
+    }
+
+    /**
+     * Create the tick buffer for a currency pair as configured, either holding every tick
+     * or pre-aggregating ticks into time buckets
+     */
+    public static TickBuffer create(VWAPCalculatorConfig config) {
+        if (config.getBucketMillis() > 0) {
+            return new BucketedTickBuffer(TimeUnit.MILLISECONDS.toNanos(config.getBucketMillis()),
+                    TimeUnit.SECONDS.toNanos(config.getCutoffSeconds()));
+        }
+        return create(config.getInitialTickBufferCapacity(), config.isOffHeapTickBuffer());
+    }
+
+    public void append(long timestampNanos, double price, long volume) {
+        if (head - tail == capacity) {
+            resize(capacity << 1);
+        }
+        int index = (int) (head & mask);
+        // Order the eviction of the slot's previous tick before it is overwritten, for validateConcurrentRead
+        VarHandle.storeStoreFence();
+        put(index, timestampNanos, price, volume);
+        head++;
+    }
+
+    /**
+     * Insert a tick older than the newest retained tick, keeping the buffer in time order.
+     * Newer ticks move up one sequence, so the cost is proportional to the number of ticks
+     * newer than the one inserted, which is small for ticks that are only slightly late.
+     *
+     * @return the sequence the tick is stored at
+     */
+    public long insert(long timestampNanos, double price, long volume) {
+        if (head - tail == capacity) {
+            resize(capacity << 1);
+        }
+        long sequence = head;
+        while (sequence > tail && timestampAt(sequence - 1) > timestampNanos) {
+            sequence--;
+        }
+        beginRewrite();
+        for (long moving = head; moving > sequence; moving--) {
+            move((int) ((moving - 1) & mask), (int) (moving & mask));
+        }
+        put((int) (sequence & mask), timestampNanos, price, volume);
+        head++;
+        endRewrite();
+        return sequence;
+    }
+
+    /**
+     * Drop the oldest tick from the buffer
+     */
+    public void removeOldest() {
+        if (tail < head) {
+            tail++;
+        }
+    }
+
+    /**
+     * Drop every retained tick
+     */
+    public void clear() {
+        tail = head;
+    }
+
+    public long head() {
+        return head;
+    }
+
+    public long tail() {
+        return tail;
+    }
+
+    public int size() {
+        return (int) (head - tail);
+    }
+
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long timestampAt(long sequence) {
+        return timestampAtIndex((int) (sequence & mask));
+    }
+
+    public double priceAt(long sequence) {
+        return priceAtIndex((int) (sequence & mask));
+    }
+
+    public long volumeAt(long sequence) {
+        return volumeAtIndex((int) (sequence & mask));
+    }
+
+    /**
+     * @return the number of ticks aggregated into the entry at the sequence, 1 unless ticks are bucketed
+     */
+    public long countAt(long sequence) {
+        return 1;
+    }
+
+    /**
+     * @return the sum of the prices aggregated into the entry at the sequence, its price unless ticks are bucketed
+     */
+    public double priceSumAt(long sequence) {
+        return priceAt(sequence);
+    }
+
+    /**
+     * The time before which entries are evicted for a cutoff. Entries hold single ticks unless
+     * ticks are bucketed, in which case a bucket is only evicted once it is entirely before the cutoff.
+     */
+    public long alignCutoff(long cutoffNanos) {
+        return cutoffNanos;
+    }
+
+    /**
+     * Sum price * volume and volume over the entries from one sequence up to another
+     *
+     * @param weightedPrices the sum to add the weighted prices to
+     * @return the sum of the volumes
+     */
+    public long sum(long fromSequence, long toSequence, CompensatedSum weightedPrices) {
+        long volume = 0;
+        for (long sequence = fromSequence; sequence < toSequence; sequence++) {
+            long entryVolume = volumeAt(sequence);
+            weightedPrices.add(priceAt(sequence) * entryVolume);
+            volume += entryVolume;
+        }
+        return volume;
+    }
+
+    /**
+     * The time the entry at the sequence is evicted from a window of the given length, consistent with {@link #alignCutoff}
+     */
+    public long expiryAt(long sequence, long windowNanos) {
+        return timestampAt(sequence) + windowNanos + 1;
+    }
+
+    private void resize(int newCapacity) {
+        if (newCapacity <= 0) {
+            throw new IllegalStateException("Tick buffer cannot grow beyond " + capacity + " ticks");
+        }
+        beginRewrite();
+        grow(newCapacity);
+        this.capacity = newCapacity;
+        this.mask = newCapacity - 1;
+        endRewrite();
+    }
+
+    /**
+     * Mark the start of a change to retained ticks, invalidating concurrent reads until {@link #endRewrite()}
+     */
+    protected void beginRewrite() {
+        resizeCount++;
+    }
+
+    protected void endRewrite() {
+        resizeCount++;
+    }
+
+    /**
+     * Start reading retained ticks from a thread other than the writer. The ticks read may be
+     * inconsistent, and are only valid if {@link #validateConcurrentRead} succeeds afterwards.
+     *
+     * @return the stamp to validate the read with
+     */
+    public int beginConcurrentRead() {
+        return resizeCount;
+    }
+
+    /**
+     * @param stamp the stamp returned by {@link #beginConcurrentRead()}
+     * @param fromSequence the oldest sequence read
+     * @return true if the storage was not replaced, no ticks were moved and no tick from the sequence on was evicted since the stamp was taken
+     */
+    public boolean validateConcurrentRead(int stamp, long fromSequence) {
+        VarHandle.acquireFence();
+        return (stamp & 1) == 0 && resizeCount == stamp && (long) TAIL.getOpaque(this) <= fromSequence;
+    }
+
+    static int roundToPowerOfTwo(int value) {
+        if (value <= 1) {
+            return 1;
+        }
+        if (value > MAX_INITIAL_CAPACITY) {
+            return MAX_INITIAL_CAPACITY;
+        }
+        return Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * Replace the storage with one of the new capacity, keeping every retained tick at the
+     * index its sequence maps to under the new mask
+     */
+    protected abstract void grow(int newCapacity);
+
+    protected abstract void put(int index, long timestampNanos, double price, long volume);
+
+    /**
+     * Copy the tick at one index to another
+     */
+    protected abstract void move(int fromIndex, int toIndex);
+
+    protected abstract long timestampAtIndex(int index);
+
+    protected abstract double priceAtIndex(int index);
+
+    protected abstract long volumeAtIndex(int index);
+}
@@ -1,9 +1,15 @@
 package com.bank.vwap;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.*;
 import java.util.*;
 import java.util.concurrent.*;
 
+import com.bank.journal.TickJournal;
+import com.bank.journal.TickJournalReader;
+import com.bank.util.DateTimeUtil;
 import com.bank.util.PriceStatistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,88 +17,509 @@ import org.slf4j.LoggerFactory;
 public class VWAPCalculator {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(VWAPCalculator.class);
+    // Largest divergence of a running VWAP from its exact recompute, relative to the VWAP, reported as correct
+    private static final double VERIFY_TOLERANCE = 1e-9;
+    // Longest shutdownExecutors waits for the shard consumers to finish
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
     private Integer cutoffSeconds;
-    protected static String PRICE_TIMEZONE = "Australia/Sydney";
-
-    private final BlockingQueue<CurrencyPriceData> priceUpdateQueue = new LinkedBlockingQueue<>();
+    private final long cutoffNanos;
+    private final long maxLatenessNanos;
+    private final LateTickPolicy lateTickPolicy;
+    // Additional windows shorter than the cutoff, maintained from the same ticks
+    private final int[] windowSeconds;
+    private final VWAPCalculatorConfig config;
+    protected static String PRICE_TIMEZONE = DateTimeUtil.PRICE_ZONE.getId();
+
+    // Each shard owns its currency pairs and is drained by a single consumer thread
+    private final PriceUpdateShard[] shards;
+    // Dense ids of the currency pairs, resolved once as prices are sent
+    private final CurrencyPairRegistry currencyPairRegistry = new CurrencyPairRegistry();
+    private final CrossRateGraph crossRateGraph;
+    // Currency pair ids below this are cross rate legs, assigned to shards by the graph
+    private final int crossRateLegCount;
+    // Read-only view across all shards, only modified when a currency pair is added or removed
     private final Map<String, CurrencyData> currencyPairData = new ConcurrentHashMap<>();
     private final ScheduledExecutorService cleanupScheduledExecutor = Executors.newSingleThreadScheduledExecutor();
-    private final ExecutorService priceFeedConsumerExecutorService = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService priceFeedConsumerExecutorService;
+    private volatile boolean consuming = true;
+    private final SnapshotPublisher snapshotPublisher = new SnapshotPublisher();
+    private final long snapshotIntervalNanos;
+    private final VWAPDispatcher dispatcher = new VWAPDispatcher();
+    private final ExecutorService listenerDispatcherExecutorService = Executors.newSingleThreadExecutor();
+    private final VWAPMetrics metrics;
+    // Columns each sending thread groups its columnar batches by shard into, reused for every batch
+    private final ThreadLocal<ShardColumns> shardColumns;
 
     // Track statistics for each currency pair
     private final Map<String, PriceStatistics> currencyPairStats = new ConcurrentHashMap<>();
 
     public VWAPCalculator(Integer cutoffSeconds){
-        this.cutoffSeconds = cutoffSeconds;
-        cleanupScheduledExecutor.scheduleWithFixedDelay(this::clearCutoffPricesForAllCurrencyPairs, this.cutoffSeconds, this.cutoffSeconds, TimeUnit.SECONDS);
+        this(new VWAPCalculatorConfig().withCutoffSeconds(cutoffSeconds));
+    }
+
+    public VWAPCalculator(VWAPCalculatorConfig config){
+        this.config = config;
+        this.cutoffSeconds = config.getCutoffSeconds();
+        this.cutoffNanos = TimeUnit.SECONDS.toNanos(config.getCutoffSeconds());
+        this.windowSeconds = config.getWindowSeconds();
+        this.maxLatenessNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxLatenessMillis());
+        this.lateTickPolicy = config.getLateTickPolicy();
+        this.snapshotIntervalNanos = TimeUnit.MICROSECONDS.toNanos(config.getSnapshotIntervalMicros());
+        this.crossRateGraph = new CrossRateGraph(config, currencyPairRegistry, config.getShardCount());
+        this.crossRateLegCount = crossRateGraph.getLegCount();
+        this.shards = new PriceUpdateShard[config.getShardCount()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new PriceUpdateShard(i, PriceIngestionStage.create(config),
+                    TimeUnit.MILLISECONDS.toNanos(config.getExpiryTickMillis()), config.getTickBufferPoolSize());
+        }
+        this.shardColumns = ThreadLocal.withInitial(() -> new ShardColumns(shards.length));
+        this.priceFeedConsumerExecutorService = Executors.newFixedThreadPool(shards.length);
+        this.metrics = new VWAPMetrics(this, shards, currencyPairData, currencyPairStats);
+        if (config.isMetricsJmxEnabled()) {
+            metrics.register();
+        }
+        if (config.getMetricsLogIntervalSeconds() > 0) {
+            cleanupScheduledExecutor.scheduleWithFixedDelay(metrics::log, config.getMetricsLogIntervalSeconds(),
+                    config.getMetricsLogIntervalSeconds(), TimeUnit.SECONDS);
+        }
+        // Advance the expiry wheels once per tick, so idle prices are evicted at most one tick late
+        long sweepIntervalMillis = config.getExpiryTickMillis();
+        cleanupScheduledExecutor.scheduleWithFixedDelay(this::clearCutoffPricesForAllCurrencyPairs, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+        if (config.getVerifyIntervalSeconds() > 0) {
+            cleanupScheduledExecutor.scheduleWithFixedDelay(this::verifyRunningSums, config.getVerifyIntervalSeconds(),
+                    config.getVerifyIntervalSeconds(), TimeUnit.SECONDS);
+        }
+        if (config.isJournalEnabled()) {
+            openJournals();
+        }
+        listenerDispatcherExecutorService.submit(dispatcher::dispatch);
         startConsumingPriceUpdates();
     }
 
+    /**
+     * Rebuild the windows from the journal, replaying only the ticks within the cutoff,
+     * then open a journal for each shard. Runs before the shards start consuming.
+     */
+    private void openJournals() {
+        Path directory = Paths.get(config.getJournalDirectory());
+        try {
+            List<Path> segments = TickJournalReader.listSegments(directory);
+            long currentTimeNanos = DateTimeUtil.currentEpochNanos();
+            long replayed = TickJournalReader.replay(segments, currentTimeNanos - cutoffNanos, this::processPriceUpdate);
+            publishSnapshots();
+            LOGGER.info("Recovered {} price updates within the cutoff from {} journal segments", replayed, segments.size());
+
+            int segmentSize = (int) Math.min(Integer.MAX_VALUE, (long) config.getJournalSegmentSizeMb() << 20);
+            for (PriceUpdateShard shard : shards) {
+                shard.setJournal(new TickJournal(directory, shard.getIndex(), segmentSize, config.getJournalSyncPolicy()));
+            }
+            // Segments from earlier runs are deleted by the first shard once they expire
+            shards[0].getJournal().adoptSegments(segments);
+            shards[0].getJournal().deleteSegmentsBefore(currentTimeNanos - cutoffNanos);
+        } catch (IOException e) {
+            LOGGER.error("Error opening the tick journal in {}, continuing without it: {}", directory, e.getMessage(), e);
+            for (PriceUpdateShard shard : shards) {
+                shard.setJournal(null);
+            }
+        }
+    }
+
     private void startConsumingPriceUpdates() {
-        priceFeedConsumerExecutorService.submit(() -> {
-            while (true) {
-                try {
-                    CurrencyPriceData update = priceUpdateQueue.take();
-                    processVWAPForCurrencyPair(update);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
+        for (PriceUpdateShard shard : shards) {
+            priceFeedConsumerExecutorService.submit(() -> consumePriceUpdates(shard));
+        }
+    }
+
+    private void consumePriceUpdates(PriceUpdateShard shard) {
+        // Prices are appended as they are drained, the window and VWAP of each pair are updated once per batch
+        TickJournal journal = shard.getJournal();
+        PriceUpdateHandler handler = (currencyPairId, timestampNanos, price, volume, enqueuedNanos) -> {
+            if (journal != null) {
+                journalPriceUpdate(journal, currencyPairRegistry.nameOf(currencyPairId), timestampNanos, price, volume);
+            }
+            CurrencyData data = appendPriceUpdate(shard, currencyPairId, timestampNanos, price, volume);
+            if (data != null) {
+                shard.markInBatch(data);
+                shard.recordEnqueued(enqueuedNanos);
+            }
+        };
+        PriceIngestionStage ingestionStage = shard.getIngestionStage();
+        // Keep draining after shutdown is requested until the updates already sent are processed
+        while (consuming || ingestionStage.size() > 0) {
+            try {
+                ingestionStage.drain(handler);
+                completeBatch(shard);
+                if (journal != null) {
+                    journal.flush();
+                }
+                long sweepTimeNanos = shard.takePendingSweep();
+                if (sweepTimeNanos != PriceUpdateShard.NO_SWEEP) {
+                    // Windows end at the shard's event time, not the wall clock the sweep was requested at
+                    long eventTimeNanos = shard.eventTimeAt(sweepTimeNanos);
+                    expirePrices(shard, eventTimeNanos);
+                    if (journal != null) {
+                        journal.deleteSegmentsBefore(eventTimeNanos - cutoffNanos);
+                    }
+                }
+                if (shard.takeCheckpointRequest()) {
+                    captureCheckpoints(shard);
+                }
+                // Publish once the backlog is drained, or at least once per interval under sustained load
+                if (shard.hasSnapshotChanges() && (ingestionStage.size() == 0
+                        || System.nanoTime() - shard.getLastSnapshotNanos() >= snapshotIntervalNanos)) {
+                    publishSnapshot(shard);
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
-        });
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private void journalPriceUpdate(TickJournal journal, String currencyPair, long timestampNanos, double price, long volume) {
+        try {
+            journal.append(currencyPair, timestampNanos, price, volume);
+        } catch (Exception e) {
+            metrics.recordError();
+            LOGGER.error("Error journalling price update for {}: {}", currencyPair, e.getMessage());
+        }
+    }
+
+    /**
+     * Send a price update for processing. If the currency pair's shard is full the overflow policy applies.
+     *
+     * @return true if the update was accepted, false if it was invalid or dropped
+     */
+    public boolean sendVWAPForCurrencyPair(CurrencyPriceData currencyPriceData) {
+        if (!currencyPriceData.hasValidTimestamp()) {
+            LOGGER.warn("Ignoring price update for {} without a valid timestamp", currencyPriceData.getCurrencyPair());
+            return false;
+        }
+        int currencyPairId = currencyPairRegistry.register(currencyPriceData.getCurrencyPair());
+        currencyPriceData.setCurrencyPairId(currencyPairId);
+        return shardFor(currencyPairId).getIngestionStage().publish(currencyPriceData);
+    }
+
+    /**
+     * Send a price update from its fields. With the RING_BUFFER ingestion mode the fields are
+     * written straight into a pre-allocated slot, so nothing is allocated per update.
+     *
+     * @param currencyPair the currency pair, e.g. AUD/USD
+     * @param timestampNanos the time of the price in epoch nanoseconds
+     * @param price the price
+     * @param volume the traded volume
+     * @return true if the update was accepted, false if it was invalid or dropped
+     */
+    public boolean sendVWAPForCurrencyPair(String currencyPair, long timestampNanos, double price, long volume) {
+        if (timestampNanos == DateTimeUtil.INVALID_TIMESTAMP) {
+            LOGGER.warn("Ignoring price update for {} without a valid timestamp", currencyPair);
+            return false;
+        }
+        int currencyPairId = currencyPairRegistry.register(currencyPair);
+        return shardFor(currencyPairId).getIngestionStage().publish(currencyPairId, timestampNanos, price, volume);
+    }
+
+    /**
+     * Send a price update for a currency pair already registered with {@link #getCurrencyPairRegistry()}.
+     * Feeds that resolve the id once, or from the raw bytes of a message, avoid hashing
+     * or allocating the currency pair string for every price.
+     *
+     * @param currencyPairId the id of the currency pair in the calculator's registry
+     * @param timestampNanos the time of the price in epoch nanoseconds
+     * @param price the price
+     * @param volume the traded volume
+     * @return true if the update was accepted, false if the id is not registered, the update was invalid or dropped
+     */
+    public boolean sendVWAPForCurrencyPair(int currencyPairId, long timestampNanos, double price, long volume) {
+        if (currencyPairId < 0 || currencyPairId >= currencyPairRegistry.size()) {
+            LOGGER.warn("Ignoring price update for unregistered currency pair id {}", currencyPairId);
+            return false;
+        }
+        if (timestampNanos == DateTimeUtil.INVALID_TIMESTAMP) {
+            LOGGER.warn("Ignoring price update for {} without a valid timestamp", currencyPairRegistry.nameOf(currencyPairId));
+            return false;
+        }
+        return shardFor(currencyPairId).getIngestionStage().publish(currencyPairId, timestampNanos, price, volume);
+    }
+
+    /**
+     * @return the registry assigning ids to the currency pairs sent to the calculator
+     */
+    public CurrencyPairRegistry getCurrencyPairRegistry() {
+        return currencyPairRegistry;
+    }
+
+    /**
+     * Send a batch of price updates. Updates are handed to each shard in one call,
+     * and the shard updates each currency pair's window once for all of its prices in the batch.
+     *
+     * @param batch the price updates, in time order per currency pair
+     * @return the number of updates accepted
+     */
+    public int sendBatch(Collection<? extends CurrencyPriceData> batch) {
+        List<List<CurrencyPriceData>> shardBatches = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            shardBatches.add(new ArrayList<>(shards.length == 1 ? batch.size() : batch.size() / shards.length + 1));
+        }
+        for (CurrencyPriceData currencyPriceData : batch) {
+            if (!currencyPriceData.hasValidTimestamp()) {
+                LOGGER.warn("Ignoring price update for {} without a valid timestamp", currencyPriceData.getCurrencyPair());
+                continue;
+            }
+            int currencyPairId = currencyPairRegistry.register(currencyPriceData.getCurrencyPair());
+            currencyPriceData.setCurrencyPairId(currencyPairId);
+            shardBatches.get(shardFor(currencyPairId).getIndex()).add(currencyPriceData);
+        }
+        int accepted = 0;
+        for (int i = 0; i < shards.length; i++) {
+            if (!shardBatches.get(i).isEmpty()) {
+                accepted += shards[i].getIngestionStage().publishBatch(shardBatches.get(i));
+            }
+        }
+        return accepted;
+    }
+
+    public int sendBatch(CurrencyPriceData... batch) {
+        return sendBatch(Arrays.asList(batch));
+    }
+
+    /**
+     * Send a batch of price updates held in columns, by currency pair id. The updates are grouped by shard
+     * into columns reused by the calling thread, and each shard's run is handed to its ingestion stage in
+     * one call, so the caller can reuse its columns as soon as the call returns.
+     *
+     * @param currencyPairIds ids of currency pairs registered with {@link #getCurrencyPairRegistry()}
+     * @param count the number of updates, from the start of each column
+     * @return the number of updates accepted
+     */
+    public int sendBatch(int[] currencyPairIds, long[] timestampNanos, double[] prices, long[] volumes, int count) {
+        ShardColumns columns = shardColumns.get();
+        columns.ensureCapacity(count);
+        // Count each shard's updates, then place them in a run per shard, keeping each currency pair's time order
+        int[] shardStarts = columns.shardStarts;
+        Arrays.fill(shardStarts, 0);
+        int registered = currencyPairRegistry.size();
+        for (int i = 0; i < count; i++) {
+            int currencyPairId = currencyPairIds[i];
+            if (currencyPairId < 0 || currencyPairId >= registered) {
+                LOGGER.warn("Ignoring price update for unregistered currency pair id {}", currencyPairId);
+                columns.shardIndexes[i] = -1;
+                continue;
+            }
+            if (timestampNanos[i] == DateTimeUtil.INVALID_TIMESTAMP) {
+                LOGGER.warn("Ignoring price update for {} without a valid timestamp", currencyPairRegistry.nameOf(currencyPairId));
+                columns.shardIndexes[i] = -1;
+                continue;
+            }
+            int shardIndex = shardFor(currencyPairId).getIndex();
+            columns.shardIndexes[i] = shardIndex;
+            shardStarts[shardIndex + 1]++;
+        }
+        for (int shard = 0; shard < shards.length; shard++) {
+            shardStarts[shard + 1] += shardStarts[shard];
+            columns.shardCursors[shard] = shardStarts[shard];
+        }
+        for (int i = 0; i < count; i++) {
+            int shardIndex = columns.shardIndexes[i];
+            if (shardIndex >= 0) {
+                int index = columns.shardCursors[shardIndex]++;
+                columns.currencyPairIds[index] = currencyPairIds[i];
+                columns.timestampNanos[index] = timestampNanos[i];
+                columns.prices[index] = prices[i];
+                columns.volumes[index] = volumes[i];
+            }
+        }
+        int accepted = 0;
+        for (int shard = 0; shard < shards.length; shard++) {
+            if (shardStarts[shard] < shardStarts[shard + 1]) {
+                accepted += shards[shard].getIngestionStage().publishBatch(columns.currencyPairIds, columns.timestampNanos,
+                        columns.prices, columns.volumes, shardStarts[shard], shardStarts[shard + 1]);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * @return the backlog, capacity and overflow counts of the ingestion stages across all shards
+     */
+    public IngestionMetrics getIngestionMetrics() {
+        long queueDepth = 0;
+        long capacity = 0;
+        long peakQueueDepth = 0;
+        long droppedCount = 0;
+        long blockedCount = 0;
+        for (PriceUpdateShard shard : shards) {
+            PriceIngestionStage ingestionStage = shard.getIngestionStage();
+            IngestionCounters counters = ingestionStage.getCounters();
+            queueDepth += ingestionStage.size();
+            capacity += ingestionStage.capacity();
+            peakQueueDepth = Math.max(peakQueueDepth, counters.getPeakDepth());
+            droppedCount += counters.getDropped();
+            blockedCount += counters.getBlocked();
+        }
+        return new IngestionMetrics(queueDepth, capacity, peakQueueDepth, droppedCount, blockedCount);
     }
 
-    public void sendVWAPForCurrencyPair(CurrencyPriceData currencyPriceData) {
-        priceUpdateQueue.offer(currencyPriceData);
+    // Ids are dense, so consecutive currency pairs are spread evenly across the shards.
+    // Cross rate legs hold the lowest ids and go to the shard deriving their cross rates.
+    private PriceUpdateShard shardFor(int currencyPairId) {
+        if (currencyPairId < crossRateLegCount) {
+            return shards[crossRateGraph.getShard(currencyPairId)];
+        }
+        return shards[currencyPairId % shards.length];
     }
 
+    /**
+     * Process a price update. Must run on the thread that owns the currency pair's shard,
+     * or while the calculator is not consuming updates.
+     */
     protected void processVWAPForCurrencyPair(CurrencyPriceData currencyPriceData) {
-        try {
-            String currencyPair = currencyPriceData.getCurrencyPair();
-            double price = currencyPriceData.getPrice();
+        if (!currencyPriceData.hasValidTimestamp()) {
+            LOGGER.warn("Ignoring price update for {} without a valid timestamp", currencyPriceData.getCurrencyPair());
+            return;
+        }
+        int currencyPairId = currencyPairRegistry.register(currencyPriceData.getCurrencyPair());
+        processPriceUpdate(currencyPairId, currencyPriceData.getTimestampNanos(), currencyPriceData.getPrice(), currencyPriceData.getVolume());
+        shardFor(currencyPairId).advanceEventTime(currencyPriceData.getTimestampNanos(), DateTimeUtil.currentEpochNanos());
+    }
 
-            // Check if this is a new currency pair
-            boolean isNewCurrencyPair = !currencyPairData.containsKey(currencyPair);
+    void processPriceUpdate(String currencyPair, long timestampNanos, double price, long volume) {
+        processPriceUpdate(currencyPairRegistry.register(currencyPair), timestampNanos, price, volume);
+    }
+
+    private void processPriceUpdate(int currencyPairId, long timestampNanos, double price, long volume) {
+        PriceUpdateShard shard = shardFor(currencyPairId);
+        CurrencyData data = appendPriceUpdate(shard, currencyPairId, timestampNanos, price, volume);
+        if (data != null) {
+            calculateVWAP(shard, data, timestampNanos);
+            shard.markChanged(data);
+        }
+    }
 
-            CurrencyData data = currencyPairData.computeIfAbsent(
-                    currencyPair, k -> new CurrencyData()
-            );
+    /**
+     * Update the window and VWAP of every currency pair that received prices in the drained batch.
+     * Eviction is monotonic, so evicting once relative to the latest price gives the same window
+     * as evicting after every price.
+     */
+    private void completeBatch(PriceUpdateShard shard) {
+        List<CurrencyData> batchCurrencyPairs = shard.getBatchCurrencyPairs();
+        if (batchCurrencyPairs.isEmpty()) {
+            return;
+        }
+        long newestNanos = Long.MIN_VALUE;
+        for (int i = 0; i < batchCurrencyPairs.size(); i++) {
+            CurrencyData data = batchCurrencyPairs.get(i);
+            data.setBatchPending(false);
+            calculateVWAP(shard, data, data.getLastUpdateNanos());
+            shard.markChanged(data);
+            newestNanos = Math.max(newestNanos, data.getLastUpdateNanos());
+        }
+        batchCurrencyPairs.clear();
+        shard.recordBatchLatencies(System.nanoTime());
+        // The wall clock is read once per batch rather than per price
+        shard.advanceEventTime(newestNanos, DateTimeUtil.currentEpochNanos());
+    }
 
-            // Update statistics
-            currencyPairStats.computeIfAbsent(currencyPair, k -> new PriceStatistics())
-                    .updateStatistics(price);
+    /**
+     * Append a price to its currency pair's window, creating the window for a new currency pair
+     *
+     * @return the currency pair's window, or null if the price could not be appended
+     */
+    private CurrencyData appendPriceUpdate(PriceUpdateShard shard, int currencyPairId, long timestampNanos, double price, long volume) {
+        CurrencyData data = shard.getCurrencyPairData(currencyPairId);
+        try {
+            // Check if this is a new currency pair
+            boolean isNewCurrencyPair = data == null;
+            if (isNewCurrencyPair) {
+                String currencyPair = currencyPairRegistry.nameOf(currencyPairId);
+                // Statistics outlive the window, so a returning currency pair keeps its history
+                PriceStatistics stats = shard.getCurrencyPairStats(currencyPairId);
+                if (stats == null) {
+                    stats = currencyPairStats.computeIfAbsent(currencyPair, k -> new PriceStatistics());
+                    shard.setCurrencyPairStats(currencyPairId, stats);
+                }
+                TickBuffer ticks = shard.takeRecycledTickBuffer();
+                data = new CurrencyData(currencyPairId, currencyPair, ticks != null ? ticks : TickBuffer.create(config), stats, windowSeconds);
+                shard.addCurrencyPair(data);
+                currencyPairData.put(currencyPair, data);
+            }
 
-            data.addToFront(currencyPriceData);
-            data.getTotalWeightedPrice().add(currencyPriceData.getPrice() * currencyPriceData.getVolume());
-            data.getTotalVolume().addAndGet(currencyPriceData.getVolume());
+            // Late prices are rare, the in-order path only pays for this comparison
+            if (timestampNanos < data.getLastUpdateNanos()) {
+                timestampNanos = admitLatePriceUpdate(shard, data, timestampNanos);
+                if (timestampNanos == DateTimeUtil.INVALID_TIMESTAMP) {
+                    return null;
+                }
+            }
 
-            calculateVWAP(currencyPair, currencyPriceData.getTimestamp());
+            // Updates the window and the statistics
+            data.addToFront(timestampNanos, price, volume);
 
             // Only log when a new currency pair is added
             if (isNewCurrencyPair) {
-                LOGGER.info("New currency pair added: {}", currencyPair);
+                LOGGER.info("New currency pair added: {}", data.getCurrencyPair());
             }
+            return data;
 
         } catch (Exception e) {
-            LOGGER.error("Error processing price update for {}: {}", currencyPriceData.getCurrencyPair(), e.getMessage());
+            metrics.recordError();
+            LOGGER.error("Error processing price update for {}: {}", currencyPairRegistry.nameOf(currencyPairId), e.getMessage());
+            return null;
         }
     }
 
-    private void calculateVWAP(String currencyPair, Instant timestamp) {
-        try {
-            removePricesBeforeCutoff(currencyPair, timestamp);
-            CurrencyData data = currencyPairData.get(currencyPair);
-            if (data != null) {
-                double totalWeightedPrice = data.getTotalWeightedPrice().sum();
-                long totalVolume = data.getTotalVolume().get();
+    /**
+     * Decide what to do with a price older than the newest price of its currency pair.
+     * Prices within the allowed lateness of the newest price are inserted into the window in time order;
+     * prices behind that watermark, or already out of the window, are handled by the late tick policy.
+     *
+     * @return the time to include the price at, or {@link DateTimeUtil#INVALID_TIMESTAMP} if it is dropped
+     */
+    private long admitLatePriceUpdate(PriceUpdateShard shard, CurrencyData data, long timestampNanos) {
+        long watermarkNanos = Math.max(data.getLastUpdateNanos() - maxLatenessNanos, data.getEvictedBeforeNanos());
+        if (timestampNanos >= watermarkNanos) {
+            return timestampNanos;
+        }
+        shard.recordLateTick();
+        if (lateTickPolicy == LateTickPolicy.DROP) {
+            LOGGER.debug("Dropping price update for {} {} ns behind the watermark", data.getCurrencyPair(), watermarkNanos - timestampNanos);
+            return DateTimeUtil.INVALID_TIMESTAMP;
+        }
+        return watermarkNanos;
+    }
 
-                if (totalVolume > 0) {
-                    double vwap = totalWeightedPrice / totalVolume;
-                    data.setVwap(vwap);
-                }
-            }
+    /**
+     * @return the number of price updates that arrived later than the allowed lateness, dropped or clamped
+     */
+    public long getLateTickCount() {
+        long count = 0;
+        for (PriceUpdateShard shard : shards) {
+            count += shard.getLateTickCount();
+        }
+        return count;
+    }
+
+    private void calculateVWAP(PriceUpdateShard shard, CurrencyData data, long timestampNanos) {
+        try {
+            removePricesBeforeCutoff(shard, data, timestampNanos);
+            updateVwap(data);
+            scheduleExpiry(shard, data, timestampNanos);
         } catch (Exception e) {
-            LOGGER.error("Error calculating VWAP for {}: {}", currencyPair, e.getMessage());
+            metrics.recordError();
+            LOGGER.error("Error calculating VWAP for {}: {}", data.getCurrencyPair(), e.getMessage());
+        }
+    }
+
+    private void updateVwap(CurrencyData data) {
+        double totalWeightedPrice = data.getTotalWeightedPrice().sum();
+        long totalVolume = data.getTotalVolume().get();
+
+        if (totalVolume > 0) {
+            double vwap = totalWeightedPrice / totalVolume;
+            data.setVwap(vwap);
         }
     }
 
@@ -103,62 +530,263 @@ public class VWAPCalculator {
             return;
         }
 
+        removePricesBeforeCutoff(currencyPair, DateTimeUtil.toEpochNanos(timestamp));
+    }
+
+    protected void removePricesBeforeCutoff(String currencyPair, long timestampNanos) {
+        int currencyPairId = currencyPairRegistry.idOf(currencyPair);
+        if (currencyPairId == CurrencyPairRegistry.UNKNOWN) {
+            return;
+        }
+        PriceUpdateShard shard = shardFor(currencyPairId);
+        CurrencyData data = shard.getCurrencyPairData(currencyPairId);
+        if (data != null) {
+            removePricesBeforeCutoff(shard, data, timestampNanos);
+        }
+    }
+
+    private void removePricesBeforeCutoff(PriceUpdateShard shard, CurrencyData data, long timestampNanos) {
         try {
-            CurrencyData data = currencyPairData.get(currencyPair);
-            if (data == null) {
-                return;
-            }
-
-            Instant cutoffTime = timestamp.minusSeconds(this.cutoffSeconds);
-            Deque<CurrencyPriceData> priceStream = data.getPriceStream();
-            boolean pricesRemovedFromStream = false;
-
-            // Use iterator.remove() to safely remove elements during iteration
-            Iterator<CurrencyPriceData> iterator = priceStream.descendingIterator();
-            while (iterator.hasNext()) {
-                CurrencyPriceData priceData = iterator.next();
-                if (priceData.getTimestamp().isBefore(cutoffTime)) {
-                    // Subtract the price contribution before removing
-                    double weightedPrice = priceData.getPrice() * priceData.getVolume();
-                    data.getTotalWeightedPrice().add(-weightedPrice);
-                    data.getTotalVolume().addAndGet(-priceData.getVolume());
-
-                    // Use iterator's remove method instead of collection's remove
-                    data.removeItemsBeforeCutoff(cutoffTime);
-                    pricesRemovedFromStream = true;
-                } else {
-                    // Since data is time-ordered, we can stop once we find data within cutoff
-                    break;
-                }
+            boolean windowsChanged = data.updateWindows(timestampNanos);
+            long tickCount = data.getTickCount();
+            boolean pricesRemovedFromStream = data.removeItemsBeforeCutoff(timestampNanos - cutoffNanos);
+            if (pricesRemovedFromStream) {
+                shard.recordEvicted(tickCount - data.getTickCount());
             }
 
             // Cleanup currency pairs without prices within cutoff time
             if (pricesRemovedFromStream && data.getTotalVolume().get() <= 0) {
-                currencyPairData.remove(currencyPair);
-                LOGGER.debug("Removed currency pair {} as it has no recent price data", currencyPair);
+                shard.removeCurrencyPair(data);
+                currencyPairData.remove(data.getCurrencyPair());
+                shard.markRemoved(data.getCurrencyPair());
+                LOGGER.debug("Removed currency pair {} as it has no recent price data", data.getCurrencyPair());
+            } else if (pricesRemovedFromStream || windowsChanged) {
+                // Keep the VWAP in line with the window when a sweep evicts prices
+                updateVwap(data);
+                shard.markChanged(data);
             }
         } catch (Exception e) {
-            LOGGER.error("Error during price cleanup for {}: {}", currencyPair, e.getMessage(), e);
+            metrics.recordError();
+            LOGGER.error("Error during price cleanup for {}: {}", data.getCurrencyPair(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Schedule the next update of a currency pair's windows in the shard's expiry wheel, if it is earlier
+     * than the update already scheduled. A later update is left as it is and rescheduled when it fires,
+     * so pairs receiving prices do not relink on every batch.
+     */
+    private void scheduleExpiry(PriceUpdateShard shard, CurrencyData data, long currentTimeNanos) {
+        if (shard.getCurrencyPairData(data.getCurrencyPairId()) != data) {
+            // Removed as it has no prices left
+            return;
         }
+        long expiryNanos = data.nextExpiryNanos(cutoffNanos);
+        if (expiryNanos < data.getScheduledExpiryNanos()) {
+            shard.getExpiryWheel().schedule(data, expiryNanos, currentTimeNanos);
+        }
+    }
+
+    /**
+     * Advance the shard's expiry wheel, evicting prices only from the currency pairs with prices due to leave a window.
+     * Pairs left without prices are removed and their tick buffers recycled.
+     */
+    private void expirePrices(PriceUpdateShard shard, long currentTimeNanos) {
+        shard.getExpiryWheel().advance(currentTimeNanos, data -> {
+            removePricesBeforeCutoff(shard, data, currentTimeNanos);
+            if (shard.getCurrencyPairData(data.getCurrencyPairId()) == data) {
+                long expiryNanos = data.nextExpiryNanos(cutoffNanos);
+                if (expiryNanos != Long.MAX_VALUE) {
+                    // Never due again within this tick, e.g. when prices are behind the shard's event time
+                    shard.getExpiryWheel().schedule(data, Math.max(expiryNanos, currentTimeNanos + 1), currentTimeNanos);
+                }
+            }
+        });
     }
 
+    /**
+     * Request an expiry wheel advance from every shard. The wheel is advanced on each shard's own thread
+     * so that the processing path never contends with the cleanup.
+     */
     protected void clearCutoffPricesForAllCurrencyPairs(){
-        Instant currentTime = Instant.now();
-        for(String currencyPair: new HashSet<>(currencyPairData.keySet())){
-            this.removePricesBeforeCutoff(currencyPair, currentTime);
+        long currentTimeNanos = DateTimeUtil.currentEpochNanos();
+        for (PriceUpdateShard shard : shards) {
+            shard.requestSweep(currentTimeNanos);
+        }
+    }
+
+    private void captureCheckpoints(PriceUpdateShard shard) {
+        for (CurrencyData data : shard.getCurrencyPairData().values()) {
+            data.captureCheckpoint();
+        }
+    }
+
+    /**
+     * Check the running VWAP of every currency pair, as captured at the last checkpoint, against an exact
+     * recompute over its window, then request new checkpoints for the next run. Runs periodically on the
+     * scheduler thread, or on demand from any thread, reading the windows without blocking the processing threads.
+     * The first run after startup only requests checkpoints.
+     *
+     * @return the largest divergence relative to the exact VWAP, NaN if no currency pair could be verified
+     */
+    public double verifyRunningSums() {
+        double maxDivergence = Double.NaN;
+        long diverged = 0;
+        for (CurrencyData data : currencyPairData.values()) {
+            try {
+                double divergence = data.verifyVwap();
+                if (Double.isNaN(divergence)) {
+                    continue;
+                }
+                maxDivergence = Double.isNaN(maxDivergence) ? divergence : Math.max(maxDivergence, divergence);
+                if (divergence > VERIFY_TOLERANCE) {
+                    diverged++;
+                    LOGGER.warn("Running VWAP of {} has diverged from its exact recompute by {} (relative)", data.getCurrencyPair(), divergence);
+                } else {
+                    LOGGER.debug("Running VWAP of {} verified, divergence {}", data.getCurrencyPair(), divergence);
+                }
+            } catch (Exception e) {
+                metrics.recordError();
+                LOGGER.error("Error verifying running sums for {}: {}", data.getCurrencyPair(), e.getMessage(), e);
+            }
+        }
+        metrics.recordVerification(maxDivergence, diverged);
+        for (PriceUpdateShard shard : shards) {
+            shard.requestCheckpoint();
+        }
+        return maxDivergence;
+    }
+
+    private void publishSnapshot(PriceUpdateShard shard) {
+        try {
+            if (crossRateLegCount > 0) {
+                updateCrossRates(shard);
+            }
+            Collection<CurrencyPairSnapshot> changed = snapshotPublisher.publish(shard);
+            shard.setLastSnapshotNanos(System.nanoTime());
+            if (dispatcher.hasSubscriptions()) {
+                dispatcher.publish(changed);
+            }
+        } catch (Exception e) {
+            metrics.recordError();
+            LOGGER.error("Error publishing VWAP snapshot for shard {}: {}", shard.getIndex(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Recompute the cross rates with a leg changed since the last snapshot, each once however many of its legs changed.
+     * A cross rate with a leg that has no prices, or none within the leg's age limit, is withdrawn from the snapshot.
+     */
+    private void updateCrossRates(PriceUpdateShard shard) {
+        for (CurrencyData data : shard.getChangedCurrencyPairs()) {
+            markCrossRatesPending(shard, data.getCurrencyPairId());
+        }
+        for (String currencyPair : shard.getRemovedCurrencyPairs()) {
+            markCrossRatesPending(shard, currencyPairRegistry.idOf(currencyPair));
+        }
+        List<CrossRate> pendingCrossRates = shard.getPendingCrossRates();
+        if (pendingCrossRates.isEmpty()) {
+            return;
+        }
+        long eventTimeNanos = shard.eventTimeAt(DateTimeUtil.currentEpochNanos());
+        for (int i = 0; i < pendingCrossRates.size(); i++) {
+            CrossRate crossRate = pendingCrossRates.get(i);
+            crossRate.setPending(false);
+            if (crossRate.update(shard.getCurrencyPairData(crossRate.getFirstLegId()),
+                    shard.getCurrencyPairData(crossRate.getSecondLegId()), eventTimeNanos)) {
+                shard.getChangedCrossRates().add(crossRate);
+            } else {
+                shard.markRemoved(crossRate.getCurrencyPair());
+            }
         }
+        pendingCrossRates.clear();
+    }
+
+    private void markCrossRatesPending(PriceUpdateShard shard, int currencyPairId) {
+        for (CrossRate crossRate : crossRateGraph.getCrossRates(currencyPairId)) {
+            shard.markPending(crossRate);
+        }
+    }
+
+    /**
+     * Publish the pending changes of every shard. Must run on the shard threads' behalf,
+     * i.e. while the calculator is not consuming updates.
+     */
+    protected void publishSnapshots() {
+        for (PriceUpdateShard shard : shards) {
+            if (shard.hasSnapshotChanges()) {
+                publishSnapshot(shard);
+            }
+        }
+    }
+
+    /**
+     * The latest published VWAP of every currency pair. Reading the snapshot never takes a lock,
+     * and it is refreshed by the processing threads as updates are processed.
+     */
+    public VWAPSnapshot getSnapshot() {
+        return snapshotPublisher.getSnapshot();
+    }
+
+    /**
+     * Subscribe to VWAP changes of all currency pairs, coalesced using the configured defaults
+     */
+    public VWAPSubscription subscribe(VWAPListener listener) {
+        return subscribe(null, listener);
+    }
+
+    /**
+     * Subscribe to VWAP changes of a currency pair, coalesced using the configured defaults
+     */
+    public VWAPSubscription subscribe(String currencyPair, VWAPListener listener) {
+        return subscribe(currencyPair, listener, config.getListenerMinIntervalMicros(), config.getListenerMinRelativeChange());
+    }
+
+    /**
+     * Subscribe to VWAP changes. Listeners are called on a dedicated dispatcher thread with the
+     * published snapshots, so a slow listener delays other listeners but never the processing threads.
+     *
+     * @param currencyPair the currency pair to be notified of, or null for all currency pairs
+     * @param listener the listener to notify
+     * @param minIntervalMicros the shortest interval between notifications of a currency pair, 0 for every change
+     * @param minRelativeChange the smallest change relative to the last notified VWAP, 0 for any change
+     * @return the subscription, used to cancel it
+     */
+    public VWAPSubscription subscribe(String currencyPair, VWAPListener listener, long minIntervalMicros, double minRelativeChange) {
+        return dispatcher.subscribe(currencyPair, listener, minIntervalMicros, minRelativeChange);
     }
 
     public Map<String, CurrencyData> getCurrencyPairData() {
         return currencyPairData;
     }
 
+    /**
+     * @return the calculator's metrics, also registered with the platform MBean server unless disabled
+     */
+    public VWAPMetricsMXBean getMetrics() {
+        return metrics;
+    }
+
     public void shutdownExecutors(){
         // Log summary statistics before shutdown
         logSummaryStatistics();
 
+        this.consuming = false;
+        for (PriceUpdateShard shard : shards) {
+            shard.getIngestionStage().wakeUp();
+        }
         this.priceFeedConsumerExecutorService.shutdown();
         this.cleanupScheduledExecutor.shutdown();
+        this.listenerDispatcherExecutorService.shutdownNow();
+        // Wait for the shard consumers, so their journals are closed before a calculator can reopen the directory
+        try {
+            if (!this.priceFeedConsumerExecutorService.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("Shard consumers still running {} seconds after shutdown", SHUTDOWN_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        metrics.unregister();
     }
 
     /**
@@ -169,13 +797,46 @@ public class VWAPCalculator {
         currencyPairStats.keySet().stream().sorted().forEach(currencyPair -> {
             PriceStatistics stats = currencyPairStats.get(currencyPair);
 
-            LOGGER.info("{}: High: {}, Low: {}, Average: {}",
+            LOGGER.info("{}: High: {}, Low: {}, Average: {}, Window High: {}, Window Low: {}, Window Average: {}",
                     currencyPair,
                     String.format("%.6f", stats.getHighPrice()),
                     String.format("%.6f", stats.getLowPrice()),
-                    String.format("%.6f", stats.getAveragePrice()));
+                    String.format("%.6f", stats.getAveragePrice()),
+                    String.format("%.6f", stats.getWindowHighPrice()),
+                    String.format("%.6f", stats.getWindowLowPrice()),
+                    String.format("%.6f", stats.getWindowAveragePrice()));
         });
+        LOGGER.info("Ingestion: {}", getIngestionMetrics());
+        metrics.log();
         LOGGER.info("======================================");
     }
-}
 
+    /**
+     * Columns a sending thread groups a columnar batch into, a run per shard, grown to the largest batch sent
+     */
+    private static final class ShardColumns {
+        // Start of each shard's run, and the end of the last
+        private final int[] shardStarts;
+        private final int[] shardCursors;
+        private int[] shardIndexes = new int[0];
+        private int[] currencyPairIds = new int[0];
+        private long[] timestampNanos = new long[0];
+        private double[] prices = new double[0];
+        private long[] volumes = new long[0];
+
+        private ShardColumns(int shardCount) {
+            this.shardStarts = new int[shardCount + 1];
+            this.shardCursors = new int[shardCount];
+        }
+
+        private void ensureCapacity(int count) {
+            if (count > currencyPairIds.length) {
+                shardIndexes = new int[count];
+                currencyPairIds = new int[count];
+                timestampNanos = new long[count];
+                prices = new double[count];
+                volumes = new long[count];
+            }
+        }
+    }
+}
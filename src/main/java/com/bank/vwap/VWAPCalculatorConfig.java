@@ -0,0 +1,480 @@
+package com.bank.vwap;
+
+import com.bank.journal.JournalSyncPolicy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Configuration for the VWAPCalculator, read from application.properties
+ */
+public class VWAPCalculatorConfig {
+    private static final int DEFAULT_TICK_BUFFER_CAPACITY = 1024;
+    private static final String CROSS_LEG_MAX_AGE_PROPERTY = "cross.leg.max.age.millis";
+
+    private int cutoffSeconds = 3600;
+    private boolean offHeapTickBuffer = false;
+    private int expectedTicksPerSecond = 0;
+    private int shardCount = 1;
+    private IngestionMode ingestionMode = IngestionMode.QUEUE;
+    private int ringBufferSize = 65536;
+    private WaitStrategy waitStrategy = WaitStrategy.PARK;
+    private int queueCapacity = 262144;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private int conflationDepth = 64;
+    private long snapshotIntervalMicros = 1000;
+    private long listenerMinIntervalMicros = 0;
+    private double listenerMinRelativeChange = 0;
+    private int[] windowSeconds = new int[0];
+    private long bucketMillis = 0;
+    private int verifyIntervalSeconds = 0;
+    private boolean journalEnabled = false;
+    private String journalDirectory = "journal";
+    private int journalSegmentSizeMb = 64;
+    private JournalSyncPolicy journalSyncPolicy = JournalSyncPolicy.ON_ROLL;
+    private long maxLatenessMillis = 1000;
+    private LateTickPolicy lateTickPolicy = LateTickPolicy.DROP;
+    private boolean metricsJmxEnabled = true;
+    private int metricsLogIntervalSeconds = 60;
+    private long expiryTickMillis = 100;
+    private int tickBufferPoolSize = 64;
+    private final List<CrossRateDefinition> crossRates = new ArrayList<>();
+    private long crossLegMaxAgeMillis = 5000;
+    private final Map<String, Long> crossLegMaxAgesMillis = new HashMap<>();
+
+    public static VWAPCalculatorConfig fromProperties(Properties properties) {
+        VWAPCalculatorConfig config = new VWAPCalculatorConfig();
+        config.cutoffSeconds = Integer.parseInt(properties.getProperty("cutoff.seconds", String.valueOf(config.cutoffSeconds)));
+        config.offHeapTickBuffer = Boolean.parseBoolean(properties.getProperty("tick.buffer.offheap", String.valueOf(config.offHeapTickBuffer)));
+        config.expectedTicksPerSecond = Integer.parseInt(properties.getProperty("tick.buffer.expected.rate", String.valueOf(config.expectedTicksPerSecond)));
+        config.withShardCount(Integer.parseInt(properties.getProperty("processing.shards", String.valueOf(config.shardCount))));
+        config.ingestionMode = IngestionMode.valueOf(properties.getProperty("ingestion.mode", config.ingestionMode.name()));
+        config.ringBufferSize = Integer.parseInt(properties.getProperty("ingestion.ring.size", String.valueOf(config.ringBufferSize)));
+        config.waitStrategy = WaitStrategy.valueOf(properties.getProperty("ingestion.wait.strategy", config.waitStrategy.name()));
+        config.withQueueCapacity(Integer.parseInt(properties.getProperty("ingestion.queue.capacity", String.valueOf(config.queueCapacity))));
+        config.overflowPolicy = OverflowPolicy.valueOf(properties.getProperty("ingestion.overflow.policy", config.overflowPolicy.name()));
+        config.withConflationDepth(Integer.parseInt(properties.getProperty("ingestion.conflation.depth", String.valueOf(config.conflationDepth))));
+        config.snapshotIntervalMicros = Long.parseLong(properties.getProperty("snapshot.interval.micros", String.valueOf(config.snapshotIntervalMicros)));
+        config.listenerMinIntervalMicros = Long.parseLong(properties.getProperty("listener.min.interval.micros", String.valueOf(config.listenerMinIntervalMicros)));
+        config.listenerMinRelativeChange = Double.parseDouble(properties.getProperty("listener.min.change", String.valueOf(config.listenerMinRelativeChange)));
+        String windows = properties.getProperty("vwap.windows.seconds", "").trim();
+        if (!windows.isEmpty()) {
+            config.withWindowSeconds(Arrays.stream(windows.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray());
+        }
+        config.withBucketMillis(Long.parseLong(properties.getProperty("window.bucket.millis", String.valueOf(config.bucketMillis))));
+        config.verifyIntervalSeconds = Integer.parseInt(properties.getProperty("vwap.verify.interval.seconds", String.valueOf(config.verifyIntervalSeconds)));
+        config.journalEnabled = Boolean.parseBoolean(properties.getProperty("journal.enabled", String.valueOf(config.journalEnabled)));
+        config.journalDirectory = properties.getProperty("journal.directory", config.journalDirectory);
+        config.journalSegmentSizeMb = Integer.parseInt(properties.getProperty("journal.segment.size.mb", String.valueOf(config.journalSegmentSizeMb)));
+        config.journalSyncPolicy = JournalSyncPolicy.valueOf(properties.getProperty("journal.sync", config.journalSyncPolicy.name()));
+        config.withMaxLatenessMillis(Long.parseLong(properties.getProperty("event.time.max.lateness.millis", String.valueOf(config.maxLatenessMillis))));
+        config.lateTickPolicy = LateTickPolicy.valueOf(properties.getProperty("late.tick.policy", config.lateTickPolicy.name()));
+        config.metricsJmxEnabled = Boolean.parseBoolean(properties.getProperty("metrics.jmx.enabled", String.valueOf(config.metricsJmxEnabled)));
+        config.metricsLogIntervalSeconds = Integer.parseInt(properties.getProperty("metrics.log.interval.seconds", String.valueOf(config.metricsLogIntervalSeconds)));
+        config.withExpiryTickMillis(Long.parseLong(properties.getProperty("expiry.tick.millis", String.valueOf(config.expiryTickMillis))));
+        config.withTickBufferPoolSize(Integer.parseInt(properties.getProperty("tick.buffer.pool.size", String.valueOf(config.tickBufferPoolSize))));
+        for (String crossRate : properties.getProperty("cross.rates", "").split(";")) {
+            if (!crossRate.trim().isEmpty()) {
+                config.withCrossRate(CrossRateDefinition.parse(crossRate.trim()));
+            }
+        }
+        config.withCrossLegMaxAgeMillis(Long.parseLong(properties.getProperty(CROSS_LEG_MAX_AGE_PROPERTY, String.valueOf(config.crossLegMaxAgeMillis))));
+        // Per leg limits are keyed by the leg, e.g. cross.leg.max.age.millis.USD/JPY
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(CROSS_LEG_MAX_AGE_PROPERTY + ".")) {
+                config.withCrossLegMaxAgeMillis(name.substring(CROSS_LEG_MAX_AGE_PROPERTY.length() + 1),
+                        Long.parseLong(properties.getProperty(name).trim()));
+            }
+        }
+        return config;
+    }
+
+    public int getCutoffSeconds() {
+        return cutoffSeconds;
+    }
+
+    public VWAPCalculatorConfig withCutoffSeconds(int cutoffSeconds) {
+        this.cutoffSeconds = cutoffSeconds;
+        return this;
+    }
+
+    public boolean isOffHeapTickBuffer() {
+        return offHeapTickBuffer;
+    }
+
+    public VWAPCalculatorConfig withOffHeapTickBuffer(boolean offHeapTickBuffer) {
+        this.offHeapTickBuffer = offHeapTickBuffer;
+        return this;
+    }
+
+    public int getExpectedTicksPerSecond() {
+        return expectedTicksPerSecond;
+    }
+
+    public VWAPCalculatorConfig withExpectedTicksPerSecond(int expectedTicksPerSecond) {
+        this.expectedTicksPerSecond = expectedTicksPerSecond;
+        return this;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @param shardCount the number of single-writer processing threads, currency pairs are hashed across them
+     */
+    public VWAPCalculatorConfig withShardCount(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1: " + shardCount);
+        }
+        this.shardCount = shardCount;
+        return this;
+    }
+
+    public IngestionMode getIngestionMode() {
+        return ingestionMode;
+    }
+
+    public VWAPCalculatorConfig withIngestionMode(IngestionMode ingestionMode) {
+        this.ingestionMode = ingestionMode;
+        return this;
+    }
+
+    public int getRingBufferSize() {
+        return ringBufferSize;
+    }
+
+    /**
+     * @param ringBufferSize the number of tick slots per shard in RING_BUFFER mode, rounded up to a power of two
+     */
+    public VWAPCalculatorConfig withRingBufferSize(int ringBufferSize) {
+        this.ringBufferSize = ringBufferSize;
+        return this;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public VWAPCalculatorConfig withWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        return this;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @param queueCapacity the number of price updates queued per shard in QUEUE mode before the overflow policy applies
+     */
+    public VWAPCalculatorConfig withQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1: " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * @param overflowPolicy what happens to price updates published while a shard's ingestion stage is full
+     */
+    public VWAPCalculatorConfig withOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    public int getConflationDepth() {
+        return conflationDepth;
+    }
+
+    /**
+     * @param conflationDepth the number of unconsumed price updates kept per currency pair with the CONFLATE overflow policy
+     */
+    public VWAPCalculatorConfig withConflationDepth(int conflationDepth) {
+        if (conflationDepth < 1) {
+            throw new IllegalArgumentException("Conflation depth must be at least 1: " + conflationDepth);
+        }
+        this.conflationDepth = conflationDepth;
+        return this;
+    }
+
+    public long getSnapshotIntervalMicros() {
+        return snapshotIntervalMicros;
+    }
+
+    /**
+     * @param snapshotIntervalMicros the longest a shard under sustained load waits between snapshot publications
+     */
+    public VWAPCalculatorConfig withSnapshotIntervalMicros(long snapshotIntervalMicros) {
+        this.snapshotIntervalMicros = snapshotIntervalMicros;
+        return this;
+    }
+
+    public long getListenerMinIntervalMicros() {
+        return listenerMinIntervalMicros;
+    }
+
+    /**
+     * @param listenerMinIntervalMicros the default shortest interval between notifications of a currency pair to a listener
+     */
+    public VWAPCalculatorConfig withListenerMinIntervalMicros(long listenerMinIntervalMicros) {
+        this.listenerMinIntervalMicros = listenerMinIntervalMicros;
+        return this;
+    }
+
+    public double getListenerMinRelativeChange() {
+        return listenerMinRelativeChange;
+    }
+
+    /**
+     * @param listenerMinRelativeChange the default smallest relative VWAP change notified to a listener, e.g. 0.0001 for one basis point
+     */
+    public VWAPCalculatorConfig withListenerMinRelativeChange(double listenerMinRelativeChange) {
+        this.listenerMinRelativeChange = listenerMinRelativeChange;
+        return this;
+    }
+
+    /**
+     * @return the lengths of the additional VWAP windows, shortest first, excluding any not shorter than the cutoff
+     */
+    public int[] getWindowSeconds() {
+        return Arrays.stream(windowSeconds).filter(seconds -> seconds < cutoffSeconds).sorted().distinct().toArray();
+    }
+
+    /**
+     * @param windowSeconds lengths of additional VWAP windows maintained from the same ticks as the cutoff window.
+     *                      The cutoff is the longest window and bounds the ticks retained.
+     */
+    public VWAPCalculatorConfig withWindowSeconds(int... windowSeconds) {
+        for (int seconds : windowSeconds) {
+            if (seconds < 1) {
+                throw new IllegalArgumentException("VWAP window must be at least 1 second: " + seconds);
+            }
+        }
+        this.windowSeconds = windowSeconds.clone();
+        return this;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    /**
+     * @param bucketMillis the length of the time buckets ticks are pre-aggregated into, 0 to hold every tick.
+     *                     Bucketing bounds the memory per currency pair by the number of buckets in the cutoff,
+     *                     at the cost of windows including up to one bucket of prices older than their length.
+     */
+    public VWAPCalculatorConfig withBucketMillis(long bucketMillis) {
+        if (bucketMillis < 0) {
+            throw new IllegalArgumentException("Bucket length cannot be negative: " + bucketMillis);
+        }
+        this.bucketMillis = bucketMillis;
+        return this;
+    }
+
+    public int getVerifyIntervalSeconds() {
+        return verifyIntervalSeconds;
+    }
+
+    /**
+     * @param verifyIntervalSeconds how often the running VWAP sums are checked against an exact re-sum
+     *                              on a background thread, 0 to disable verification
+     */
+    public VWAPCalculatorConfig withVerifyIntervalSeconds(int verifyIntervalSeconds) {
+        this.verifyIntervalSeconds = verifyIntervalSeconds;
+        return this;
+    }
+
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+
+    /**
+     * @param journalEnabled true to journal every tick and rebuild the windows from the journal on startup
+     */
+    public VWAPCalculatorConfig withJournalEnabled(boolean journalEnabled) {
+        this.journalEnabled = journalEnabled;
+        return this;
+    }
+
+    public String getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    public VWAPCalculatorConfig withJournalDirectory(String journalDirectory) {
+        this.journalDirectory = journalDirectory;
+        return this;
+    }
+
+    public int getJournalSegmentSizeMb() {
+        return journalSegmentSizeMb;
+    }
+
+    public VWAPCalculatorConfig withJournalSegmentSizeMb(int journalSegmentSizeMb) {
+        this.journalSegmentSizeMb = journalSegmentSizeMb;
+        return this;
+    }
+
+    public JournalSyncPolicy getJournalSyncPolicy() {
+        return journalSyncPolicy;
+    }
+
+    public VWAPCalculatorConfig withJournalSyncPolicy(JournalSyncPolicy journalSyncPolicy) {
+        this.journalSyncPolicy = journalSyncPolicy;
+        return this;
+    }
+
+    public long getMaxLatenessMillis() {
+        return maxLatenessMillis;
+    }
+
+    /**
+     * @param maxLatenessMillis how far behind the newest tick of its currency pair a tick may be and still be
+     *                          inserted into the window in time order, later ticks are handled by the late tick policy
+     */
+    public VWAPCalculatorConfig withMaxLatenessMillis(long maxLatenessMillis) {
+        if (maxLatenessMillis < 0) {
+            throw new IllegalArgumentException("Maximum lateness cannot be negative: " + maxLatenessMillis);
+        }
+        this.maxLatenessMillis = maxLatenessMillis;
+        return this;
+    }
+
+    public LateTickPolicy getLateTickPolicy() {
+        return lateTickPolicy;
+    }
+
+    public VWAPCalculatorConfig withLateTickPolicy(LateTickPolicy lateTickPolicy) {
+        this.lateTickPolicy = lateTickPolicy;
+        return this;
+    }
+
+    public boolean isMetricsJmxEnabled() {
+        return metricsJmxEnabled;
+    }
+
+    /**
+     * @param metricsJmxEnabled true to register the calculator's metrics with the platform MBean server
+     */
+    public VWAPCalculatorConfig withMetricsJmxEnabled(boolean metricsJmxEnabled) {
+        this.metricsJmxEnabled = metricsJmxEnabled;
+        return this;
+    }
+
+    public int getMetricsLogIntervalSeconds() {
+        return metricsLogIntervalSeconds;
+    }
+
+    /**
+     * @param metricsLogIntervalSeconds how often a one line metrics summary is logged, 0 to only log it at shutdown
+     */
+    public VWAPCalculatorConfig withMetricsLogIntervalSeconds(int metricsLogIntervalSeconds) {
+        this.metricsLogIntervalSeconds = metricsLogIntervalSeconds;
+        return this;
+    }
+
+    public long getExpiryTickMillis() {
+        return expiryTickMillis;
+    }
+
+    /**
+     * @param expiryTickMillis the resolution of each shard's expiry timing wheel, and how often the wheel is advanced.
+     *                         Prices of idle currency pairs leave their windows up to one tick late.
+     */
+    public VWAPCalculatorConfig withExpiryTickMillis(long expiryTickMillis) {
+        if (expiryTickMillis < 1) {
+            throw new IllegalArgumentException("Expiry tick must be at least 1 ms: " + expiryTickMillis);
+        }
+        this.expiryTickMillis = expiryTickMillis;
+        return this;
+    }
+
+    public int getTickBufferPoolSize() {
+        return tickBufferPoolSize;
+    }
+
+    /**
+     * @param tickBufferPoolSize the most tick buffers of expired currency pairs each shard keeps for reuse by new pairs
+     */
+    public VWAPCalculatorConfig withTickBufferPoolSize(int tickBufferPoolSize) {
+        if (tickBufferPoolSize < 0) {
+            throw new IllegalArgumentException("Tick buffer pool size cannot be negative: " + tickBufferPoolSize);
+        }
+        this.tickBufferPoolSize = tickBufferPoolSize;
+        return this;
+    }
+
+    public List<CrossRateDefinition> getCrossRates() {
+        return Collections.unmodifiableList(crossRates);
+    }
+
+    /**
+     * @param crossRate a cross rate to derive from the VWAPs of its legs, which must themselves be priced directly
+     */
+    public VWAPCalculatorConfig withCrossRate(CrossRateDefinition crossRate) {
+        crossRates.add(crossRate);
+        return this;
+    }
+
+    /**
+     * @param currencyPair the cross, e.g. AUD/JPY
+     * @param firstLeg one leg, e.g. AUD/USD
+     * @param secondLeg the other leg, e.g. USD/JPY
+     */
+    public VWAPCalculatorConfig withCrossRate(String currencyPair, String firstLeg, String secondLeg) {
+        return withCrossRate(new CrossRateDefinition(currencyPair, firstLeg, secondLeg));
+    }
+
+    /**
+     * @return the longest a leg may go without a price before the cross rates derived from it are withdrawn
+     */
+    public long getCrossLegMaxAgeMillis(String leg) {
+        return crossLegMaxAgesMillis.getOrDefault(leg, crossLegMaxAgeMillis);
+    }
+
+    /**
+     * @param crossLegMaxAgeMillis the longest any leg may go without a price, behind the shard's event time,
+     *                             before the cross rates derived from it are withdrawn
+     */
+    public VWAPCalculatorConfig withCrossLegMaxAgeMillis(long crossLegMaxAgeMillis) {
+        if (crossLegMaxAgeMillis < 0) {
+            throw new IllegalArgumentException("Cross rate leg age cannot be negative: " + crossLegMaxAgeMillis);
+        }
+        this.crossLegMaxAgeMillis = crossLegMaxAgeMillis;
+        return this;
+    }
+
+    /**
+     * @param leg a leg with its own limit, e.g. a less liquid pair
+     * @param maxAgeMillis the longest the leg may go without a price before the cross rates derived from it are withdrawn
+     */
+    public VWAPCalculatorConfig withCrossLegMaxAgeMillis(String leg, long maxAgeMillis) {
+        if (maxAgeMillis < 0) {
+            throw new IllegalArgumentException("Cross rate leg age cannot be negative: " + leg + "=" + maxAgeMillis);
+        }
+        crossLegMaxAgesMillis.put(leg, maxAgeMillis);
+        return this;
+    }
+
+    /**
+     * Initial tick buffer capacity per currency pair, sized to hold a full cutoff window
+     * at the expected tick rate. Buffers still grow if the rate is exceeded.
+     */
+    public int getInitialTickBufferCapacity() {
+        if (expectedTicksPerSecond <= 0) {
+            return DEFAULT_TICK_BUFFER_CAPACITY;
+        }
+        long ticksPerWindow = (long) expectedTicksPerSecond * cutoffSeconds;
+        return (int) Math.min(Math.max(ticksPerWindow, DEFAULT_TICK_BUFFER_CAPACITY), TickBuffer.MAX_INITIAL_CAPACITY);
+    }
+}
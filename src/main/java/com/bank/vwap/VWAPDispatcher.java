@@ -0,0 +1,87 @@
+package com.bank.vwap;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers VWAP changes to subscriptions on a dedicated thread.
+ *
+ * Processing threads only record the latest snapshot of each changed currency pair, replacing any
+ * not yet dispatched, so the hand-off never blocks and holds at most one entry per currency pair
+ * however slow the listeners are.
+ */
+final class VWAPDispatcher {
+    // Longest the dispatcher waits when there is nothing to deliver, so it notices shutdown
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final List<VWAPSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    // Latest undelivered snapshot per currency pair
+    private final Map<String, CurrencyPairSnapshot> pendingSnapshots = new ConcurrentHashMap<>();
+    // Currency pairs with a pending snapshot, each queued once until dispatched
+    private final BlockingQueue<String> changedCurrencyPairs = new LinkedBlockingQueue<>();
+
+    VWAPSubscription subscribe(String currencyPair, VWAPListener listener, long minIntervalMicros, double minRelativeChange) {
+        VWAPSubscription subscription = new VWAPSubscription(currencyPair, listener, minIntervalMicros, minRelativeChange, this);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    void remove(VWAPSubscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    boolean hasSubscriptions() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Record changed VWAPs for delivery. Called from the processing threads, never blocks.
+     */
+    void publish(Collection<CurrencyPairSnapshot> snapshots) {
+        for (CurrencyPairSnapshot snapshot : snapshots) {
+            if (pendingSnapshots.put(snapshot.getCurrencyPair(), snapshot) == null) {
+                changedCurrencyPairs.offer(snapshot.getCurrencyPair());
+            }
+        }
+    }
+
+    /**
+     * Deliver changes until the thread is interrupted
+     */
+    void dispatch() {
+        long nextDueNanos = Long.MAX_VALUE;
+        long waitNanos = IDLE_WAIT_NANOS;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                String currencyPair = changedCurrencyPairs.poll(waitNanos, TimeUnit.NANOSECONDS);
+                long nowNanos = System.nanoTime();
+                if (currencyPair != null) {
+                    CurrencyPairSnapshot snapshot = pendingSnapshots.remove(currencyPair);
+                    if (snapshot != null) {
+                        for (VWAPSubscription subscription : subscriptions) {
+                            if (subscription.matches(currencyPair)) {
+                                nextDueNanos = Math.min(nextDueNanos, subscription.offer(snapshot, nowNanos));
+                            }
+                        }
+                    }
+                }
+                if (nextDueNanos != Long.MAX_VALUE && nowNanos - nextDueNanos >= 0) {
+                    nextDueNanos = Long.MAX_VALUE;
+                    for (VWAPSubscription subscription : subscriptions) {
+                        nextDueNanos = Math.min(nextDueNanos, subscription.deliverDue(nowNanos));
+                    }
+                }
+                waitNanos = nextDueNanos == Long.MAX_VALUE ? IDLE_WAIT_NANOS
+                        : Math.max(0, Math.min(IDLE_WAIT_NANOS, nextDueNanos - nowNanos));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
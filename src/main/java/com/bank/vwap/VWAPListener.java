@@ -0,0 +1,14 @@
+package com.bank.vwap;
+
+/**
+ * Notified when the VWAP of a currency pair changes.
+ * Called on the calculator's dispatcher thread, never on a processing thread.
+ */
+@FunctionalInterface
+public interface VWAPListener {
+
+    /**
+     * @param snapshot the latest VWAP of the currency pair
+     */
+    void onVWAPChange(CurrencyPairSnapshot snapshot);
+}
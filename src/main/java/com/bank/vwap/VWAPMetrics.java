@@ -0,0 +1,236 @@
+package com.bank.vwap;
+
+import com.bank.util.PriceStatistics;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the metrics of a VWAPCalculator. The processing threads only bump counters they own and
+ * record latencies into their shard's single-writer recorder, so the hot path neither allocates nor
+ * contends; everything else is gathered when the metrics are read, from JMX or the periodic log.
+ */
+final class VWAPMetrics implements VWAPMetricsMXBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VWAPMetrics.class);
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final VWAPCalculator calculator;
+    private final PriceUpdateShard[] shards;
+    private final Map<String, CurrencyData> currencyPairData;
+    private final Map<String, PriceStatistics> currencyPairStats;
+    private final LongAdder errors = new LongAdder();
+    // Latencies since the start or the last reset
+    private final Histogram latencies = new Histogram(PriceUpdateShard.MAX_RECORDED_LATENCY_NANOS, 3);
+    // Latencies as of the last log, to log the latencies of each interval
+    private final Histogram loggedLatencies = new Histogram(PriceUpdateShard.MAX_RECORDED_LATENCY_NANOS, 3);
+    private final Histogram intervalLatencies = new Histogram(PriceUpdateShard.MAX_RECORDED_LATENCY_NANOS, 3);
+    private long loggedTickCount;
+    // Largest relative divergence of a running VWAP from its exact recompute at the last verification
+    private volatile double vwapDivergence = Double.NaN;
+    private final LongAdder divergedVwaps = new LongAdder();
+    private ObjectName objectName;
+
+    VWAPMetrics(VWAPCalculator calculator, PriceUpdateShard[] shards, Map<String, CurrencyData> currencyPairData,
+                Map<String, PriceStatistics> currencyPairStats) {
+        this.calculator = calculator;
+        this.shards = shards;
+        this.currencyPairData = currencyPairData;
+        this.currencyPairStats = currencyPairStats;
+    }
+
+    void recordError() {
+        errors.increment();
+    }
+
+    void recordVerification(double maxDivergence, long diverged) {
+        vwapDivergence = maxDivergence;
+        divergedVwaps.add(diverged);
+    }
+
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("com.bank.vwap:type=VWAPCalculator,name=" + INSTANCES.incrementAndGet());
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            LOGGER.error("Error registering VWAP metrics MBean: {}", e.getMessage(), e);
+            objectName = null;
+        }
+    }
+
+    void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            LOGGER.error("Error unregistering VWAP metrics MBean: {}", e.getMessage(), e);
+        }
+        objectName = null;
+    }
+
+    /**
+     * Log a one line summary of the interval since the last log
+     */
+    synchronized void log() {
+        collectLatencies();
+        intervalLatencies.reset();
+        intervalLatencies.add(latencies);
+        if (loggedLatencies.getTotalCount() <= latencies.getTotalCount()) {
+            intervalLatencies.subtract(loggedLatencies);
+        }
+        loggedLatencies.reset();
+        loggedLatencies.add(latencies);
+        long tickCount = getProcessedTickCount();
+        IngestionMetrics ingestion = calculator.getIngestionMetrics();
+        LOGGER.info("VWAP metrics: ticks={} (+{}) latency us p50={} p99={} p99.9={} max={} queue={}/{} peak={} dropped={} late={} evicted={} errors={} divergence={} pairs={}",
+                tickCount, tickCount - loggedTickCount,
+                micros(intervalLatencies.getValueAtPercentile(50)), micros(intervalLatencies.getValueAtPercentile(99)),
+                micros(intervalLatencies.getValueAtPercentile(99.9)), micros(intervalLatencies.getMaxValue()),
+                ingestion.getQueueDepth(), ingestion.getCapacity(), ingestion.getPeakQueueDepth(), ingestion.getDroppedCount(),
+                calculator.getLateTickCount(), getEvictedTickCount(), getErrorCount(), vwapDivergence, getCurrencyPairCount());
+        loggedTickCount = tickCount;
+    }
+
+    private synchronized void collectLatencies() {
+        for (PriceUpdateShard shard : shards) {
+            shard.addLatenciesTo(latencies);
+        }
+    }
+
+    private static double micros(long nanos) {
+        return Math.round(nanos / 100.0) / 10.0;
+    }
+
+    private synchronized double latencyAtPercentile(double percentile) {
+        collectLatencies();
+        return micros(latencies.getValueAtPercentile(percentile));
+    }
+
+    @Override
+    public long getProcessedTickCount() {
+        long count = 0;
+        for (PriceStatistics stats : currencyPairStats.values()) {
+            count += stats.getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public Map<String, Long> getTickCountsByCurrencyPair() {
+        Map<String, Long> counts = new TreeMap<>();
+        currencyPairStats.forEach((currencyPair, stats) -> counts.put(currencyPair, stats.getCount()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getWindowSizesByCurrencyPair() {
+        // Read from another thread than the owner, so the sizes are approximate
+        Map<String, Long> sizes = new TreeMap<>();
+        currencyPairData.forEach((currencyPair, data) -> sizes.put(currencyPair, data.getTickCount()));
+        return sizes;
+    }
+
+    @Override
+    public int getCurrencyPairCount() {
+        return currencyPairData.size();
+    }
+
+    @Override
+    public long getEvictedTickCount() {
+        long count = 0;
+        for (PriceUpdateShard shard : shards) {
+            count += shard.getEvictedTickCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getLateTickCount() {
+        return calculator.getLateTickCount();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getVwapDivergence() {
+        return vwapDivergence;
+    }
+
+    @Override
+    public long getDivergedVwapCount() {
+        return divergedVwaps.sum();
+    }
+
+    @Override
+    public double verifyVwaps() {
+        return calculator.verifyRunningSums();
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return calculator.getIngestionMetrics().getQueueDepth();
+    }
+
+    @Override
+    public long getPeakQueueDepth() {
+        return calculator.getIngestionMetrics().getPeakQueueDepth();
+    }
+
+    @Override
+    public long getDroppedTickCount() {
+        return calculator.getIngestionMetrics().getDroppedCount();
+    }
+
+    @Override
+    public long getBlockedPublishCount() {
+        return calculator.getIngestionMetrics().getBlockedCount();
+    }
+
+    @Override
+    public synchronized long getLatencySampleCount() {
+        collectLatencies();
+        return latencies.getTotalCount();
+    }
+
+    @Override
+    public double getLatencyP50Micros() {
+        return latencyAtPercentile(50);
+    }
+
+    @Override
+    public double getLatencyP99Micros() {
+        return latencyAtPercentile(99);
+    }
+
+    @Override
+    public double getLatencyP999Micros() {
+        return latencyAtPercentile(99.9);
+    }
+
+    @Override
+    public synchronized double getLatencyMaxMicros() {
+        collectLatencies();
+        return micros(latencies.getMaxValue());
+    }
+
+    @Override
+    public synchronized void resetLatencies() {
+        collectLatencies();
+        latencies.reset();
+        loggedLatencies.reset();
+    }
+}
@@ -0,0 +1,69 @@
+package com.bank.vwap;
+
+import java.util.Map;
+
+/**
+ * Operational metrics of a VWAPCalculator, registered with the platform MBean server as
+ * {@code com.bank.vwap:type=VWAPCalculator,name=<n>}.
+ * Latencies are from a price update being published to its currency pair's VWAP being updated.
+ */
+public interface VWAPMetricsMXBean {
+
+    long getProcessedTickCount();
+
+    Map<String, Long> getTickCountsByCurrencyPair();
+
+    /**
+     * @return the number of prices currently within each currency pair's window
+     */
+    Map<String, Long> getWindowSizesByCurrencyPair();
+
+    int getCurrencyPairCount();
+
+    long getEvictedTickCount();
+
+    long getLateTickCount();
+
+    long getErrorCount();
+
+    /**
+     * @return the largest divergence of a running VWAP from an exact recompute over its window, relative to the
+     * exact VWAP, at the last verification. NaN if nothing has been verified
+     */
+    double getVwapDivergence();
+
+    /**
+     * @return the number of times a running VWAP was found to have diverged beyond the tolerance
+     */
+    long getDivergedVwapCount();
+
+    /**
+     * Verify the running VWAPs against the checkpoints captured since the last verification, and request new ones
+     *
+     * @return the largest relative divergence, NaN if nothing could be verified
+     */
+    double verifyVwaps();
+
+    long getQueueDepth();
+
+    long getPeakQueueDepth();
+
+    long getDroppedTickCount();
+
+    long getBlockedPublishCount();
+
+    long getLatencySampleCount();
+
+    double getLatencyP50Micros();
+
+    double getLatencyP99Micros();
+
+    double getLatencyP999Micros();
+
+    double getLatencyMaxMicros();
+
+    /**
+     * Clear the recorded latencies, e.g. after warm-up
+     */
+    void resetLatencies();
+}
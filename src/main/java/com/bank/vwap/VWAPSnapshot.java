@@ -0,0 +1,47 @@
+package com.bank.vwap;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable, versioned view of the VWAP of every currency pair.
+ * All pairs in a snapshot were published together, giving readers a consistent view across pairs.
+ */
+public final class VWAPSnapshot {
+    static final VWAPSnapshot EMPTY = new VWAPSnapshot(0, 0, Collections.emptyMap());
+
+    private final long version;
+    private final long publishedAtNanos;
+    private final Map<String, CurrencyPairSnapshot> currencyPairs;
+
+    VWAPSnapshot(long version, long publishedAtNanos, Map<String, CurrencyPairSnapshot> currencyPairs) {
+        this.version = version;
+        this.publishedAtNanos = publishedAtNanos;
+        this.currencyPairs = Collections.unmodifiableMap(currencyPairs);
+    }
+
+    /**
+     * @return a number that increases every time a new snapshot is published
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the wall clock time the snapshot was published in epoch nanoseconds
+     */
+    public long getPublishedAtNanos() {
+        return publishedAtNanos;
+    }
+
+    /**
+     * @return the snapshot of the currency pair, or null if it has no prices within the window
+     */
+    public CurrencyPairSnapshot get(String currencyPair) {
+        return currencyPairs.get(currencyPair);
+    }
+
+    public Map<String, CurrencyPairSnapshot> getCurrencyPairs() {
+        return currencyPairs;
+    }
+}
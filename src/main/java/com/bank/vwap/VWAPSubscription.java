@@ -0,0 +1,146 @@
+package com.bank.vwap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A listener registered with a VWAPCalculator, for one currency pair or for all of them.
+ *
+ * Notifications are coalesced per currency pair: at most one is delivered per minimum interval,
+ * with the latest VWAP delivered once the interval has passed, and changes smaller than the
+ * minimum relative change from the last delivered VWAP are skipped.
+ */
+public final class VWAPSubscription {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VWAPSubscription.class);
+
+    private final String currencyPair;
+    private final VWAPListener listener;
+    private final long minIntervalNanos;
+    private final double minRelativeChange;
+    private final VWAPDispatcher dispatcher;
+    private volatile boolean cancelled;
+
+    // Delivery state per currency pair, only used by the dispatcher thread
+    private final Map<String, DeliveryState> deliveryStates = new HashMap<>();
+    private int heldCount;
+
+    VWAPSubscription(String currencyPair, VWAPListener listener, long minIntervalMicros, double minRelativeChange,
+                     VWAPDispatcher dispatcher) {
+        this.currencyPair = currencyPair;
+        this.listener = listener;
+        this.minIntervalNanos = TimeUnit.MICROSECONDS.toNanos(minIntervalMicros);
+        this.minRelativeChange = minRelativeChange;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * @return the currency pair subscribed to, or null for all currency pairs
+     */
+    public String getCurrencyPair() {
+        return currencyPair;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Stop notifications to the listener. A notification already being delivered may still complete.
+     */
+    public void cancel() {
+        cancelled = true;
+        dispatcher.remove(this);
+    }
+
+    boolean matches(String currencyPair) {
+        return this.currencyPair == null || this.currencyPair.equals(currencyPair);
+    }
+
+    /**
+     * Deliver or hold a changed VWAP
+     *
+     * @return the System.nanoTime at which a held VWAP is due, Long.MAX_VALUE if nothing is held
+     */
+    long offer(CurrencyPairSnapshot snapshot, long nowNanos) {
+        DeliveryState state = deliveryStates.computeIfAbsent(snapshot.getCurrencyPair(), k -> new DeliveryState());
+        if (state.delivered && !isSignificantChange(state.lastVwap, snapshot.getVwap())) {
+            release(state);
+            return Long.MAX_VALUE;
+        }
+        if (state.delivered && nowNanos - state.lastDeliveredNanos < minIntervalNanos) {
+            if (state.held == null) {
+                heldCount++;
+            }
+            state.held = snapshot;
+            return state.lastDeliveredNanos + minIntervalNanos;
+        }
+        release(state);
+        deliver(state, snapshot, nowNanos);
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Deliver the held VWAPs whose interval has passed
+     *
+     * @return the System.nanoTime at which the next held VWAP is due, Long.MAX_VALUE if nothing is held
+     */
+    long deliverDue(long nowNanos) {
+        if (heldCount == 0) {
+            return Long.MAX_VALUE;
+        }
+        long nextDueNanos = Long.MAX_VALUE;
+        for (DeliveryState state : deliveryStates.values()) {
+            if (state.held != null) {
+                long dueNanos = state.lastDeliveredNanos + minIntervalNanos;
+                if (nowNanos - dueNanos >= 0) {
+                    CurrencyPairSnapshot held = state.held;
+                    release(state);
+                    deliver(state, held, nowNanos);
+                } else {
+                    nextDueNanos = Math.min(nextDueNanos, dueNanos);
+                }
+            }
+        }
+        return nextDueNanos;
+    }
+
+    private boolean isSignificantChange(double lastVwap, double vwap) {
+        if (minRelativeChange <= 0) {
+            return vwap != lastVwap;
+        }
+        return lastVwap == 0 ? vwap != 0 : Math.abs(vwap - lastVwap) / Math.abs(lastVwap) >= minRelativeChange;
+    }
+
+    private void release(DeliveryState state) {
+        if (state.held != null) {
+            state.held = null;
+            heldCount--;
+        }
+    }
+
+    private void deliver(DeliveryState state, CurrencyPairSnapshot snapshot, long nowNanos) {
+        state.delivered = true;
+        state.lastVwap = snapshot.getVwap();
+        state.lastDeliveredNanos = nowNanos;
+        if (cancelled) {
+            return;
+        }
+        try {
+            listener.onVWAPChange(snapshot);
+        } catch (Exception e) {
+            LOGGER.error("Error notifying VWAP listener for {}: {}", snapshot.getCurrencyPair(), e.getMessage(), e);
+        }
+    }
+
+    private static final class DeliveryState {
+        private boolean delivered;
+        private double lastVwap;
+        private long lastDeliveredNanos;
+        // Latest VWAP waiting for the minimum interval to pass
+        private CurrencyPairSnapshot held;
+    }
+}
@@ -0,0 +1,102 @@
+package com.bank.vwap;
+
+import com.bank.util.CompensatedSum;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A VWAP over a window shorter than the cutoff, read from the currency pair's shared tick buffer.
+ * The window keeps its own tail sequence and running sums, so it costs O(1) amortized per tick
+ * and no ticks are copied. Written only by the thread that owns the currency pair.
+ */
+final class VWAPWindow {
+    private final int seconds;
+    private final long durationNanos;
+    // Sequence in the tick buffer of the oldest tick within the window
+    private long tail;
+    // Time before which ticks were last evicted from the window
+    private long cutoffNanos = Long.MIN_VALUE;
+    private final CompensatedSum totalWeightedPrice = new CompensatedSum();
+    private long totalVolume;
+    private volatile double vwap = Double.NaN;
+
+    VWAPWindow(int seconds, long tail) {
+        this.seconds = seconds;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(seconds);
+        this.tail = tail;
+    }
+
+    int getSeconds() {
+        return seconds;
+    }
+
+    /**
+     * @return the VWAP of the window, NaN if no prices are within it
+     */
+    double getVwap() {
+        return vwap;
+    }
+
+    void add(double price, long volume) {
+        totalWeightedPrice.add(price * volume);
+        totalVolume += volume;
+    }
+
+    /**
+     * Keep the window consistent when a late tick is inserted into the buffer at the given sequence.
+     * The buffer is in time order, so a tick after the window's cutoff is inserted at or after the tail,
+     * and a tick before it at or before the tail, moving the tail up.
+     *
+     * @param sequence the sequence the tick is stored at
+     * @param newEntry true if the tick was inserted as a new entry, false if it was added to an existing bucket
+     * @param entryTimestampNanos the time of the entry holding the tick
+     */
+    void insert(long sequence, boolean newEntry, long entryTimestampNanos, double price, long volume) {
+        if (entryTimestampNanos >= cutoffNanos) {
+            add(price, volume);
+        } else if (newEntry && sequence <= tail) {
+            tail++;
+        }
+    }
+
+    /**
+     * Keep the window consistent when the tick at the given sequence is evicted from the buffer
+     * before the window itself has moved past it
+     */
+    void evict(long sequence, double price, long volume) {
+        if (tail == sequence) {
+            totalWeightedPrice.add(-(price * volume));
+            totalVolume -= volume;
+            tail++;
+        }
+    }
+
+    /**
+     * @return the time the oldest tick within the window leaves it, Long.MAX_VALUE if the window holds no ticks
+     */
+    long nextExpiryNanos(TickBuffer ticks) {
+        return tail < ticks.head() ? ticks.expiryAt(tail, durationNanos) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Evict ticks older than the window relative to the given time and refresh the VWAP
+     *
+     * @return true if the VWAP changed
+     */
+    boolean update(TickBuffer ticks, long timestampNanos) {
+        cutoffNanos = Math.max(cutoffNanos, ticks.alignCutoff(timestampNanos - durationNanos));
+        while (tail < ticks.head() && ticks.timestampAt(tail) < cutoffNanos) {
+            long volume = ticks.volumeAt(tail);
+            totalWeightedPrice.add(-(ticks.priceAt(tail) * volume));
+            totalVolume -= volume;
+            tail++;
+        }
+        if (tail == ticks.head()) {
+            totalWeightedPrice.reset();
+            totalVolume = 0;
+        }
+        double previous = vwap;
+        vwap = totalVolume > 0 ? totalWeightedPrice.sum() / totalVolume : Double.NaN;
+        return Double.compare(previous, vwap) != 0;
+    }
+}
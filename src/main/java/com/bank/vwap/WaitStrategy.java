@@ -0,0 +1,56 @@
+package com.bank.vwap;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits on the ring buffer for updates to arrive or for free slots.
+ * Trades CPU usage for wake-up latency.
+ */
+public enum WaitStrategy {
+    // Spin on the CPU, lowest latency but burns a core per waiting thread
+    BUSY_SPIN {
+        @Override
+        public int idle(int counter) {
+            Thread.onSpinWait();
+            return counter + 1;
+        }
+    },
+    // Spin briefly, then yield the CPU to other threads
+    YIELD {
+        @Override
+        public int idle(int counter) {
+            if (counter < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+            return counter + 1;
+        }
+    },
+    // Spin and yield briefly, then park for short periods
+    PARK {
+        @Override
+        public int idle(int counter) {
+            if (counter < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else if (counter < SPIN_TRIES + YIELD_TRIES) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+            return counter + 1;
+        }
+    };
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    /**
+     * Wait once
+     *
+     * @param counter the number of times idle has been called in the current wait
+     * @return the counter to pass to the next call
+     */
+    public abstract int idle(int counter);
+}
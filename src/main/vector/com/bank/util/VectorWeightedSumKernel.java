@@ -0,0 +1,55 @@
+package com.bank.util;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * WeightedSumKernel on the Vector API. Each lane keeps its own Neumaier compensated sum of the weighted prices,
+ * and the lanes are folded into the caller's CompensatedSum once at the end, so the result is as exact as
+ * the scalar kernel's. Loaded by name from WeightedSumKernel, which falls back to the scalar kernel if the
+ * incubator module is not present at runtime.
+ */
+final class VectorWeightedSumKernel extends WeightedSumKernel {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // Same shape, so the same number of lanes as the prices
+    private static final VectorSpecies<Long> LONGS = VectorSpecies.of(long.class, DOUBLES.vectorShape());
+
+    @Override
+    public long sum(double[] prices, long[] volumes, int from, int to, CompensatedSum weightedPrices) {
+        DoubleVector sum = DoubleVector.zero(DOUBLES);
+        DoubleVector compensation = DoubleVector.zero(DOUBLES);
+        LongVector volumeSum = LongVector.zero(LONGS);
+        int i = from;
+        int bound = from + DOUBLES.loopBound(to - from);
+        for (; i < bound; i += DOUBLES.length()) {
+            LongVector volume = LongVector.fromArray(LONGS, volumes, i);
+            DoubleVector weightedPrice = DoubleVector.fromArray(DOUBLES, prices, i)
+                    .mul((DoubleVector) volume.convert(VectorOperators.L2D, 0));
+            DoubleVector total = sum.add(weightedPrice);
+            VectorMask<Double> sumLarger = sum.abs().compare(VectorOperators.GE, weightedPrice.abs());
+            // The rounding error of each addition, taken from the smaller operand
+            DoubleVector error = weightedPrice.sub(total).add(sum).blend(sum.sub(total).add(weightedPrice), sumLarger);
+            compensation = compensation.add(error);
+            sum = total;
+            volumeSum = volumeSum.add(volume);
+        }
+        for (int lane = 0; lane < DOUBLES.length(); lane++) {
+            weightedPrices.add(sum.lane(lane));
+            weightedPrices.add(compensation.lane(lane));
+        }
+        long volume = volumeSum.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            weightedPrices.add(prices[i] * volumes[i]);
+            volume += volumes[i];
+        }
+        return volume;
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + DOUBLES.length() + " lanes)";
+    }
+}
@@ -0,0 +1,104 @@
+package com.bank.feed;
+
+import com.bank.util.DateTimeUtil;
+import com.bank.vwap.CurrencyData;
+import com.bank.vwap.VWAPCalculator;
+import com.bank.vwap.VWAPCalculatorConfig;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class FeedRunnerTest {
+    private VWAPCalculator calculator;
+    private FeedRunner feedRunner;
+
+    @After
+    public void tearDown() {
+        if (feedRunner != null) {
+            feedRunner.close();
+        }
+        if (calculator != null) {
+            calculator.shutdownExecutors();
+        }
+    }
+
+    @Test
+    public void testLoopbackFeedsAreBatchedIntoTheCalculator() throws InterruptedException {
+        calculator = new VWAPCalculator(new VWAPCalculatorConfig().withCutoffSeconds(3600).withShardCount(2));
+        feedRunner = new FeedRunner(calculator, new FeedConfig().withBatchSize(4));
+
+        LoopbackPriceFeed first = new LoopbackPriceFeed("first");
+        LoopbackPriceFeed second = new LoopbackPriceFeed("second");
+        feedRunner.attach(first);
+        feedRunner.attach(second);
+        assertEquals(2, feedRunner.getFeedCount());
+
+        long now = DateTimeUtil.currentEpochNanos();
+        for (int i = 0; i < 10; i++) {
+            first.send("AUD/USD", now + i, 1.0 + i, 10);
+            second.send("USD/JPY", now + i, 100.0, 10);
+        }
+        //lines split across reads, and lines that are not ticks, are handled
+        first.sendBytes("timestamp,currencyPair,price,volume\n".getBytes(StandardCharsets.US_ASCII));
+        first.sendBytes((now + 10 + ",AUD/U").getBytes(StandardCharsets.US_ASCII));
+        first.sendBytes("SD,11.0,10\n".getBytes(StandardCharsets.US_ASCII));
+
+        awaitTicks("AUD/USD", 11);
+        awaitTicks("USD/JPY", 10);
+        assertEquals(6.0, calculator.getCurrencyPairData().get("AUD/USD").getVwap(), 0.0001);
+        assertEquals(100.0, calculator.getCurrencyPairData().get("USD/JPY").getVwap(), 0.0001);
+        assertEquals(21, feedRunner.getTickCount());
+        assertEquals(1, first.getSkippedLines());
+
+        first.close();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && feedRunner.getFeedCount() > 1) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, feedRunner.getFeedCount());
+    }
+
+    @Test
+    public void testSocketFeedReconnectsAfterTheVenueDisconnects() throws Exception {
+        calculator = new VWAPCalculator(new VWAPCalculatorConfig().withCutoffSeconds(3600));
+        feedRunner = new FeedRunner(calculator, new FeedConfig().withRetryMillis(10));
+
+        try (ServerSocket venue = new ServerSocket(0)) {
+            feedRunner.attach(new SocketPriceFeed("venue", "localhost", venue.getLocalPort()));
+            long now = DateTimeUtil.currentEpochNanos();
+            try (Socket connection = venue.accept()) {
+                OutputStream output = connection.getOutputStream();
+                output.write((now + ",EUR/USD,1.0,10\n").getBytes(StandardCharsets.US_ASCII));
+                output.flush();
+                awaitTicks("EUR/USD", 1);
+            }
+            try (Socket connection = venue.accept()) {
+                OutputStream output = connection.getOutputStream();
+                output.write((now + 1 + ",EUR/USD,2.0,10\n").getBytes(StandardCharsets.US_ASCII));
+                output.flush();
+                awaitTicks("EUR/USD", 2);
+            }
+        }
+
+        assertEquals(1.5, calculator.getCurrencyPairData().get("EUR/USD").getVwap(), 0.0001);
+        assertTrue(feedRunner.getErrorCount() >= 1);
+    }
+
+    private void awaitTicks(String currencyPair, long expectedTicks) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            CurrencyData data = calculator.getCurrencyPairData().get(currencyPair);
+            if (data != null && data.getTickCount() >= expectedTicks) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Timed out waiting for " + expectedTicks + " ticks of " + currencyPair);
+    }
+}
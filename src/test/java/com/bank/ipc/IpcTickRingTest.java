@@ -0,0 +1,123 @@
+package com.bank.ipc;
+
+import com.bank.feed.FeedConfig;
+import com.bank.feed.FeedRunner;
+import com.bank.util.DateTimeUtil;
+import com.bank.vwap.CurrencyData;
+import com.bank.vwap.VWAPCalculator;
+import com.bank.vwap.VWAPCalculatorConfig;
+import com.bank.vwap.WaitStrategy;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class IpcTickRingTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private VWAPCalculator calculator;
+    private FeedRunner feedRunner;
+
+    @After
+    public void tearDown() {
+        if (feedRunner != null) {
+            feedRunner.close();
+        }
+        if (calculator != null) {
+            calculator.shutdownExecutors();
+        }
+    }
+
+    /**
+     * Producer process: writes ticks of one currency pair into the ring, waiting for free records, then exits
+     *
+     * @param args the ring file, the currency pair, the number of ticks, the first timestamp and the price
+     */
+    public static void main(String[] args) throws Exception {
+        IpcConfig config = new IpcConfig().withFile(Paths.get(args[0])).withRingSize(64);
+        int count = Integer.parseInt(args[2]);
+        long timestampNanos = Long.parseLong(args[3]);
+        double price = Double.parseDouble(args[4]);
+        try (IpcTickWriter writer = new IpcTickWriter(config)) {
+            int currencyPairId = writer.currencyPairId(args[1]);
+            long deadline = System.currentTimeMillis() + 10_000;
+            for (int i = 0; i < count && System.currentTimeMillis() < deadline; ) {
+                if (writer.offer(currencyPairId, timestampNanos + i, price, 10)) {
+                    i++;
+                } else {
+                    Thread.sleep(1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTicksCrossFromProducerProcessesAcrossRestartsOfEitherSide() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("ticks.ring");
+        IpcConfig config = new IpcConfig().withFile(file).withRingSize(64).withWaitStrategy(WaitStrategy.YIELD);
+        calculator = new VWAPCalculator(new VWAPCalculatorConfig().withCutoffSeconds(3600).withMetricsJmxEnabled(false));
+        long now = DateTimeUtil.currentEpochNanos();
+
+        //the producer writes and exits before any consumer runs
+        runProducer(file, "AUD/USD", 50, now, 1.0);
+        startConsumer(config);
+        awaitTicks("AUD/USD", 50);
+
+        //the consumer stops while another producer writes, then picks up only the new ticks
+        feedRunner.close();
+        runProducer(file, "EUR/USD", 40, now, 1.2);
+        startConsumer(config);
+        awaitTicks("EUR/USD", 40);
+
+        //a producer restarted while the consumer runs keeps the dictionary, and wraps around the 64 record ring
+        runProducer(file, "AUD/USD", 30, now + 50, 2.0);
+        awaitTicks("AUD/USD", 80);
+        assertEquals(1.375, calculator.getCurrencyPairData().get("AUD/USD").getVwap(), 0.0001);
+        assertEquals(40, calculator.getCurrencyPairData().get("EUR/USD").getTickCount());
+        assertEquals(70, feedRunner.getTickCount());
+
+        //single producer and single consumer
+        try (IpcTickWriter writer = new IpcTickWriter(config)) {
+            assertEquals(120, writer.getPosition());
+            assertEquals(1, writer.currencyPairId("EUR/USD"));
+            assertThrows(IOException.class, () -> new IpcTickWriter(config));
+        }
+    }
+
+    private void startConsumer(IpcConfig config) {
+        feedRunner = new FeedRunner(calculator, new FeedConfig().withRetryMillis(10));
+        feedRunner.attach(new IpcPriceFeed("ipc", config));
+    }
+
+    private static void runProducer(Path file, String currencyPair, int count, long timestampNanos, double price) throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), IpcTickRingTest.class.getName(),
+                file.toString(), currencyPair, String.valueOf(count), String.valueOf(timestampNanos), String.valueOf(price))
+                .redirectErrorStream(true)
+                .redirectOutput(new File(file + "." + currencyPair.replace('/', '-') + ".log"))
+                .start();
+        assertTrue("Producer process timed out", process.waitFor(30, TimeUnit.SECONDS));
+        assertEquals("Producer process failed", 0, process.exitValue());
+    }
+
+    private void awaitTicks(String currencyPair, long expectedTicks) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            CurrencyData data = calculator.getCurrencyPairData().get(currencyPair);
+            if (data != null && data.getTickCount() >= expectedTicks) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Timed out waiting for " + expectedTicks + " ticks of " + currencyPair);
+    }
+}
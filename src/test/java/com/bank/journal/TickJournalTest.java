@@ -0,0 +1,84 @@
+package com.bank.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TickJournalTest {
+    //header and four records
+    private static final int SEGMENT_SIZE = TickJournalFormat.HEADER_SIZE + 4 * TickJournalFormat.RECORD_SIZE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplaysTicksFromTheCutoffAcrossSegments() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        TickJournal journal = new TickJournal(directory, 0, SEGMENT_SIZE, JournalSyncPolicy.EVERY_BATCH);
+        for (int i = 1; i <= 10; i++) {
+            assertTrue(journal.append(i % 2 == 0 ? "AUD/USD" : "USD/JPY", i * 1000L, i * 1.5, i * 10L));
+        }
+        journal.close();
+
+        assertEquals(3, TickJournalReader.listSegments(directory).size());
+        List<String> replayed = new ArrayList<>();
+        long count = TickJournalReader.replay(directory, 5000, (currencyPair, timestampNanos, price, volume) ->
+                replayed.add(currencyPair + " " + timestampNanos + " " + price + " " + volume));
+
+        assertEquals(6, count);
+        assertEquals("USD/JPY 5000 7.5 50", replayed.get(0));
+        assertEquals("AUD/USD 10000 15.0 100", replayed.get(5));
+    }
+
+    @Test
+    public void testReplayStopsAtTornRecord() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        TickJournal journal = new TickJournal(directory, 0, SEGMENT_SIZE, JournalSyncPolicy.NEVER);
+        journal.append("AUD/USD", 1000, 0.75, 10);
+        journal.append("AUD/USD", 2000, 0.76, 20);
+        journal.flush();
+
+        //a crash while writing the second record leaves its timestamp unwritten
+        Path segment = TickJournalReader.listSegments(directory).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8), TickJournalFormat.HEADER_SIZE + TickJournalFormat.RECORD_SIZE + TickJournalFormat.TIMESTAMP_OFFSET);
+        }
+
+        List<Long> timestamps = new ArrayList<>();
+        TickJournalReader.replay(directory, 0, (currencyPair, timestampNanos, price, volume) -> timestamps.add(timestampNanos));
+        assertEquals(List.of(1000L), timestamps);
+    }
+
+    @Test
+    public void testDeletesSegmentsOnceAllTheirTicksAreBeforeTheCutoff() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        TickJournal journal = new TickJournal(directory, 0, SEGMENT_SIZE, JournalSyncPolicy.NEVER);
+        for (int i = 1; i <= 9; i++) {
+            journal.append("AUD/USD", i * 1000L, 1.0, 1);
+        }
+        journal.flush();
+
+        //the first segment holds ticks up to 4000, the second up to 8000, the current one 9000
+        journal.deleteSegmentsBefore(8000);
+        assertEquals(2, TickJournalReader.listSegments(directory).size());
+        journal.deleteSegmentsBefore(9000);
+        assertEquals(1, TickJournalReader.listSegments(directory).size());
+    }
+
+    @Test
+    public void testRejectsCurrencyPairsThatDoNotFitARecord() throws IOException {
+        TickJournal journal = new TickJournal(folder.getRoot().toPath(), 0, SEGMENT_SIZE, JournalSyncPolicy.NEVER);
+        assertFalse(journal.append("AUD/USD/EUR", 1000, 1.0, 1));
+        assertTrue(journal.append("BTC/USDT", 1000, 1.0, 1));
+    }
+}
@@ -0,0 +1,149 @@
+package com.bank.publish;
+
+import com.bank.util.DateTimeUtil;
+import com.bank.vwap.VWAPCalculator;
+import com.bank.vwap.VWAPCalculatorConfig;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VWAPPublisherTest {
+    private VWAPCalculator calculator;
+    private VWAPPublisher publisher;
+
+    @After
+    public void tearDown() {
+        if (publisher != null) {
+            publisher.close();
+        }
+        if (calculator != null) {
+            calculator.shutdownExecutors();
+        }
+    }
+
+    @Test
+    public void testClientsGetASnapshotOnConnectingThenEveryUpdateOverLoopback() throws Exception {
+        calculator = new VWAPCalculator(new VWAPCalculatorConfig().withCutoffSeconds(3600).withWindowSeconds(60)
+                .withMetricsJmxEnabled(false));
+        try (DatagramChannel datagrams = DatagramChannel.open()) {
+            datagrams.bind(new InetSocketAddress("127.0.0.1", 0));
+            datagrams.configureBlocking(false);
+            publisher = new VWAPPublisher(calculator, new VWAPPublisherConfig()
+                    .withTcpAddress("127.0.0.1", 0)
+                    .withUdpAddress("127.0.0.1", ((InetSocketAddress) datagrams.getLocalAddress()).getPort()));
+
+            long now = DateTimeUtil.currentEpochNanos();
+            calculator.sendVWAPForCurrencyPair("AUD/USD", now, 0.675, 400);
+            awaitSequence(2);
+
+            try (Socket client = new Socket("127.0.0.1", publisher.getTcpPort())) {
+                client.setSoTimeout(5000);
+                List<String> received = new ArrayList<>();
+                VWAPMessageReceiver tcpReceiver = new VWAPMessageReceiver(message -> received.add(describe(message)));
+                ByteBuffer buffer = ByteBuffer.allocate(4096);
+                while (tcpReceiver.getExpectedSequence() == 0) {
+                    read(client.getInputStream(), buffer, tcpReceiver);
+                }
+                //the snapshot holds the pair's name and latest VWAP, up to the sequence reached
+                String latest = received.get(1);
+                assertEquals(List.of("PAIR 0 AUD/USD snapshot", latest, "SNAPSHOT_END " + publisher.getSequence()), received);
+                long expected = tcpReceiver.getExpectedSequence();
+                assertTrue(latest.startsWith("UPDATE 0 vwap=0.675 volume=400 ticks=1"));
+                assertTrue(latest.endsWith("window60=0.675 snapshot"));
+
+                received.clear();
+                calculator.sendVWAPForCurrencyPair("EUR/USD", now + 2, 1.10, 100);
+                awaitSequence(expected + 1);
+                while (received.size() < 2) {
+                    read(client.getInputStream(), buffer, tcpReceiver);
+                }
+                assertEquals("PAIR 1 EUR/USD", received.get(0));
+                assertTrue(received.get(1).startsWith("UPDATE 1 vwap=1.1 volume=100 ticks=1"));
+                assertEquals(0, tcpReceiver.getGapCount());
+                assertEquals(1, publisher.getClientCount());
+            }
+
+            //every message was sent as a datagram too, losing one is reported as a gap
+            List<Long> gaps = new ArrayList<>();
+            List<String> received = new ArrayList<>();
+            VWAPMessageReceiver udpReceiver = new VWAPMessageReceiver(new VWAPMessageHandler() {
+                @Override
+                public void onMessage(VWAPMessageDecoder message) {
+                    received.add(describe(message));
+                }
+
+                @Override
+                public void onGap(long expectedSequence, long receivedSequence) {
+                    gaps.add(expectedSequence);
+                    gaps.add(receivedSequence);
+                }
+            });
+            ByteBuffer datagram = ByteBuffer.allocateDirect(VWAPMessageFormat.MESSAGE_SIZE);
+            long deadline = System.currentTimeMillis() + 5000;
+            int datagramCount = 0;
+            while (datagramCount < publisher.getSequence() && System.currentTimeMillis() < deadline) {
+                datagram.clear();
+                if (datagrams.receive(datagram) == null) {
+                    Thread.sleep(1);
+                    continue;
+                }
+                datagramCount++;
+                datagram.flip();
+                if (datagramCount != 2) {
+                    udpReceiver.onData(datagram);
+                }
+            }
+            assertEquals(publisher.getSequence(), datagramCount);
+            assertEquals(List.of(2L, 3L), gaps);
+            assertEquals(1, udpReceiver.getMissedCount());
+            assertEquals("PAIR 0 AUD/USD", received.get(0));
+            assertEquals(publisher.getSequence() + 1, udpReceiver.getExpectedSequence());
+        }
+    }
+
+    private void awaitSequence(long sequence) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (publisher.getSequence() < sequence && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue("Timed out waiting for message " + sequence, publisher.getSequence() >= sequence);
+    }
+
+    private static void read(InputStream input, ByteBuffer buffer, VWAPMessageReceiver receiver) throws IOException {
+        int read = input.read(buffer.array(), buffer.position(), buffer.remaining());
+        assertTrue("Publisher closed the connection", read > 0);
+        buffer.position(buffer.position() + read);
+        buffer.flip();
+        receiver.onData(buffer);
+        buffer.compact();
+    }
+
+    private static String describe(VWAPMessageDecoder message) {
+        String snapshot = message.isSnapshot() ? " snapshot" : "";
+        switch (message.getTemplateId()) {
+            case VWAPMessageFormat.PAIR:
+                return "PAIR " + message.getCurrencyPairId() + " " + message.getCurrencyPair() + snapshot;
+            case VWAPMessageFormat.SNAPSHOT_END:
+                return "SNAPSHOT_END " + message.getSequence();
+            default:
+                StringBuilder update = new StringBuilder("UPDATE " + message.getCurrencyPairId()
+                        + " vwap=" + Math.round(message.getVwap() * 1e6) / 1e6 + " volume=" + message.getVolume()
+                        + " ticks=" + message.getTickCount());
+                for (int i = 0; i < message.getWindowCount(); i++) {
+                    update.append(" window").append(message.getWindowSeconds(i)).append('=')
+                            .append(Math.round(message.getWindowVwap(i) * 1e6) / 1e6);
+                }
+                return update + snapshot;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.bank.replay;
+
+import com.bank.journal.JournalSyncPolicy;
+import com.bank.journal.TickJournal;
+import com.bank.util.DateTimeUtil;
+import com.bank.vwap.VWAPCalculatorConfig;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReplayEngineTest {
+    private static final LocalDate TRADE_DATE = LocalDate.of(2024, 1, 2);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCsvReplayEmitsVWAPAtTheEndOfEachInterval() throws IOException {
+        long nanos = DateTimeUtil.toEpochNanos(Instant.parse("2024-01-02T09:30:00.750Z"));
+        Path input = folder.newFile("ticks.csv").toPath();
+        Files.writeString(input, "timestamp,currencyPair,price,volume\n"
+                + "9:30:00.000 AM,AUD/USD,0.75,100\r\n"
+                + "9:30:00.250 AM, USD/JPY ,150.5,10\n"
+                + "9:30:00.500 AM,AUD/USD,0.76,300\n"
+                + "not a tick\n"
+                + "9:30:02.500 AM,AUD/USD,0.80,100\n"
+                + nanos + ",NZD/GBP,0.5,5");
+
+        List<String> points = replay(new ReplayConfig().withOutputIntervalMillis(1000), input);
+
+        assertEquals(List.of(
+                "AUD/USD 2024-01-02T09:30:01Z 0.7575 400 0.7575",
+                "AUD/USD 2024-01-02T09:30:03Z 0.766 500 0.8",
+                "NZD/GBP 2024-01-02T09:30:01Z 0.5 5 0.5",
+                "USD/JPY 2024-01-02T09:30:01Z 150.5 10 150.5"), points);
+    }
+
+    @Test
+    public void testJournalReplayEvictsTicksByEventTime() throws IOException {
+        Path directory = folder.newFolder("journal").toPath();
+        TickJournal journal = new TickJournal(directory, 0, 1 << 20, JournalSyncPolicy.NEVER);
+        long start = DateTimeUtil.toEpochNanos(Instant.parse("2024-01-02T09:30:00Z"));
+        journal.append("AUD/USD", start, 1.0, 100);
+        journal.append("AUD/USD", start + 5_000_000_000L, 2.0, 100);
+        // The first tick is past the 10 second cutoff by now
+        journal.append("AUD/USD", start + 12_000_000_000L, 3.0, 100);
+        journal.close();
+
+        List<String> points = replay(new ReplayConfig().withOutputIntervalMillis(0), directory);
+
+        assertEquals(List.of(
+                "AUD/USD 2024-01-02T09:30:00Z 1.0 100 1.0",
+                "AUD/USD 2024-01-02T09:30:05Z 1.5 200 2.0",
+                "AUD/USD 2024-01-02T09:30:12Z 2.5 200 3.0"), points);
+    }
+
+    private List<String> replay(ReplayConfig config, Path input) throws IOException {
+        config.withWindowConfig(new VWAPCalculatorConfig().withCutoffSeconds(10).withWindowSeconds(1))
+                .withWorkerCount(2)
+                .withTradeDate(TRADE_DATE)
+                .withZone(ZoneOffset.UTC);
+        List<String> points = Collections.synchronizedList(new ArrayList<>());
+        ReplayResult result = new ReplayEngine(config).replay(List.of(input), (timestampNanos, data) ->
+                points.add(data.getCurrencyPair() + " " + DateTimeUtil.fromEpochNanos(timestampNanos) + " "
+                        + data.getVwap() + " " + data.getTotalVolume().get() + " " + data.getVwap(1)));
+        assertEquals(points.size(), result.getPoints());
+        // Points of one pair are in order, sorting by pair makes the order across workers deterministic
+        List<String> sorted = new ArrayList<>(points);
+        sorted.sort((a, b) -> a.substring(0, 7).compareTo(b.substring(0, 7)));
+        return sorted;
+    }
+}
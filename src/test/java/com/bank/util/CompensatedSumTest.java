@@ -0,0 +1,55 @@
+package com.bank.util;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompensatedSumTest {
+
+    @Test
+    public void testAddingAndRemovingValuesDoesNotDrift() {
+        Random random = new Random(42);
+        int count = 1_000_000;
+        int window = 1000;
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            //weighted prices of very different sizes, as a large trade followed by small ones
+            values[i] = (100 + random.nextDouble()) * (1 + random.nextInt(i % 1000 == 0 ? 100_000_000 : 1000));
+        }
+
+        CompensatedSum sum = new CompensatedSum();
+        double naive = 0;
+        //a sliding window moved across all the values, as prices enter and leave the VWAP window
+        for (int i = 0; i < count; i++) {
+            sum.add(values[i]);
+            naive += values[i];
+            if (i >= window) {
+                sum.add(-values[i - window]);
+                naive -= values[i - window];
+            }
+        }
+        BigDecimal exact = BigDecimal.ZERO;
+        for (int i = count - window; i < count; i++) {
+            exact = exact.add(new BigDecimal(values[i]));
+        }
+
+        double compensatedError = Math.abs(new BigDecimal(sum.sum()).subtract(exact).doubleValue());
+        double naiveError = Math.abs(new BigDecimal(naive).subtract(exact).doubleValue());
+        assertTrue("Compensated sum drifted by " + compensatedError, compensatedError <= Math.ulp(exact.doubleValue()));
+        assertTrue("Uncompensated sum is expected to drift", naiveError > compensatedError);
+    }
+
+    @Test
+    public void testResetClearsCompensation() {
+        CompensatedSum sum = new CompensatedSum();
+        sum.add(1e16);
+        sum.add(1.0);
+        sum.reset();
+        sum.add(2.5);
+
+        assertEquals(2.5, sum.sum(), 0.0);
+    }
+}
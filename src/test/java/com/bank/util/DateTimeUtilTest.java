@@ -0,0 +1,57 @@
+package com.bank.util;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+
+import static org.junit.Assert.*;
+
+public class DateTimeUtilTest {
+    private static final ZoneId SYDNEY = ZoneId.of("Australia/Sydney");
+
+    @Test
+    public void testParsesTimeOfDayFormats() {
+        assertEquals(LocalTime.of(9, 30).toNanoOfDay(), parse("9:30 AM"));
+        assertEquals(LocalTime.of(21, 30).toNanoOfDay(), parse("9:30 pm"));
+        assertEquals(LocalTime.of(0, 5).toNanoOfDay(), parse("12:05 am"));
+        assertEquals(LocalTime.of(12, 5).toNanoOfDay(), parse("12:05 PM"));
+        assertEquals(LocalTime.of(9, 30, 15, 250_000_000).toNanoOfDay(), parse("9:30:15.250 AM"));
+        assertEquals(LocalTime.of(21, 30, 15, 123_456_789).toNanoOfDay(), parse("9:30:15.123456789 PM"));
+        assertEquals(LocalTime.of(17, 45, 1).toNanoOfDay(), parse("17:45:01"));
+    }
+
+    @Test
+    public void testRejectsInvalidTimes() {
+        assertEquals(DateTimeUtil.INVALID_TIMESTAMP, parse("13:30 PM"));
+        assertEquals(DateTimeUtil.INVALID_TIMESTAMP, parse("9:3 AM"));
+        assertEquals(DateTimeUtil.INVALID_TIMESTAMP, parse("9:30 XM"));
+        assertEquals(DateTimeUtil.INVALID_TIMESTAMP, parse("9:30:15.1234567890 AM"));
+        assertEquals(DateTimeUtil.INVALID_TIMESTAMP, parse("nine thirty"));
+        assertEquals(DateTimeUtil.INVALID_TIMESTAMP, DateTimeUtil.parseToEpochNanos("25:00", SYDNEY));
+    }
+
+    @Test
+    public void testConvertsTimeOnCurrentDayInZone() {
+        long expected = DateTimeUtil.toEpochNanos(LocalDateTime.of(LocalDate.now(SYDNEY), LocalTime.of(9, 30)).atZone(SYDNEY).toInstant());
+        assertEquals(expected, DateTimeUtil.parseToEpochNanos("9:30 AM", SYDNEY));
+    }
+
+    @Test
+    public void testAccountsForDaylightSavingTransition() {
+        //clocks in Sydney went forward from 2am to 3am on 6 October 2024
+        LocalDate transitionDay = LocalDate.of(2024, 10, 6);
+        DateTimeUtil.DayStart dayStart = DateTimeUtil.DayStart.of(transitionDay, SYDNEY);
+
+        for (LocalTime time : new LocalTime[]{LocalTime.of(1, 30), LocalTime.of(3, 30), LocalTime.of(21, 0)}) {
+            long expected = DateTimeUtil.toEpochNanos(LocalDateTime.of(transitionDay, time).atZone(SYDNEY).toInstant());
+            assertEquals(expected, dayStart.toEpochNanos(time.toNanoOfDay()));
+        }
+    }
+
+    private long parse(String text) {
+        return DateTimeUtil.parseTimeOfDayNanos(text, 0, text.length());
+    }
+}
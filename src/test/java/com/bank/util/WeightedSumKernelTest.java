@@ -0,0 +1,36 @@
+package com.bank.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WeightedSumKernelTest {
+
+    @Test
+    public void testKernelsAgreeWithCompensatedSum() {
+        Random random = new Random(42);
+        double[] prices = new double[1003];
+        long[] volumes = new long[prices.length];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = 0.5 + random.nextDouble();
+            volumes[i] = 1 + random.nextInt(1_000_000);
+        }
+
+        //odd offsets and lengths exercise the tails around whole vectors
+        for (int[] range : new int[][]{{0, 1003}, {3, 1000}, {7, 12}, {500, 500}}) {
+            CompensatedSum expected = new CompensatedSum();
+            long expectedVolume = 0;
+            for (int i = range[0]; i < range[1]; i++) {
+                expected.add(prices[i] * volumes[i]);
+                expectedVolume += volumes[i];
+            }
+            for (WeightedSumKernel kernel : new WeightedSumKernel[]{WeightedSumKernel.scalar(), WeightedSumKernel.get()}) {
+                CompensatedSum weightedPrices = new CompensatedSum();
+                assertEquals(kernel.getName(), expectedVolume, kernel.sum(prices, volumes, range[0], range[1], weightedPrices));
+                assertEquals(kernel.getName(), expected.sum(), weightedPrices.sum(), 1e-12 * Math.abs(expected.sum()));
+            }
+        }
+    }
+}
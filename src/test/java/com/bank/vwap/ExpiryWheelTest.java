@@ -0,0 +1,73 @@
+package com.bank.vwap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ExpiryWheelTest {
+
+    @Test
+    public void testOnlyDueCurrencyPairsFireAcrossLevels() {
+        //1ns ticks, so entries 10, 100, 5000 and 300000 ticks ahead land on each of the four levels
+        ExpiryWheel wheel = new ExpiryWheel(1);
+        CurrencyData level0 = new CurrencyData("AUD/USD");
+        CurrencyData level1 = new CurrencyData("EUR/USD");
+        CurrencyData level2 = new CurrencyData("USD/JPY");
+        CurrencyData level3 = new CurrencyData("GBP/USD");
+        CurrencyData cancelled = new CurrencyData("NZD/USD");
+        wheel.schedule(level0, 1_000_010, 1_000_000);
+        wheel.schedule(level1, 1_000_100, 1_000_000);
+        wheel.schedule(level2, 1_005_000, 1_000_000);
+        wheel.schedule(level3, 1_300_000, 1_000_000);
+        wheel.schedule(cancelled, 1_000_050, 1_000_000);
+        wheel.cancel(cancelled);
+        assertEquals(4, wheel.size());
+
+        List<CurrencyData> fired = new ArrayList<>();
+        List<Long> firedAt = new ArrayList<>();
+        for (long now = 1_000_000; now <= 1_300_010; now += 7) {
+            long time = now;
+            wheel.advance(now, data -> {
+                fired.add(data);
+                firedAt.add(time);
+            });
+        }
+
+        assertEquals(List.of(level0, level1, level2, level3), fired);
+        //each fires at the first advance at or after its time
+        assertEquals(List.of(1_000_014L, 1_000_105L, 1_005_005L, 1_300_006L), firedAt);
+        assertEquals(0, wheel.size());
+        assertEquals(Long.MAX_VALUE, level0.getScheduledExpiryNanos());
+    }
+
+    @Test
+    public void testEntriesBeyondTheWheelAndTimeJumpsFireOnTime() {
+        ExpiryWheel wheel = new ExpiryWheel(1);
+        CurrencyData beyond = new CurrencyData("AUD/USD");
+        CurrencyData near = new CurrencyData("EUR/USD");
+        //the wheel spans 64^4 ticks
+        wheel.schedule(beyond, 50_000_000, 0);
+        wheel.schedule(near, 100, 0);
+
+        List<CurrencyData> fired = new ArrayList<>();
+        wheel.advance(99, fired::add);
+        assertTrue(fired.isEmpty());
+        //jumping far ahead fires what is due and keeps the rest
+        wheel.advance(40_000_000, fired::add);
+        assertEquals(List.of(near), fired);
+        wheel.advance(49_999_999, fired::add);
+        assertEquals(1, fired.size());
+        wheel.advance(50_000_000, fired::add);
+        assertEquals(List.of(near, beyond), fired);
+
+        //a currency pair rescheduled from its callback fires again later
+        wheel.schedule(near, 50_000_010, 50_000_000);
+        wheel.advance(50_000_010, data -> wheel.schedule(data, 50_000_020, 50_000_010));
+        assertEquals(1, wheel.size());
+        wheel.advance(50_000_020, fired::add);
+        assertEquals(List.of(near, beyond, near), fired);
+    }
+}
@@ -0,0 +1,96 @@
+package com.bank.vwap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IngestionStageTest {
+
+    @Test
+    public void testQueueOverflowDropsNewestOrOldest() throws InterruptedException {
+        PriceIngestionStage dropNewest = new QueueIngestionStage(2, OverflowPolicy.DROP_NEWEST);
+        assertTrue(dropNewest.publish(0, 1, 1.0, 10));
+        assertTrue(dropNewest.publish(0, 2, 2.0, 10));
+        assertFalse(dropNewest.publish(0, 3, 3.0, 10));
+        assertEquals(List.of(1L, 2L), drainTimestamps(dropNewest));
+        assertEquals(1, dropNewest.getCounters().getDropped());
+        assertEquals(2, dropNewest.getCounters().getPeakDepth());
+
+        PriceIngestionStage dropOldest = new QueueIngestionStage(2, OverflowPolicy.DROP_OLDEST);
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(dropOldest.publish(0, i, 1.0, 10));
+        }
+        assertEquals(List.of(2L, 3L), drainTimestamps(dropOldest));
+        assertEquals(1, dropOldest.getCounters().getDropped());
+    }
+
+    @Test
+    public void testColumnarBatchesAreQueuedInOrderUntilFull() throws InterruptedException {
+        int[] currencyPairIds = {0, 1, 0, 1, 0};
+        long[] timestamps = {1, 2, 3, 4, 5};
+        double[] prices = {1.0, 1.0, 1.0, 1.0, 1.0};
+        long[] volumes = {10, 10, 10, 10, 10};
+
+        PriceIngestionStage queue = new QueueIngestionStage(4, OverflowPolicy.DROP_NEWEST);
+        assertTrue(queue.publish(0, 0, 1.0, 10));
+        assertEquals(1, drainTimestamps(queue).size());
+        //wraps around the columns
+        assertEquals(4, queue.publishBatch(currencyPairIds, timestamps, prices, volumes, 0, 5));
+        assertEquals(List.of(1L, 2L, 3L, 4L), drainTimestamps(queue));
+        assertEquals(1, queue.getCounters().getDropped());
+
+        List<CurrencyPriceData> batch = List.of(withId(new CurrencyPriceData(6, "AUD/USD", 1.0, 10)), withId(new CurrencyPriceData(7, "AUD/USD", 1.0, 10)));
+        assertEquals(2, queue.publishBatch(batch));
+        assertEquals(List.of(6L, 7L), drainTimestamps(queue));
+
+        PriceIngestionStage dropOldest = new QueueIngestionStage(4, OverflowPolicy.DROP_OLDEST);
+        assertEquals(5, dropOldest.publishBatch(currencyPairIds, timestamps, prices, volumes, 0, 5));
+        assertEquals(List.of(2L, 3L, 4L, 5L), drainTimestamps(dropOldest));
+
+        PriceIngestionStage ring = new RingBufferIngestionStage(4, WaitStrategy.BUSY_SPIN, OverflowPolicy.DROP_NEWEST);
+        assertEquals(3, ring.publishBatch(currencyPairIds, timestamps, prices, volumes, 1, 4));
+        assertEquals(1, ring.publishBatch(currencyPairIds, timestamps, prices, volumes, 4, 5));
+        assertEquals(0, ring.publishBatch(currencyPairIds, timestamps, prices, volumes, 0, 1));
+        assertEquals(List.of(2L, 3L, 4L, 5L), drainTimestamps(ring));
+    }
+
+    @Test
+    public void testRingBufferDropsNewestWhenFull() throws InterruptedException {
+        PriceIngestionStage ring = new RingBufferIngestionStage(2, WaitStrategy.BUSY_SPIN, OverflowPolicy.DROP_NEWEST);
+        assertTrue(ring.publish(0, 1, 1.0, 10));
+        List<CurrencyPriceData> batch = List.of(withId(new CurrencyPriceData(2, "AUD/USD", 1.0, 10)), withId(new CurrencyPriceData(3, "AUD/USD", 1.0, 10)));
+        assertEquals(1, ring.publishBatch(batch));
+        assertFalse(ring.publish(0, 4, 1.0, 10));
+        assertEquals(List.of(1L, 2L), drainTimestamps(ring));
+        assertEquals(2, ring.getCounters().getDropped());
+        //the consumer freed the slots
+        assertTrue(ring.publish(0, 5, 1.0, 10));
+    }
+
+    @Test
+    public void testConflationKeepsLatestTicksPerCurrencyPair() throws InterruptedException {
+        PriceIngestionStage conflating = new ConflatingIngestionStage(2);
+        for (int i = 1; i <= 5; i++) {
+            conflating.publish(0, i, 1.0, 10);
+        }
+        conflating.publish(1, 6, 1.0, 10);
+        assertEquals(3, conflating.size());
+        assertEquals(List.of(4L, 5L, 6L), drainTimestamps(conflating));
+        assertEquals(3, conflating.getCounters().getDropped());
+        assertEquals(0, conflating.size());
+    }
+
+    private static CurrencyPriceData withId(CurrencyPriceData currencyPriceData) {
+        currencyPriceData.setCurrencyPairId(0);
+        return currencyPriceData;
+    }
+
+    private static List<Long> drainTimestamps(PriceIngestionStage stage) throws InterruptedException {
+        List<Long> timestamps = new ArrayList<>();
+        stage.drain((currencyPairId, timestampNanos, price, volume, enqueuedNanos) -> timestamps.add(timestampNanos));
+        return timestamps;
+    }
+}
@@ -0,0 +1,89 @@
+package com.bank.vwap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TickBufferTest {
+
+    @Test
+    public void testHeapBufferGrowsAcrossWrapAround() {
+        assertGrowsAcrossWrapAround(TickBuffer.create(4, false));
+    }
+
+    @Test
+    public void testOffHeapBufferGrowsAcrossWrapAround() {
+        assertGrowsAcrossWrapAround(TickBuffer.create(4, true));
+    }
+
+    @Test
+    public void testBucketedBufferAggregatesTicksPerBucket() {
+        //ten 100ns buckets sized for a 1000ns window
+        BucketedTickBuffer buffer = new BucketedTickBuffer(100, 1000);
+        int capacity = buffer.capacity();
+        for (int i = 0; i < 10_000; i++) {
+            buffer.append(i, i % 2 == 0 ? 1.0 : 3.0, 10);
+            while (buffer.timestampAt(buffer.tail()) < buffer.alignCutoff(i - 1000)) {
+                buffer.removeOldest();
+            }
+        }
+
+        //memory stays constant whatever the number of ticks
+        assertEquals(capacity, buffer.capacity());
+        assertEquals(11, buffer.size());
+        long newest = buffer.head() - 1;
+        assertEquals(9900, buffer.timestampAt(newest));
+        assertEquals(100, buffer.countAt(newest));
+        assertEquals(1000, buffer.volumeAt(newest));
+        assertEquals(2.0, buffer.priceAt(newest), 0.0);
+        assertEquals(200.0, buffer.priceSumAt(newest), 0.0);
+        assertEquals(1.0, buffer.lowPriceAt(newest), 0.0);
+        assertEquals(3.0, buffer.highPriceAt(newest), 0.0);
+    }
+
+    @Test
+    public void testLateTicksInsertedInTimeOrder() {
+        TickBuffer buffer = TickBuffer.create(2, false);
+        buffer.append(100, 1.0, 10);
+        buffer.append(300, 3.0, 30);
+        assertEquals(1, buffer.insert(200, 2.0, 20));
+        //inserting into a full buffer grows it
+        assertEquals(0, buffer.insert(50, 0.5, 5));
+        assertEquals(4, buffer.size());
+        for (long sequence = buffer.tail(); sequence < buffer.head() - 1; sequence++) {
+            assertTrue(buffer.timestampAt(sequence) < buffer.timestampAt(sequence + 1));
+        }
+        assertEquals(20, buffer.volumeAt(2));
+
+        //a late tick joins its existing bucket, or a new bucket in order
+        BucketedTickBuffer buckets = new BucketedTickBuffer(100, 1000);
+        buckets.append(110, 1.0, 10);
+        buckets.append(310, 3.0, 10);
+        assertEquals(0, buckets.insert(150, 2.0, 10));
+        assertEquals(2, buckets.size());
+        assertEquals(1.5, buckets.priceAt(0), 0.0);
+        assertEquals(1, buckets.insert(250, 5.0, 10));
+        assertEquals(200, buckets.timestampAt(1));
+        assertEquals(300, buckets.timestampAt(2));
+    }
+
+    private void assertGrowsAcrossWrapAround(TickBuffer buffer) {
+        for (int i = 0; i < 4; i++) {
+            buffer.append(i, i * 1.5, i * 10L);
+        }
+        //move the tail so that the next appends wrap around the end of the ring
+        buffer.removeOldest();
+        buffer.removeOldest();
+        for (int i = 4; i < 10; i++) {
+            buffer.append(i, i * 1.5, i * 10L);
+        }
+
+        assertEquals(8, buffer.size());
+        assertEquals(8, buffer.capacity());
+        for (long sequence = buffer.tail(); sequence < buffer.head(); sequence++) {
+            assertEquals(sequence, buffer.timestampAt(sequence));
+            assertEquals(sequence * 1.5, buffer.priceAt(sequence), 0.0);
+            assertEquals(sequence * 10L, buffer.volumeAt(sequence));
+        }
+    }
+}
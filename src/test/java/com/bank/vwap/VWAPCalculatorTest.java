@@ -7,12 +7,23 @@ import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.bank.vwap.VWAPCalculator.PRICE_TIMEZONE;
@@ -36,6 +47,19 @@ public class VWAPCalculatorTest {
         assertEquals(expectedVWAP, calculator.getCurrencyPairData().get("AUD/USD").getVwap(), 0.0001);
     }
 
+    @Test
+    public void testPriceUpdatesWithoutValidTimestampAreRejected() {
+        calculator = new VWAPCalculator(3600);
+        long invalid = DateTimeUtil.INVALID_TIMESTAMP;
+
+        assertFalse(calculator.sendVWAPForCurrencyPair("AUD/USD", invalid, 0.75, 1000));
+        int currencyPairId = calculator.getCurrencyPairRegistry().register("AUD/USD");
+        assertFalse(calculator.sendVWAPForCurrencyPair(currencyPairId, invalid, 0.75, 1000));
+        assertEquals(1, calculator.sendBatch(new int[]{currencyPairId, currencyPairId}, new long[]{invalid, DateTimeUtil.currentEpochNanos()},
+                new double[]{0.75, 0.76}, new long[]{1000, 1000}, 2));
+        calculator.shutdownExecutors();
+    }
+
     @Test
     public void testCalculateVWAPForMultipleCurrencyPairs() {
         calculator = new VWAPCalculator(3600);
@@ -187,4 +211,435 @@ public class VWAPCalculatorTest {
         // Reset reflection access (good practice)
         statsField.setAccessible(false);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testWindowStatisticsFollowCutoff() {
+        calculator = new VWAPCalculator(3600);
+
+        String currencyPair = "AUD/USD";
+        Instant cutoffTime = Instant.now().minusSeconds(3600);
+        calculator.processVWAPForCurrencyPair(new CurrencyPriceData(cutoffTime.minusSeconds(300), currencyPair, 0.5, 100));
+        calculator.processVWAPForCurrencyPair(new CurrencyPriceData(cutoffTime.minusSeconds(200), currencyPair, 2.0, 100));
+        calculator.processVWAPForCurrencyPair(new CurrencyPriceData(cutoffTime.plusSeconds(100), currencyPair, 1.2, 100));
+        calculator.processVWAPForCurrencyPair(new CurrencyPriceData(cutoffTime.plusSeconds(200), currencyPair, 1.0, 100));
+        calculator.processVWAPForCurrencyPair(new CurrencyPriceData(cutoffTime.plusSeconds(300), currencyPair, 1.1, 100));
+
+        calculator.removePricesBeforeCutoff(currencyPair, cutoffTime.plusSeconds(3600));
+
+        PriceStatistics stats = calculator.getCurrencyPairData().get(currencyPair).getStatistics();
+        //window statistics only include prices within the cutoff
+        assertEquals(1.2, stats.getWindowHighPrice(), 0.0001);
+        assertEquals(1.0, stats.getWindowLowPrice(), 0.0001);
+        assertEquals((1.2 + 1.0 + 1.1) / 3, stats.getWindowAveragePrice(), 0.0001);
+        //lifetime statistics include every price
+        assertEquals(2.0, stats.getHighPrice(), 0.0001);
+        assertEquals(0.5, stats.getLowPrice(), 0.0001);
+    }
+
+    @Test
+    public void testSnapshotPublishesConsistentViewOfAllCurrencyPairs() {
+        calculator = new VWAPCalculator(3600);
+        Instant now = Instant.now();
+
+        calculator.processVWAPForCurrencyPair(new CurrencyPriceData(now, "AUD/USD", 0.75, 1000));
+        calculator.processVWAPForCurrencyPair(new CurrencyPriceData(now.plusMillis(1), "AUD/USD", 0.76, 3000));
+        calculator.processVWAPForCurrencyPair(new CurrencyPriceData(now.plusMillis(2), "USD/JPY", 110.0, 2000));
+
+        //nothing is visible until the processing thread publishes
+        VWAPSnapshot initial = calculator.getSnapshot();
+        assertTrue(initial.getCurrencyPairs().isEmpty());
+
+        calculator.publishSnapshots();
+        VWAPSnapshot snapshot = calculator.getSnapshot();
+        assertTrue(snapshot.getVersion() > initial.getVersion());
+        assertEquals(2, snapshot.getCurrencyPairs().size());
+
+        CurrencyPairSnapshot audUsd = snapshot.get("AUD/USD");
+        assertEquals((0.75 * 1000 + 0.76 * 3000) / 4000, audUsd.getVwap(), 0.0001);
+        assertEquals(4000, audUsd.getTotalVolume());
+        assertEquals(2, audUsd.getTickCount());
+        assertEquals(DateTimeUtil.toEpochNanos(now.plusMillis(1)), audUsd.getLastUpdateNanos());
+
+        //pairs evicted from the window are removed from the next snapshot, earlier snapshots are unchanged
+        calculator.removePricesBeforeCutoff("USD/JPY", now.plusSeconds(7200));
+        calculator.publishSnapshots();
+        assertNull(calculator.getSnapshot().get("USD/JPY"));
+        assertNotNull(snapshot.get("USD/JPY"));
+    }
+
+    @Test
+    public void testCrossRatesDerivedOnlyFromChangedLegs() {
+        calculator = new VWAPCalculator(new VWAPCalculatorConfig().withCutoffSeconds(3600).withShardCount(4)
+                .withCrossRate("AUD/JPY", "AUD/USD", "USD/JPY")
+                .withCrossRate("EUR/GBP", "EUR/USD", "GBP/USD")
+                .withCrossLegMaxAgeMillis("GBP/USD", 1000));
+        Instant now = Instant.now();
+
+        calculator.processVWAPForCurrencyPair(new CurrencyPriceData(now, "AUD/USD", 0.65, 1000));
+        calculator.processVWAPForCurrencyPair(new CurrencyPriceData(now, "USD/JPY", 150.0, 1000));
+        calculator.processVWAPForCurrencyPair(new CurrencyPriceData(now, "EUR/USD", 1.10, 1000));
+        calculator.processVWAPForCurrencyPair(new CurrencyPriceData(now.minusSeconds(2), "GBP/USD", 1.25, 1000));
+        calculator.publishSnapshots();
+
+        CurrencyPairSnapshot audJpy = calculator.getSnapshot().get("AUD/JPY");
+        assertTrue(audJpy.isDerived());
+        assertEquals(97.5, audJpy.getVwap(), 1e-9);
+        assertFalse(calculator.getSnapshot().get("AUD/USD").isDerived());
+        //the GBP/USD price is older than the leg's limit, so EUR/GBP is not derived
+        assertNull(calculator.getSnapshot().get("EUR/GBP"));
+
+        //the GBP/USD leg is quoted in USD, so it is inverted
+        calculator.processVWAPForCurrencyPair(new CurrencyPriceData(now, "GBP/USD", 1.30, 3000));
+        calculator.publishSnapshots();
+        assertEquals(1.10 / 1.2875, calculator.getSnapshot().get("EUR/GBP").getVwap(), 1e-9);
+        //AUD/JPY has no changed leg, so it is not recomputed
+        assertSame(audJpy, calculator.getSnapshot().get("AUD/JPY"));
+
+        assertThrows(IllegalArgumentException.class, () -> new CrossRateDefinition("AUD/JPY", "AUD/USD", "EUR/GBP"));
+    }
+
+    @Test
+    public void testAdditionalWindowsShareTheTickBuffer() {
+        calculator = new VWAPCalculator(new VWAPCalculatorConfig().withCutoffSeconds(3600).withWindowSeconds(60, 300));
+
+        long now = DateTimeUtil.toEpochNanos(Instant.now());
+        calculator.processPriceUpdate("AUD/USD", now - TimeUnit.SECONDS.toNanos(600), 1.0, 10);
+        calculator.processPriceUpdate("AUD/USD", now - TimeUnit.SECONDS.toNanos(120), 2.0, 10);
+        calculator.processPriceUpdate("AUD/USD", now, 3.0, 10);
+
+        CurrencyData data = calculator.getCurrencyPairData().get("AUD/USD");
+        assertEquals(3, data.size());
+        assertEquals(2.0, data.getVwap(), 0.0001);
+        assertEquals(3.0, data.getVwap(60), 0.0001);
+        assertEquals(2.5, data.getVwap(300), 0.0001);
+        assertTrue(Double.isNaN(data.getVwap(1)));
+
+        //a sweep moves the short windows on even without new prices
+        calculator.removePricesBeforeCutoff("AUD/USD", now + TimeUnit.SECONDS.toNanos(61));
+        assertTrue(Double.isNaN(data.getVwap(60)));
+        assertEquals(2.0, data.getVwap(), 0.0001);
+
+        calculator.publishSnapshots();
+        CurrencyPairSnapshot snapshot = calculator.getSnapshot().get("AUD/USD");
+        assertTrue(Double.isNaN(snapshot.getVwap(60)));
+        assertEquals(2.5, snapshot.getVwap(300), 0.0001);
+        calculator.shutdownExecutors();
+    }
+
+    @Test
+    public void testLateTicksInsertedInTimeOrderWithinLateness() {
+        calculator = new VWAPCalculator(new VWAPCalculatorConfig().withCutoffSeconds(60).withWindowSeconds(1)
+                .withMaxLatenessMillis(2000));
+
+        long start = TimeUnit.SECONDS.toNanos(1_000_000);
+        calculator.processPriceUpdate("AUD/USD", start + TimeUnit.MILLISECONDS.toNanos(5000), 1.0, 10);
+        //within the lateness and the one second window
+        calculator.processPriceUpdate("AUD/USD", start + TimeUnit.MILLISECONDS.toNanos(4500), 3.0, 10);
+        //within the lateness but before the one second window
+        calculator.processPriceUpdate("AUD/USD", start + TimeUnit.MILLISECONDS.toNanos(3500), 5.0, 10);
+        //later than the lateness, dropped
+        calculator.processPriceUpdate("AUD/USD", start + TimeUnit.MILLISECONDS.toNanos(2000), 100.0, 10);
+
+        CurrencyData data = calculator.getCurrencyPairData().get("AUD/USD");
+        assertEquals(3, data.size());
+        assertEquals(1, calculator.getLateTickCount());
+        assertEquals(3.0, data.getVwap(), 0.0001);
+        assertEquals(2.0, data.getVwap(1), 0.0001);
+        Iterator<CurrencyPriceData> oldestFirst = data.getDescendingIterator();
+        assertEquals(5.0, oldestFirst.next().getPrice(), 0.0001);
+        assertEquals(3.0, oldestFirst.next().getPrice(), 0.0001);
+        assertEquals(1.0, oldestFirst.next().getPrice(), 0.0001);
+
+        //eviction stops at the first price within the window, which is now the oldest
+        calculator.removePricesBeforeCutoff("AUD/USD", start + TimeUnit.SECONDS.toNanos(64));
+        assertEquals(2, data.size());
+        assertEquals(2.0, data.getVwap(), 0.0001);
+        calculator.shutdownExecutors();
+
+        calculator = new VWAPCalculator(new VWAPCalculatorConfig().withCutoffSeconds(60)
+                .withMaxLatenessMillis(2000).withLateTickPolicy(LateTickPolicy.CLAMP));
+        calculator.processPriceUpdate("AUD/USD", start + TimeUnit.MILLISECONDS.toNanos(5000), 1.0, 10);
+        calculator.processPriceUpdate("AUD/USD", start + TimeUnit.MILLISECONDS.toNanos(1000), 3.0, 10);
+        data = calculator.getCurrencyPairData().get("AUD/USD");
+        assertEquals(1, calculator.getLateTickCount());
+        assertEquals(2.0, data.getVwap(), 0.0001);
+        assertEquals(start + TimeUnit.MILLISECONDS.toNanos(3000), data.getDescendingIterator().next().getTimestampNanos());
+        calculator.shutdownExecutors();
+    }
+
+    @Test
+    public void testBucketedWindowRollsWholeBuckets() {
+        calculator = new VWAPCalculator(new VWAPCalculatorConfig().withCutoffSeconds(60).withBucketMillis(1000));
+
+        long start = TimeUnit.SECONDS.toNanos(1_000_000);
+        for (int i = 0; i < 10; i++) {
+            calculator.processPriceUpdate("AUD/USD", start + TimeUnit.MILLISECONDS.toNanos(i * 100), 1.0, 10);
+        }
+        calculator.processPriceUpdate("AUD/USD", start + TimeUnit.SECONDS.toNanos(30), 2.0, 10);
+
+        CurrencyData data = calculator.getCurrencyPairData().get("AUD/USD");
+        assertEquals(2, data.size());
+        assertEquals(11, data.getTickCount());
+        assertEquals((100 + 20) / 110.0, data.getVwap(), 0.0001);
+        assertEquals(2.0, data.getStatistics().getWindowHighPrice(), 0.0001);
+
+        //the first bucket is kept until all of it is older than the cutoff
+        calculator.removePricesBeforeCutoff("AUD/USD", start + TimeUnit.MILLISECONDS.toNanos(60_500));
+        assertEquals(11, data.getTickCount());
+        calculator.removePricesBeforeCutoff("AUD/USD", start + TimeUnit.SECONDS.toNanos(61));
+        assertEquals(1, data.getTickCount());
+        assertEquals(2.0, data.getVwap(), 0.0001);
+        assertEquals(2.0, data.getStatistics().getWindowLowPrice(), 0.0001);
+        assertEquals(2.0, data.getStatistics().getWindowAveragePrice(), 0.0001);
+        calculator.shutdownExecutors();
+    }
+
+    @Test
+    public void testRunningSumVerifiedAgainstExactReSum() {
+        CurrencyData data = new CurrencyData("AUD/USD");
+        assertTrue(Double.isNaN(data.verifyTotalWeightedPrice()));
+
+        for (int i = 0; i < 100_000; i++) {
+            data.addToFront(i, 0.75 + (i % 13) * 0.0001, 1 + (i % 1000) * 1000L);
+            data.removeItemsBeforeCutoff(i - 5000);
+        }
+        data.captureCheckpoint();
+        assertEquals(0.0, data.verifyTotalWeightedPrice(), 1e-9 * data.getTotalWeightedPrice().sum());
+        assertEquals(0.0, data.verifyVwap(), 1e-12);
+        assertEquals(data.getTotalWeightedPrice().sum() / data.getTotalVolume().get(), data.recomputeVwap(), 1e-12);
+
+        //a checkpoint whose ticks have since been evicted cannot be verified
+        data.removeItemsBeforeCutoff(100_000);
+        assertTrue(Double.isNaN(data.verifyTotalWeightedPrice()));
+        assertTrue(Double.isNaN(data.verifyVwap()));
+    }
+
+    @Test
+    public void testWindowsRecoveredFromJournalAfterRestart() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        VWAPCalculatorConfig config = new VWAPCalculatorConfig().withCutoffSeconds(60)
+                .withJournalEnabled(true).withJournalDirectory(directory.toString());
+        calculator = new VWAPCalculator(config);
+
+        List<String> currencyPairs = List.of("AUD/USD");
+        long now = DateTimeUtil.toEpochNanos(Instant.now());
+        //outside the cutoff, so not recovered
+        calculator.sendVWAPForCurrencyPair("AUD/USD", now - TimeUnit.SECONDS.toNanos(120), 9.0, 10);
+        for (int i = 0; i < 100; i++) {
+            calculator.sendVWAPForCurrencyPair("AUD/USD", now + i, i % 2 == 0 ? 1.0 : 3.0, 10);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && !allProcessed(currencyPairs, 100)) {
+            Thread.sleep(10);
+        }
+        calculator.shutdownExecutors();
+
+        calculator = new VWAPCalculator(config);
+        CurrencyData recovered = calculator.getCurrencyPairData().get("AUD/USD");
+        assertEquals(100, recovered.size());
+        assertEquals(1000, recovered.getTotalVolume().get());
+        assertEquals(2.0, recovered.getVwap(), 0.0001);
+        assertEquals(2.0, calculator.getSnapshot().get("AUD/USD").getVwap(), 0.0001);
+        calculator.shutdownExecutors();
+    }
+
+    @Test
+    public void testShardedCalculatorProcessesEachCurrencyPair() throws InterruptedException {
+        calculator = new VWAPCalculator(new VWAPCalculatorConfig().withCutoffSeconds(3600).withShardCount(4));
+
+        List<String> currencyPairs = List.of("AUD/USD", "USD/JPY", "NZD/GBP", "EUR/USD", "GBP/USD");
+        Instant now = Instant.now();
+        for (int i = 0; i < 100; i++) {
+            for (String currencyPair : currencyPairs) {
+                calculator.sendVWAPForCurrencyPair(new CurrencyPriceData(now.plusMillis(i), currencyPair, 1.0 + i, 10));
+            }
+        }
+
+        //allow the shard threads to drain their queues
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && !allProcessed(currencyPairs, 100)) {
+            Thread.sleep(10);
+        }
+
+        //VWAP of prices 1..100 with equal volumes
+        for (String currencyPair : currencyPairs) {
+            assertEquals(50.5, calculator.getCurrencyPairData().get(currencyPair).getVwap(), 0.0001);
+        }
+        calculator.shutdownExecutors();
+    }
+
+    @Test
+    public void testPricesSentByCurrencyPairId() throws InterruptedException {
+        calculator = new VWAPCalculator(new VWAPCalculatorConfig().withCutoffSeconds(3600).withShardCount(2));
+        CurrencyPairRegistry registry = calculator.getCurrencyPairRegistry();
+
+        int audUsd = registry.register("AUD/USD");
+        byte[] message = "xxUSD/JPYxx".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(CurrencyPairRegistry.UNKNOWN, registry.idOf(message, 2, 7));
+        int usdJpy = registry.register(message, 2, 7);
+        assertEquals(usdJpy, registry.idOf("USD/JPY"));
+        assertEquals(audUsd, registry.register("AUD/USD"));
+        assertFalse(calculator.sendVWAPForCurrencyPair(registry.size(), 1, 1.0, 10));
+
+        long now = DateTimeUtil.currentEpochNanos();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(calculator.sendVWAPForCurrencyPair(audUsd, now + i, 1.0 + i, 10));
+            assertTrue(calculator.sendVWAPForCurrencyPair(usdJpy, now + i, 100.0, 10));
+        }
+        //string and id updates of the same pair share a window
+        assertTrue(calculator.sendVWAPForCurrencyPair("AUD/USD", now + 10, 11.0, 10));
+
+        List<String> currencyPairs = List.of("AUD/USD", "USD/JPY");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && !(allProcessed(currencyPairs, 10)
+                && calculator.getCurrencyPairData().get("AUD/USD").getTickCount() == 11)) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(6.0, calculator.getCurrencyPairData().get("AUD/USD").getVwap(), 0.0001);
+        assertEquals(100.0, calculator.getCurrencyPairData().get("USD/JPY").getVwap(), 0.0001);
+        assertEquals(audUsd, calculator.getCurrencyPairData().get("AUD/USD").getCurrencyPairId());
+        calculator.shutdownExecutors();
+    }
+
+    @Test
+    public void testRingBufferIngestionWithConcurrentProducers() throws InterruptedException {
+        //small ring so producers wrap around and wait on the consumer
+        calculator = new VWAPCalculator(new VWAPCalculatorConfig().withCutoffSeconds(3600).withShardCount(2)
+                .withIngestionMode(IngestionMode.RING_BUFFER).withRingBufferSize(16).withWaitStrategy(WaitStrategy.YIELD));
+
+        List<String> currencyPairs = List.of("AUD/USD", "USD/JPY");
+        long now = DateTimeUtil.toEpochNanos(Instant.now());
+        Thread[] producers = new Thread[2];
+        for (int p = 0; p < producers.length; p++) {
+            producers[p] = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    for (String currencyPair : currencyPairs) {
+                        calculator.sendVWAPForCurrencyPair(currencyPair, now + i, 2.0, 10);
+                    }
+                }
+            });
+            producers[p].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && !allProcessed(currencyPairs, 1000)) {
+            Thread.sleep(10);
+        }
+
+        for (String currencyPair : currencyPairs) {
+            assertEquals(10_000, calculator.getCurrencyPairData().get(currencyPair).getTotalVolume().get());
+            assertEquals(2.0, calculator.getCurrencyPairData().get(currencyPair).getVwap(), 0.0001);
+        }
+        calculator.shutdownExecutors();
+    }
+
+    @Test
+    public void testMetricsExposedThroughJmx() throws Exception {
+        calculator = new VWAPCalculator(new VWAPCalculatorConfig().withCutoffSeconds(3600).withShardCount(2));
+
+        long now = DateTimeUtil.toEpochNanos(Instant.now());
+        calculator.sendVWAPForCurrencyPair("AUD/USD", now - TimeUnit.HOURS.toNanos(2), 1.0, 10);
+        for (int i = 0; i < 100; i++) {
+            calculator.sendVWAPForCurrencyPair(i % 2 == 0 ? "AUD/USD" : "USD/JPY", now + i, 1.0, 10);
+        }
+        VWAPMetricsMXBean metrics = calculator.getMetrics();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && metrics.getLatencySampleCount() < 101) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(101, metrics.getLatencySampleCount());
+        assertTrue(metrics.getLatencyP50Micros() <= metrics.getLatencyP999Micros());
+        assertTrue(metrics.getLatencyP999Micros() <= metrics.getLatencyMaxMicros());
+        assertEquals(101, metrics.getProcessedTickCount());
+        assertEquals(Long.valueOf(51), metrics.getTickCountsByCurrencyPair().get("AUD/USD"));
+        assertEquals(Long.valueOf(50), metrics.getWindowSizesByCurrencyPair().get("AUD/USD"));
+        assertEquals(1, metrics.getEvictedTickCount());
+        assertEquals(0, metrics.getDroppedTickCount());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Set<ObjectName> names = server.queryNames(new ObjectName("com.bank.vwap:type=VWAPCalculator,*"), null);
+        assertFalse(names.isEmpty());
+        calculator.shutdownExecutors();
+        assertEquals(names.size() - 1, server.queryNames(new ObjectName("com.bank.vwap:type=VWAPCalculator,*"), null).size());
+    }
+
+    @Test
+    public void testSendBatchProcessesEachCurrencyPairOncePerBatch() throws InterruptedException {
+        calculator = new VWAPCalculator(new VWAPCalculatorConfig().withCutoffSeconds(3600).withShardCount(2));
+
+        List<String> currencyPairs = List.of("AUD/USD", "USD/JPY", "NZD/GBP");
+        long now = DateTimeUtil.toEpochNanos(Instant.now());
+        List<CurrencyPriceData> batch = new ArrayList<>();
+        //a price older than the cutoff is evicted when its batch is completed
+        batch.add(new CurrencyPriceData(now - TimeUnit.HOURS.toNanos(2), "AUD/USD", 100.0, 10));
+        for (int i = 0; i < 100; i++) {
+            for (String currencyPair : currencyPairs) {
+                batch.add(new CurrencyPriceData(now + i, currencyPair, i % 2 == 0 ? 1.0 : 3.0, 10));
+            }
+        }
+        calculator.sendBatch(batch);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && !allProcessed(currencyPairs, 100)) {
+            Thread.sleep(10);
+        }
+
+        for (String currencyPair : currencyPairs) {
+            assertEquals(1000, calculator.getCurrencyPairData().get(currencyPair).getTotalVolume().get());
+            assertEquals(100, calculator.getCurrencyPairData().get(currencyPair).size());
+            assertEquals(2.0, calculator.getCurrencyPairData().get(currencyPair).getVwap(), 0.0001);
+        }
+        calculator.shutdownExecutors();
+    }
+
+    @Test
+    public void testListenersAreNotifiedOfSignificantVWAPChanges() throws InterruptedException {
+        calculator = new VWAPCalculator(3600);
+        List<CurrencyPairSnapshot> significantChanges = new CopyOnWriteArrayList<>();
+        List<CurrencyPairSnapshot> allChanges = new CopyOnWriteArrayList<>();
+        //subscribed first, so it has seen each change by the time the all pairs listener does
+        calculator.subscribe("AUD/USD", significantChanges::add, 0, 0.01);
+        calculator.subscribe(allChanges::add);
+
+        long now = DateTimeUtil.toEpochNanos(Instant.now());
+        calculator.sendVWAPForCurrencyPair("AUD/USD", now, 1.0, 10);
+        awaitNotifications(allChanges, 1);
+        calculator.sendVWAPForCurrencyPair("USD/JPY", now, 110.0, 10);
+        awaitNotifications(allChanges, 2);
+        //a change of 0.05% is below the 1% threshold
+        calculator.sendVWAPForCurrencyPair("AUD/USD", now + 1, 1.001, 10);
+        awaitNotifications(allChanges, 3);
+        calculator.sendVWAPForCurrencyPair("AUD/USD", now + 2, 2.0, 20);
+        awaitNotifications(allChanges, 4);
+
+        assertEquals(List.of("AUD/USD", "USD/JPY", "AUD/USD", "AUD/USD"),
+                allChanges.stream().map(CurrencyPairSnapshot::getCurrencyPair).collect(Collectors.toList()));
+        assertEquals(2, significantChanges.size());
+        assertEquals(1.0, significantChanges.get(0).getVwap(), 0.0001);
+        assertEquals((10 + 10.01 + 40) / 40, significantChanges.get(1).getVwap(), 0.0001);
+        calculator.shutdownExecutors();
+    }
+
+    private void awaitNotifications(List<CurrencyPairSnapshot> notifications, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline && notifications.size() < expected) {
+            Thread.sleep(1);
+        }
+        assertEquals(expected, notifications.size());
+    }
+
+    private boolean allProcessed(List<String> currencyPairs, long expectedTicks) {
+        for (String currencyPair : currencyPairs) {
+            CurrencyData data = calculator.getCurrencyPairData().get(currencyPair);
+            if (data == null || data.getTotalVolume().get() < expectedTicks * 10) {
+                return false;
+            }
+        }
+        return true;
+    }
+}